@@ -1,6 +1,5 @@
 package frc.models;
 
-import org.xero1425.misc.BadParameterTypeException;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
 import org.xero1425.misc.SettingsValue;
@@ -8,71 +7,413 @@ import org.xero1425.simulator.engine.SimulationEngine;
 import org.xero1425.simulator.engine.SimulationModel;
 import org.xero1425.simulator.models.SimMotorController;
 
+import edu.wpi.first.math.system.plant.DCMotor;
+
+/// \file
+
+/// \brief This model simulates the dynamics of the two link arm.
+///
+/// The first joint (the lower arm) turns on the robot, and the second joint (the upper arm) turns on the end of the
+/// lower arm.  Each joint is driven through a gearbox by one or more DC motors.  The voltage on each motor is the
+/// power from its motor controller times the battery voltage, and the motor current is that voltage less the back
+/// EMF of the motor, over its resistance, limited to the current limit.  The torque from the motors, the gravity
+/// on both links, and the coupling between the joints as they move are combined in the equations of motion of a
+/// two link arm, which are integrated with a fixed step fourth order Runge-Kutta integrator.  A joint that reaches
+/// a hard stop stops there.
+///
+/// Angles are in degrees from horizontal in the properties, and the angle of the upper arm is measured from the
+/// lower arm unless second:absolute is true, in which case the upper motor is mounted on the robot and the angle is
+/// measured from horizontal.  The properties for each joint, with the prefix first or second, are
+///
+/// - gear-ratio, the motor turns per turn of the joint
+/// - length, the length of the link in meters
+/// - mass, the mass of the link in kilograms
+/// - com, the distance from the joint to the center of mass of the link, half the length by default
+/// - inertia, the moment of inertia of the link about its center of mass, that of a rod by default
+/// - dc-motor, the type of motor, falcon500 (the default), neo or neo550
+/// - current-limit, the current limit of each motor in amps, 60 by default
+/// - damping, the viscous friction of the joint in newton meters per radian per second, 0 by default
+/// - angle, the angle of the joint when the encoder reads zero
+/// - direction, 1 if the angle grows as the encoder counts up, or -1 if it shrinks
+/// - min-angle, max-angle, the hard stops of the joint
+/// - ticks-per-rev, the encoder ticks per turn of the motor, 2048 by default
+///
+/// The property second:end-mass is a mass in kilograms at the end of the upper arm, such as the grabber, and the
+/// payload event sets the mass of a game piece held there.  The property battery-voltage is the voltage of the
+/// battery, 12 by default, and step is the integration step in seconds, 0.001 by default.
 public class ArmModel extends SimulationModel {
-    private SimMotorController first_ ;
-    private double first_ticks_per_second_per_volt_ ;
-    private double first_angle_ ;
+    private static final double Gravity = 9.81 ;
+
+    // The indexes of the lower and upper joints
+    private static final int Lower = 0 ;
+    private static final int Upper = 1 ;
+
+    private static final String [] Prefixes = { "first", "second" } ;
+
+    private SimMotorController [] motors_ ;
+
+    // The motor constants, torque per amp, speed per volt and resistance, for each joint
+    private double [] kt_ ;
+    private double [] kv_ ;
+    private double [] resistance_ ;
+    private double [] motor_count_ ;
+    private double [] current_limit_ ;
+
+    // The gear ratio, direction and friction of each joint
+    private double [] ratio_ ;
+    private double [] direction_ ;
+    private double [] damping_ ;
+
+    // The links
+    private double [] length_ ;
+    private double [] mass_ ;
+    private double [] com_ ;
+    private double [] inertia_ ;
+
+    // The upper link without the payload, and the payload at its end
+    private double upper_mass_ ;
+    private double upper_com_ ;
+    private double upper_inertia_ ;
+    private double end_mass_ ;
+    private double payload_ ;
+
+    // The angle at zero ticks, the hard stops and the ticks per motor turn of each joint, in radians
+    private double [] zero_ ;
+    private double [] min_ ;
+    private double [] max_ ;
+    private double [] ticks_per_rev_ ;
+
+    // If true, the upper motor drives the angle of the upper arm from horizontal
+    private boolean absolute_ ;
 
-    private SimMotorController second_ ;
-    private double second_ticks_per_second_per_volt_ ;
-    private double second_angle_ ;
+    private double battery_ ;
+    private double step_ ;
+
+    // The voltage on the motors of each joint this step
+    private double [] volts_ ;
+
+    // The state, the angles of the lower arm from horizontal and the upper arm from the lower arm, and their speeds
+    private double [] state_ ;
+
+    // The work space for the integrator, so a step does not allocate
+    private double [] k1_ ;
+    private double [] k2_ ;
+    private double [] k3_ ;
+    private double [] k4_ ;
+    private double [] tmp_ ;
+
+    // The current of each motor, for the status
+    private double [] current_ ;
 
     public ArmModel(SimulationEngine engine, String model, String inst) {
         super(engine, model, inst) ;
+
+        motors_ = new SimMotorController[2] ;
+        kt_ = new double[2] ;
+        kv_ = new double[2] ;
+        resistance_ = new double[2] ;
+        motor_count_ = new double[2] ;
+        current_limit_ = new double[2] ;
+        ratio_ = new double[2] ;
+        direction_ = new double[2] ;
+        damping_ = new double[2] ;
+        length_ = new double[2] ;
+        mass_ = new double[2] ;
+        com_ = new double[2] ;
+        inertia_ = new double[2] ;
+        zero_ = new double[2] ;
+        min_ = new double[2] ;
+        max_ = new double[2] ;
+        ticks_per_rev_ = new double[2] ;
+        volts_ = new double[2] ;
+        current_ = new double[2] ;
+
+        state_ = new double[4] ;
+        k1_ = new double[4] ;
+        k2_ = new double[4] ;
+        k3_ = new double[4] ;
+        k4_ = new double[4] ;
+        tmp_ = new double[4] ;
     }
 
     @Override
     public boolean create() {
-        first_ = new SimMotorController(this, "first") ;
-        if (!first_.createMotor()) {
-            return false ;
-        }
-
         try {
-            first_ticks_per_second_per_volt_ = getProperty("first:ticks_per_second_per_volt").getDouble();
-        } catch (BadParameterTypeException e) {
+            for(int i = 0 ; i < 2 ; i++) {
+                if (!createJoint(i)) {
+                    return false ;
+                }
+            }
+
+            absolute_ = hasProperty("second:absolute") && getProperty("second:absolute").getBoolean() ;
+            end_mass_ = getDoubleProperty("second:end-mass", 0.0) ;
+            battery_ = getDoubleProperty("battery-voltage", 12.0) ;
+            step_ = getDoubleProperty("step", 0.001) ;
+        }
+        catch(Exception ex) {
             MessageLogger logger = getEngine().getMessageLogger() ;
             logger.startMessage(MessageType.Error) ;
             logger.add("cannot create model ").addQuoted(getModelName()).add(" instance ").addQuoted(getInstanceName()) ;
-            logger.add(" - missing parameter ").addQuoted("first:ticks_per_second_per_volt").endMessage();
+            logger.add(" - ").add(ex.getMessage()).endMessage();
             return false ;
         }
 
-        second_ = new SimMotorController(this, "second") ;
-        if (!second_.createMotor())
-            return false ;
+        upper_mass_ = mass_[Upper] ;
+        upper_com_ = com_[Upper] ;
+        upper_inertia_ = inertia_[Upper] ;
+        payload_ = 0.0 ;
+        updateUpperLink() ;
 
-        try {
-            second_ticks_per_second_per_volt_ = getProperty("second:ticks_per_second_per_volt").getDouble();
-        } catch (BadParameterTypeException e) {
-            MessageLogger logger = getEngine().getMessageLogger() ;
-            logger.startMessage(MessageType.Error) ;
-            logger.add("cannot create model ").addQuoted(getModelName()).add(" instance ").addQuoted(getInstanceName()) ;
-            logger.add(" - missing parameter ").addQuoted("second:ticks_per_second_per_volt").endMessage();
-            return false ;
-        }
+        //
+        // The arm starts with both encoders at zero
+        //
+        state_[0] = zero_[Lower] ;
+        state_[1] = absolute_ ? zero_[Upper] - zero_[Lower] : zero_[Upper] ;
+        state_[2] = 0.0 ;
+        state_[3] = 0.0 ;
+        setEncoders() ;
 
-        setCreated(); 
+        setCreated();
         return true ;
     }
 
     @Override
     public boolean processEvent(String name, SettingsValue value) {
+        if (name.equals("payload")) {
+            try {
+                payload_ = value.isInteger() ? value.getInteger() : value.getDouble() ;
+                updateUpperLink() ;
+                return true ;
+            }
+            catch(Exception ex) {
+                MessageLogger logger = getEngine().getMessageLogger() ;
+                logger.startMessage(MessageType.Error) ;
+                logger.add("event: model ").addQuoted(getModelName()).add(" instance ").addQuoted(getInstanceName()) ;
+                logger.add(" event ").addQuoted(name).add(" requires a number").endMessage();
+            }
+        }
+
         return false ;
     }
 
+    @Override
+    public String statusString() {
+        return String.format("lower %.1f deg %.1f A, upper %.1f deg %.1f A",
+                             Math.toDegrees(measured(Lower, state_)), current_[Lower],
+                             Math.toDegrees(measured(Upper, state_)), current_[Upper]) ;
+    }
+
     @Override
     public void run(double dt) {
-        double power, delta;
+        volts_[Lower] = motors_[Lower].getPower() * battery_ ;
+        volts_[Upper] = motors_[Upper].getPower() * battery_ ;
+
+        int steps = (int)Math.ceil(dt / step_) ;
+        double h = dt / steps ;
+
+        for(int i = 0 ; i < steps ; i++) {
+            integrate(h) ;
+            applyHardStops() ;
+        }
+
+        current_[Lower] = motorCurrent(Lower, measuredSpeed(Lower, state_)) ;
+        current_[Upper] = motorCurrent(Upper, measuredSpeed(Upper, state_)) ;
+        setEncoders() ;
+    }
+
+    //
+    // Read the motor, gearbox and link properties for one joint
+    //
+    private boolean createJoint(int which) throws Exception {
+        String prefix = Prefixes[which] ;
+
+        motors_[which] = new SimMotorController(this, prefix) ;
+        if (!motors_[which].createMotor()) {
+            return false ;
+        }
+
+        String type = hasProperty(prefix + ":dc-motor") ? getStringProperty(prefix + ":dc-motor") : "falcon500" ;
+        DCMotor motor ;
+        if (type.equals("falcon500"))
+            motor = DCMotor.getFalcon500(1) ;
+        else if (type.equals("neo"))
+            motor = DCMotor.getNEO(1) ;
+        else if (type.equals("neo550"))
+            motor = DCMotor.getNeo550(1) ;
+        else
+            throw new Exception("unknown dc motor type '" + type + "'") ;
 
-        power = first_.getPower() ;
-        delta = power * first_ticks_per_second_per_volt_ * dt;
-        first_angle_ += delta ;
-        first_.setEncoder(first_angle_);
+        kt_[which] = motor.KtNMPerAmp ;
+        kv_[which] = motor.KvRadPerSecPerVolt ;
+        resistance_[which] = motor.rOhms ;
+        motor_count_[which] = motors_[which].getCount() ;
+        current_limit_[which] = getDoubleProperty(prefix + ":current-limit", 60.0) ;
+
+        ratio_[which] = getDoubleProperty(prefix + ":gear-ratio") ;
+        direction_[which] = (getDoubleProperty(prefix + ":direction", 1.0) < 0.0) ? -1.0 : 1.0 ;
+        damping_[which] = getDoubleProperty(prefix + ":damping", 0.0) ;
+
+        length_[which] = getDoubleProperty(prefix + ":length") ;
+        mass_[which] = getDoubleProperty(prefix + ":mass") ;
+        com_[which] = getDoubleProperty(prefix + ":com", length_[which] / 2.0) ;
+        inertia_[which] = getDoubleProperty(prefix + ":inertia", mass_[which] * length_[which] * length_[which] / 12.0) ;
+
+        zero_[which] = Math.toRadians(getDoubleProperty(prefix + ":angle")) ;
+        min_[which] = Math.toRadians(getDoubleProperty(prefix + ":min-angle")) ;
+        max_[which] = Math.toRadians(getDoubleProperty(prefix + ":max-angle")) ;
+
+        int ticks = motors_[which].ticksPerRev() ;
+        ticks_per_rev_[which] = getDoubleProperty(prefix + ":ticks-per-rev", (ticks > 0) ? ticks : 2048) ;
+
+        return true ;
+    }
+
+    //
+    // Combine the upper link with the masses at its end, the end mass and the payload
+    //
+    private void updateUpperLink() {
+        double end = end_mass_ + payload_ ;
+        double total = upper_mass_ + end ;
+        double com = (upper_mass_ * upper_com_ + end * length_[Upper]) / total ;
+
+        mass_[Upper] = total ;
+        com_[Upper] = com ;
+        inertia_[Upper] = upper_inertia_ + upper_mass_ * (upper_com_ - com) * (upper_com_ - com) + end * (length_[Upper] - com) * (length_[Upper] - com) ;
+    }
+
+    //
+    // One fourth order Runge-Kutta step of the state
+    //
+    private void integrate(double h) {
+        derivative(state_, k1_) ;
+
+        for(int i = 0 ; i < 4 ; i++)
+            tmp_[i] = state_[i] + k1_[i] * h / 2.0 ;
+        derivative(tmp_, k2_) ;
+
+        for(int i = 0 ; i < 4 ; i++)
+            tmp_[i] = state_[i] + k2_[i] * h / 2.0 ;
+        derivative(tmp_, k3_) ;
+
+        for(int i = 0 ; i < 4 ; i++)
+            tmp_[i] = state_[i] + k3_[i] * h ;
+        derivative(tmp_, k4_) ;
+
+        for(int i = 0 ; i < 4 ; i++)
+            state_[i] += h / 6.0 * (k1_[i] + 2.0 * k2_[i] + 2.0 * k3_[i] + k4_[i]) ;
+    }
+
+    //
+    // The equations of motion of the arm, M(q) q'' + C(q, q') q' + G(q) = torque, solved for the accelerations
+    //
+    private void derivative(double [] s, double [] out) {
+        double q1 = s[0] ;
+        double q2 = s[1] ;
+        double w1 = s[2] ;
+        double w2 = s[3] ;
+
+        double m1 = mass_[Lower] ;
+        double m2 = mass_[Upper] ;
+        double l1 = length_[Lower] ;
+        double r1 = com_[Lower] ;
+        double r2 = com_[Upper] ;
+
+        double c2 = Math.cos(q2) ;
+        double h = m2 * l1 * r2 * Math.sin(q2) ;
+
+        double m11 = inertia_[Lower] + m1 * r1 * r1 + inertia_[Upper] + m2 * (l1 * l1 + r2 * r2 + 2.0 * l1 * r2 * c2) ;
+        double m12 = inertia_[Upper] + m2 * (r2 * r2 + l1 * r2 * c2) ;
+        double m22 = inertia_[Upper] + m2 * r2 * r2 ;
+
+        double cos12 = Math.cos(q1 + q2) ;
+        double g1 = Gravity * ((m1 * r1 + m2 * l1) * Math.cos(q1) + m2 * r2 * cos12) ;
+        double g2 = Gravity * m2 * r2 * cos12 ;
+
+        double t1 = jointTorque(Lower, measuredSpeed(Lower, s)) ;
+        double t2 = jointTorque(Upper, measuredSpeed(Upper, s)) ;
+
+        //
+        // An upper motor on the robot turns the upper arm from horizontal, which pushes on both joints
+        //
+        double tau1 = t1 + (absolute_ ? t2 : 0.0) + h * w2 * (2.0 * w1 + w2) - g1 ;
+        double tau2 = t2 - h * w1 * w1 - g2 ;
+
+        double det = m11 * m22 - m12 * m12 ;
+        out[0] = w1 ;
+        out[1] = w2 ;
+        out[2] = (m22 * tau1 - m12 * tau2) / det ;
+        out[3] = (m11 * tau2 - m12 * tau1) / det ;
+    }
+
+    //
+    // The torque on a joint from its motors and friction, given the speed of the angle the joint measures
+    //
+    private double jointTorque(int which, double speed) {
+        double current = motorCurrent(which, speed) ;
+        return direction_[which] * ratio_[which] * motor_count_[which] * kt_[which] * current - damping_[which] * speed ;
+    }
+
+    //
+    // The current in each motor of a joint, from the voltage less the back EMF, limited to the current limit
+    //
+    private double motorCurrent(int which, double speed) {
+        double omega = direction_[which] * ratio_[which] * speed ;
+        double current = (volts_[which] - omega / kv_[which]) / resistance_[which] ;
+        return Math.max(-current_limit_[which], Math.min(current_limit_[which], current)) ;
+    }
+
+    //
+    // The angle a joint measures, and its speed.  The upper joint measures from horizontal if it is absolute.
+    //
+    private double measured(int which, double [] s) {
+        if (which == Lower)
+            return s[0] ;
+
+        return absolute_ ? s[0] + s[1] : s[1] ;
+    }
+
+    private double measuredSpeed(int which, double [] s) {
+        if (which == Lower)
+            return s[2] ;
+
+        return absolute_ ? s[2] + s[3] : s[3] ;
+    }
+
+    //
+    // Stop a joint at its hard stop.  The joint loses its speed into the stop, but may move away from it.
+    //
+    private void applyHardStops() {
+        if (state_[0] < min_[Lower] || state_[0] > max_[Lower]) {
+            double limit = (state_[0] < min_[Lower]) ? min_[Lower] : max_[Lower] ;
+            state_[0] = limit ;
+
+            //
+            // An absolute upper arm keeps its angle from horizontal when the lower arm stops
+            //
+            if (absolute_)
+                state_[3] += state_[2] ;
+            state_[2] = 0.0 ;
+        }
+
+        double upper = measured(Upper, state_) ;
+        if (upper < min_[Upper] || upper > max_[Upper]) {
+            double limit = (upper < min_[Upper]) ? min_[Upper] : max_[Upper] ;
+            state_[1] = absolute_ ? limit - state_[0] : limit ;
+            state_[3] = absolute_ ? -state_[2] : 0.0 ;
+        }
+    }
+
+    //
+    // Set the encoder of each joint from the angle it measures
+    //
+    private void setEncoders() {
+        for(int i = 0 ; i < 2 ; i++) {
+            double turns = direction_[i] * (measured(i, state_) - zero_[i]) * ratio_[i] / (2.0 * Math.PI) ;
+            motors_[i].setEncoder(turns * ticks_per_rev_[i]) ;
+        }
+    }
 
-        power = second_.getPower() ;
-        delta = power * second_ticks_per_second_per_volt_ * dt;
-        second_angle_ += delta ;
-        second_.setEncoder(second_angle_);
+    private double getDoubleProperty(String name, double def) throws Exception {
+        return hasProperty(name) ? getDoubleProperty(name) : def ;
     }
 }
@@ -23,25 +23,28 @@ public class SwimmyRobotAutoController extends AutoController {
     
             try {
                 test_mode_ = new SwimmyTestAutoMode(this) ;
-
-                addAutoMode(new SwimmyAutoModeCenter1(this, "Red Balance", "Red", Location.Top, GamePiece.Cone));
-                addAutoMode(new SwimmyAutoModeCenter1(this, "Blue Balance", "Blue", Location.Top, GamePiece.Cone));
-
-                addAutoMode(new SwimmyAutoPlaceCollectPlace(this, "Red Two Center", "Middle1", "Red", Location.Top, GamePiece.Cone, GridTagPosition.Right, Slot.Left, Location.Top, GamePiece.Cone, 5.1));
-                addAutoMode(new SwimmyAutoPlaceCollectPlace(this, "Blue Two Center", "Middle1", "Blue", Location.Top, GamePiece.Cone, GridTagPosition.Left, Slot.Right, Location.Top, GamePiece.Cone, 5.1));
-
-                addAutoMode(new SwimmyAutoPlaceCollectPlaceFast(this, "Fast Red Two Center", "middle1fast", "red", GridTagPosition.Right, Slot.Left));
-                addAutoMode(new SwimmyAutoPlaceCollectPlaceFast(this, "Fast Blue Two Center", "middle1fast", "blue", GridTagPosition.Left, Slot.Right)) ;
-
-                addAutoMode(new SwimmyAutoPlaceCollectPlace(this, "Red Two Edge", "Edge1", "Red", Location.Top, GamePiece.Cone, GridTagPosition.Left, Slot.Right, Location.Top, GamePiece.Cone, 5.1));
-                addAutoMode(new SwimmyAutoPlaceCollectPlace(this, "Blue Two Edge", "Edge1", "Blue", Location.Top, GamePiece.Cone, GridTagPosition.Right, Slot.Left, Location.Top, GamePiece.Cone, 5.1));
             }
             catch(Exception ex) {
                 MessageLogger logger = robot.getMessageLogger() ;
-                logger.startMessage(MessageType.Error).add("Exception thrown creating automodes - ") ;
+                logger.startMessage(MessageType.Error).add("Exception thrown creating test automode - ") ;
                 logger.add(ex.getMessage()).endMessage();
                 robot.logStackTrace(ex.getStackTrace());
             }
+
+            //
+            // The automodes are created by the robot after initialization, in this order
+            //
+            addAutoMode("Red Balance", () -> new SwimmyAutoModeCenter1(this, "Red Balance", "Red", Location.Top, GamePiece.Cone)) ;
+            addAutoMode("Blue Balance", () -> new SwimmyAutoModeCenter1(this, "Blue Balance", "Blue", Location.Top, GamePiece.Cone)) ;
+
+            addAutoMode("Red Two Center", () -> new SwimmyAutoPlaceCollectPlace(this, "Red Two Center", "Middle1", "Red", Location.Top, GamePiece.Cone, GridTagPosition.Right, Slot.Left, Location.Top, GamePiece.Cone, 5.1)) ;
+            addAutoMode("Blue Two Center", () -> new SwimmyAutoPlaceCollectPlace(this, "Blue Two Center", "Middle1", "Blue", Location.Top, GamePiece.Cone, GridTagPosition.Left, Slot.Right, Location.Top, GamePiece.Cone, 5.1)) ;
+
+            addAutoMode("Fast Red Two Center", () -> new SwimmyAutoPlaceCollectPlaceFast(this, "Fast Red Two Center", "middle1fast", "red", GridTagPosition.Right, Slot.Left)) ;
+            addAutoMode("Fast Blue Two Center", () -> new SwimmyAutoPlaceCollectPlaceFast(this, "Fast Blue Two Center", "middle1fast", "blue", GridTagPosition.Left, Slot.Right)) ;
+
+            addAutoMode("Red Two Edge", () -> new SwimmyAutoPlaceCollectPlace(this, "Red Two Edge", "Edge1", "Red", Location.Top, GamePiece.Cone, GridTagPosition.Left, Slot.Right, Location.Top, GamePiece.Cone, 5.1)) ;
+            addAutoMode("Blue Two Edge", () -> new SwimmyAutoPlaceCollectPlace(this, "Blue Two Edge", "Edge1", "Blue", Location.Top, GamePiece.Cone, GridTagPosition.Right, Slot.Left, Location.Top, GamePiece.Cone, 5.1)) ;
         }
     
         public void updateAutoMode(int mode, String gamedata) {
@@ -127,7 +127,7 @@ public class SwimmyTestAutoMode extends TestAutoMode {
                 {
                     String path = getString("name");
                     Supplier<Boolean> fun = () -> { return robotsys.getGPM().getGrabber().getSensor() ; } ;
-                    addSubActionPair(swerve, new SwerveDrivePathToGamePiece(robotsys.getLimeLight(), 3, swerve, path, true, 0.1, fun), true);
+                    addSubActionPair(swerve, new SwerveDrivePathToGamePiece(robotsys.getTargetTracker(), 3, swerve, path, true, 0.1, fun), true);
                 }
                 break;
                 
@@ -1,7 +1,10 @@
 package frc.robot.subsystems.arm;
 
 import org.xero1425.base.actions.Action;
+import org.xero1425.base.subsystems.motorsubsystem.MotorAction;
 import org.xero1425.base.subsystems.motorsubsystem.MotorEncoderGotoAction;
+import org.xero1425.base.subsystems.motorsubsystem.MotorEncoderSubsystem;
+import org.xero1425.base.subsystems.motorsubsystem.MotorEncoderTrajectoryAction;
 import org.xero1425.misc.BadParameterTypeException;
 import org.xero1425.misc.MissingParameterException;
 import org.xero1425.misc.SCurveConfig;
@@ -13,17 +16,20 @@ public class ArmStaggeredGotoAction extends Action {
     private double lower_start_time_ ;
     private TrapezoidalProfileConfig lower_trap_config_ ;
     private SCurveConfig lower_scurve_config_ ;
-    private MotorEncoderGotoAction lower_goto_ ;
+    private MotorAction lower_goto_ ;
     private double lower_target_ ;
 
     private double upper_start_time_ ;
     private TrapezoidalProfileConfig upper_trap_config_ ;
     private SCurveConfig upper_scurve_config_ ;
-    private MotorEncoderGotoAction upper_goto_ ;
+    private MotorAction upper_goto_ ;
     private double upper_target_ ;
 
     private boolean use_actual_ ;
 
+    // If true, each arm moves with a trajectory run on the motor controller rather than a loop on the robot
+    private boolean use_trajectory_ ;
+
     private String key_ ;
 
     private double start_time_ ;
@@ -34,6 +40,7 @@ public class ArmStaggeredGotoAction extends Action {
         sub_ = sub;
         key_ = key ;
         use_actual_ = false ;
+        use_trajectory_ = sub_.isSettingDefined("use-trajectory") && sub_.getSettingsValue("use-trajectory").getBoolean() ;
 
         if (scurve) {
             setupScurve() ;
@@ -101,24 +108,12 @@ public class ArmStaggeredGotoAction extends Action {
         double delta = sub_.getRobot().getTime() - start_time_ ;
 
         if (delta > upper_start_time_ && upper_goto_ == null) {
-            if (upper_scurve_config_ != null) {
-                upper_goto_ = new MotorEncoderGotoAction(sub_.getUpperSubsystem(), upper_target_, upper_scurve_config_, true) ;
-            }
-            else {
-                upper_goto_ = new MotorEncoderGotoAction(sub_.getUpperSubsystem(), upper_target_, upper_trap_config_, true) ;
-                upper_goto_.useActual(use_actual_) ;
-            }
+            upper_goto_ = createAction(sub_.getUpperSubsystem(), upper_target_, upper_scurve_config_, upper_trap_config_) ;
             sub_.getUpperSubsystem().setAction(upper_goto_, true);
         }
 
         if (delta > lower_start_time_ && lower_goto_ == null) {
-            if (lower_scurve_config_ != null) {
-                lower_goto_ = new MotorEncoderGotoAction(sub_.getLowerSubsystem(), lower_target_, lower_scurve_config_, true);
-            }
-            else {
-                lower_goto_ = new MotorEncoderGotoAction(sub_.getLowerSubsystem(), lower_target_, lower_trap_config_, true);
-                lower_goto_.useActual(use_actual_) ;
-            }
+            lower_goto_ = createAction(sub_.getLowerSubsystem(), lower_target_, lower_scurve_config_, lower_trap_config_) ;
             sub_.getLowerSubsystem().setAction(lower_goto_, true);
         }
 
@@ -131,4 +126,25 @@ public class ArmStaggeredGotoAction extends Action {
     public String toString(int indent) {
         return spaces(indent) + "ArmStaggeredGotoAction(" + key_ + ")";
     }
+
+    //
+    // Create the action that moves one arm to its target, with the S-curve profile if there is one.  If the arm is
+    // set to use trajectories, the motion runs on the motor controller and the arm holds at the target there.
+    // Otherwise the motion is followed in the robot loop.
+    //
+    private MotorAction createAction(MotorEncoderSubsystem sub, double target, SCurveConfig scurve, TrapezoidalProfileConfig trap) throws Exception {
+        if (use_trajectory_) {
+            if (scurve != null)
+                return new MotorEncoderTrajectoryAction(sub, target, scurve, true) ;
+
+            return new MotorEncoderTrajectoryAction(sub, target, trap, true) ;
+        }
+
+        if (scurve != null)
+            return new MotorEncoderGotoAction(sub, target, scurve, true) ;
+
+        MotorEncoderGotoAction act = new MotorEncoderGotoAction(sub, target, trap, true) ;
+        act.useActual(use_actual_) ;
+        return act ;
+    }
 }
@@ -1,11 +1,15 @@
 package frc.robot.subsystems.arm;
 
 import org.xero1425.base.actions.Action;
+import org.xero1425.base.subsystems.motorsubsystem.MotorAction;
 import org.xero1425.base.subsystems.motorsubsystem.MotorEncoderMotionMagicAction;
 import org.xero1425.base.subsystems.motorsubsystem.MotorEncoderSubsystem;
+import org.xero1425.base.subsystems.motorsubsystem.MotorEncoderTrajectoryAction;
 import org.xero1425.base.subsystems.motorsubsystem.MotorEncoderMotionMagicAction.HoldType;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
+import org.xero1425.misc.SCurveConfig;
+import org.xero1425.misc.TrapezoidalProfileConfig;
 
 public class ArmStaggeredGotoMagicAction extends Action {
 
@@ -25,11 +29,11 @@ public class ArmStaggeredGotoMagicAction extends Action {
     private int upper_strength_ ;
 
     private MotorEncoderSubsystem first_subsystem_ ;
-    private MotorEncoderMotionMagicAction first_action_ ;
+    private MotorAction first_action_ ;
     private boolean first_done_ ;
 
     private MotorEncoderSubsystem second_subsystem_ ;
-    private MotorEncoderMotionMagicAction second_action_ ;
+    private MotorAction second_action_ ;
     private boolean second_done_ ;
 
     private double trigger_distance_ ;
@@ -53,17 +57,17 @@ public class ArmStaggeredGotoMagicAction extends Action {
         if (sub_.isSettingDefined(key + ":upper:trigger")) {
             trigger_distance_ = sub_.getSettingsValue(key + ":upper:trigger").getDouble();
             second_subsystem_ = sub.getLowerSubsystem() ;
-            second_action_ = new MotorEncoderMotionMagicAction(second_subsystem_, lower_target_, lower_maxa_, lower_maxv_, lower_strength_, HoldType.AtCurrentPosition);
+            second_action_ = createAction(second_subsystem_, lower_target_, lower_maxa_, lower_maxv_, lower_strength_) ;
             first_subsystem_ = sub.getUpperSubsystem() ;
-            first_action_ = new MotorEncoderMotionMagicAction(first_subsystem_, upper_target_, upper_maxa_, upper_maxv_, upper_strength_, HoldType.AtCurrentPosition);
+            first_action_ = createAction(first_subsystem_, upper_target_, upper_maxa_, upper_maxv_, upper_strength_) ;
 
         }
         else if (sub_.isSettingDefined(key + ":lower:trigger")) {
             trigger_distance_ = sub_.getSettingsValue(key + ":lower:trigger").getDouble();
             first_subsystem_ = sub.getLowerSubsystem() ;
-            first_action_ = new MotorEncoderMotionMagicAction(first_subsystem_, lower_target_, lower_maxa_, lower_maxv_, lower_strength_, HoldType.AtCurrentPosition);
+            first_action_ = createAction(first_subsystem_, lower_target_, lower_maxa_, lower_maxv_, lower_strength_) ;
             second_subsystem_ = sub.getUpperSubsystem() ;
-            second_action_ = new MotorEncoderMotionMagicAction(second_subsystem_, upper_target_, upper_maxa_, upper_maxv_, upper_strength_, HoldType.AtCurrentPosition);
+            second_action_ = createAction(second_subsystem_, upper_target_, upper_maxa_, upper_maxv_, upper_strength_) ;
 
         }
         else {
@@ -89,12 +93,12 @@ public class ArmStaggeredGotoMagicAction extends Action {
     public void run() throws Exception {
         super.run() ;
 
-        if (!second_started_ && first_action_.getDistance() > trigger_distance_) {
+        if (!second_started_ && getDistance(first_action_) > trigger_distance_) {
             second_started_ = true ;
             second_subsystem_.setAction(second_action_, true) ;
         }
 
-        if (second_started_ && !second_done_ && second_action_.isComplete()) {
+        if (second_started_ && !second_done_ && isComplete(second_action_)) {
             MessageLogger logger = sub_.getRobot().getMessageLogger();
             logger.startMessage(MessageType.Info) ;
             logger.add("ArmStaggeredGotoMagicAction: lower action complete @ ", sub_.getRobot().getTime()) ;
@@ -102,7 +106,7 @@ public class ArmStaggeredGotoMagicAction extends Action {
             second_done_ = true ;
         }
 
-        if (!first_done_ && first_action_.isComplete()) {
+        if (!first_done_ && isComplete(first_action_)) {
             MessageLogger logger = sub_.getRobot().getMessageLogger();
             logger.startMessage(MessageType.Info) ;
             logger.add("ArmStaggeredGotoMagicAction: upper action complete @ ", sub_.getRobot().getTime()) ;
@@ -119,4 +123,46 @@ public class ArmStaggeredGotoMagicAction extends Action {
     public String toString(int indent) {
         return spaces(indent) + "ArmStaggeredGotoMagicAction(" + key_ + ")";
     }
+
+    //
+    // Create the action for one arm.  If the arm is set to use trajectories, the motion runs as a trajectory
+    // on the motor controller.  Otherwise it uses motion magic.  The motion magic limits are per 100 ms, so
+    // they are scaled to per second for the trajectory.  Either way the arm holds at the target when the motion
+    // is done, so it does not fall.
+    //
+    // The motion magic S-curve strength, 0 to 8, becomes the jerk of an S-curve trajectory.  A strength of 0 is a
+    // trapezoid.  Otherwise the acceleration ramps up over strength / 8 of the time it takes to reach the maximum
+    // velocity, which is as smooth as motion magic gets at its highest strength.
+    //
+    private MotorAction createAction(MotorEncoderSubsystem sub, double target, double maxa, double maxv, int strength) throws Exception {
+        if (sub_.isSettingDefined("use-trajectory") && sub_.getSettingsValue("use-trajectory").getBoolean()) {
+            double accel = maxa * 10.0 ;
+            double velocity = maxv * 10.0 ;
+
+            if (strength <= 0) {
+                TrapezoidalProfileConfig cfg = new TrapezoidalProfileConfig(accel, -accel, velocity) ;
+                return new MotorEncoderTrajectoryAction(sub, target, cfg, true) ;
+            }
+
+            double ramp = Math.min(strength, 8) / 8.0 * velocity / accel ;
+            SCurveConfig cfg = new SCurveConfig(accel / ramp, accel, velocity) ;
+            return new MotorEncoderTrajectoryAction(sub, target, cfg, true) ;
+        }
+
+        return new MotorEncoderMotionMagicAction(sub, target, maxa, maxv, strength, HoldType.AtCurrentPosition) ;
+    }
+
+    private double getDistance(MotorAction act) {
+        if (act instanceof MotorEncoderTrajectoryAction)
+            return ((MotorEncoderTrajectoryAction)act).getDistance() ;
+
+        return ((MotorEncoderMotionMagicAction)act).getDistance() ;
+    }
+
+    private boolean isComplete(MotorAction act) {
+        if (act instanceof MotorEncoderTrajectoryAction)
+            return act.isDone() ;
+
+        return ((MotorEncoderMotionMagicAction)act).isComplete() ;
+    }
 }
@@ -5,7 +5,9 @@ import org.xero1425.base.misc.XeroTimer;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
 
+import edu.wpi.first.wpilibj.Timer;
 import frc.robot.subsystems.grabber.GrabberStartCollectAction;
+import frc.robot.subsystems.grabber.GrabberSubsystem;
 import frc.robot.subsystems.arm.ArmStaggeredGotoMagicAction;
 import frc.robot.subsystems.grabber.GrabberGrabGampieceAction;
 import frc.robot.subsystems.grabber.GrabberStowAction;
@@ -112,7 +114,10 @@ public class GPMCollectAction extends Action {
 
         if (subsystem_.getGrabber().getSensor()) {
             ret = true ;
-            logger.startMessage(MessageType.Info).add("GPMCollectAction - sensor detected").endMessage();
+            logger.startMessage(MessageType.Info).add("GPMCollectAction - sensor detected") ;
+            if (!Double.isNaN(subsystem_.getGrabber().getDetectTime()))
+                logger.add("latency", Timer.getFPGATimestamp() - subsystem_.getGrabber().getDetectTime()) ;
+            logger.endMessage();
         }
         else if (timer_ != null && timer_has_started_ && timer_.isExpired()) {
             ret = true ;
@@ -143,12 +148,15 @@ public class GPMCollectAction extends Action {
 
             case WaitingForDeploy:
                 if (arm_collect_action_.isDone() && grabber_start_collect_action_.isDone()) {
+                    GrabberSubsystem grabber = subsystem_.getGrabber() ;
+                    grabber.armDetect(grabber.getFastGrabCallback()) ;
                     state_ = State.WaitingForSensor ;
                 }
                 break ;
 
             case WaitingForSensor:
                 if (isCollectDone()) {
+                    subsystem_.getGrabber().disarmDetect() ;
                     subsystem_.getGrabber().setAction(grabber_stop_collect_action_, true);
                     state_ = State.CloseGrabber;
                 }
@@ -206,6 +214,12 @@ public class GPMCollectAction extends Action {
         }        
     }
 
+    @Override
+    public void cancel() {
+        super.cancel() ;
+        subsystem_.getGrabber().disarmDetect() ;
+    }
+
     public boolean doneRaisingArm() {
         return (state_ == State.WaitingForSensor || state_ == State.CloseGrabber);
     }
@@ -3,12 +3,25 @@ package frc.robot.subsystems.grabber;
 import org.xero1425.base.LoopType;
 import org.xero1425.base.motors.MotorController.NeutralMode;
 import org.xero1425.base.subsystems.Subsystem;
+import org.xero1425.base.subsystems.motorsubsystem.MotorEncoderPowerAction;
 import org.xero1425.base.subsystems.motorsubsystem.MotorEncoderSubsystem;
+import org.xero1425.misc.MessageLogger;
+import org.xero1425.misc.MessageType;
 
+import edu.wpi.first.wpilibj.AsynchronousInterrupt;
 import edu.wpi.first.wpilibj.DigitalInput;
 
 public class GrabberSubsystem extends Subsystem {
 
+    /// \brief A callback that is called from the interrupt thread when a game piece is detected.  This is
+    /// called with the detect lock held, so it must be short and must not wait on the robot loop.
+    public interface DetectCallback {
+        /// \brief called when a game piece is detected
+        /// \param sensor the name of the sensor that detected the game piece
+        /// \param timestamp the FPGA time of the sensor edge in seconds
+        void detected(String sensor, double timestamp) throws Exception ;
+    }
+
     private MotorEncoderSubsystem motor_grab_ ;
     private MotorEncoderSubsystem motor_spin_ ;
     private DigitalInput sensor_upper_ ;
@@ -20,6 +33,44 @@ public class GrabberSubsystem extends Subsystem {
     private boolean sensor_right_value_ ;
     private boolean sensor_left_value_ ;
 
+    // The interrupts for the sensors, null if the sensors are only polled
+    private AsynchronousInterrupt[] interrupts_ ;
+
+    // Held while arming, disarming, and firing the detect callback so the robot loop and the
+    // interrupt thread never act on a stale arming
+    private final Object detect_lock_ ;
+
+    // If true, the next sensor edge is latched and the callback is called
+    private boolean armed_ ;
+
+    // The callback for the next detect, may be null
+    private DetectCallback callback_ ;
+
+    // If true, a sensor detected a game piece since the detect was armed
+    private volatile boolean detected_ ;
+
+    // The FPGA time of the edge that detected the game piece
+    private volatile double detect_time_ ;
+
+    // The number of edges seen on each sensor, for diagnostics
+    private final int[] edges_ ;
+
+    // The power applied to the grab motor at the start of the robot loop after a game piece is detected,
+    // NaN if the grabber is only closed by the collect action
+    private double fast_grab_power_ ;
+
+    // The action that applies the fast grab power.  It replaces the hold action on the grab motor, so the
+    // hold action does not undo the grab before the collect action takes over the grab motor.
+    private MotorEncoderPowerAction fast_grab_action_ ;
+
+    // Set from the interrupt thread when the fast grab should be applied, cleared by the robot loop when it
+    // applies it.  The motor is only written from the robot loop, so the output filter and the actions that
+    // own the motor never race with the interrupt thread.
+    private volatile boolean fast_grab_pending_ ;
+
+    // The error from the last failed callback, logged from the robot loop
+    private volatile String callback_error_ ;
+
     public GrabberSubsystem(Subsystem parent) throws Exception {
         super(parent, "grabber");
         
@@ -42,6 +93,80 @@ public class GrabberSubsystem extends Subsystem {
         
         v = getSettingsValue("hw:sensor:right").getInteger();
         sensor_right_ = new DigitalInput(v);        
+
+        detect_lock_ = new Object() ;
+        armed_ = false ;
+        callback_ = null ;
+        detected_ = false ;
+        detect_time_ = Double.NaN ;
+        edges_ = new int[4] ;
+        callback_error_ = null ;
+
+        if (isSettingDefined("hw:sensor:interrupts") && getSettingsValue("hw:sensor:interrupts").getBoolean()) {
+            interrupts_ = new AsynchronousInterrupt[4] ;
+            interrupts_[0] = createInterrupt(sensor_upper_, "upper", 0) ;
+            interrupts_[1] = createInterrupt(sensor_lower_, "lower", 1) ;
+            interrupts_[2] = createInterrupt(sensor_left_, "left", 2) ;
+            interrupts_[3] = createInterrupt(sensor_right_, "right", 3) ;
+        }
+        else {
+            interrupts_ = null ;
+        }
+
+        fast_grab_power_ = Double.NaN ;
+        fast_grab_action_ = null ;
+        fast_grab_pending_ = false ;
+        if (interrupts_ != null && isSettingDefined("hw:sensor:fast-grab") && getSettingsValue("hw:sensor:fast-grab").getBoolean()) {
+            fast_grab_power_ = getSettingsValue("close:hold-power").getDouble() ;
+            fast_grab_action_ = new MotorEncoderPowerAction(motor_grab_, fast_grab_power_) ;
+        }
+    }
+
+    /// \brief Returns a callback that closes the grabber as soon as a game piece is detected.  The callback
+    /// runs on the interrupt thread, so it only latches the request.  At the start of the next robot loop, before
+    /// any action runs, a power action replaces the action on the grab motor, so the grab power stays applied until
+    /// the collect action takes over the grab motor.
+    /// \returns a callback that closes the grabber, or null if fast grab is not enabled
+    public DetectCallback getFastGrabCallback() {
+        if (Double.isNaN(fast_grab_power_))
+            return null ;
+
+        return (sensor, timestamp) -> fast_grab_pending_ = true ;
+    }
+
+    /// \brief Returns true if the sensors are detected with interrupts
+    /// \returns true if the sensors are detected with interrupts
+    public boolean hasInterrupts() {
+        return interrupts_ != null ;
+    }
+
+    /// \brief Arm the detection of a game piece.  The next active edge on any sensor is latched so that
+    /// getSensor() returns true even if the sensor is only active between two robot loops, and the callback
+    /// is called from the interrupt thread.  The detection stays latched until disarmDetect() is called.
+    /// \param cb the callback to call when a game piece is detected, may be null
+    public void armDetect(DetectCallback cb) {
+        synchronized(detect_lock_) {
+            detected_ = false ;
+            detect_time_ = Double.NaN ;
+            fast_grab_pending_ = false ;
+            callback_ = cb ;
+            armed_ = true ;
+        }
+    }
+
+    /// \brief Disarm the detection of a game piece.  When this returns, the callback will not be called.
+    public void disarmDetect() {
+        synchronized(detect_lock_) {
+            armed_ = false ;
+            callback_ = null ;
+            detected_ = false ;
+        }
+    }
+
+    /// \brief Returns the FPGA time of the sensor edge that detected the game piece since detection was armed
+    /// \returns the FPGA time of the detection, or NaN if no game piece has been detected
+    public double getDetectTime() {
+        return detect_time_ ;
     }
 
     @Override
@@ -65,11 +190,28 @@ public class GrabberSubsystem extends Subsystem {
         putDashboard("s-lower", DisplayType.Always, sensor_lower_value_);
         putDashboard("s-left", DisplayType.Always, sensor_left_value_);
         putDashboard("s-right", DisplayType.Always, sensor_right_value_);
+
+        if (interrupts_ != null) {
+            putDashboard("s-edges", DisplayType.Verbose, edges_[0] + edges_[1] + edges_[2] + edges_[3]) ;
+        }
+
+        if (fast_grab_pending_) {
+            fast_grab_pending_ = false ;
+            motor_grab_.setAction(fast_grab_action_, true) ;
+        }
+
+        String error = callback_error_ ;
+        if (error != null) {
+            callback_error_ = null ;
+            MessageLogger logger = getRobot().getMessageLogger() ;
+            logger.startMessage(MessageType.Error) ;
+            logger.add("grabber detect callback failed -").add(error).endMessage() ;
+        }
     }
 
     public boolean getSensor() {
         // return sensor_upper_value_ || sensor_lower_value_;
-        return sensor_upper_value_ || sensor_lower_value_ || sensor_left_value_ || sensor_right_value_ ;
+        return detected_ || sensor_upper_value_ || sensor_lower_value_ || sensor_left_value_ || sensor_right_value_ ;
     }
 
     public MotorEncoderSubsystem getGrabSubsystem() {
@@ -79,4 +221,45 @@ public class GrabberSubsystem extends Subsystem {
     public MotorEncoderSubsystem getSpinSubsystem() {
         return motor_spin_ ;
     }
+
+    //
+    // Create an interrupt for a sensor.  The sensors are active low, so a falling edge means a game piece
+    // has reached the sensor.
+    //
+    private AsynchronousInterrupt createInterrupt(DigitalInput input, String name, int index) {
+        AsynchronousInterrupt[] holder = new AsynchronousInterrupt[1] ;
+        holder[0] = new AsynchronousInterrupt(input, (rising, falling) -> {
+            if (falling) {
+                sensorEdge(name, index, holder[0].getFallingTimestamp()) ;
+            }
+        }) ;
+
+        holder[0].setInterruptEdges(false, true) ;
+        holder[0].enable() ;
+        return holder[0] ;
+    }
+
+    //
+    // Called from the interrupt thread when a sensor becomes active
+    //
+    private void sensorEdge(String name, int index, double timestamp) {
+        edges_[index]++ ;
+
+        synchronized(detect_lock_) {
+            if (!armed_ || detected_)
+                return ;
+
+            detect_time_ = timestamp ;
+            detected_ = true ;
+
+            if (callback_ != null) {
+                try {
+                    callback_.detected(name, timestamp) ;
+                }
+                catch(Exception ex) {
+                    callback_error_ = ex.getMessage() ;
+                }
+            }
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package frc.robot.subsystems.oi;
 
+import org.xero1425.base.LatencyTracer;
 import org.xero1425.base.subsystems.oi.Gamepad;
 import org.xero1425.base.subsystems.oi.OILed;
 import org.xero1425.base.subsystems.oi.OIPanel;
@@ -73,6 +74,9 @@ public class Swimmy2023OIDeviceHollister extends OIPanel {
 
     private DisplayPattern current_display_ ;
 
+    // The type of input for latency tracing of operations started from the panel
+    private static final String LatencyInputType = "oi-panel" ;
+
     public Swimmy2023OIDeviceHollister(OISubsystem sub, String name, int index)
             throws BadParameterTypeException, MissingParameterException {
         super(sub, name, index);
@@ -219,7 +223,15 @@ public class Swimmy2023OIDeviceHollister extends OIPanel {
         }
 
         if (operation != null) {
-            if (!robotSubsystem.setOperation(operation)) {
+            //
+            // Trace the latency from the panel to the actuators for operations the robot will start
+            //
+            int tag = LatencyTracer.NoTag ;
+            if (robotSubsystem.getRunningController() == null)
+                tag = LatencyTracer.begin(LatencyInputType) ;
+
+            if (!robotSubsystem.setOperation(operation, tag)) {
+                LatencyTracer.cancel(tag) ;
                 setDisplay(DisplayPattern.ERROR);
             }
             else if (gp == GamePiece.Cone) {
@@ -6,6 +6,7 @@ import org.xero1425.base.subsystems.swerve.common.SwerveBaseSubsystem;
 import org.xero1425.base.subsystems.swerve.common.SwerveDriveAction;
 import org.xero1425.base.subsystems.swerve.common.SwerveHolonomicPathFollower;
 import org.xero1425.base.subsystems.vision.LimeLightSubsystem;
+import org.xero1425.base.subsystems.vision.VisionTargetTracker;
 import org.xero1425.misc.BadParameterTypeException;
 import org.xero1425.misc.MissingParameterException;
 
@@ -17,14 +18,14 @@ public class SwerveDrivePathToGamePiece extends SwerveDriveAction {
     private int pipeline_ ;
     private boolean in_path_ ;
 
-    public SwerveDrivePathToGamePiece(LimeLightSubsystem ll, int pipeline, SwerveBaseSubsystem swerve,String pathname, boolean setpose, double endtime, Supplier<Boolean> isAtTarget) throws BadParameterTypeException, MissingParameterException {
+    public SwerveDrivePathToGamePiece(VisionTargetTracker tracker, int pipeline, SwerveBaseSubsystem swerve,String pathname, boolean setpose, double endtime, Supplier<Boolean> isAtTarget) throws BadParameterTypeException, MissingParameterException {
         super(swerve) ;
 
         in_path_ = true ;
-        limelight_ = ll ;
+        limelight_ = tracker.getLimeLight() ;
         pipeline = pipeline_ ;
         drive_path_ = new SwerveHolonomicPathFollower(swerve, pathname, setpose, endtime);
-        steer_target_ = new SwerveDriveSteerToTarget(ll, swerve, isAtTarget);
+        steer_target_ = new SwerveDriveSteerToTarget(tracker, swerve, isAtTarget);
     }
 
     @Override
@@ -5,22 +5,22 @@ import java.util.function.Supplier;
 import org.xero1425.base.misc.XeroTimer;
 import org.xero1425.base.subsystems.swerve.common.SwerveBaseSubsystem;
 import org.xero1425.base.subsystems.swerve.common.SwerveDriveAction;
-import org.xero1425.base.subsystems.vision.LimeLightSubsystem;
+import org.xero1425.base.subsystems.vision.VisionTargetTracker;
 
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 
 public class SwerveDriveSteerToTarget extends SwerveDriveAction {
     private Supplier<Boolean> isAtTarget_ ;
-    private LimeLightSubsystem limelight_ ;
+    private VisionTargetTracker tracker_ ;
     private boolean timer_running_ ;
     private XeroTimer timer_ ;
     private double kp_ ;
 
-    public SwerveDriveSteerToTarget(LimeLightSubsystem ll, SwerveBaseSubsystem swerve, Supplier<Boolean> isAtTarget) {
+    public SwerveDriveSteerToTarget(VisionTargetTracker tracker, SwerveBaseSubsystem swerve, Supplier<Boolean> isAtTarget) {
         super(swerve);
 
         isAtTarget_ = isAtTarget ;
-        limelight_ = ll ;
+        tracker_ = tracker ;
         timer_ = new XeroTimer(swerve.getRobot(), "SwerveDriveSteerToTarget", 2.0);
         kp_ = 1.0 ;
     }
@@ -46,12 +46,12 @@ public class SwerveDriveSteerToTarget extends SwerveDriveAction {
         else 
         {
             if (timer_running_ == false) {
-                if (limelight_.isTargetDetected()) {
+                if (tracker_.hasTarget()) {
                     //
                     // Steer left and right
                     //
                     double forward = 1.0 ;
-                    double leftright = limelight_.getTX() * kp_ ;
+                    double leftright = tracker_.getTX() * kp_ ;
                     ChassisSpeeds speeds = new ChassisSpeeds(forward, leftright, 0.0) ;
                     getSubsystem().drive(speeds);
                 }
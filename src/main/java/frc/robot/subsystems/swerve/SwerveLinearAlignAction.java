@@ -2,26 +2,30 @@ package frc.robot.subsystems.swerve;
 
 import org.xero1425.base.subsystems.swerve.common.SwerveBaseSubsystem;
 import org.xero1425.base.subsystems.swerve.common.SwerveDriveAction;
-import org.xero1425.base.subsystems.vision.LimeLightSubsystem;
+import org.xero1425.base.subsystems.vision.VisionTargetTracker;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
 
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 
 public class SwerveLinearAlignAction extends SwerveDriveAction {
-    private final int SampleCount = 10 ;
+    //
+    // The tracker removes the camera latency from the error, so the error settles quickly and fewer
+    // samples are needed to know the robot is aligned
+    //
+    private final int SampleCount = 4 ;
     private final static double AlignPValue =  0.35 ;
     private final static double AlignThreshold = 0.3 ;
-    private LimeLightSubsystem ll_ ;
+    private VisionTargetTracker tracker_ ;
 
     private double[] samples_ ;
     private int total_ ;
     private int current_ ;
 
-    public SwerveLinearAlignAction(SwerveBaseSubsystem sub, LimeLightSubsystem ll) {
+    public SwerveLinearAlignAction(SwerveBaseSubsystem sub, VisionTargetTracker tracker) {
         super(sub) ;
 
-        ll_ = ll ;
+        tracker_ = tracker ;
         samples_ = new double[SampleCount] ;
     }
 
@@ -53,7 +57,16 @@ public class SwerveLinearAlignAction extends SwerveDriveAction {
     public void run() {
         MessageLogger logger = getSubsystem().getRobot().getMessageLogger();
 
-        double tx = ll_.getTX();
+        if (!tracker_.hasTarget()) {
+            getSubsystem().drive(new ChassisSpeeds());
+
+            logger.startMessage(MessageType.Debug, getSubsystem().getLoggerID());
+            logger.add("SwerveLinearAlign waiting for target") ;
+            logger.endMessage();
+            return ;
+        }
+
+        double tx = tracker_.getTX();
 
         samples_[current_++] = tx ;
         total_++ ;
@@ -3,7 +3,7 @@ package frc.robot.subsystems.swerve;
 import org.xero1425.base.misc.XeroTimer;
 import org.xero1425.base.subsystems.swerve.common.SwerveBaseSubsystem;
 import org.xero1425.base.subsystems.swerve.common.SwerveDriveAction;
-import org.xero1425.base.subsystems.vision.LimeLightSubsystem;
+import org.xero1425.base.subsystems.vision.VisionTargetTracker;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
 import org.xero1425.misc.PIDCtrl;
@@ -11,15 +11,15 @@ import org.xero1425.misc.PIDCtrl;
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 
 public class SwerveRotationalAlignRobotAction extends SwerveDriveAction {
-    private LimeLightSubsystem ll_ ;
+    private VisionTargetTracker tracker_ ;
     private PIDCtrl ctrl_ ;
     private double threshold_ ;
     private XeroTimer start_timer_ ;
 
-    public SwerveRotationalAlignRobotAction(SwerveBaseSubsystem sub, LimeLightSubsystem ll) {
+    public SwerveRotationalAlignRobotAction(SwerveBaseSubsystem sub, VisionTargetTracker tracker) {
         super(sub) ;
 
-        ll_ = ll ;
+        tracker_ = tracker ;
         threshold_ = 3.0 ;
 
         double p = 0.2 ;
@@ -37,7 +37,7 @@ public class SwerveRotationalAlignRobotAction extends SwerveDriveAction {
     @Override
     public void start() throws Exception {
         super.start();
-        ll_.setPipeline(1);
+        tracker_.getLimeLight().setPipeline(1);
         start_timer_.start() ;
     }
 
@@ -47,17 +47,17 @@ public class SwerveRotationalAlignRobotAction extends SwerveDriveAction {
 
         MessageLogger logger = getSubsystem().getRobot().getMessageLogger();
 
-        if (ll_.isTargetDetected()) {
-            if (Math.abs(ll_.getTX()) < threshold_) {
+        if (tracker_.hasTarget()) {
+            if (Math.abs(tracker_.getTX()) < threshold_) {
                 logger.startMessage(MessageType.Debug);
                 logger.add("Alignment achieved - action done");
-                logger.add("tx", ll_.getTX());
+                logger.add("tx", tracker_.getTX());
                 logger.endMessage() ;
                 setDone() ;
                 getSubsystem().drive(new ChassisSpeeds());
             }
             else {
-                double out = ctrl_.getOutput(0.0, ll_.getTX(), getSubsystem().getRobot().getDeltaTime());
+                double out = ctrl_.getOutput(0.0, tracker_.getTX(), getSubsystem().getRobot().getDeltaTime());
                 ChassisSpeeds speed = new ChassisSpeeds(0.0, out, 0.0) ;
                 getSubsystem().drive(speed) ;
 
@@ -65,8 +65,8 @@ public class SwerveRotationalAlignRobotAction extends SwerveDriveAction {
 
                 logger.startMessage(MessageType.Debug);
                 logger.add("Align");
-                logger.add("target", ll_.isTargetDetected());
-                logger.add("tx", ll_.getTX());
+                logger.add("target", tracker_.hasTarget());
+                logger.add("tx", tracker_.getTX());
                 logger.add("speed", out);
                 logger.endMessage();
             }
@@ -80,7 +80,7 @@ public class AutoPlaceOpCtrl extends OperationCtrl {
         else
             settling_timer_ = new XeroTimer(sub.getRobot(), "settling", 0.3) ;
 
-        align_action_ = new SwerveLinearAlignAction(getRobotSubsystem().getSwerve(), getRobotSubsystem().getLimeLight()) ;
+        align_action_ = new SwerveLinearAlignAction(getRobotSubsystem().getSwerve(), getRobotSubsystem().getTargetTracker()) ;
 
         place_action_ = new GPMPlaceAction(sub.getGPM(), oper.getLocation(), oper.getGamePiece(), false, false);
 
@@ -59,6 +59,21 @@ public class FieldLocationData {
     //
     static final double GridExtraYOffsetOuterSlots = 0.02;
 
+    //
+    // The number of alliances, grid tag positions, and slots in the target tables.  The tables are
+    // indexed by the ordinal of the GridTagPosition and Slot enums, red alliance first.
+    //
+    private static final int Alliances = 2 ;
+    private static final int GridTagCount = 3 ;
+    private static final int SlotCount = 3 ;
+
+    //
+    // The April tag for each grid, indexed by alliance and grid tag position, and the April tag for
+    // the loading station, indexed by alliance
+    //
+    private static final int [] GridTags = { 1, 2, 3, 6, 7, 8 } ;
+    private static final int [] LoadingStationTags = { 5, 4 } ;
+
     public class FieldItem
     {
         private int tag_ ;
@@ -130,6 +145,14 @@ public class FieldLocationData {
     private AprilTagFieldLayout layout_ ;
     private String data_type_ ;
 
+    //
+    // The target poses, built once the location data is loaded so the operation controllers only index
+    // an array.  The grid poses are indexed by alliance, grid tag position, and slot.  The loading station
+    // poses are indexed by alliance and slot, and are null for the middle slot.
+    //
+    private Pose2d [] grid_poses_ ;
+    private Pose2d [] loading_station_poses_ ;
+
     public FieldLocationData(MessageLogger logger, String filename, AprilTagFieldLayout layout) throws Exception {
         logger_ = logger ;
         layout_ = layout ;
@@ -141,7 +164,58 @@ public class FieldLocationData {
             data_type_ = "File" ;
             readLocationFile(filename) ;
         }
-        dumpDataToLogger();
+
+        buildTargetTables() ;
+
+        if (logger_.isTypeEnabled(MessageType.Debug)) {
+            dumpDataToLogger();
+        }
+    }
+
+    //
+    // Fill the target pose tables from the location data for each alliance
+    //
+    private void buildTargetTables() {
+        grid_poses_ = new Pose2d[Alliances * GridTagCount * SlotCount] ;
+        loading_station_poses_ = new Pose2d[Alliances * SlotCount] ;
+
+        for(int a = 0 ; a < Alliances ; a++) {
+            Items items = (a == 0) ? red_items_ : blue_items_ ;
+
+            for(Slot slot : Slot.values()) {
+                loading_station_poses_[a * SlotCount + slot.ordinal()] = items.getLoadingStation().getPose(slot2Text(slot)) ;
+
+                grid_poses_[gridIndex(a, GridTagPosition.Left, slot)] = items.getGridLeft().getPose(slot2Text(slot)) ;
+                grid_poses_[gridIndex(a, GridTagPosition.Middle, slot)] = items.getGridMiddle().getPose(slot2Text(slot)) ;
+                grid_poses_[gridIndex(a, GridTagPosition.Right, slot)] = items.getGridRight().getPose(slot2Text(slot)) ;
+            }
+        }
+    }
+
+    //
+    // Returns the index of a pose in the grid pose table
+    //
+    private int gridIndex(int alliance, GridTagPosition tag, Slot slot) {
+        return (alliance * GridTagCount + tag.ordinal()) * SlotCount + slot.ordinal() ;
+    }
+
+    //
+    // Returns the index of the alliance in the tables, using the alliance from the driver station
+    // if the alliance is invalid.  Returns -1 if the alliance is not known.
+    //
+    private int allianceIndex(Alliance a) {
+        if (a == Alliance.Invalid) {
+            a = DriverStation.getAlliance() ;
+        }
+
+        if (a == Alliance.Red) {
+            return 0 ;
+        }
+        else if (a == Alliance.Blue) {
+            return 1 ;
+        }
+
+        return -1 ;
     }
 
     private void dumpDataToLogger() {
@@ -233,77 +307,16 @@ public class FieldLocationData {
     }
 
     public int getLoadingStationTag(Alliance a) {
-        int ret = -1 ;
-
-        if (a == Alliance.Invalid)
-            a = DriverStation.getAlliance() ;
-
-        if (a == Alliance.Red) {
-            ret = 5 ;
-        }
-        else if (a == Alliance.Blue) {
-            ret = 4 ;
-        }
-        
-        return ret ;
+        int index = allianceIndex(a) ;
+        return (index < 0) ? -1 : LoadingStationTags[index] ;
     }
 
     public int getGridTag(Alliance a, RobotOperation.GridTagPosition tag) {
-        int ret = -1 ;
-
-        if (a == Alliance.Invalid) {
-            a = DriverStation.getAlliance() ;
-        }
-
-        if (a == Alliance.Red) {
-            switch(tag) {
-                case Left:
-                    ret = 1 ;
-                    break ;
-
-                case Middle:
-                    ret = 2 ;
-                    break ;
-
-                case Right:
-                    ret = 3 ;
-                    break ;
-            }
-        }
-        else {
-            switch(tag) {
-                case Left:
-                    ret = 6 ;
-                    break ;
-
-                case Middle:
-                    ret = 7 ;
-                    break ;
-
-                case Right:
-                    ret = 8 ;
-                    break ;
-            }
-        }
-
-        return ret;
-    }
-
-    private Items getItems(Alliance a) {
-        Items ret = null ;
-
-        if (a == Alliance.Invalid) {
-            a = DriverStation.getAlliance() ;
-        }
-
-        if (a == Alliance.Red) {
-            ret = red_items_ ;
-        }
-        else if (a == Alliance.Blue) {
-            ret = blue_items_ ;
-        }
-
-        return ret ;
+        //
+        // Any alliance other than red uses the blue grid tags
+        //
+        int index = (allianceIndex(a) == 0) ? 0 : 1 ;
+        return GridTags[index * GridTagCount + tag.ordinal()] ;
     }
 
     private String slot2Text(RobotOperation.Slot slot) {
@@ -322,29 +335,13 @@ public class FieldLocationData {
     }
 
     public Pose2d getLoadingStationPose(Alliance a, RobotOperation.Slot slot) {
-        Items items = getItems(a) ;
-        return items.getLoadingStation().getPose(slot2Text(slot));
+        int index = allianceIndex(a) ;
+        return (index < 0) ? null : loading_station_poses_[index * SlotCount + slot.ordinal()] ;
     }
 
     public Pose2d getGridPose(Alliance a, GridTagPosition tag, RobotOperation.Slot slot) {
-        Items items = getItems(a);
-        FieldItem gitem = null;
-
-        switch(tag) {
-            case Left:
-                gitem = items.getGridLeft() ;
-                break ;
-
-            case Right:
-                gitem = items.getGridRight() ;
-                break ;
-                
-            case Middle:
-                gitem = items.getGridMiddle() ;
-                break ;                
-        }
-
-        return gitem.getPose(slot2Text(slot));
+        int index = allianceIndex(a) ;
+        return (index < 0) ? null : grid_poses_[gridIndex(index, tag, slot)] ;
     }
 
     private void readLocationFile(String filename) throws Exception {
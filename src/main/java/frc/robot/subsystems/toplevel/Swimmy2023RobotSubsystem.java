@@ -1,5 +1,9 @@
 package frc.robot.subsystems.toplevel;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xero1425.base.LatencyTracer;
 import org.xero1425.base.LoopType;
 import org.xero1425.base.XeroRobot;
 import org.xero1425.base.subsystems.RobotSubsystem;
@@ -7,6 +11,7 @@ import org.xero1425.base.subsystems.oi.Gamepad;
 import org.xero1425.base.subsystems.swerve.common.SwerveBaseSubsystem;
 import org.xero1425.base.subsystems.swerve.sdsswerve.SDSSwerveDriveSubsystem;
 import org.xero1425.base.subsystems.vision.LimeLightSubsystem;
+import org.xero1425.base.subsystems.vision.VisionTargetTracker;
 import org.xero1425.misc.BadParameterTypeException;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
@@ -32,6 +37,8 @@ public class Swimmy2023RobotSubsystem extends RobotSubsystem {
     private SDSSwerveDriveSubsystem db_;
     private Swimmy2023OISubsystem oi_;
     private LimeLightSubsystem limelight_;
+    private List<LimeLightSubsystem> cameras_ ;
+    private VisionTargetTracker tracker_;
 
     //
     // Digital IOs
@@ -49,6 +56,9 @@ public class Swimmy2023RobotSubsystem extends RobotSubsystem {
     //
     private OperationCtrl ctrl_ ;
 
+    // The latency tag for the operator input that started the running operation
+    private int trace_tag_ ;
+
     public Swimmy2023RobotSubsystem(XeroRobot robot) throws Exception {
         super(robot, "Swimmy2023RobotSubsystem") ;
 
@@ -61,13 +71,26 @@ public class Swimmy2023RobotSubsystem extends RobotSubsystem {
         oi_ = new Swimmy2023OISubsystem(this, db_);
         addChild(oi_);
 
-        limelight_ = new LimeLightSubsystem(this, "limelight");
-        addChild(limelight_);
+        //
+        // The first camera is used for targeting, and every camera is used to find the robot on the field
+        //
+        cameras_ = new ArrayList<LimeLightSubsystem>() ;
+        for(String name : getCameraNames()) {
+            LimeLightSubsystem cam = new LimeLightSubsystem(this, name) ;
+            addChild(cam) ;
+            cameras_.add(cam) ;
+        }
+        limelight_ = cameras_.get(0) ;
+
+        tracker_ = new VisionTargetTracker(this, "target-tracker", limelight_, db_);
+        addChild(tracker_);
         
         gpm_ = new GPMSubsystem(this);
         addChild(gpm_);     
 
-        db_.setVision(limelight_);
+        for(LimeLightSubsystem cam : cameras_) {
+            db_.addVision(cam) ;
+        }
 
         display_out_2_ = new DigitalOutput(2) ;
         display_out_3_ = new DigitalOutput(3) ;
@@ -108,6 +131,35 @@ public class Swimmy2023RobotSubsystem extends RobotSubsystem {
         return limelight_ ;
     }
 
+    public List<LimeLightSubsystem> getCameras() {
+        return cameras_ ;
+    }
+
+    //
+    // Returns the names of the cameras, from a comma separated list in the settings
+    //
+    private List<String> getCameraNames() throws BadParameterTypeException, MissingParameterException {
+        List<String> names = new ArrayList<String>() ;
+
+        if (isSettingDefined("cameras")) {
+            for(String name : getSettingsValue("cameras").getString().split(",")) {
+                if (name.trim().length() > 0) {
+                    names.add(name.trim()) ;
+                }
+            }
+        }
+
+        if (names.size() == 0) {
+            names.add("limelight") ;
+        }
+
+        return names ;
+    }
+
+    public VisionTargetTracker getTargetTracker() {
+        return tracker_ ;
+    }
+
     public FieldLocationData getFieldData() {
         return locdata_;
     }
@@ -214,6 +266,14 @@ public class Swimmy2023RobotSubsystem extends RobotSubsystem {
     }
 
     public boolean setOperation(RobotOperation oper) {
+        return setOperation(oper, LatencyTracer.NoTag) ;
+    }
+
+    //
+    // Start an operation.  The tag is the latency tag for the operator input that requested the operation.  It
+    // is completed when the operation controller first assigns an action to a subsystem.
+    //
+    public boolean setOperation(RobotOperation oper, int tag) {
         if (ctrl_ != null) {
             //
             // Another operation is running, we just ignore the new one
@@ -264,6 +324,8 @@ public class Swimmy2023RobotSubsystem extends RobotSubsystem {
             return false;
         }
 
+        trace_tag_ = tag ;
+        LatencyTracer.enter(trace_tag_) ;
         try {
             ctrl_.start() ;
         } catch (BadParameterTypeException | MissingParameterException ex) {
@@ -274,9 +336,13 @@ public class Swimmy2023RobotSubsystem extends RobotSubsystem {
             getOI().enableGamepad();
             getSwerve().enableVision(true);
             ctrl_ = null;
+            trace_tag_ = LatencyTracer.NoTag ;
 
             return false;
         }
+        finally {
+            LatencyTracer.exit() ;
+        }
 
         return true ;
     }
@@ -308,8 +374,17 @@ public class Swimmy2023RobotSubsystem extends RobotSubsystem {
         }
 
         if (ctrl_ != null) {
-            ctrl_.run() ;
+            LatencyTracer.enter(trace_tag_) ;
+            try {
+                ctrl_.run() ;
+            }
+            finally {
+                LatencyTracer.exit() ;
+            }
+
             if (ctrl_.isDone()) {
+                LatencyTracer.drop(trace_tag_) ;
+                trace_tag_ = LatencyTracer.NoTag ;
                 MessageLogger logger = getRobot().getMessageLogger() ;
                 logger.startMessage(MessageType.Debug, getLoggerID()) ;
                 logger.add("Swimmy2023RobotSubsystem: completed: " + ctrl_.getOper().toString()) ;
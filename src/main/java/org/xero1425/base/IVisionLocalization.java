@@ -1,5 +1,8 @@
 package org.xero1425.base;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
 
@@ -7,10 +10,28 @@ public interface IVisionLocalization {
     public class LocationData {
         public Pose3d location ;
         public double when ;
+        public boolean fresh = true ;
+        public int tags ;
+        public double distance ;
     }
 
     int getTagCount();
     LocationData getLocation(Pose2d db) ;
     double getDistance() ;
     double getMultiTagDistance() ;
+
+    /// \brief returns the locations from every new frame since the last robot loop, oldest first.  A source that
+    /// only has its latest frame returns that frame if it is new.
+    /// \param db the pose of the drive base
+    /// \returns the locations from every new frame since the last robot loop
+    default List<LocationData> getLocations(Pose2d db) {
+        List<LocationData> ret = new ArrayList<LocationData>() ;
+        LocationData lc = getLocation(db) ;
+        if (lc != null && lc.fresh) {
+            lc.tags = getTagCount() ;
+            lc.distance = (lc.tags > 0) ? getDistance() : Double.MAX_VALUE ;
+            ret.add(lc) ;
+        }
+        return ret ;
+    }
 }
@@ -0,0 +1,741 @@
+package org.xero1425.base;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.DriverStation.MatchType;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+
+/// \file
+
+/// \brief This class captures every external input the robot code reads into a compact binary stream, and replays
+/// that stream in place of the hardware.
+///
+/// Each input is a named channel.  Hardware classes pass each value they read from the hardware through their
+/// channel.  When capturing, a value is written to the stream only when it differs from the last value written for
+/// that channel.  When replaying, the channel returns the recorded value instead of the value read from the hardware.
+/// Within a robot loop, the value returned during replay is the last value captured during that robot loop.
+///
+/// The stream is divided into frames, one per robot loop.  Each frame holds the robot time, the loop type, and
+/// the driver station state (joysticks, mode, alliance, and FMS state) when it changed.  Values read before the
+/// first frame (during robot initialization) are applied before the robot hardware is initialized during replay.
+///
+/// While capturing, the robot thread only copies bytes into a buffer.  Full buffers are written to the file by
+/// a background thread, so the robot loop never waits on the file system.
+///
+/// There is only a single input log for the robot, either capturing or replaying.
+public class InputLog {
+    /// \brief the magic number at the start of an input capture file
+    public static final int FileMagic = 0x50414358 ;
+
+    /// \brief the version of the input capture file format
+    public static final int FileVersion = 1 ;
+
+    // Record types in the stream
+    private static final byte RecordDefine = 'D' ;
+    private static final byte RecordFrame = 'F' ;
+    private static final byte RecordDriverStation = 'S' ;
+    private static final byte RecordDouble = 'V' ;
+    private static final byte RecordString = 'T' ;
+    private static final byte RecordEnd = 'E' ;
+
+    // Channel value kinds
+    private static final byte KindDouble = 0 ;
+    private static final byte KindString = 1 ;
+
+    // The size of each buffer handed to the writer thread
+    private static final int BufferSize = 64 * 1024 ;
+
+    // The number of buffers that can be waiting on the writer thread
+    private static final int BufferCount = 8 ;
+
+    // The robot time between hand offs of partially filled buffers, in seconds
+    private static final double FlushPeriod = 1.0 ;
+
+    // The number of joysticks supported by the driver station
+    private static final int JoystickCount = DriverStation.kJoystickPorts ;
+
+    // The one input log for the robot
+    private static InputLog the_one_ = null ;
+
+    /// \brief a single input to the robot code
+    public static class Channel {
+        private final String name_ ;
+        private int id_ ;
+        private boolean defined_ ;
+        private boolean valid_ ;
+        private double number_ ;
+        private String text_ ;
+        private InputLog log_ ;
+
+        private Channel(InputLog log, String name, int id) {
+            log_ = log ;
+            name_ = name ;
+            id_ = id ;
+            defined_ = false ;
+            valid_ = false ;
+            number_ = 0.0 ;
+            text_ = null ;
+        }
+
+        /// \brief returns the name of the channel
+        /// \returns the name of the channel
+        public String getName() {
+            return name_ ;
+        }
+
+        /// \brief returns true if this channel supplies values from a replay
+        /// \returns true if this channel supplies values from a replay
+        public boolean isReplaying() {
+            return log_.replaying_ && valid_ ;
+        }
+
+        /// \brief pass a numeric value read from the hardware through the input log.  When capturing, the value
+        /// is recorded.  When replaying, the recorded value is returned and the value given is ignored.
+        /// \param value the value read from the hardware
+        /// \returns the value the robot code should use
+        public double input(double value) {
+            if (log_.replaying_) {
+                return valid_ ? number_ : value ;
+            }
+
+            if (!valid_ || Double.doubleToLongBits(value) != Double.doubleToLongBits(number_)) {
+                number_ = value ;
+                valid_ = true ;
+                log_.writeDouble(this, value) ;
+            }
+
+            return value ;
+        }
+
+        /// \brief pass a string value read from the hardware through the input log.  When capturing, the value
+        /// is recorded.  When replaying, the recorded value is returned and the value given is ignored.
+        /// \param value the value read from the hardware
+        /// \returns the value the robot code should use
+        public String input(String value) {
+            if (log_.replaying_) {
+                return valid_ ? text_ : value ;
+            }
+
+            if (!valid_ || !value.equals(text_)) {
+                text_ = value ;
+                valid_ = true ;
+                log_.writeString(this, value) ;
+            }
+
+            return value ;
+        }
+    }
+
+    // If true, we are replaying a stream, otherwise we are capturing one
+    private final boolean replaying_ ;
+
+    // The channels indexed by name
+    private final Map<String, Channel> channels_ ;
+
+    // The channels in the order they were defined in the stream
+    private final List<Channel> ids_ ;
+
+    // The robot time for the current frame
+    private double time_ ;
+
+    // The loop type for the current frame
+    private LoopType loop_type_ ;
+
+    // The number of frames captured or replayed
+    private int frames_ ;
+
+    //
+    // Capture state
+    //
+
+    // The buffer the robot thread is filling
+    private ByteBuffer current_ ;
+
+    // Buffers waiting to be written to the file
+    private BlockingQueue<ByteBuffer> full_ ;
+
+    // Buffers that have been written and can be reused
+    private BlockingQueue<ByteBuffer> free_ ;
+
+    // The robot time the last buffer was handed to the writer
+    private double last_flush_ ;
+
+    // The number of bytes captured
+    private long size_ ;
+
+    // The maximum number of bytes to capture
+    private long max_size_ ;
+
+    // If true, the capture has reached its maximum size and is no longer recording
+    private boolean full_stop_ ;
+
+    // The number of times the robot thread had to allocate a buffer because the writer fell behind
+    private int overruns_ ;
+
+    // The thread writing buffers to the file
+    private Thread writer_ ;
+
+    // The driver station state written last, and scratch space for the current state
+    private byte[] last_ds_ ;
+    private ByteBuffer ds_ ;
+
+    //
+    // Replay state
+    //
+
+    // The stream being replayed
+    private MappedByteBuffer input_ ;
+
+    // If true, a frame record has been read and is waiting to be replayed
+    private boolean pending_ ;
+    private double pending_time_ ;
+    private LoopType pending_loop_type_ ;
+
+    private InputLog(boolean replay) {
+        replaying_ = replay ;
+        channels_ = new HashMap<String, Channel>() ;
+        ids_ = new ArrayList<Channel>() ;
+        time_ = 0.0 ;
+        loop_type_ = LoopType.None ;
+        frames_ = 0 ;
+    }
+
+    /// \brief returns the input log for the robot
+    /// \returns the input log for the robot, or null if inputs are not being captured or replayed
+    public static InputLog getInstance() {
+        return the_one_ ;
+    }
+
+    /// \brief returns true if inputs are being replayed from a stream rather than read from the hardware
+    /// \returns true if inputs are being replayed from a stream
+    public static boolean isReplaying() {
+        return the_one_ != null && the_one_.replaying_ ;
+    }
+
+    /// \brief start capturing inputs to a file
+    /// \param filename the file to store the inputs in
+    /// \param maxsize the maximum number of bytes to capture
+    /// \param time the current robot time
+    /// \returns the input log
+    public static InputLog startCapture(String filename, long maxsize, double time) throws IOException {
+        InputLog log = new InputLog(false) ;
+        log.openCapture(filename, maxsize, time) ;
+        the_one_ = log ;
+        return log ;
+    }
+
+    /// \brief start replaying inputs from a file.  Any values captured before the first robot loop are
+    /// applied before this method returns.
+    /// \param filename the file containing the captured inputs
+    /// \returns the input log
+    public static InputLog startReplay(String filename) throws IOException {
+        InputLog log = new InputLog(true) ;
+        log.openReplay(filename) ;
+        the_one_ = log ;
+        return log ;
+    }
+
+    /// \brief returns the channel with the given name, creating it if necessary
+    /// \param name the name of the channel
+    /// \returns the channel with the given name
+    public Channel getChannel(String name) {
+        Channel ch = channels_.get(name) ;
+        if (ch == null) {
+            ch = new Channel(this, name, -1) ;
+            channels_.put(name, ch) ;
+        }
+        return ch ;
+    }
+
+    /// \brief returns the robot time for the current frame
+    /// \returns the robot time for the current frame
+    public double getTime() {
+        return time_ ;
+    }
+
+    /// \brief returns the loop type for the current frame
+    /// \returns the loop type for the current frame
+    public LoopType getLoopType() {
+        return loop_type_ ;
+    }
+
+    /// \brief returns the number of frames captured or replayed
+    /// \returns the number of frames captured or replayed
+    public int getFrameCount() {
+        return frames_ ;
+    }
+
+    /// \brief returns the number of bytes captured
+    /// \returns the number of bytes captured
+    public long getSize() {
+        return size_ ;
+    }
+
+    /// \brief returns the number of times the writer thread fell behind the robot thread
+    /// \returns the number of times the writer thread fell behind the robot thread
+    public int getOverruns() {
+        return overruns_ ;
+    }
+
+    /// \brief start a new frame in the capture stream.  Called at the start of each robot loop.
+    /// \param time the robot time for the loop
+    /// \param ltype the type of robot loop
+    public void beginFrame(double time, LoopType ltype) {
+        if (replaying_ || full_stop_)
+            return ;
+
+        time_ = time ;
+        loop_type_ = ltype ;
+        frames_++ ;
+
+        if (time - last_flush_ > FlushPeriod) {
+            handoff() ;
+            last_flush_ = time ;
+        }
+
+        ensure(10) ;
+        current_.put(RecordFrame) ;
+        current_.putDouble(time) ;
+        current_.put((byte)ltype.ordinal()) ;
+
+        captureDriverStation() ;
+    }
+
+    /// \brief move to the next frame in the replay stream, applying all of the inputs captured for that frame
+    /// \returns false if there are no more frames in the stream
+    public boolean nextFrame() {
+        if (!replaying_ || !pending_)
+            return false ;
+
+        time_ = pending_time_ ;
+        loop_type_ = pending_loop_type_ ;
+        frames_++ ;
+
+        readFrame() ;
+        return true ;
+    }
+
+    /// \brief stop capturing or replaying inputs.  When capturing, all captured data is written to the file.
+    public void close() {
+        if (!replaying_ && writer_ != null) {
+            ensure(1) ;
+            current_.put(RecordEnd) ;
+            handoff() ;
+
+            try {
+                full_.put(ByteBuffer.allocate(0)) ;
+                writer_.join(5000) ;
+            }
+            catch(InterruptedException ex) {
+            }
+            writer_ = null ;
+        }
+
+        if (the_one_ == this)
+            the_one_ = null ;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //
+    // Capture
+    //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void openCapture(String filename, long maxsize, double time) throws IOException {
+        FileOutputStream out = new FileOutputStream(filename) ;
+        FileChannel channel = out.getChannel() ;
+
+        full_ = new ArrayBlockingQueue<ByteBuffer>(BufferCount * 2) ;
+        free_ = new ArrayBlockingQueue<ByteBuffer>(BufferCount * 2) ;
+        for(int i = 0 ; i < BufferCount ; i++) {
+            free_.add(ByteBuffer.allocate(BufferSize)) ;
+        }
+
+        current_ = free_.poll() ;
+        max_size_ = maxsize ;
+        size_ = 0 ;
+        full_stop_ = false ;
+        overruns_ = 0 ;
+        last_flush_ = time ;
+        time_ = time ;
+
+        ds_ = ByteBuffer.allocate(JoystickCount * 128 + 256) ;
+        last_ds_ = null ;
+
+        current_.putInt(FileMagic) ;
+        current_.putInt(FileVersion) ;
+        current_.putDouble(time) ;
+
+        writer_ = new Thread(() -> writeBuffers(out, channel), "input-capture") ;
+        writer_.setDaemon(true) ;
+        writer_.start() ;
+    }
+
+    //
+    // The body of the writer thread
+    //
+    private void writeBuffers(FileOutputStream out, FileChannel channel) {
+        try {
+            while (true) {
+                ByteBuffer buf = full_.take() ;
+                if (buf.capacity() == 0)
+                    break ;
+
+                while (buf.hasRemaining()) {
+                    channel.write(buf) ;
+                }
+
+                if (buf.capacity() == BufferSize) {
+                    buf.clear() ;
+                    free_.offer(buf) ;
+                }
+            }
+        }
+        catch(InterruptedException | IOException ex) {
+        }
+
+        try {
+            channel.force(true) ;
+            out.close() ;
+        }
+        catch(IOException ex) {
+        }
+    }
+
+    //
+    // Hand the current buffer to the writer thread and get an empty one
+    //
+    private void handoff() {
+        if (current_.position() == 0)
+            return ;
+
+        current_.flip() ;
+        if (!full_.offer(current_)) {
+            //
+            // The writer is far behind, this is the one place we wait on it.  This can only happen if
+            // the file system has stalled for many seconds.
+            //
+            try {
+                full_.put(current_) ;
+            }
+            catch(InterruptedException ex) {
+            }
+        }
+
+        current_ = free_.poll() ;
+        if (current_ == null) {
+            current_ = ByteBuffer.allocate(BufferSize) ;
+            overruns_++ ;
+        }
+    }
+
+    //
+    // Make sure there is room in the current buffer for a record of the given size
+    //
+    private void ensure(int size) {
+        if (current_.remaining() < size) {
+            handoff() ;
+            if (current_.remaining() < size) {
+                //
+                // A single record larger than a buffer, it is written on its own
+                //
+                current_ = ByteBuffer.allocate(size) ;
+            }
+        }
+
+        size_ += size ;
+        if (size_ > max_size_ && !full_stop_) {
+            full_stop_ = true ;
+        }
+    }
+
+    //
+    // Write the definition for a channel the first time a value is written for the channel
+    //
+    private boolean define(Channel ch, byte kind) {
+        if (full_stop_)
+            return false ;
+
+        if (!ch.defined_) {
+            byte[] name = ch.name_.getBytes(StandardCharsets.UTF_8) ;
+            ch.id_ = ids_.size() ;
+            ch.defined_ = true ;
+            ids_.add(ch) ;
+
+            ensure(8 + name.length) ;
+            current_.put(RecordDefine) ;
+            current_.putShort((short)ch.id_) ;
+            current_.put(kind) ;
+            current_.putInt(name.length) ;
+            current_.put(name) ;
+        }
+
+        return true ;
+    }
+
+    private void writeDouble(Channel ch, double value) {
+        if (!define(ch, KindDouble))
+            return ;
+
+        ensure(11) ;
+        current_.put(RecordDouble) ;
+        current_.putShort((short)ch.id_) ;
+        current_.putDouble(value) ;
+    }
+
+    private void writeString(Channel ch, String value) {
+        if (!define(ch, KindString))
+            return ;
+
+        byte[] data = value.getBytes(StandardCharsets.UTF_8) ;
+        ensure(7 + data.length) ;
+        current_.put(RecordString) ;
+        current_.putShort((short)ch.id_) ;
+        current_.putInt(data.length) ;
+        current_.put(data) ;
+    }
+
+    //
+    // Write the driver station state to the stream if it has changed since it was last written
+    //
+    private void captureDriverStation() {
+        ds_.clear() ;
+
+        int flags = 0 ;
+        if (DriverStation.isEnabled())
+            flags |= 1 ;
+        if (DriverStation.isAutonomous())
+            flags |= 2 ;
+        if (DriverStation.isTest())
+            flags |= 4 ;
+        if (DriverStation.isFMSAttached())
+            flags |= 8 ;
+        if (DriverStation.isDSAttached())
+            flags |= 16 ;
+        if (DriverStation.isEStopped())
+            flags |= 32 ;
+
+        ds_.put((byte)flags) ;
+        ds_.put((byte)DriverStation.getAlliance().ordinal()) ;
+        ds_.put((byte)DriverStation.getLocation()) ;
+        ds_.put((byte)DriverStation.getMatchType().ordinal()) ;
+        ds_.putShort((short)DriverStation.getMatchNumber()) ;
+
+        for(int stick = 0 ; stick < JoystickCount ; stick++) {
+            int axes = DriverStation.getStickAxisCount(stick) ;
+            ds_.put((byte)axes) ;
+            for(int i = 0 ; i < axes ; i++) {
+                ds_.putFloat((float)DriverStation.getStickAxis(stick, i)) ;
+            }
+
+            int buttons = DriverStation.getStickButtonCount(stick) ;
+            int mask = 0 ;
+            for(int i = 1 ; i <= buttons && i <= 32 ; i++) {
+                if (DriverStation.getStickButton(stick, i))
+                    mask |= (1 << (i - 1)) ;
+            }
+            ds_.put((byte)buttons) ;
+            ds_.putInt(mask) ;
+
+            int povs = DriverStation.getStickPOVCount(stick) ;
+            ds_.put((byte)povs) ;
+            for(int i = 0 ; i < povs ; i++) {
+                ds_.putShort((short)DriverStation.getStickPOV(stick, i)) ;
+            }
+        }
+
+        byte[] msg = DriverStation.getGameSpecificMessage().getBytes(StandardCharsets.UTF_8) ;
+        int msglen = Math.min(msg.length, ds_.remaining() - 2) ;
+        ds_.putShort((short)msglen) ;
+        ds_.put(msg, 0, msglen) ;
+
+        int len = ds_.position() ;
+        if (last_ds_ != null && last_ds_.length == len && Arrays.equals(last_ds_, 0, len, ds_.array(), 0, len))
+            return ;
+
+        last_ds_ = Arrays.copyOf(ds_.array(), len) ;
+
+        ensure(9 + len) ;
+        current_.put(RecordDriverStation) ;
+        current_.putDouble(DriverStation.getMatchTime()) ;
+        current_.put(last_ds_) ;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+    //
+    // Replay
+    //
+    /////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void openReplay(String filename) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r") ; FileChannel channel = file.getChannel()) {
+            input_ = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) ;
+        }
+
+        if (input_.remaining() < 16 || input_.getInt() != FileMagic) {
+            throw new IOException("file '" + filename + "' is not an input capture") ;
+        }
+
+        int version = input_.getInt() ;
+        if (version != FileVersion) {
+            throw new IOException("file '" + filename + "' has unsupported version " + version) ;
+        }
+
+        time_ = input_.getDouble() ;
+        pending_ = false ;
+
+        //
+        // Apply the values read while the robot was initializing
+        //
+        readFrame() ;
+    }
+
+    //
+    // Apply records until the start of the next frame or the end of the stream
+    //
+    private void readFrame() {
+        pending_ = false ;
+
+        try {
+            readRecords() ;
+        }
+        catch(BufferUnderflowException | IndexOutOfBoundsException ex) {
+            //
+            // The stream was cut off in the middle of a record when the robot lost power
+            //
+            pending_ = false ;
+        }
+    }
+
+    private void readRecords() {
+        while (input_.hasRemaining()) {
+            byte type = input_.get() ;
+
+            if (type == RecordFrame) {
+                pending_time_ = input_.getDouble() ;
+                int lt = input_.get() ;
+                pending_loop_type_ = (lt >= 0 && lt < LoopType.values().length) ? LoopType.values()[lt] : LoopType.None ;
+                pending_ = true ;
+                break ;
+            }
+            else if (type == RecordDefine) {
+                int id = input_.getShort() ;
+                input_.get() ;
+                String name = readString() ;
+                Channel ch = getChannel(name) ;
+                ch.id_ = id ;
+                while (ids_.size() <= id)
+                    ids_.add(null) ;
+                ids_.set(id, ch) ;
+            }
+            else if (type == RecordDouble) {
+                Channel ch = ids_.get(input_.getShort()) ;
+                ch.number_ = input_.getDouble() ;
+                ch.valid_ = true ;
+            }
+            else if (type == RecordString) {
+                Channel ch = ids_.get(input_.getShort()) ;
+                ch.text_ = readString() ;
+                ch.valid_ = true ;
+            }
+            else if (type == RecordDriverStation) {
+                replayDriverStation() ;
+            }
+            else {
+                //
+                // The end record
+                //
+                break ;
+            }
+        }
+    }
+
+    private String readString() {
+        int len = input_.getInt() ;
+        byte[] data = new byte[len] ;
+        input_.get(data) ;
+        return new String(data, StandardCharsets.UTF_8) ;
+    }
+
+    //
+    // Push a driver station record into the simulated driver station
+    //
+    private void replayDriverStation() {
+        DriverStationSim.setMatchTime(input_.getDouble()) ;
+
+        int flags = input_.get() ;
+        DriverStationSim.setEnabled((flags & 1) != 0) ;
+        DriverStationSim.setAutonomous((flags & 2) != 0) ;
+        DriverStationSim.setTest((flags & 4) != 0) ;
+        DriverStationSim.setFmsAttached((flags & 8) != 0) ;
+        DriverStationSim.setDsAttached((flags & 16) != 0) ;
+        DriverStationSim.setEStop((flags & 32) != 0) ;
+
+        int alliance = input_.get() ;
+        int location = input_.get() ;
+        DriverStationSim.setAllianceStationId(toStation(alliance, location)) ;
+
+        int mtype = input_.get() ;
+        if (mtype >= 0 && mtype < MatchType.values().length)
+            DriverStationSim.setMatchType(MatchType.values()[mtype]) ;
+        DriverStationSim.setMatchNumber(input_.getShort()) ;
+
+        for(int stick = 0 ; stick < JoystickCount ; stick++) {
+            int axes = input_.get() ;
+            DriverStationSim.setJoystickAxisCount(stick, axes) ;
+            for(int i = 0 ; i < axes ; i++) {
+                DriverStationSim.setJoystickAxis(stick, i, input_.getFloat()) ;
+            }
+
+            int buttons = input_.get() ;
+            DriverStationSim.setJoystickButtonCount(stick, buttons) ;
+            DriverStationSim.setJoystickButtons(stick, input_.getInt()) ;
+
+            int povs = input_.get() ;
+            DriverStationSim.setJoystickPOVCount(stick, povs) ;
+            for(int i = 0 ; i < povs ; i++) {
+                DriverStationSim.setJoystickPOV(stick, i, input_.getShort()) ;
+            }
+        }
+
+        int len = input_.getShort() ;
+        byte[] msg = new byte[len] ;
+        input_.get(msg) ;
+        DriverStationSim.setGameSpecificMessage(new String(msg, StandardCharsets.UTF_8)) ;
+
+        DriverStationSim.notifyNewData() ;
+    }
+
+    private static AllianceStationID toStation(int alliance, int location) {
+        if (alliance == Alliance.Red.ordinal()) {
+            if (location == 2)
+                return AllianceStationID.Red2 ;
+            else if (location == 3)
+                return AllianceStationID.Red3 ;
+            return AllianceStationID.Red1 ;
+        }
+
+        if (location == 2)
+            return AllianceStationID.Blue2 ;
+        else if (location == 3)
+            return AllianceStationID.Blue3 ;
+        return AllianceStationID.Blue1 ;
+    }
+}
@@ -0,0 +1,373 @@
+package org.xero1425.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xero1425.misc.MessageLogger;
+import org.xero1425.misc.MessageType;
+import org.xero1425.websrv.StatusSnapshot;
+
+/// \file
+
+/// \brief This class measures the time from an operator input changing to the robot code commanding the
+/// actuators in response.
+///
+/// When an input changes, the code reading the input calls begin() with the type of the input.  This returns a
+/// tag, which is a sequence number for the input event.  The tag is handed along with the request through the
+/// actions and subsystems that act on the input.  When the motors are finally commanded, complete() is called with
+/// the tag, and the number of robot loops and the time in milliseconds since the start of the robot loop where the
+/// input was read are added to a histogram for the type of input.  The driver station data is read at the start of
+/// the robot loop, so the time includes the whole path through the robot code.  If everything responds in the loop
+/// the input is read, every event completes in zero loops.
+///
+/// Where the path to the actuators is not a single call chain, the tag can be made the current tag with enter().
+/// Any action assigned to a subsystem until exit() is called completes the current tag with actuated().
+///
+/// An event that is replaced by a newer event before it completes, or is never completed, is counted as dropped.
+///
+/// There is only a single latency tracer for the robot.  When it is not enabled, every method is a quick no-op.
+public class LatencyTracer {
+    /// \brief the tag for an input that is not being traced
+    public static final int NoTag = 0 ;
+
+    // The number of events that can be in flight at once
+    private static final int Capacity = 64 ;
+
+    // The number of bins in the loops histogram, the last bin holds every count at or above it
+    private static final int LoopBins = 8 ;
+
+    // The width of a bin in the time histogram in milliseconds
+    private static final double MsBinWidth = 0.5 ;
+
+    // The number of bins in the time histogram, the last bin holds every time at or above it
+    private static final int MsBins = 128 ;
+
+    // The one latency tracer for the robot
+    private static LatencyTracer the_one_ = null ;
+
+    /// \brief the latency histogram for one type of input
+    public static class Histogram {
+        private final String type_ ;
+        private final String count_key_ ;
+        private final String dropped_key_ ;
+        private final String p95_key_ ;
+        private final String max_loops_key_ ;
+        private final int [] loops_ ;
+        private final int [] ms_ ;
+        private int count_ ;
+        private int dropped_ ;
+        private int max_loops_ ;
+        private double total_ms_ ;
+        private double max_ms_ ;
+
+        private Histogram(String type) {
+            type_ = type ;
+            count_key_ = type + "-count" ;
+            dropped_key_ = type + "-dropped" ;
+            p95_key_ = type + "-p95-ms" ;
+            max_loops_key_ = type + "-max-loops" ;
+            loops_ = new int[LoopBins] ;
+            ms_ = new int[MsBins] ;
+        }
+
+        /// \brief returns the type of input for this histogram
+        /// \returns the type of input for this histogram
+        public String getType() {
+            return type_ ;
+        }
+
+        /// \brief returns the number of events completed
+        /// \returns the number of events completed
+        public int getCount() {
+            return count_ ;
+        }
+
+        /// \brief returns the number of events that never completed
+        /// \returns the number of events that never completed
+        public int getDropped() {
+            return dropped_ ;
+        }
+
+        /// \brief returns the number of events that completed the given number of robot loops after the input
+        /// was read.  The last bin holds every event at or above the number of loops for the bin.
+        /// \param loops the number of robot loops
+        /// \returns the number of events
+        public int getLoopCount(int loops) {
+            return loops_[Math.min(loops, LoopBins - 1)] ;
+        }
+
+        /// \brief returns the largest number of robot loops between an input and the actuators
+        /// \returns the largest number of robot loops between an input and the actuators
+        public int getMaxLoops() {
+            return max_loops_ ;
+        }
+
+        /// \brief returns the average latency in milliseconds
+        /// \returns the average latency in milliseconds
+        public double getAverage() {
+            return count_ == 0 ? 0.0 : total_ms_ / count_ ;
+        }
+
+        /// \brief returns the largest latency in milliseconds
+        /// \returns the largest latency in milliseconds
+        public double getMax() {
+            return max_ms_ ;
+        }
+
+        /// \brief returns the latency below which the given fraction of events completed.  The value is the
+        /// upper edge of the histogram bin, so it is accurate to the bin width.
+        /// \param fraction the fraction of events, between 0 and 1
+        /// \returns the latency in milliseconds
+        public double getPercentile(double fraction) {
+            if (count_ == 0)
+                return 0.0 ;
+
+            int want = (int)Math.ceil(fraction * count_) ;
+            int seen = 0 ;
+            for(int i = 0 ; i < MsBins - 1 ; i++) {
+                seen += ms_[i] ;
+                if (seen >= want)
+                    return (i + 1) * MsBinWidth ;
+            }
+
+            return max_ms_ ;
+        }
+
+        private void add(int loops, double ms) {
+            loops_[Math.min(loops, LoopBins - 1)]++ ;
+            ms_[Math.min((int)(ms / MsBinWidth), MsBins - 1)]++ ;
+            count_++ ;
+            total_ms_ += ms ;
+            max_ms_ = Math.max(max_ms_, ms) ;
+            max_loops_ = Math.max(max_loops_, loops) ;
+        }
+    }
+
+    // For each slot, the sequence number in the slot, or NoTag if the slot is free
+    private final int [] seq_ ;
+
+    // For each slot, the histogram for the type of input
+    private final Histogram [] hist_ ;
+
+    // For each slot, the robot loop and the start time of the robot loop where the input was read
+    private final int [] loop_ ;
+    private final long [] start_ ;
+
+    // The histograms for each type of input, by name and in the order created
+    private final Map<String, Histogram> types_ ;
+    private final List<Histogram> order_ ;
+
+    // The last sequence number issued
+    private int next_seq_ ;
+
+    // The current robot loop and the start time of the loop in nanoseconds
+    private int loop_count_ ;
+    private long loop_start_ ;
+
+    // The current tag, completed by actuated()
+    private int current_ ;
+
+    // The message logger and the logger id for the tracer
+    private MessageLogger logger_ ;
+    private int logger_id_ ;
+
+    private LatencyTracer(MessageLogger logger) {
+        seq_ = new int[Capacity] ;
+        hist_ = new Histogram[Capacity] ;
+        loop_ = new int[Capacity] ;
+        start_ = new long[Capacity] ;
+
+        types_ = new HashMap<String, Histogram>() ;
+        order_ = new ArrayList<Histogram>() ;
+
+        next_seq_ = NoTag ;
+        current_ = NoTag ;
+        loop_start_ = System.nanoTime() ;
+
+        logger_ = logger ;
+        logger_id_ = logger.registerSubsystem("latency") ;
+    }
+
+    /// \brief returns the latency tracer for the robot
+    /// \returns the latency tracer for the robot, or null if latency tracing is not enabled
+    public static LatencyTracer getInstance() {
+        return the_one_ ;
+    }
+
+    /// \brief enable latency tracing for the robot
+    /// \param logger the message logger for the robot
+    /// \returns the latency tracer
+    public static LatencyTracer start(MessageLogger logger) {
+        the_one_ = new LatencyTracer(logger) ;
+        return the_one_ ;
+    }
+
+    /// \brief mark the start of a robot loop.  This is called by the robot before any subsystem reads its inputs.
+    /// \param loop the robot loop count
+    public void beginLoop(int loop) {
+        loop_count_ = loop ;
+        loop_start_ = System.nanoTime() ;
+    }
+
+    /// \brief start tracing an input that has changed
+    /// \param type the type of input
+    /// \returns the tag for the input event, or NoTag if latency tracing is not enabled
+    public static int begin(String type) {
+        return the_one_ == null ? NoTag : the_one_.beginEvent(type) ;
+    }
+
+    /// \brief log the progress of an input event through the robot code.  This is only logged when the
+    /// messages for latency tracing are enabled.
+    /// \param tag the tag for the input event
+    /// \param stage a description of where the input event is
+    public static void mark(int tag, String stage) {
+        if (the_one_ != null && tag != NoTag)
+            the_one_.markEvent(tag, stage) ;
+    }
+
+    /// \brief complete an input event when the actuators are commanded in response to the input
+    /// \param tag the tag for the input event
+    public static void complete(int tag) {
+        if (the_one_ != null && tag != NoTag)
+            the_one_.completeEvent(tag) ;
+    }
+
+    /// \brief drop an input event that will not reach the actuators, such as an event replaced by a newer event
+    /// \param tag the tag for the input event
+    public static void drop(int tag) {
+        if (the_one_ != null && tag != NoTag)
+            the_one_.dropEvent(tag) ;
+    }
+
+    /// \brief forget an input event that was not acted on by the robot.  This is not counted as dropped.
+    /// \param tag the tag for the input event
+    public static void cancel(int tag) {
+        if (the_one_ != null && tag != NoTag)
+            the_one_.freeEvent(tag) ;
+    }
+
+    /// \brief make the given tag the current tag, completed by actuated()
+    /// \param tag the tag for the input event
+    public static void enter(int tag) {
+        if (the_one_ != null)
+            the_one_.current_ = tag ;
+    }
+
+    /// \brief clear the current tag
+    public static void exit() {
+        if (the_one_ != null)
+            the_one_.current_ = NoTag ;
+    }
+
+    /// \brief complete the current tag, if any.  This is called when an action is assigned to a subsystem.
+    public static void actuated() {
+        if (the_one_ != null && the_one_.current_ != NoTag)
+            the_one_.completeEvent(the_one_.current_) ;
+    }
+
+    /// \brief returns the histograms for each type of input, in the order the types were first seen
+    /// \returns the histograms for each type of input
+    public List<Histogram> getHistograms() {
+        return order_ ;
+    }
+
+    /// \brief store the latency for each type of input in a status snapshot
+    /// \param status the snapshot to store values in
+    public void getStatus(StatusSnapshot status) {
+        for(Histogram h : order_) {
+            status.put(h.count_key_, h.count_) ;
+            status.put(h.dropped_key_, h.dropped_) ;
+            status.put(h.p95_key_, h.getPercentile(0.95)) ;
+            status.put(h.max_loops_key_, h.max_loops_) ;
+        }
+    }
+
+    /// \brief log a summary of the latency for each type of input
+    public void logSummary() {
+        for(Histogram h : order_) {
+            if (h.count_ == 0 && h.dropped_ == 0)
+                continue ;
+
+            logger_.startMessage(MessageType.Info) ;
+            logger_.add("latency ").addQuoted(h.type_) ;
+            logger_.add("count", h.count_) ;
+            logger_.add("dropped", h.dropped_) ;
+            logger_.add("avg", h.getAverage()) ;
+            logger_.add("p50", h.getPercentile(0.5)) ;
+            logger_.add("p95", h.getPercentile(0.95)) ;
+            logger_.add("max", h.max_ms_) ;
+            logger_.add(" loops") ;
+            for(int i = 0 ; i < LoopBins ; i++) {
+                logger_.add(" ").add(h.loops_[i]) ;
+            }
+            logger_.endMessage();
+        }
+    }
+
+    private int beginEvent(String type) {
+        Histogram h = types_.get(type) ;
+        if (h == null) {
+            h = new Histogram(type) ;
+            types_.put(type, h) ;
+            order_.add(h) ;
+        }
+
+        next_seq_++ ;
+        if (next_seq_ <= NoTag)
+            next_seq_ = NoTag + 1 ;
+
+        int slot = next_seq_ % Capacity ;
+        if (seq_[slot] != NoTag)
+            hist_[slot].dropped_++ ;
+
+        seq_[slot] = next_seq_ ;
+        hist_[slot] = h ;
+        loop_[slot] = loop_count_ ;
+        start_[slot] = loop_start_ ;
+
+        return next_seq_ ;
+    }
+
+    private void markEvent(int tag, String stage) {
+        int slot = tag % Capacity ;
+        if (seq_[slot] != tag)
+            return ;
+
+        logger_.startMessage(MessageType.Debug, logger_id_) ;
+        logger_.add("latency ").addQuoted(hist_[slot].type_) ;
+        logger_.add("seq", tag) ;
+        logger_.add("stage ").addQuoted(stage) ;
+        logger_.add("loops", loop_count_ - loop_[slot]) ;
+        logger_.add("ms", (System.nanoTime() - start_[slot]) / 1.0e6) ;
+        logger_.endMessage() ;
+    }
+
+    private void completeEvent(int tag) {
+        int slot = tag % Capacity ;
+        if (seq_[slot] != tag)
+            return ;
+
+        int loops = loop_count_ - loop_[slot] ;
+        double ms = (System.nanoTime() - start_[slot]) / 1.0e6 ;
+        hist_[slot].add(loops, ms) ;
+        markEvent(tag, "complete") ;
+        seq_[slot] = NoTag ;
+    }
+
+    private void dropEvent(int tag) {
+        int slot = tag % Capacity ;
+        if (seq_[slot] != tag)
+            return ;
+
+        hist_[slot].dropped_++ ;
+        seq_[slot] = NoTag ;
+    }
+
+    private void freeEvent(int tag) {
+        int slot = tag % Capacity ;
+        if (seq_[slot] == tag)
+            seq_[slot] = NoTag ;
+    }
+}
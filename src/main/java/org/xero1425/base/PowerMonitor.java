@@ -0,0 +1,392 @@
+package org.xero1425.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+import org.xero1425.misc.ISettingsSupplier;
+import org.xero1425.misc.MessageLogger;
+import org.xero1425.misc.MessageType;
+import org.xero1425.websrv.StatusSnapshot;
+
+import edu.wpi.first.wpilibj.PowerDistribution;
+
+/// \file
+
+/// \brief This class samples the power distribution hardware, tracks the current drawn by each subsystem, and
+/// sheds load from low priority mechanisms before the battery browns out.
+///
+/// Reading the current for a channel of the power distribution hardware is a call into the HAL.  Reading every
+/// channel from the robot loop each time a subsystem asks for its current is slow, so a background thread reads
+/// the voltage and every channel once per sampling period into a shared buffer.  Once per robot loop, update()
+/// copies the latest samples so every reader in the loop sees the same values, and computes the current drawn by
+/// each load.
+///
+/// A brownout is predicted from the trend of the battery voltage.  The voltage is filtered, and the rate it is
+/// falling is used to predict the voltage a short time ahead.  The sag while a mechanism accelerates is short,
+/// so load is only shed once the predicted voltage has stayed below the shed voltage for a minimum time.  The
+/// power scale for the loads that may be shed is then lowered each robot loop, down to a minimum.  When the
+/// voltage recovers above the restore voltage, the scale rises slowly back to one.  The two voltages keep the
+/// scale from hunting around a single threshold.  Each load is given the scale only when it has changed enough
+/// to matter, since a load sends its power again with each new scale.
+///
+/// A load is registered with the name of the subsystem and its power distribution channels.  The load may be
+/// shed if the name is set to true in the shed settings.
+public class PowerMonitor {
+    // The amount the power scale is lowered each robot loop when a brownout is predicted
+    private static final double ShedStep = 0.1 ;
+
+    // The time in seconds the predicted voltage must stay below the shed voltage before load is shed
+    private static final double ShedDelay = 0.25 ;
+
+    // The amount the power scale rises per second after the voltage recovers
+    private static final double RestoreRate = 0.5 ;
+
+    // The change in the power scale before the loads are given the new scale
+    private static final double ApplyDeadband = 0.05 ;
+
+    // The weight of a new value in the filtered voltage and the filtered voltage slope
+    private static final double VoltageAlpha = 0.3 ;
+    private static final double SlopeAlpha = 0.3 ;
+
+    // The settings key that holds the names of the loads that may be shed
+    private static final String ShedPropertyName = "system:power:shed" ;
+
+    private static class Load {
+        public final String name_ ;
+        public final int [] channels_ ;
+        public final DoubleConsumer scaler_ ;
+        public final boolean shed_ ;
+        public double current_ ;
+
+        public Load(String name, int [] channels, DoubleConsumer scaler, boolean shed) {
+            name_ = name ;
+            channels_ = channels ;
+            scaler_ = scaler ;
+            shed_ = shed ;
+            current_ = 0.0 ;
+        }
+    }
+
+    // The message logger
+    private final MessageLogger logger_ ;
+
+    // The settings, used to find the loads that may be shed
+    private final ISettingsSupplier settings_ ;
+
+    // The power distribution hardware
+    private final PowerDistribution pdp_ ;
+
+    // The time between samples in milliseconds
+    private final long period_ ;
+
+    // The voltages at which load is shed and restored, and the time ahead the voltage is predicted in seconds
+    private final double shed_voltage_ ;
+    private final double restore_voltage_ ;
+    private final double horizon_ ;
+
+    // The lowest power scale given to the loads
+    private final double min_scale_ ;
+
+    // The latest samples from the sampling thread, guarded by lock_
+    private final Object lock_ ;
+    private final double [] samples_ ;
+    private double sample_voltage_ ;
+    private long sample_count_ ;
+
+    // The samples used for this robot loop
+    private final double [] currents_ ;
+    private double voltage_ ;
+    private double total_ ;
+
+    // The number of samples read by the sampling thread when the last robot loop started
+    private long last_count_ ;
+
+    // The filtered voltage and the filtered rate of change of the voltage in volts per second
+    private double filtered_ ;
+    private double slope_ ;
+    private double predicted_ ;
+    private double last_time_ ;
+    private boolean valid_ ;
+
+    // The time the predicted voltage fell below the shed voltage, NaN if it is above the shed voltage
+    private double below_since_ ;
+
+    // The time of the last robot loop in seconds
+    private double last_update_ ;
+
+    // The power scale, and the scale last given to the loads
+    private double scale_ ;
+    private double applied_ ;
+
+    // The number of times load was shed
+    private int shed_count_ ;
+
+    // The registered loads
+    private final List<Load> loads_ ;
+
+    // The sampling thread
+    private final Thread thread_ ;
+    private volatile boolean running_ ;
+
+    /// \brief create the power monitor
+    /// \param logger the message logger
+    /// \param settings the settings supplier
+    /// \param pdp the power distribution hardware
+    /// \param period the time between samples in seconds
+    /// \param shedv the predicted voltage below which load is shed
+    /// \param restorev the voltage above which load is restored
+    /// \param horizon the time ahead the voltage is predicted in seconds
+    /// \param minscale the lowest power scale given to the loads
+    public PowerMonitor(MessageLogger logger, ISettingsSupplier settings, PowerDistribution pdp, double period,
+                        double shedv, double restorev, double horizon, double minscale) {
+        logger_ = logger ;
+        settings_ = settings ;
+        pdp_ = pdp ;
+        period_ = Math.max(1, (long)(period * 1000.0)) ;
+        shed_voltage_ = shedv ;
+        restore_voltage_ = restorev ;
+        horizon_ = horizon ;
+        min_scale_ = minscale ;
+
+        int count = pdp.getNumChannels() ;
+        lock_ = new Object() ;
+        samples_ = new double[count] ;
+        currents_ = new double[count] ;
+        sample_count_ = 0 ;
+        last_count_ = 0 ;
+
+        valid_ = false ;
+        below_since_ = Double.NaN ;
+        last_update_ = Double.NaN ;
+        scale_ = 1.0 ;
+        applied_ = 1.0 ;
+        shed_count_ = 0 ;
+
+        loads_ = new ArrayList<Load>() ;
+
+        running_ = true ;
+        thread_ = new Thread(() -> sampleLoop(), "power-monitor") ;
+        thread_.setDaemon(true) ;
+        thread_.start() ;
+    }
+
+    /// \brief stop the sampling thread
+    public void stop() {
+        running_ = false ;
+        thread_.interrupt() ;
+    }
+
+    /// \brief register a load whose current is tracked, and which may be shed
+    /// \param name the name of the load, usually the name of the subsystem
+    /// \param channels the power distribution channels of the load, channels less than zero are ignored
+    /// \param scaler called with the new power scale when the load is shed or restored
+    public void addLoad(String name, int [] channels, DoubleConsumer scaler) {
+        int valid = 0 ;
+        for(int ch : channels) {
+            if (ch >= 0 && ch < currents_.length)
+                valid++ ;
+        }
+
+        int [] chans = new int[valid] ;
+        valid = 0 ;
+        for(int ch : channels) {
+            if (ch >= 0 && ch < currents_.length)
+                chans[valid++] = ch ;
+        }
+
+        boolean shed = false ;
+        String key = ShedPropertyName + ":" + name ;
+        try {
+            if (settings_.isDefined(key))
+                shed = settings_.get(key).getBoolean() ;
+        }
+        catch(Exception ex) {
+            logger_.startMessage(MessageType.Warning).add("power shed setting ").addQuoted(key).add(" is not a boolean").endMessage();
+        }
+
+        loads_.add(new Load(name, chans, scaler, shed)) ;
+    }
+
+    /// \brief returns the current for a channel from the samples for this robot loop
+    /// \param channel the power distribution channel
+    /// \returns the current for the channel in amps
+    public double getCurrent(int channel) {
+        if (channel < 0 || channel >= currents_.length)
+            return Double.POSITIVE_INFINITY ;
+
+        return currents_[channel] ;
+    }
+
+    /// \brief returns the current drawn by a registered load
+    /// \param name the name of the load
+    /// \returns the current drawn by the load in amps, or zero if there is no load with the name
+    public double getLoadCurrent(String name) {
+        for(Load load : loads_) {
+            if (load.name_.equals(name))
+                return load.current_ ;
+        }
+
+        return 0.0 ;
+    }
+
+    /// \brief returns the voltage from the samples for this robot loop
+    /// \returns the voltage from the samples for this robot loop
+    public double getVoltage() {
+        return voltage_ ;
+    }
+
+    /// \brief returns the total current from the samples for this robot loop
+    /// \returns the total current in amps
+    public double getTotalCurrent() {
+        return total_ ;
+    }
+
+    /// \brief returns the voltage predicted at the end of the prediction horizon
+    /// \returns the predicted voltage
+    public double getPredictedVoltage() {
+        return predicted_ ;
+    }
+
+    /// \brief returns the power scale for the loads that may be shed
+    /// \returns the power scale, 1.0 when no load is shed
+    public double getPowerScale() {
+        return scale_ ;
+    }
+
+    /// \brief take the latest samples, predict a brownout, and shed or restore load.  This is called by the
+    /// robot at the start of each robot loop.
+    /// \param now the current robot time in seconds
+    public void update(double now) {
+        long count ;
+        double elapsed = Double.isNaN(last_update_) ? 0.0 : now - last_update_ ;
+        last_update_ = now ;
+
+        synchronized(lock_) {
+            count = sample_count_ ;
+            voltage_ = sample_voltage_ ;
+            System.arraycopy(samples_, 0, currents_, 0, currents_.length) ;
+        }
+
+        if (count == 0)
+            return ;
+
+        total_ = 0.0 ;
+        for(int i = 0 ; i < currents_.length ; i++)
+            total_ += currents_[i] ;
+
+        for(Load load : loads_) {
+            double current = 0.0 ;
+            for(int ch : load.channels_)
+                current += currents_[ch] ;
+            load.current_ = current ;
+        }
+
+        //
+        // Only a new sample moves the filters, so a slow sampling thread does not look like a flat voltage
+        //
+        if (count != last_count_) {
+            last_count_ = count ;
+
+            if (!valid_) {
+                filtered_ = voltage_ ;
+                slope_ = 0.0 ;
+                valid_ = true ;
+            }
+            else {
+                double dt = now - last_time_ ;
+                double prev = filtered_ ;
+                filtered_ += VoltageAlpha * (voltage_ - filtered_) ;
+                if (dt > 0.0)
+                    slope_ += SlopeAlpha * ((filtered_ - prev) / dt - slope_) ;
+            }
+
+            last_time_ = now ;
+        }
+
+        //
+        // Only a falling voltage is projected ahead, a recovering voltage is taken as it is
+        //
+        predicted_ = filtered_ + Math.min(0.0, slope_) * horizon_ ;
+
+        if (predicted_ >= shed_voltage_)
+            below_since_ = Double.NaN ;
+        else if (Double.isNaN(below_since_))
+            below_since_ = now ;
+
+        double scale = scale_ ;
+        if (!Double.isNaN(below_since_) && now - below_since_ >= ShedDelay) {
+            if (scale_ == 1.0) {
+                shed_count_++ ;
+                logger_.startMessage(MessageType.Warning) ;
+                logger_.add("power: brownout predicted, shedding load") ;
+                logger_.add("voltage", filtered_) ;
+                logger_.add("predicted", predicted_) ;
+                logger_.add("current", total_) ;
+                logger_.endMessage() ;
+            }
+            scale = Math.max(min_scale_, scale_ - ShedStep) ;
+        }
+        else if (filtered_ > restore_voltage_ && scale_ < 1.0) {
+            scale = Math.min(1.0, scale_ + RestoreRate * elapsed) ;
+            if (scale == 1.0) {
+                logger_.startMessage(MessageType.Info) ;
+                logger_.add("power: voltage recovered, load restored") ;
+                logger_.add("voltage", filtered_) ;
+                logger_.endMessage() ;
+            }
+        }
+        scale_ = scale ;
+
+        if (Math.abs(scale_ - applied_) >= ApplyDeadband || (scale_ != applied_ && (scale_ == 1.0 || scale_ == min_scale_))) {
+            applied_ = scale_ ;
+            for(Load load : loads_) {
+                if (load.shed_)
+                    load.scaler_.accept(applied_) ;
+            }
+        }
+    }
+
+    /// \brief add the power status to a status snapshot
+    /// \param status the status snapshot
+    public void getStatus(StatusSnapshot status) {
+        status.put("voltage", voltage_) ;
+        status.put("predicted", predicted_) ;
+        status.put("current", total_) ;
+        status.put("scale", scale_) ;
+        status.put("shed-count", shed_count_) ;
+        for(Load load : loads_) {
+            status.put(load.name_, load.current_) ;
+        }
+    }
+
+    //
+    // The sampling thread, which reads the voltage and every channel once per period
+    //
+    private void sampleLoop() {
+        double [] local = new double[samples_.length] ;
+
+        while (running_) {
+            try {
+                double voltage = pdp_.getVoltage() ;
+                for(int i = 0 ; i < local.length ; i++)
+                    local[i] = pdp_.getCurrent(i) ;
+
+                synchronized(lock_) {
+                    sample_voltage_ = voltage ;
+                    System.arraycopy(local, 0, samples_, 0, local.length) ;
+                    sample_count_++ ;
+                }
+
+                Thread.sleep(period_) ;
+            }
+            catch(InterruptedException ex) {
+                break ;
+            }
+            catch(Exception ex) {
+                logger_.startMessage(MessageType.Error).add("power monitor sampling failed - ").add(ex.getMessage()).endMessage();
+                running_ = false ;
+            }
+        }
+    }
+}
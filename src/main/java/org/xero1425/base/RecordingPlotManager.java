@@ -0,0 +1,117 @@
+package org.xero1425.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xero1425.misc.PlotRecorder;
+
+/// \file
+
+/// \brief This class sends every plot to a PlotRecorder on the robot as well as to a network tables plot manager.
+/// Plots sent to the network tables plot manager are still subject to the plotting settings and are turned off when
+/// the FMS is connected.  Plots sent to the recorder are always recorded so the data is available after a match.
+public class RecordingPlotManager extends PlotManagerBase {
+
+    // The plot manager that sends plots over network tables
+    private PlotManagerBase live_ ;
+
+    // The recorder that stores plots on the robot
+    private PlotRecorder recorder_ ;
+
+    // For each plot id, the id used with the network tables plot manager
+    private List<Integer> live_ids_ ;
+
+    // For each plot id, the id used with the recorder
+    private List<Integer> record_ids_ ;
+
+    // The plot id for each plot name
+    private Map<String, Integer> names_ ;
+
+    /// \brief create a new recording plot manager
+    /// \param robot the robot
+    /// \param live the plot manager that sends plots over network tables
+    /// \param recorder the recorder that stores plots on the robot
+    public RecordingPlotManager(XeroRobot robot, PlotManagerBase live, PlotRecorder recorder) {
+        super(robot) ;
+
+        live_ = live ;
+        recorder_ = recorder ;
+        live_ids_ = new ArrayList<Integer>() ;
+        record_ids_ = new ArrayList<Integer>() ;
+        names_ = new HashMap<String, Integer>() ;
+    }
+
+    /// \brief returns the recorder storing plots on the robot
+    /// \returns the recorder storing plots on the robot
+    public PlotRecorder getRecorder() {
+        return recorder_ ;
+    }
+
+    @Override
+    public void enable(boolean value) {
+        super.enable(value) ;
+        live_.enable(value) ;
+    }
+
+    @Override
+    public void enable(String name) {
+        super.enable(name) ;
+        live_.enable(name) ;
+    }
+
+    public int initPlot(String name) {
+        Integer id = names_.get(name) ;
+        if (id != null) {
+            //
+            // The network tables plot manager may have been enabled since this plot was
+            // first seen, so give it another chance to create the plot
+            //
+            if (live_ids_.get(id) == -1)
+                live_ids_.set(id, live_.initPlot(name)) ;
+
+            return id ;
+        }
+
+        id = live_ids_.size() ;
+        live_ids_.add(live_.initPlot(name)) ;
+        record_ids_.add(recorder_.definePlot(name)) ;
+        names_.put(name, id) ;
+
+        return id ;
+    }
+
+    public void startPlot(int id, String[] cols) {
+        if (id < 0 || id >= live_ids_.size())
+            return ;
+
+        recorder_.start(record_ids_.get(id), cols) ;
+
+        int live = live_ids_.get(id) ;
+        if (live != -1)
+            live_.startPlot(live, cols) ;
+    }
+
+    public void addPlotData(int id, Double[] data) {
+        if (id < 0 || id >= live_ids_.size())
+            return ;
+
+        recorder_.add(record_ids_.get(id), data) ;
+
+        int live = live_ids_.get(id) ;
+        if (live != -1)
+            live_.addPlotData(live, data) ;
+    }
+
+    public void endPlot(int id) {
+        if (id < 0 || id >= live_ids_.size())
+            return ;
+
+        recorder_.end(record_ids_.get(id)) ;
+
+        int live = live_ids_.get(id) ;
+        if (live != -1)
+            live_.endPlot(live) ;
+    }
+}
@@ -0,0 +1,127 @@
+package org.xero1425.base;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xero1425.misc.JsonSettingsParser;
+import org.xero1425.misc.MessageLogger;
+import org.xero1425.misc.MessageType;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTableValue;
+
+/// \file
+
+/// \brief This class applies changes to the settings while the robot is running, so values can be tuned
+/// without restarting the robot code.
+///
+/// Changes come from two places.  The settings file is checked for a new modification time, and when it
+/// changes it is read again.  A NetworkTables table can also hold settings, with each entry named by the full
+/// settings name, such as subsystems:arm:pids:kp.  When the value of an entry changes, the setting is changed to
+/// match.  Either way, the settings parser compares the old and new values and calls the listeners for the
+/// settings that changed.
+///
+/// The robot calls poll() at the start of the robot loop, before any subsystem runs, so the listeners apply
+/// changes at a point where nothing is using the settings.  The file and the table are only checked once per
+/// polling period.
+public class SettingsReloader {
+    /// \brief the name of the NetworkTables table that holds settings changes
+    public static final String TableName = "XeroSettings" ;
+
+    // The settings to change
+    private final JsonSettingsParser settings_ ;
+
+    // The settings file, and the modification time when it was last read
+    private final File file_ ;
+    private long modified_ ;
+
+    // The table holding settings changes, or null if changes from NetworkTables are not applied
+    private final NetworkTable table_ ;
+
+    // The last value applied from each table entry
+    private final Map<String, Object> applied_ ;
+
+    // The time between checks for changes, and the time of the last check, in seconds
+    private final double period_ ;
+    private double last_ ;
+
+    // The message logger
+    private final MessageLogger logger_ ;
+
+    /// \brief create the settings reloader
+    /// \param logger the message logger
+    /// \param settings the settings to change
+    /// \param period the time between checks for changes in seconds
+    /// \param nt if true, settings changes are taken from NetworkTables
+    public SettingsReloader(MessageLogger logger, JsonSettingsParser settings, double period, boolean nt) {
+        logger_ = logger ;
+        settings_ = settings ;
+        period_ = period ;
+        last_ = Double.NEGATIVE_INFINITY ;
+
+        file_ = new File(settings.getFilename()) ;
+        modified_ = file_.lastModified() ;
+
+        table_ = nt ? NetworkTableInstance.getDefault().getTable(TableName) : null ;
+        applied_ = new HashMap<String, Object>() ;
+    }
+
+    /// \brief apply any changes to the settings.  This is called by the robot at the start of each robot loop.
+    /// \param now the current robot time in seconds
+    public void poll(double now) {
+        if (now - last_ < period_)
+            return ;
+
+        last_ = now ;
+
+        long modified = file_.lastModified() ;
+        if (modified != 0 && modified != modified_) {
+            modified_ = modified ;
+            settings_.reload(file_.getPath()) ;
+        }
+
+        if (table_ != null)
+            pollTable() ;
+    }
+
+    //
+    // Apply the entries in the table whose values have changed since they were last applied
+    //
+    private void pollTable() {
+        for(String key : table_.getKeys()) {
+            NetworkTableValue v = table_.getEntry(key).getValue() ;
+            Object value ;
+
+            switch(v.getType()) {
+                case kDouble:
+                    value = v.getDouble() ;
+                    break ;
+                case kInteger:
+                    value = v.getInteger() ;
+                    break ;
+                case kBoolean:
+                    value = v.getBoolean() ;
+                    break ;
+                case kString:
+                    value = v.getString() ;
+                    break ;
+                default:
+                    value = null ;
+                    break ;
+            }
+
+            if (value == null || value.equals(applied_.get(key)))
+                continue ;
+
+            applied_.put(key, value) ;
+            if (!settings_.set(key, value)) {
+                logger_.startMessage(MessageType.Warning) ;
+                logger_.add("cannot change setting ").addQuoted(key) ;
+                logger_.add(" from NetworkTables - the setting does not exist or has a different type") ;
+                logger_.endMessage() ;
+            }
+        }
+    }
+}
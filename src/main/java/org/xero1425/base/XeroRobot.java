@@ -11,6 +11,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.networktables.NetworkTableInstance;
 import edu.wpi.first.wpilibj.Compressor;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.PneumaticsModuleType;
@@ -28,24 +29,32 @@ import org.xero1425.misc.MissingParameterException;
 import org.xero1425.misc.SettingsValue;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.BootTrace;
+import org.xero1425.misc.DeviceConfigTracker;
 import org.xero1425.misc.ISettingsSupplier;
 import org.xero1425.misc.JsonSettingsParser;
 import org.xero1425.misc.MessageDestination;
 import org.xero1425.misc.MessageDestinationFile;
 import org.xero1425.misc.MessageDestinationThumbFile;
+import org.xero1425.misc.OutputFilter;
+import org.xero1425.misc.PlotRecorder;
 import org.xero1425.misc.SimArgs;
 import org.xero1425.misc.XeroPathManager;
 import org.xero1425.misc.XeroPathType;
 import org.xero1425.base.motors.MotorFactory;
 import org.xero1425.base.subsystems.RobotSubsystem;
 import org.xero1425.base.subsystems.Subsystem.DisplayType;
+import org.xero1425.base.subsystems.swerve.common.SwerveHolonomicPathFollower;
 import org.xero1425.base.subsystems.tankdrive.TankDrivePathFollowerAction;
 import org.xero1425.base.actions.Action;
+import org.xero1425.base.actions.ActionChaining;
 import org.xero1425.base.controllers.BaseController;
 import org.xero1425.base.controllers.AutoController;
 import org.xero1425.base.controllers.AutoMode;
 import org.xero1425.base.controllers.TeleopController;
 import org.xero1425.base.controllers.TestController ;
+import org.xero1425.websrv.StatusServer;
+import org.xero1425.websrv.StatusSnapshot;
 
 /// \file
 
@@ -122,8 +131,20 @@ public abstract class XeroRobot extends TimedRobot {
 
     private PowerDistribution pdp_ ;
 
-    // Server for dispalying the status of the robot
-    // private StatusServer server_ ;
+    // Samples the power distribution hardware and sheds load before a brownout, null if not enabled
+    private PowerMonitor power_ ;
+
+    // Server for dispalying the status of the robot, null if not enabled
+    private StatusServer server_ ;
+
+    // The input log capturing or replaying the robot inputs, null if not enabled
+    private InputLog input_ ;
+
+    // The latency tracer for operator inputs, null if not enabled
+    private LatencyTracer latency_ ;
+
+    // Applies changes to the settings while the robot is running, null if not enabled
+    private SettingsReloader reloader_ ;
 
     // The april tag layout for this field
     private AprilTagFieldLayout layout_ ;
@@ -136,12 +157,37 @@ public abstract class XeroRobot extends TimedRobot {
 
     private static final String PDPPropertyName = "system:pdp:type" ;
 
+    private static final String StatusPortPropertyName = "system:status:port" ;
+
+    private static final String CaptureEnabledPropertyName = "system:capture:enabled" ;
+
+    private static final String CaptureMaxSizePropertyName = "system:capture:max-mb" ;
+
+    private static final String LatencyEnabledPropertyName = "system:latency:enabled" ;
+
+    private static final String ChainBudgetPropertyName = "system:actions:chain-budget" ;
+
+    private static final String ReloadEnabledPropertyName = "system:settings-reload:enabled" ;
+
+    private static final String ReloadPeriodPropertyName = "system:settings-reload:period" ;
+
+    private static final String ReloadNetworkTablesPropertyName = "system:settings-reload:network-tables" ;
+
+    private static final String BootTraceEnabledPropertyName = "system:boot-trace:enabled" ;
+
+    private static final String BootTraceBudgetsPropertyName = "system:boot-trace:budgets" ;
+
+    // The settings for the power monitor
+    private static final String PowerPropertyName = "system:power" ;
+
     /// \brief Create a new XeroRobot robot
     /// \param period the robot loop timing (generally 20 ms)
     public XeroRobot(final double period) {
         super(period);
 
         double start ;
+        int span ;
+        int robotspan = BootTrace.begin("XeroRobot") ;
 
         // Generate the paths to the various important places (logfile directory, settings file, path follow paths directoryh, etc.)
         robot_paths_ = new RobotPaths(RobotBase.isSimulation(), getName());
@@ -151,14 +197,25 @@ public abstract class XeroRobot extends TimedRobot {
 
         // Setup the mesasge logger to log messages
         start = getTime() ;
+        span = BootTrace.begin("enableMessageLogger") ;
         enableMessageLogger();
+        BootTrace.end(span) ;
         logger_id_ = logger_.registerSubsystem(LoggerName) ;
         logger_.startMessage(MessageType.Info).add("============================================================").endMessage();
         logger_.startMessage(MessageType.Info).add("robot code starting").endMessage();
         logger_.startMessage(MessageType.Info).add("enableMessageLogger time", getTime() - start).endMessage();
         logger_.startMessage(MessageType.Info).add("============================================================").endMessage();
 
-        if (RobotBase.isSimulation()) {
+        if (RobotBase.isSimulation() && SimArgs.Isolated) {
+            //
+            // Many simulations may run on this machine at once, so do not serve NetworkTables
+            //
+            NetworkTableInstance inst = NetworkTableInstance.getDefault() ;
+            inst.stopServer() ;
+            inst.startLocal() ;
+        }
+
+        if (RobotBase.isSimulation() && SimArgs.ReplayFileName == null) {
             String str = SimArgs.InputFileName;
             if (str == null)
                 str = getSimulationFileName() ;
@@ -168,9 +225,11 @@ public abstract class XeroRobot extends TimedRobot {
                 System.out.println("Not initializing the Xero1425 Simulation engine - assuming Romi robot") ;
             }
             else {
+                span = BootTrace.begin("initializeSimulator") ;
                 SimulationEngine.initializeSimulator(this, logger_);
                 addRobotSimulationModels() ;
                 SimulationEngine.getInstance().initAll(str) ;
+                BootTrace.end(span) ;
             }
         }
 
@@ -178,16 +237,36 @@ public abstract class XeroRobot extends TimedRobot {
 
         // Read the parameters file
         start = getTime() ;
+        span = BootTrace.begin("readParamsFile") ;
         readParamsFile();
+        BootTrace.end(span) ;
         logger_.startMessage(MessageType.Info).add("readParamsFile time", getTime() - start).endMessage() ;
 
         // Enable messages in the message logger based on params file values
         start = getTime() ;
+        span = BootTrace.begin("enableMessagesFromSettingsFile") ;
         enableMessagesFromSettingsFile() ;
+        BootTrace.end(span) ;
         logger_.startMessage(MessageType.Info).add("enableMessagesFromSettingsFile time", getTime() - start).endMessage() ;
 
+        // Start capturing or replaying the robot inputs, before any hardware is created
+        startInputLog() ;
+
+        // Start tracing the latency from operator inputs to the actuators
+        startLatencyTracer() ;
+
+        // Set the number of action steps that can be chained into a single robot loop
+        setActionChainBudget() ;
+        if (settings_ != null) {
+            settings_.subscribe(ChainBudgetPropertyName, (settings, keys) -> setActionChainBudget()) ;
+        }
+
+        // Apply changes to the settings while the robot is running
+        startSettingsReloader() ;
+
         // Read the paths files needed
         start = getTime() ;
+        span = BootTrace.begin("loadPathsFiles") ;
         paths_ = new XeroPathManager(logger_, robot_paths_.pathsDirectory(), getPathType());
         try {
             loadPathsFile();
@@ -195,12 +274,16 @@ public abstract class XeroRobot extends TimedRobot {
             logger_.startMessage(MessageType.Error) ;
             logger_.add("caught exception reading path files -").add(ex.getMessage()).endMessage();
         }
+        BootTrace.end(span) ;
         logger_.startMessage(MessageType.Info).add("loadPathsFiles time", getTime() - start).endMessage() ;
 
         // Create the motor factor
+        span = BootTrace.begin("createMotorFactory") ;
         motors_ = new MotorFactory(logger_, settings_);
+        BootTrace.end(span) ;
 
         // Create the plot manager
+        span = BootTrace.begin("createPlotManager") ;
         int ver ;
         
         try {
@@ -221,18 +304,16 @@ public abstract class XeroRobot extends TimedRobot {
             plot_mgr_ = new PlotManager(this, "/XeroPlot");
         }
 
+        startPlotRecorder() ;
+        BootTrace.end(span) ;
+
         // Store the initial time
         last_time_ = getTime();
 
         automode_ = -1;
 
-        // try {
-        //     server_ = new StatusServer(9001) ;
-        //     server_.start() ;
-        // }
-        // catch(IOException ex) {
-
-        // }
+        startStatusServer() ;
+        BootTrace.end(robotspan) ;
     }
 
     public RobotPaths getRobotFileSystemPaths() {
@@ -361,6 +442,7 @@ public abstract class XeroRobot extends TimedRobot {
     /// class.
     public void setRobotSubsystem(RobotSubsystem sub) {
         robot_subsystem_ = sub;
+        sub.endBootSpan() ;
     }
 
     /// \brief Returns the number of robot loops that have been executed in the current mode
@@ -374,6 +456,8 @@ public abstract class XeroRobot extends TimedRobot {
     public void robotInit() {
         boolean v;
         double start ;
+        int span ;
+        int initspan = BootTrace.begin("robotInit") ;
 
         logger_.startMessage(MessageType.Info).add("initializing robot") ;
         if (DriverStation.isFMSAttached())
@@ -399,8 +483,12 @@ public abstract class XeroRobot extends TimedRobot {
             }
         }
 
+        if (pdp_ != null)
+            startPowerMonitor() ;
+
         /// Initialize the plotting subsystem
         start = getTime() ;
+        span = BootTrace.begin("plotMgrInit") ;
         try {
             v = settings_.get("system:plotting:enabled").getBoolean();
             if (v == true)
@@ -413,6 +501,7 @@ public abstract class XeroRobot extends TimedRobot {
             // case we just turn off plotting
             plot_mgr_.enable(false);
         }
+        BootTrace.end(span) ;
         logger_.startMessage(MessageType.Info).add("plotMgrInit time", getTime() - start).endMessage() ;
 
         //
@@ -421,15 +510,20 @@ public abstract class XeroRobot extends TimedRobot {
         try {
             // Create the robot hardware
             start = getTime() ;
+            span = BootTrace.begin("hardwareInit") ;
             hardwareInit();
+            BootTrace.end(span) ;
             logger_.startMessage(MessageType.Info).add("hardwareInit time", getTime() - start).endMessage() ;
+            DeviceConfigTracker.logSummary(logger_) ;
 
             if (RobotBase.isSimulation() && SimulationEngine.getInstance() != null)
             {
                 //
                 // If we are simulating, create the simulation modules required
                 //
+                span = BootTrace.begin("createModels") ;
                 SimulationEngine.getInstance().createModels() ;
+                BootTrace.end(span) ;
             }
         } catch (Exception ex) {
             logger_.startMessage(MessageType.Error);
@@ -448,12 +542,15 @@ public abstract class XeroRobot extends TimedRobot {
             logger_.add("the robot subsystem was not set in hardwareInit()");
             logger_.endMessage();
 
+            BootTrace.end(initspan) ;
+            finishBootTrace() ;
             return;
         }
 
         // Now that all subsystem are in place, compute the initial state of the robot
         delta_time_ = getPeriod();
         start = getTime() ;
+        span = BootTrace.begin("computeInitialState") ;
         try {
             robot_subsystem_.computeState();
         } catch (Exception ex) {
@@ -462,11 +559,13 @@ public abstract class XeroRobot extends TimedRobot {
             logger_.endMessage();
             ;
         }
+        BootTrace.end(span) ;
         logger_.startMessage(MessageType.Info).add("computeInitalState time", getTime() - start).endMessage() ;
 
         // Now perform any initialization that might depend on the subsystem hierarchy
         // being in place or the initial state of the subsystems being ready.
         start = getTime() ;
+        span = BootTrace.begin("postHWInit") ;
         try {
             robot_subsystem_.postHWInit();
         } catch (Exception ex) {
@@ -476,12 +575,15 @@ public abstract class XeroRobot extends TimedRobot {
 
             logStackTrace(ex.getStackTrace());
         }
+        BootTrace.end(span) ;
         logger_.startMessage(MessageType.Info).add("postHWInit time", getTime() - start).endMessage() ;
 
         // Create the auto mode controller
+        span = BootTrace.begin("createAutoController") ;
         try {
             auto_controller_ = createAutoController();
             if (auto_controller_ != null && isSimulation()) {
+                auto_controller_.buildAll() ;
                 checkPaths() ;
             }
         }
@@ -492,8 +594,10 @@ public abstract class XeroRobot extends TimedRobot {
 
             logStackTrace(ex.getStackTrace());
         }
+        BootTrace.end(span) ;
 
         // Create the teleop controller
+        span = BootTrace.begin("createTeleopController") ;
         try {
             teleop_controller_ = createTeleopController();
         }
@@ -504,12 +608,36 @@ public abstract class XeroRobot extends TimedRobot {
 
             logStackTrace(ex.getStackTrace());
         }
+        BootTrace.end(span) ;
+        BootTrace.end(initspan) ;
+
+        //
+        // On the robot the automodes are created in the disabled robot loops that follow, so the boot
+        // trace is finished once they are all created
+        //
+        if (auto_controller_ == null || auto_controller_.isReady())
+            finishBootTrace() ;
+    }
+
+    /// \brief returns the power monitor
+    /// \returns the power monitor, or null if it is not enabled
+    public PowerMonitor getPowerMonitor() {
+        return power_ ;
+    }
+
+    /// \brief returns the automode controller
+    /// \returns the automode controller, or null if it has not been created
+    public AutoController getAutoController() {
+        return auto_controller_ ;
     }
 
     public double getCurrent(int channel) {
         double ret = Double.POSITIVE_INFINITY ;
 
-        if (pdp_ != null) {
+        if (power_ != null) {
+            ret = power_.getCurrent(channel) ;
+        }
+        else if (pdp_ != null) {
             ret = pdp_.getCurrent(channel);
         }
 
@@ -534,6 +662,11 @@ public abstract class XeroRobot extends TimedRobot {
         if (robot_subsystem_ == null)
             return;
 
+        if (auto_controller_ != null) {
+            auto_controller_.buildAll() ;
+            finishBootTrace() ;
+        }
+
         updateAutoMode();
         logAutoModeState();
 
@@ -603,9 +736,13 @@ public abstract class XeroRobot extends TimedRobot {
         loop_count_++ ;
     }
 
-    /// \brief Called from the base class to indicate we are a simulation
+    /// \brief Called from the base class to indicate we are a simulation.  If we are replaying
+    /// captured inputs, the entire replay is run from here.
     @Override
     public void simulationInit() {
+        if (input_ != null && InputLog.isReplaying()) {
+            runReplay() ;
+        }
     }
 
     /// \brief Called from the base class each robot loop while in simulation
@@ -619,18 +756,25 @@ public abstract class XeroRobot extends TimedRobot {
         if (robot_subsystem_ == null)
             return;
 
+        if (current_controller_ != null && current_controller_ == auto_controller_)
+            auto_controller_.reportIdleLoops() ;
+
         current_controller_ = null;
         robot_subsystem_.reset();
 
+        if (latency_ != null)
+            latency_.logSummary() ;
+
+        logger_.startMessage(MessageType.Info) ;
+        logger_.add("motor writes: sent ").add(OutputFilter.getSent()) ;
+        logger_.add(" skipped ").add(OutputFilter.getSaved()) ;
+        logger_.endMessage() ;
+
         automode_ = -1;
         changeLoopType(LoopType.Disabled);
         loop_count_ = 0 ;
     }
 
-    // public void publishSubsystemStatus(String subsystem, String status) {
-    //     server_.setSubsystemStatus(subsystem, status);
-    // }
-
     /// \brief Called from the base class each robot loop while in the disabled state
     @Override
     public void disabledPeriodic() {
@@ -640,13 +784,23 @@ public abstract class XeroRobot extends TimedRobot {
         double initial_time = getTime();
         delta_time_ = initial_time - last_time_;
 
+        if (input_ != null)
+            input_.beginFrame(initial_time, LoopType.Disabled) ;
+
+        pollSettings(initial_time) ;
+
+        if (power_ != null)
+            power_.update(initial_time) ;
+
+        if (auto_controller_ != null && !auto_controller_.isReady()) {
+            if (auto_controller_.buildNext())
+                finishBootTrace() ;
+        }
+
         if (!loop_type_history_.contains(LoopType.Autonomous)) {
             updateAutoMode();
         }
 
-        // server_.setRobotStatus("RobotStatus");
-        // robot_subsystem_.publishStatus() ;
-
         try {
             robot_subsystem_.computeState();
         } catch (Exception ex) {
@@ -661,6 +815,8 @@ public abstract class XeroRobot extends TimedRobot {
                 engine.run(getTime()) ;
         }
 
+        publishStatus() ;
+
         last_time_ = initial_time;
         loop_count_++ ;
     }
@@ -679,6 +835,9 @@ public abstract class XeroRobot extends TimedRobot {
     /// \brief Returns the current robot time in seconds
     /// \returns the current robot time in seconds
     public double getTime() {
+        if (input_ != null && InputLog.isReplaying())
+            return input_.getTime() ;
+
         return Timer.getFPGATimestamp();
     }
 
@@ -831,6 +990,19 @@ public abstract class XeroRobot extends TimedRobot {
             return ;
         }
 
+        if (input_ != null)
+            input_.beginFrame(initial_time, ltype) ;
+
+        if (latency_ != null)
+            latency_.beginLoop(loop_count_) ;
+
+        ActionChaining.beginLoop() ;
+
+        pollSettings(initial_time) ;
+
+        if (power_ != null)
+            power_.update(initial_time) ;
+
         logger_.startMessage(MessageType.Debug, logger_id_) ;
         logger_.add("xerorobot: starting loop,") ;
         logger_.add("time", initial_time) ;
@@ -871,11 +1043,418 @@ public abstract class XeroRobot extends TimedRobot {
             logStackTrace(ex.getStackTrace());
         }
 
+        //
+        // Start the next step of the automode if a step completed while the subsystems ran
+        //
+        if (current_controller_ != null && current_controller_ == auto_controller_)
+            auto_controller_.drain() ;
+
+        publishStatus() ;
+
         last_time_ = initial_time ;
     }
 
+    //
+    // If enabled, record all plots to a file on the robot in addition to sending them over network
+    // tables.  The recorder does not depend on the plotting enabled setting or the FMS connection.
+    //
+    private void startPlotRecorder() {
+        boolean record = false ;
+        long maxsize = 256 ;
+
+        try {
+            if (settings_ != null && settings_.isDefined("system:plotting:record")) {
+                record = settings_.get("system:plotting:record").getBoolean() ;
+            }
+
+            if (settings_ != null && settings_.isDefined("system:plotting:record-max-mb")) {
+                maxsize = settings_.get("system:plotting:record-max-mb").getInteger() ;
+            }
+        }
+        catch(Exception ex) {
+            record = false ;
+        }
+
+        if (!record)
+            return ;
+
+        int index = 1 ;
+        File f ;
+        do {
+            f = new File(robot_paths_.logFileDirectory() + "/plots_" + Integer.toString(index++) + ".xrec") ;
+        } while (f.exists()) ;
+
+        try {
+            PlotRecorder recorder = new PlotRecorder(f.getPath(), maxsize * 1024 * 1024) ;
+            plot_mgr_ = new RecordingPlotManager(this, plot_mgr_, recorder) ;
+            logger_.startMessage(MessageType.Info).add("recording plots to ").addQuoted(f.getPath()).endMessage();
+        }
+        catch(IOException ex) {
+            logger_.startMessage(MessageType.Error).add("cannot record plots to ").addQuoted(f.getPath()).add(" - ").add(ex.getMessage()).endMessage();
+        }
+    }
+
+    //
+    // Start replaying the inputs from the file given on the simulation command line, or if enabled
+    // start capturing the inputs to a file on the robot
+    //
+    private void startInputLog() {
+        if (SimArgs.ReplayFileName != null && RobotBase.isSimulation()) {
+            try {
+                input_ = InputLog.startReplay(SimArgs.ReplayFileName) ;
+                logger_.startMessage(MessageType.Info).add("replaying inputs from ").addQuoted(SimArgs.ReplayFileName).endMessage();
+            }
+            catch(Exception ex) {
+                logger_.startMessage(MessageType.Error).add("cannot replay inputs from ").addQuoted(SimArgs.ReplayFileName).add(" - ").add(ex.getMessage()).endMessage();
+            }
+            return ;
+        }
+
+        boolean capture = false ;
+        long maxsize = 512 ;
+
+        try {
+            if (settings_ != null && settings_.isDefined(CaptureEnabledPropertyName)) {
+                capture = settings_.get(CaptureEnabledPropertyName).getBoolean() ;
+            }
+
+            if (settings_ != null && settings_.isDefined(CaptureMaxSizePropertyName)) {
+                maxsize = settings_.get(CaptureMaxSizePropertyName).getInteger() ;
+            }
+        }
+        catch(Exception ex) {
+            capture = false ;
+        }
+
+        if (!capture)
+            return ;
+
+        int index = 1 ;
+        File f ;
+        do {
+            f = new File(robot_paths_.logFileDirectory() + "/inputs_" + Integer.toString(index++) + ".xcap") ;
+        } while (f.exists()) ;
+
+        try {
+            input_ = InputLog.startCapture(f.getPath(), maxsize * 1024 * 1024, getTime()) ;
+            logger_.startMessage(MessageType.Info).add("capturing inputs to ").addQuoted(f.getPath()).endMessage();
+        }
+        catch(IOException ex) {
+            logger_.startMessage(MessageType.Error).add("cannot capture inputs to ").addQuoted(f.getPath()).add(" - ").add(ex.getMessage()).endMessage();
+        }
+    }
+
+    //
+    // If enabled, trace the latency from operator inputs to the actuators
+    //
+    private void startLatencyTracer() {
+        boolean enabled = false ;
+
+        try {
+            if (settings_ != null && settings_.isDefined(LatencyEnabledPropertyName)) {
+                enabled = settings_.get(LatencyEnabledPropertyName).getBoolean() ;
+            }
+        }
+        catch(Exception ex) {
+            enabled = false ;
+        }
+
+        if (enabled) {
+            latency_ = LatencyTracer.start(logger_) ;
+            logger_.startMessage(MessageType.Info).add("tracing operator input latency").endMessage();
+        }
+    }
+
+    //
+    // Start applying changes to the settings file or from NetworkTables while the robot is running.  This
+    // is not done when replaying inputs, since the replay must use the settings it was captured with.
+    //
+    private void startSettingsReloader() {
+        if (!(settings_ instanceof JsonSettingsParser) || SimArgs.ReplayFileName != null)
+            return ;
+
+        boolean enabled = false ;
+        double period = 0.5 ;
+        boolean nt = true ;
+
+        try {
+            if (settings_.isDefined(ReloadEnabledPropertyName))
+                enabled = settings_.get(ReloadEnabledPropertyName).getBoolean() ;
+
+            if (settings_.isDefined(ReloadPeriodPropertyName))
+                period = settings_.get(ReloadPeriodPropertyName).getDouble() ;
+
+            if (settings_.isDefined(ReloadNetworkTablesPropertyName))
+                nt = settings_.get(ReloadNetworkTablesPropertyName).getBoolean() ;
+        }
+        catch(Exception ex) {
+            enabled = false ;
+        }
+
+        if (enabled) {
+            reloader_ = new SettingsReloader(logger_, (JsonSettingsParser)settings_, period, nt) ;
+            logger_.startMessage(MessageType.Info).add("applying settings changes while running").endMessage();
+        }
+    }
+
+    //
+    // Start sampling the power distribution hardware in the background, so the robot loop reads the
+    // currents from memory and load can be shed before a brownout
+    //
+    private void startPowerMonitor() {
+        boolean enabled = false ;
+        double period = 0.01 ;
+        double shedv = 8.0 ;
+        double restorev = 9.5 ;
+        double horizon = 0.2 ;
+        double minscale = 0.5 ;
+
+        try {
+            if (settings_.isDefined(PowerPropertyName + ":enabled"))
+                enabled = settings_.get(PowerPropertyName + ":enabled").getBoolean() ;
+
+            if (settings_.isDefined(PowerPropertyName + ":period"))
+                period = settings_.get(PowerPropertyName + ":period").getDouble() ;
+
+            if (settings_.isDefined(PowerPropertyName + ":shed-voltage"))
+                shedv = settings_.get(PowerPropertyName + ":shed-voltage").getDouble() ;
+
+            if (settings_.isDefined(PowerPropertyName + ":restore-voltage"))
+                restorev = settings_.get(PowerPropertyName + ":restore-voltage").getDouble() ;
+
+            if (settings_.isDefined(PowerPropertyName + ":horizon"))
+                horizon = settings_.get(PowerPropertyName + ":horizon").getDouble() ;
+
+            if (settings_.isDefined(PowerPropertyName + ":min-scale"))
+                minscale = settings_.get(PowerPropertyName + ":min-scale").getDouble() ;
+        }
+        catch(Exception ex) {
+            logger_.startMessage(MessageType.Error).add("power monitor settings are not valid - ").add(ex.getMessage()).endMessage();
+            enabled = false ;
+        }
+
+        if (enabled) {
+            power_ = new PowerMonitor(logger_, settings_, pdp_, period, shedv, restorev, horizon, minscale) ;
+            logger_.startMessage(MessageType.Info).add("power monitor started") ;
+            logger_.add("shed-voltage", shedv) ;
+            logger_.add("restore-voltage", restorev) ;
+            logger_.endMessage() ;
+        }
+    }
+
+    //
+    // Apply any changes to the settings, at the start of the robot loop before any subsystem runs.  Settings
+    // are never changed while connected to the field.
+    //
+    private void pollSettings(double now) {
+        if (reloader_ != null && !DriverStation.isFMSAttached())
+            reloader_.poll(now) ;
+    }
+
+    //
+    // Stop recording the boot trace, check each phase against its budget, and write the trace to the log
+    // directory.  This is called once the robot is initialized and the automodes are created.
+    //
+    private void finishBootTrace() {
+        if (!BootTrace.isRecording())
+            return ;
+
+        BootTrace.stop() ;
+
+        boolean enabled = false ;
+        try {
+            if (settings_ != null && settings_.isDefined(BootTraceEnabledPropertyName)) {
+                enabled = settings_.get(BootTraceEnabledPropertyName).getBoolean() ;
+            }
+        }
+        catch(Exception ex) {
+            enabled = false ;
+        }
+
+        if (!enabled)
+            return ;
+
+        int over = 0 ;
+        if (settings_.isDefined(BootTraceBudgetsPropertyName)) {
+            over = BootTrace.checkBudgets(settings_, BootTraceBudgetsPropertyName, logger_) ;
+        }
+
+        int index = 1 ;
+        File f ;
+        do {
+            f = new File(robot_paths_.logFileDirectory() + "/boot_" + Integer.toString(index++) + ".json") ;
+        } while (f.exists()) ;
+
+        try {
+            BootTrace.export(f.getPath()) ;
+            logger_.startMessage(MessageType.Info) ;
+            logger_.add("boot trace written to ").addQuoted(f.getPath()) ;
+            logger_.add("spans", BootTrace.getCount()) ;
+            logger_.add("dropped", BootTrace.getDropped()) ;
+            logger_.add("over-budget", over) ;
+            logger_.endMessage() ;
+        }
+        catch(IOException ex) {
+            logger_.startMessage(MessageType.Error).add("cannot write boot trace to ").addQuoted(f.getPath()).add(" - ").add(ex.getMessage()).endMessage();
+        }
+    }
+
+    //
+    // Read the number of action steps that can be chained into a single robot loop.  Chaining is
+    // disabled unless the budget is given in the settings file.
+    //
+    private void setActionChainBudget() {
+        int budget = 0 ;
+
+        try {
+            if (settings_ != null && settings_.isDefined(ChainBudgetPropertyName)) {
+                budget = settings_.get(ChainBudgetPropertyName).getInteger() ;
+            }
+        }
+        catch(Exception ex) {
+            budget = 0 ;
+        }
+
+        ActionChaining.setBudget(budget) ;
+        if (budget > 0) {
+            logger_.startMessage(MessageType.Info).add("chaining up to ").add(budget).add(" action steps per robot loop").endMessage();
+        }
+    }
+
+    //
+    // Run every robot loop in the replay file, back to back with no waiting, then stop the robot.  The
+    // mode changes are made in the same place they were made on the robot.
+    //
+    private void runReplay() {
+        LoopType current = LoopType.None ;
+        long start = System.nanoTime() ;
+        double first = Double.NaN ;
+
+        if (robot_subsystem_ != null) {
+            while (input_.nextFrame()) {
+                LoopType ltype = input_.getLoopType() ;
+                if (Double.isNaN(first))
+                    first = input_.getTime() ;
+
+                if (ltype != current) {
+                    switch(ltype) {
+                        case Autonomous:
+                            autonomousInit() ;
+                            break ;
+                        case Teleop:
+                            teleopInit() ;
+                            break ;
+                        case Test:
+                            testInit() ;
+                            break ;
+                        case Disabled:
+                            disabledInit() ;
+                            break ;
+                        default:
+                            break ;
+                    }
+                    current = ltype ;
+                }
+
+                switch(ltype) {
+                    case Autonomous:
+                        autonomousPeriodic() ;
+                        break ;
+                    case Teleop:
+                        teleopPeriodic() ;
+                        break ;
+                    case Test:
+                        testPeriodic() ;
+                        break ;
+                    case Disabled:
+                        disabledPeriodic() ;
+                        break ;
+                    default:
+                        break ;
+                }
+            }
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1.0e9 ;
+        double robottime = Double.isNaN(first) ? 0.0 : input_.getTime() - first ;
+
+        logger_.startMessage(MessageType.Info) ;
+        logger_.add("replay complete:") ;
+        logger_.add("loops", input_.getFrameCount()) ;
+        logger_.add("robottime", robottime) ;
+        logger_.add("elapsed", elapsed) ;
+        logger_.endMessage();
+
+        input_.close() ;
+        input_ = null ;
+        endCompetition() ;
+    }
+
+    private void startStatusServer() {
+        if (settings_ == null || !settings_.isDefined(StatusPortPropertyName) || SimArgs.Isolated)
+            return ;
+
+        try {
+            int port = settings_.get(StatusPortPropertyName).getInteger() ;
+            if (port > 0) {
+                server_ = new StatusServer(port) ;
+                server_.start() ;
+                logger_.startMessage(MessageType.Info).add("status server started on port ").add(port).endMessage();
+            }
+        }
+        catch(Exception ex) {
+            logger_.startMessage(MessageType.Error).add("cannot start status server - ").add(ex.getMessage()).endMessage();
+            server_ = null ;
+        }
+    }
+
+    //
+    // Fill the status snapshot for this robot loop and hand it to the status server.  The
+    // server thread does all of the formatting.
+    //
+    private void publishStatus() {
+        if (server_ == null)
+            return ;
+
+        StatusSnapshot st = server_.beginSnapshot(getTime()) ;
+        st.select(LoggerName) ;
+        st.put("mode", loop_type_history_.get(loop_type_history_.size() - 1).name()) ;
+        st.put("loop", loop_count_) ;
+        st.put("delta", delta_time_) ;
+        st.put("battery", RobotController.getBatteryVoltage()) ;
+        st.put("automode", automode_) ;
+        if (auto_controller_ != null) {
+            st.put("automodes-ready", auto_controller_.isReady()) ;
+            st.put("automodes-failed", auto_controller_.getFailedCount()) ;
+        }
+        st.put("fms", fms_connection_) ;
+        if (plot_mgr_ instanceof RecordingPlotManager) {
+            st.put("plot-dropped", ((RecordingPlotManager)plot_mgr_).getRecorder().getDropped()) ;
+        }
+        if (input_ != null && !InputLog.isReplaying()) {
+            st.put("capture-bytes", input_.getSize()) ;
+            st.put("capture-overruns", input_.getOverruns()) ;
+        }
+
+        st.put("motor-writes", OutputFilter.getSent()) ;
+        st.put("motor-writes-skipped", OutputFilter.getSaved()) ;
+
+        if (latency_ != null) {
+            st.select("latency") ;
+            latency_.getStatus(st) ;
+        }
+
+        if (power_ != null) {
+            st.select("power") ;
+            power_.getStatus(st) ;
+        }
+
+        robot_subsystem_.publishStatus(st) ;
+        server_.publish() ;
+    }
+
     public void logStackTrace(StackTraceElement [] trace) {
-        if (isSimulation()) {
+        if (isSimulation() && SimulationEngine.getInstance() != null) {
             //
             // Make if we stack trace and write to log file, the
             // simulation should fail.
@@ -888,6 +1467,7 @@ public abstract class XeroRobot extends TimedRobot {
     public AprilTagFieldLayout getAprilTags() {
         if (layout_ == null) {
             String path = robot_paths_.deployDirectory() + "/AprilTags.json" ;
+            int span = BootTrace.begin("loadAprilTags") ;
         
             try {
               layout_ = new AprilTagFieldLayout(path) ;
@@ -896,6 +1476,7 @@ public abstract class XeroRobot extends TimedRobot {
                 logger_.startMessage(MessageType.Error).add("cannot load april tag file '" + path + "' - " + ex.getMessage()).endMessage();
                 layout_ = null ;
             }
+            BootTrace.end(span) ;
         }
 
         return layout_ ;
@@ -968,6 +1549,8 @@ public abstract class XeroRobot extends TimedRobot {
     private void displayAutoModeState() {
         SmartDashboard.putNumber("AutoModeNumber", automode_) ;
         SmartDashboard.putString("AutoModeName", auto_controller_.getAutoModeName()) ;
+        SmartDashboard.putBoolean("AutoModesReady", auto_controller_.isReady()) ;
+        SmartDashboard.putNumber("AutoModesFailed", auto_controller_.getFailedCount()) ;
     }
 
     private void updateAutoMode() {
@@ -1051,37 +1634,49 @@ public abstract class XeroRobot extends TimedRobot {
         settings_ = file ;
     }
 
-    private void checkPaths() {
+    /// \brief Check that every path followed by an automode is in the paths directory.  A missing path is
+    /// logged as an error.
+    /// \param mode the automode to check
+    /// \returns true if every path followed by the automode is present
+    public boolean checkAutoModePaths(AutoMode mode) {
         boolean valid = true ;
         List<Action> actions = new ArrayList<Action>() ;
-        List<AutoMode> modes = auto_controller_.getAllAutomodes();
-        for(AutoMode mode : modes) {
-            logger_.startMessage(MessageType.Debug, logger_id_) ;
-            logger_.add("processing automode ").addQuoted(mode.getName()).endMessage();
-            actions.clear(); ;
-            mode.getAllChildren(actions);
-            for(Action act : actions) {
-                if (act instanceof TankDrivePathFollowerAction) {
-                    TankDrivePathFollowerAction pa = (TankDrivePathFollowerAction)act ;
-                    logger_.startMessage(MessageType.Debug, logger_id_) ;
-                    logger_.add("    processing path ").addQuoted(pa.getPathName()).endMessage();
-
-                    if (!paths_.hasPath(pa.getPathName())) {
-                        logger_.startMessage(MessageType.Error) ;
-                        logger_.add("automode ").addQuoted(mode.getName()) ;
-                        logger_.add(" requires path ").addQuoted(pa.getPathName()) ;
-                        logger_.add(" which is missing from the paths directory") ;
-                        logger_.endMessage();
-                        valid = false ;
-                    }
+
+        logger_.startMessage(MessageType.Debug, logger_id_) ;
+        logger_.add("processing automode ").addQuoted(mode.getName()).endMessage();
+        mode.getAllChildren(actions);
+        for(Action act : actions) {
+            String path = null ;
+            if (act instanceof TankDrivePathFollowerAction) {
+                path = ((TankDrivePathFollowerAction)act).getPathName() ;
+            }
+            else if (act instanceof SwerveHolonomicPathFollower) {
+                path = ((SwerveHolonomicPathFollower)act).getPathName() ;
+            }
+
+            if (path != null) {
+                logger_.startMessage(MessageType.Debug, logger_id_) ;
+                logger_.add("    processing path ").addQuoted(path).endMessage();
+
+                if (!paths_.hasPath(path)) {
+                    logger_.startMessage(MessageType.Error) ;
+                    logger_.add("automode ").addQuoted(mode.getName()) ;
+                    logger_.add(" requires path ").addQuoted(path) ;
+                    logger_.add(" which is missing from the paths directory") ;
+                    logger_.endMessage();
+                    valid = false ;
                 }
             }
-            logger_.startMessage(MessageType.Debug, logger_id_) ;
-            logger_.add("  contained ").add(actions.size()).add(" actions total").endMessage();
         }
+        logger_.startMessage(MessageType.Debug, logger_id_) ;
+        logger_.add("  contained ").add(actions.size()).add(" actions total").endMessage();
 
-        if (!valid) {
-            logger_.startMessage(MessageType.Fatal).add("some required paths are missing").endMessage();
+        return valid ;
+    }
+
+    private void checkPaths() {
+        if (auto_controller_.getFailedCount() > 0) {
+            logger_.startMessage(MessageType.Fatal).add("some automodes could not be created or require missing paths").endMessage();
         }
     }
 
@@ -146,11 +146,17 @@ public abstract class Action
     }
 
     private void addActionToMessage() {
+        //
+        // Describing an action group walks all of its children, so skip it unless the message is displayed
+        //
+        if (!logger_.isEnabled(MessageType.Debug, logger_id_))
+            return ;
+
         String msg = toString(0) ;
         if (msg.indexOf('\n') != -1) {
             logger_.add("\n") ;
         }
 
-        logger_.add(toString(0)) ;
+        logger_.add(msg) ;
     }    
 }
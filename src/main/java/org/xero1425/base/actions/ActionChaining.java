@@ -0,0 +1,97 @@
+package org.xero1425.base.actions;
+
+/// \file
+
+/// \brief This class controls whether action groups move on to their next step in the same robot loop that the
+/// previous step completes.
+///
+/// Without chaining, when a child of a SequenceAction completes in run(), the next child is started but does not
+/// run until the next robot loop.  A blocking DispatchAction only sees that the action it assigned to a subsystem
+/// is complete in the robot loop after the subsystem ran it.  Each of these transitions leaves the step idle for a
+/// robot loop.
+///
+/// With chaining, a SequenceAction runs the next child right after starting it, and after the subsystems have run
+/// the robot calls drain() on the running action groups so completed steps are followed by their next step in the
+/// same robot loop.  The number of chained steps in a robot loop is limited by a budget so a long chain of steps
+/// that complete at once cannot overrun the robot loop.  When the budget is used up, the remaining transitions
+/// wait for the next robot loop.
+///
+/// The robot loops spent idle between steps are counted whether or not chaining is enabled, so the benefit can
+/// be measured.
+public final class ActionChaining {
+    // The number of steps that may be chained in a single robot loop, zero to disable chaining
+    private static int budget_ = 0 ;
+
+    // The number of steps chained in the current robot loop
+    private static int used_ = 0 ;
+
+    // The number of robot loops steps spent waiting for the next robot loop since the counts were reset
+    private static int idle_ = 0 ;
+
+    // The number of steps chained since the counts were reset
+    private static int chained_ = 0 ;
+
+    private ActionChaining() {
+    }
+
+    /// \brief set the number of steps that can be chained in a single robot loop
+    /// \param budget the number of steps that can be chained in a robot loop, zero to disable chaining
+    public static void setBudget(int budget) {
+        budget_ = Math.max(budget, 0) ;
+    }
+
+    /// \brief returns the number of steps that can be chained in a single robot loop
+    /// \returns the number of steps that can be chained in a single robot loop
+    public static int getBudget() {
+        return budget_ ;
+    }
+
+    /// \brief returns true if chaining is enabled
+    /// \returns true if chaining is enabled
+    public static boolean isEnabled() {
+        return budget_ > 0 ;
+    }
+
+    /// \brief called by the robot at the start of each robot loop to restore the budget
+    public static void beginLoop() {
+        used_ = 0 ;
+    }
+
+    /// \brief reset the idle loop and chained step counts
+    public static void resetCounts() {
+        idle_ = 0 ;
+        chained_ = 0 ;
+    }
+
+    /// \brief returns the number of robot loops steps have spent waiting for the next robot loop
+    /// \returns the number of robot loops steps have spent waiting for the next robot loop
+    public static int getIdleLoops() {
+        return idle_ ;
+    }
+
+    /// \brief returns the number of steps that were chained into the robot loop the previous step completed in
+    /// \returns the number of steps that were chained
+    public static int getChainedSteps() {
+        return chained_ ;
+    }
+
+    //
+    // Called by an action group with a step ready to move on.  Returns true if the step can
+    // be chained in this robot loop.
+    //
+    static boolean chain() {
+        if (used_ >= budget_)
+            return false ;
+
+        used_++ ;
+        chained_++ ;
+        return true ;
+    }
+
+    //
+    // Called by an action group when a step waits for the next robot loop
+    //
+    static void idle() {
+        idle_++ ;
+    }
+}
@@ -16,4 +16,10 @@ public abstract class ActionGroup extends Action {
     /// \brief return all of the child actions that are contained by this ActionGroup
     /// \param output a list to contain all of the child actions
     public abstract void getAllChildren(List<Action> output) ;
+
+    /// \brief move on from any child actions that have completed since this action group last ran, without
+    /// running the child actions.  This is called after the subsystems have run when action chaining is enabled, so
+    /// the next step after a completed step starts in the same robot loop.  The default does nothing.
+    public void drain() throws Exception {
+    }
 }
@@ -130,6 +130,26 @@ public class ParallelAction extends ActionGroup
             completeAction() ;
     }
 
+    /// \brief move on from any child actions that have completed since this action last ran, and
+    /// complete this action if the DonePolicy is met.
+    @Override
+    public void drain() throws Exception {
+        if (!running_ || isDone())
+            return ;
+
+        int count = 0 ;
+        for(Action act : actions_) {
+            if (!act.isDone() && act instanceof ActionGroup)
+                ((ActionGroup)act).drain() ;
+
+            if (act.isDone())
+                count++ ;
+        }
+
+        if (count == actions_.size() || (count > 0 && done_policy_ == DonePolicy.First))
+            completeAction() ;
+    }
+
     /// \brief cancel this ParallelAction.
     /// This method will call cancel on all child actions that are running (not done).
     @Override
@@ -96,13 +96,49 @@ public class SequenceAction extends ActionGroup
 
     /// \brief run this action by running the current child action.
     /// If it is done, start the next action.  Continue this process until
-    /// all child actions are complete.
+    /// all child actions are complete.  When action chaining is enabled, the next action
+    /// is run in the same robot loop it is started in, within the chaining budget.
     @Override
     public void run() throws Exception {
         super.run() ;
 
-        actions_.get(index_).run() ;
-        if (actions_.get(index_).isDone())
+        //
+        // A child action that is already done completed outside of this action, such as an action
+        // dispatched to a subsystem that completed when the subsystem ran, and has waited a robot loop.
+        //
+        Action act = actions_.get(index_) ;
+        if (act.isDone())
+            ActionChaining.idle() ;
+        else
+            act.run() ;
+
+        while (act.isDone()) {
+            startNextAction() ;
+            if (isDone())
+                break ;
+
+            act = actions_.get(index_) ;
+            if (!ActionChaining.chain()) {
+                ActionChaining.idle() ;
+                break ;
+            }
+
+            act.run() ;
+        }
+    }
+
+    /// \brief if the current child action has completed since this action last ran, start the next
+    /// child action within the action chaining budget.
+    @Override
+    public void drain() throws Exception {
+        if (!running_ || isDone() || index_ < 0 || index_ >= actions_.size())
+            return ;
+
+        Action act = actions_.get(index_) ;
+        if (act instanceof ActionGroup)
+            ((ActionGroup)act).drain() ;
+
+        if (act.isDone() && ActionChaining.chain())
             startNextAction() ;
     }
 
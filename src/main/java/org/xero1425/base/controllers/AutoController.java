@@ -3,7 +3,9 @@ package org.xero1425.base.controllers;
 import java.util.ArrayList;
 import java.util.List;
 import org.xero1425.base.XeroRobot;
+import org.xero1425.base.actions.ActionChaining;
 import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.BootTrace;
 import org.xero1425.misc.ISettingsSupplier;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
@@ -13,7 +15,24 @@ import org.xero1425.misc.SettingsValue;
 /// \file
 
 /// \brief The base class for a robot specific Auto Mode Controller
+///
+/// Automodes can be added already created with addAutoMode(AutoMode), or as a factory with
+/// addAutoMode(String, AutoModeFactory).  An automode added as a factory is created later by the robot, one
+/// automode per robot loop while the robot is disabled, so creating all of the automodes does not delay the
+/// robot being ready.  Each automode is checked when it is created.  An automode that cannot be created or
+/// refers to a missing path is logged as an error and replaced by an empty automode with the same selector
+/// number, so a bad automode is found before the match and the other automodes keep their selector numbers.
+/// The automodes are not available until all of them are created.  If autonomous mode starts first, the
+/// remaining automodes are created at once.
 public abstract class AutoController extends BaseController {
+
+    /// \brief creates an automode, throwing an exception if the automode cannot be created
+    @FunctionalInterface
+    public interface AutoModeFactory {
+        /// \brief create the automode
+        /// \returns the automode
+        AutoMode create() throws Exception ;
+    }
     
     // The current automode
     private AutoMode current_automode_ ;
@@ -24,9 +43,28 @@ public abstract class AutoController extends BaseController {
     // If true, the automode has been started
     private boolean started_ ;
 
+    // If true, the robot loops spent idle between steps of the automode have been reported
+    private boolean reported_ ;
+
+    // The robot loop count when the automode was started
+    private int start_loop_ ;
+
     // The list of automodes available
     private List<AutoMode> automodes_ ;
 
+    // The names and factories for the automodes that are not yet created, in selector order
+    private List<String> pending_names_ ;
+    private List<AutoModeFactory> pending_ ;
+
+    // The number of automodes that could not be created or failed their checks
+    private int failed_ ;
+
+    // The time spent creating automodes in seconds
+    private double build_time_ ;
+
+    // The list returned while the automodes are being created
+    private final List<AutoMode> none_ ;
+
     // The settings file key that is used to enable the test mode
     private static final String testmode = "testmode:enabled";
 
@@ -37,6 +75,9 @@ public abstract class AutoController extends BaseController {
         super(robot, name) ;
 
         automodes_ = new ArrayList<AutoMode>() ;
+        pending_names_ = new ArrayList<String>() ;
+        pending_ = new ArrayList<AutoModeFactory>() ;
+        none_ = new ArrayList<AutoMode>() ;
 
         // Check the settings file to see if the settings file is requesting test mode
         ISettingsSupplier settings = robot.getSettingsSupplier() ;
@@ -51,7 +92,91 @@ public abstract class AutoController extends BaseController {
     /// \brief Add a new automode to the automode controller
     /// \param mode the automode to add to the set
     public void addAutoMode(AutoMode mode) {
+        if (pending_.size() > 0) {
+            //
+            // Keep the selector order when created automodes are mixed with automodes created later
+            //
+            pending_names_.add(mode.getName()) ;
+            pending_.add(() -> mode) ;
+        }
+        else {
+            automodes_.add(mode) ;
+        }
+    }
+
+    /// \brief Add an automode that is created by the robot after the robot is initialized
+    /// \param name the name of the automode, used if the automode cannot be created
+    /// \param factory creates the automode
+    public void addAutoMode(String name, AutoModeFactory factory) {
+        pending_names_.add(name) ;
+        pending_.add(factory) ;
+    }
+
+    /// \brief Returns true if all of the automodes have been created
+    /// \returns true if all of the automodes have been created
+    public boolean isReady() {
+        return pending_.size() == 0 ;
+    }
+
+    /// \brief Returns the number of automodes that could not be created or failed their checks
+    /// \returns the number of automodes that could not be created or failed their checks
+    public int getFailedCount() {
+        return failed_ ;
+    }
+
+    /// \brief Create the next automode that has not been created.  This is called by the robot once per
+    /// robot loop while the robot is disabled.
+    /// \returns true if all of the automodes have been created
+    public boolean buildNext() {
+        if (pending_.size() == 0)
+            return true ;
+
+        double start = getRobot().getTime() ;
+        String name = pending_names_.remove(0) ;
+        AutoModeFactory factory = pending_.remove(0) ;
+        AutoMode mode = null ;
+        int span = BootTrace.begin("automode " + name) ;
+
+        try {
+            mode = factory.create() ;
+            if (!getRobot().checkAutoModePaths(mode)) {
+                mode = null ;
+            }
+        }
+        catch(Exception ex) {
+            MessageLogger logger = getRobot().getMessageLogger() ;
+            logger.startMessage(MessageType.Error).add("Exception thrown creating automode ").addQuoted(name) ;
+            logger.add(" - ").add(ex.getMessage()).endMessage();
+            getRobot().logStackTrace(ex.getStackTrace());
+            mode = null ;
+        }
+
+        if (mode == null) {
+            failed_++ ;
+            mode = new AutoMode(this, name + " (FAILED)") ;
+        }
+
         automodes_.add(mode) ;
+        BootTrace.end(span) ;
+        build_time_ += getRobot().getTime() - start ;
+
+        if (pending_.size() == 0) {
+            MessageLogger logger = getRobot().getMessageLogger() ;
+            logger.startMessage(failed_ > 0 ? MessageType.Error : MessageType.Info) ;
+            logger.add("automodes created") ;
+            logger.add("count", automodes_.size()) ;
+            logger.add("failed", failed_) ;
+            logger.add("time", build_time_) ;
+            logger.endMessage();
+        }
+
+        return pending_.size() == 0 ;
+    }
+
+    /// \brief Create all of the automodes that have not been created
+    public void buildAll() {
+        while (!buildNext()) {
+        }
     }
 
     /// \brief initialize the automode
@@ -60,9 +185,9 @@ public abstract class AutoController extends BaseController {
     }
 
     /// \brief Returns a list of all automodes available
-    /// \returns a list of all automodes available
+    /// \returns a list of all automodes available, empty until all of the automodes are created
     public List<AutoMode> getAllAutomodes()  {
-        return automodes_ ;
+        return isReady() ? automodes_ : none_ ;
     }
 
     /// \brief Called once per robot loop to run the automode.
@@ -71,6 +196,9 @@ public abstract class AutoController extends BaseController {
         if (current_automode_ != null) {
             if (!started_) {
                 try {
+                    ActionChaining.resetCounts() ;
+                    start_loop_ = getRobot().getLoopCount() ;
+                    reported_ = false ;
                     current_automode_.start() ;
                     started_ = true ;
                 }
@@ -92,9 +220,51 @@ public abstract class AutoController extends BaseController {
                 logger.add("exception thrown in run() method of automode - ").add(ex.getStackTrace().toString()) ;
                 logger.endMessage();            
             }
+
+            if (current_automode_.isDone())
+                reportIdleLoops() ;
         }
     }
 
+    /// \brief Called once per robot loop after the subsystems have run.  If action chaining is enabled, this
+    /// starts the next step of the automode when a step completed while the subsystems ran.
+    public void drain() {
+        if (current_automode_ == null || !started_ || current_automode_.isDone() || !ActionChaining.isEnabled())
+            return ;
+
+        try {
+            current_automode_.drain() ;
+        }
+        catch(Exception ex) {
+            MessageLogger logger = getRobot().getMessageLogger();
+            logger.startMessage(MessageType.Error) ;
+            logger.add("exception thrown in drain() method of automode - ").add(ex.getMessage()) ;
+            logger.endMessage();
+        }
+
+        if (current_automode_.isDone())
+            reportIdleLoops() ;
+    }
+
+    /// \brief Log the number of robot loops the steps of the automode spent waiting for the next robot loop.  This
+    /// is logged once, when the automode completes or when autonomous mode ends.
+    public void reportIdleLoops() {
+        if (current_automode_ == null || !started_ || reported_)
+            return ;
+
+        MessageLogger logger = getRobot().getMessageLogger();
+        logger.startMessage(MessageType.Info) ;
+        logger.add("automode ").addQuoted(current_automode_.getName()) ;
+        logger.add(current_automode_.isDone() ? " complete" : " stopped") ;
+        logger.add("loops", getRobot().getLoopCount() - start_loop_) ;
+        logger.add("idle", ActionChaining.getIdleLoops()) ;
+        logger.add("chained", ActionChaining.getChainedSteps()) ;
+        logger.add("budget", ActionChaining.getBudget()) ;
+        logger.endMessage();
+
+        reported_ = true ;
+    }
+
     /// \brief Returns true if we are in the test mode.  The test mode is triggered if the
     /// set mode setting "testmode:enabled" is true and the robot is NOT connected to an FMS system.
     /// \returns true if we are in the test mode
@@ -1,5 +1,6 @@
 package org.xero1425.base.gyro;
 
+import org.xero1425.base.InputLog;
 import org.xero1425.base.XeroRobot;
 import com.kauailabs.navx.frc.AHRS ;
 import edu.wpi.first.wpilibj.SPI;
@@ -12,6 +13,12 @@ public class NavxGyro implements XeroGyro {
     // The instance of the NavX Gyro
     private AHRS navx_ ;
 
+    // The input log channels for the angles, null if inputs are not being captured or replayed
+    private InputLog.Channel yaw_input_ ;
+    private InputLog.Channel pitch_input_ ;
+    private InputLog.Channel roll_input_ ;
+    private InputLog.Channel angle_input_ ;
+
     /// \brief Create the Gyro class using the default NavX Port on the MXP bus
     public NavxGyro() {
         if (XeroRobot.isSimulation()) {
@@ -20,6 +27,8 @@ public class NavxGyro implements XeroGyro {
         else {
             navx_ = new AHRS(SPI.Port.kMXP) ;
         }
+
+        createInputs() ;
     }
 
     /// \brief Create the Gyro class using the supplied SPI port
@@ -31,6 +40,21 @@ public class NavxGyro implements XeroGyro {
         else {
             navx_ = new AHRS(port) ;
         }
+
+        createInputs() ;
+    }
+
+    //
+    // If inputs are being captured or replayed, create the channels for the angles
+    //
+    private void createInputs() {
+        InputLog log = InputLog.getInstance() ;
+        if (log != null) {
+            yaw_input_ = log.getChannel("navx:yaw") ;
+            pitch_input_ = log.getChannel("navx:pitch") ;
+            roll_input_ = log.getChannel("navx:roll") ;
+            angle_input_ = log.getChannel("navx:angle") ;
+        }
     }
 
     /// \brief Returns true if the NavX is connected
@@ -52,6 +76,11 @@ public class NavxGyro implements XeroGyro {
         if (navx_ != null) {
             ret = -navx_.getYaw() ;
         }
+
+        if (yaw_input_ != null) {
+            ret = yaw_input_.input(ret) ;
+        }
+
         return ret ;
     }
 
@@ -61,6 +90,11 @@ public class NavxGyro implements XeroGyro {
         if (navx_ != null) {
             ret = navx_.getPitch();
         }
+
+        if (pitch_input_ != null) {
+            ret = pitch_input_.input(ret) ;
+        }
+
         return ret ;
     }
 
@@ -70,17 +104,28 @@ public class NavxGyro implements XeroGyro {
         if (navx_ != null) {
             ret = navx_.getRoll();
         }
+
+        if (roll_input_ != null) {
+            ret = roll_input_.input(ret) ;
+        }
+
         return ret ;
     }
 
     /// \brief Returns the total angle for the NavX
     /// \returns the total angle for the NavX    
     public double getAngle() {
-        if (navx_ == null) {
-            return 0.0 ;
+        double ret = 0.0 ;
+
+        if (navx_ != null) {
+            ret = navx_.getAngle() ;
         }
 
-        return navx_.getAngle() ;
+        if (angle_input_ != null) {
+            ret = angle_input_.input(ret) ;
+        }
+
+        return ret ;
     }
 
     public double getGyroX() {
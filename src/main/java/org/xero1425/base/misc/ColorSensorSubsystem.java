@@ -1,18 +1,32 @@
 package org.xero1425.base.misc;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import com.revrobotics.ColorSensorV3;
 
 import org.xero1425.base.XeroRobot;
 import org.xero1425.base.subsystems.Subsystem;
 import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.MessageLogger;
+import org.xero1425.misc.MessageType;
 import org.xero1425.misc.MissingParameterException;
 
 import edu.wpi.first.hal.SimDevice;
 import edu.wpi.first.hal.SimDouble;
 import edu.wpi.first.hal.SimInt;
 import edu.wpi.first.wpilibj.I2C;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.util.Color;
 
+/// \file
+
+/// \brief A subsystem that reads a set of REV color sensors that sit behind an I2C multiplexer.
+/// By default, all of the sensors are read in computeMyState() on the robot thread.  If the
+/// settings value hw:i2cmux:background is true, a dedicated thread cycles through the multiplexer
+/// channels continuously and publishes the latest sample for each channel.  In this mode computeMyState()
+/// only copies the most recent samples and no I2C transactions happen on the robot thread.  The thread logs
+/// and survives errors reading the sensors.  If it has not completed a pass through the channels within the
+/// time in hw:i2cmux:stale, computeMyState() logs an error and isStale() returns true until it recovers.
 public class ColorSensorSubsystem extends Subsystem {
     static public final String ColorSensorMuxSimDevName = "sensor-mux" ;
     static public final String ColorSensorSimRedValueName = "sensor-mux-red" ;
@@ -31,9 +45,26 @@ public class ColorSensorSubsystem extends Subsystem {
     private int[] proximity_ ;
     private int[] ir_ ;
     private Color [] colors_ ;
-    private boolean running_ ;
-    private boolean read_proximity_ ;
-    private boolean read_ir_ ;
+    private double [] sample_times_ ;
+    private volatile boolean running_ ;
+    private volatile boolean read_proximity_ ;
+    private volatile boolean read_ir_ ;
+
+    // If non-null, the thread that reads the sensors in the background
+    private Thread poller_ ;
+
+    // The delay between complete passes through the multiplexer channels in background mode
+    private long poll_period_ms_ ;
+
+    // The latest sample for each channel, written by the background thread
+    private AtomicReferenceArray<Sample> samples_ ;
+
+    // The FPGA time the background thread last completed a pass through the channels
+    private volatile double last_pass_ ;
+
+    // The time in seconds without a complete pass before the samples are stale, and true while they are
+    private double stale_time_ ;
+    private boolean stale_ ;
 
     private SimDevice i2c_mux_ ;
     private SimDouble[] i2c_mux_red_value_ ;
@@ -42,6 +73,21 @@ public class ColorSensorSubsystem extends Subsystem {
     private SimInt[] i2c_mux_proximity_value_ ;
     private SimInt[] i2c_mux_ir_value_ ;
 
+    /// \brief a single reading of one sensor, never modified once published
+    public static class Sample {
+        public final Color color ;          ///< the color read from the sensor
+        public final int proximity ;        ///< the proximity read from the sensor, zero if not enabled
+        public final int ir ;               ///< the IR value read from the sensor, zero if not enabled
+        public final double timestamp ;     ///< the FPGA time when the sample was taken
+
+        public Sample(Color c, int p, int i, double t) {
+            color = c ;
+            proximity = p ;
+            ir = i ;
+            timestamp = t ;
+        }
+    }
+
     public ColorSensorSubsystem(Subsystem parent, String name, I2C.Port port) throws BadParameterTypeException, MissingParameterException {
         super(parent, name) ;
 
@@ -77,17 +123,70 @@ public class ColorSensorSubsystem extends Subsystem {
         colors_ = new Color[count_] ;
         proximity_ = new int[count_] ;
         ir_ = new int[count_] ;
+        sample_times_ = new double[count_] ;
 
         if (!XeroRobot.isSimulation()) {
             for(int i = 0 ; i < count_ ; i++)
                 init(i) ;
         }
+
+        if (isSettingDefined("hw:i2cmux:background") && getSettingsValue("hw:i2cmux:background").getBoolean()) {
+            poll_period_ms_ = 5 ;
+            if (isSettingDefined("hw:i2cmux:period")) {
+                poll_period_ms_ = getSettingsValue("hw:i2cmux:period").getInteger() ;
+            }
+
+            stale_time_ = 0.1 ;
+            if (isSettingDefined("hw:i2cmux:stale")) {
+                stale_time_ = getSettingsValue("hw:i2cmux:stale").getDouble() ;
+            }
+
+            samples_ = new AtomicReferenceArray<Sample>(count_) ;
+            stale_ = false ;
+            last_pass_ = Timer.getFPGATimestamp() ;
+            poller_ = new Thread(() -> pollSensors(), getName() + "-i2c") ;
+            poller_.setDaemon(true) ;
+            poller_.start() ;
+        }
     }
 
     public int count() {
         return count_ ;
     }
 
+    /// \brief stop the background thread, if there is one, and wait for it to finish
+    public void stop() {
+        if (poller_ == null)
+            return ;
+
+        poller_.interrupt() ;
+        try {
+            poller_.join(100) ;
+        }
+        catch(InterruptedException ex) {
+            Thread.currentThread().interrupt() ;
+        }
+    }
+
+    /// \brief returns true if the background thread has stopped producing samples
+    /// \returns true if the background thread has stopped producing samples
+    public boolean isStale() {
+        return stale_ ;
+    }
+
+    /// \brief returns true if the sensors are read by a background thread
+    /// \returns true if the sensors are read by a background thread
+    public boolean isBackground() {
+        return poller_ != null ;
+    }
+
+    /// \brief returns the time the current data for a sensor was read from the hardware
+    /// \param which the sensor of interest
+    /// \returns the time the current data for a sensor was read from the hardware
+    public double getSampleTime(int which) {
+        return sample_times_[which] ;
+    }
+
     public Color getColor(int which) {
         return colors_[which] ;
     }
@@ -112,6 +211,24 @@ public class ColorSensorSubsystem extends Subsystem {
     public void computeMyState() {
         running_ = true ;
 
+        if (poller_ != null) {
+            //
+            // The background thread does the I2C work, just pick up the latest samples
+            //
+            for(int i = 0 ; i < count_ ; i++) {
+                Sample s = samples_.get(i) ;
+                if (s != null) {
+                    colors_[i] = s.color ;
+                    proximity_[i] = s.proximity ;
+                    ir_[i] = s.ir ;
+                    sample_times_[i] = s.timestamp ;
+                }
+            }
+
+            checkStale() ;
+            return ;
+        }
+
         for(int i = 0 ; i < count_ ; i++) {
             select(i) ;
 
@@ -124,6 +241,8 @@ public class ColorSensorSubsystem extends Subsystem {
             if (read_ir_) {
                 ir_[i] = getIR() ;
             }
+
+            sample_times_[i] = Timer.getFPGATimestamp() ;
         }
     }
 
@@ -190,6 +309,79 @@ public class ColorSensorSubsystem extends Subsystem {
         return p ;
     }
 
+    //
+    // Check that the background thread is still completing passes through the channels, and log when the
+    // samples go stale and when they recover
+    //
+    private void checkStale() {
+        double age = Timer.getFPGATimestamp() - last_pass_ ;
+        boolean stale = age > stale_time_ ;
+        if (stale == stale_)
+            return ;
+
+        stale_ = stale ;
+
+        MessageLogger logger = getRobot().getMessageLogger() ;
+        if (stale) {
+            logger.startMessage(MessageType.Error) ;
+            logger.add("subsystem ").addQuoted(getName()).add(": color sensor samples are stale") ;
+            logger.add("age", age) ;
+            logger.endMessage() ;
+        }
+        else {
+            logger.startMessage(MessageType.Info) ;
+            logger.add("subsystem ").addQuoted(getName()).add(": color sensor samples recovered") ;
+            logger.endMessage() ;
+        }
+    }
+
+    //
+    // The body of the background thread.  This thread owns the multiplexer and the sensors once it
+    // is started, so the robot thread never touches the I2C bus in this mode.  An error reading the
+    // sensors is logged once until a pass succeeds again, and the thread keeps trying.
+    //
+    private void pollSensors() {
+        boolean failing = false ;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                for(int i = 0 ; i < count_ ; i++) {
+                    select(i) ;
+
+                    Color c = getColor() ;
+                    int p = read_proximity_ ? getProximity() : 0 ;
+                    int ir = read_ir_ ? getIR() : 0 ;
+
+                    samples_.set(i, new Sample(c, p, ir, Timer.getFPGATimestamp())) ;
+                }
+
+                last_pass_ = Timer.getFPGATimestamp() ;
+                failing = false ;
+            }
+            catch(Exception ex) {
+                //
+                // The multiplexer may not hold the channel we think it does, so select it again next time
+                //
+                which_ = -1 ;
+
+                if (!failing) {
+                    failing = true ;
+                    MessageLogger logger = getRobot().getMessageLogger() ;
+                    logger.startMessage(MessageType.Error) ;
+                    logger.add("subsystem ").addQuoted(getName()).add(": reading the color sensors failed - ").add(ex.getMessage()) ;
+                    logger.endMessage() ;
+                }
+            }
+
+            try {
+                Thread.sleep(poll_period_ms_) ;
+            }
+            catch(InterruptedException ex) {
+                break ;
+            }
+        }
+    }
+
     private void init(int which) {
         select(which) ;
         
@@ -1,5 +1,7 @@
 package org.xero1425.base.motors ;
 
+import org.xero1425.base.InputLog;
+
 import com.ctre.phoenix.motorcontrol.can.TalonFX;
 
 /// \file
@@ -16,6 +18,15 @@ public abstract class MotorController
     // The PDP channel for the motor
     private int pdp_channel_ ;
 
+    // The input log channels for the encoder position and velocity, created on first use
+    private InputLog.Channel position_input_ ;
+    private InputLog.Channel velocity_input_ ;
+
+    /// \brief The control modes given to the OutputFilter for writes to the motor controller
+    protected static final int OutputPercent = 0 ;
+    protected static final int OutputPosition = 1 ;
+    protected static final int OutputVelocity = 2 ;
+
     /// \brief Property name for property used for motor power in a simulation
     public final static String SimPowerParamName = "Power" ;
 
@@ -190,4 +201,77 @@ public abstract class MotorController
     }
 
     public abstract TalonFX getTalonFX() throws BadMotorRequestException ;
+
+    /// \brief Returns true if the motor controller can execute a precomputed trajectory without the robot code
+    /// supplying each point in the robot loop.
+    /// \returns true if the motor controller can execute a precomputed trajectory
+    public boolean hasTrajectory() throws BadMotorRequestException {
+        return false ;
+    }
+
+    /// \brief Start executing a precomputed trajectory on the motor controller.  The PID parameters used to follow
+    /// the trajectory must be set with setPID() using the Position type before calling this method.  The velocity and
+    /// feed forward of each point are applied by the motor controller, so the feed forward parameter to setPID() should
+    /// generally be zero.
+    /// \param traj the trajectory to execute
+    public void startTrajectory(MotorTrajectory traj) throws BadMotorRequestException, MotorRequestFailedException {
+        throw new BadMotorRequestException(this, "motor does not support startTrajectory()") ;
+    }
+
+    /// \brief Returns true when the motor controller has executed every point of the trajectory.  The motor controller
+    /// continues to hold the position of the last point until stopTrajectory() is called or the motor power is set.
+    /// \returns true when the motor controller has executed every point of the trajectory
+    public boolean isTrajectoryComplete() throws BadMotorRequestException, MotorRequestFailedException {
+        throw new BadMotorRequestException(this, "motor does not support isTrajectoryComplete()") ;
+    }
+
+    /// \brief Returns the position of the trajectory point being executed by the motor controller
+    /// \returns the position of the trajectory point being executed in encoder ticks
+    public double getTrajectorySetpoint() throws BadMotorRequestException, MotorRequestFailedException {
+        throw new BadMotorRequestException(this, "motor does not support getTrajectorySetpoint()") ;
+    }
+
+    /// \brief Stop executing a trajectory and set the motor power to zero
+    public void stopTrajectory() throws BadMotorRequestException, MotorRequestFailedException {
+        throw new BadMotorRequestException(this, "motor does not support stopTrajectory()") ;
+    }
+
+    /// \brief Returns true if encoder values are supplied by an input replay rather than the hardware.  When this
+    /// is true, derived classes should not read the encoder from the hardware.
+    /// \returns true if encoder values are supplied by an input replay
+    protected boolean isReplaying() {
+        return InputLog.isReplaying() ;
+    }
+
+    /// \brief Pass an encoder position read from the hardware through the input log.  When inputs are being captured, the
+    /// value is recorded.  When inputs are being replayed, the recorded value is returned.
+    /// \param value the position read from the hardware
+    /// \returns the position the robot code should use
+    protected double inputPosition(double value) {
+        if (position_input_ == null) {
+            InputLog log = InputLog.getInstance() ;
+            if (log == null)
+                return value ;
+
+            position_input_ = log.getChannel("motor:" + name_ + ":position") ;
+        }
+
+        return position_input_.input(value) ;
+    }
+
+    /// \brief Pass an encoder velocity read from the hardware through the input log.  When inputs are being captured, the
+    /// value is recorded.  When inputs are being replayed, the recorded value is returned.
+    /// \param value the velocity read from the hardware
+    /// \returns the velocity the robot code should use
+    protected double inputVelocity(double value) {
+        if (velocity_input_ == null) {
+            InputLog log = InputLog.getInstance() ;
+            if (log == null)
+                return value ;
+
+            velocity_input_ = log.getChannel("motor:" + name_ + ":velocity") ;
+        }
+
+        return velocity_input_.input(value) ;
+    }
 }
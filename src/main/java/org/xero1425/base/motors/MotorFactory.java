@@ -4,9 +4,12 @@ import java.util.Map;
 import java.util.HashMap;
 
 import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.BootTrace;
+import org.xero1425.misc.DeviceConfigTracker;
 import org.xero1425.misc.ISettingsSupplier;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
+import org.xero1425.misc.OutputFilter;
 import org.xero1425.misc.SettingsValue;
 import org.xero1425.misc.SettingsValue.SettingsType;
 
@@ -35,6 +38,14 @@ public class MotorFactory {
     private static final String BrakeMode = "brake" ;
     private static final String CoastMode = "coast" ;
 
+    private static final String OutputFilter = "system:motors:output-filter" ;
+    private static final String OutputFilterEnabled = "system:motors:output-filter:enabled" ;
+    private static final String OutputFilterDeadband = "system:motors:output-filter:deadband" ;
+    private static final String OutputFilterRefresh = "system:motors:output-filter:refresh" ;
+
+    private static final String ConfigSkipMatching = "system:motors:config:skip-matching" ;
+    private static final String ConfigParallel = "system:motors:config:parallel" ;
+
     /// \brief This method creates a new motor factory.
     /// \param logger the message logger for the robot
     /// \param settings the settings file for the robot
@@ -43,6 +54,60 @@ public class MotorFactory {
         settings_ = settings;
         motors_ = new HashMap<String, Map<Integer, MotorController>>();
         motors_.put("", new HashMap<Integer, MotorController>()) ;
+
+        configureOutputFilter() ;
+        configureDevices() ;
+
+        settings_.subscribe(OutputFilter, (s, keys) -> configureOutputFilter()) ;
+    }
+
+    //
+    // Configure how CAN devices are configured at startup, shared by all motors including the swerve
+    // modules.  Devices holding their configuration skip it, and the swerve modules are configured in
+    // parallel, unless the settings file says otherwise.
+    //
+    private void configureDevices() {
+        boolean skip = true ;
+        boolean parallel = true ;
+
+        try {
+            if (settings_.isDefined(ConfigSkipMatching))
+                skip = settings_.get(ConfigSkipMatching).getBoolean() ;
+
+            if (settings_.isDefined(ConfigParallel))
+                parallel = settings_.get(ConfigParallel).getBoolean() ;
+        }
+        catch(Exception ex) {
+            logger_.startMessage(MessageType.Error).add("cannot read motor config settings - ").add(ex.getMessage()).endMessage() ;
+        }
+
+        DeviceConfigTracker.configure(skip, parallel) ;
+    }
+
+    //
+    // Configure the filtering of redundant motor controller writes, shared by all motors including the
+    // swerve modules.  Filtering is enabled with the default values unless the settings file says otherwise.
+    //
+    private void configureOutputFilter() {
+        boolean enabled = true ;
+        double deadband = 0.001 ;
+        double refresh = 0.1 ;
+
+        try {
+            if (settings_.isDefined(OutputFilterEnabled))
+                enabled = settings_.get(OutputFilterEnabled).getBoolean() ;
+
+            if (settings_.isDefined(OutputFilterDeadband))
+                deadband = settings_.get(OutputFilterDeadband).getDouble() ;
+
+            if (settings_.isDefined(OutputFilterRefresh))
+                refresh = settings_.get(OutputFilterRefresh).getDouble() ;
+        }
+        catch(Exception ex) {
+            logger_.startMessage(MessageType.Error).add("cannot read motor output filter settings - ").add(ex.getMessage()).endMessage() ;
+        }
+
+        OutputFilter.configure(enabled, deadband, refresh) ;
     }
 
     /// \brief This method creates a new motor based on the settings in the settings file.
@@ -51,6 +116,7 @@ public class MotorFactory {
     /// \param id the ID of the motor in the settings file
     public MotorController createMotor(String name, String id) {
         MotorController ret = null;
+        int span = BootTrace.begin("motor " + name) ;
         try {
             String typechk = id + ":type" ;
 
@@ -160,6 +226,9 @@ public class MotorFactory {
             logger_.logStackTrace(ex.getStackTrace());
             ret = null;
         }
+        finally {
+            BootTrace.end(span) ;
+        }
 
         return ret;
     }
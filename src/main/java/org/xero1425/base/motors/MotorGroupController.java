@@ -284,4 +284,48 @@ public class MotorGroupController extends MotorController
 
         return motors_.get(0).getTalonFX() ;
     }
+
+    /// \brief Returns true if the motor controller can execute a precomputed trajectory
+    /// \returns true if the motor controller can execute a precomputed trajectory
+    public boolean hasTrajectory() throws BadMotorRequestException {
+        if (motors_.size() == 0)
+            throw new BadMotorRequestException(this, "request made to empty MotorGroupController") ;
+
+        return motors_.get(0).hasTrajectory() ;
+    }
+
+    /// \brief Start executing a precomputed trajectory on the first motor controller.  The other motors follow it.
+    /// \param traj the trajectory to execute
+    public void startTrajectory(MotorTrajectory traj) throws BadMotorRequestException, MotorRequestFailedException {
+        if (motors_.size() == 0)
+            throw new BadMotorRequestException(this, "request made to empty MotorGroupController") ;
+
+        motors_.get(0).startTrajectory(traj) ;
+    }
+
+    /// \brief Returns true when the motor controller has executed every point of the trajectory
+    /// \returns true when the motor controller has executed every point of the trajectory
+    public boolean isTrajectoryComplete() throws BadMotorRequestException, MotorRequestFailedException {
+        if (motors_.size() == 0)
+            throw new BadMotorRequestException(this, "request made to empty MotorGroupController") ;
+
+        return motors_.get(0).isTrajectoryComplete() ;
+    }
+
+    /// \brief Returns the position of the trajectory point being executed by the motor controller
+    /// \returns the position of the trajectory point being executed in encoder ticks
+    public double getTrajectorySetpoint() throws BadMotorRequestException, MotorRequestFailedException {
+        if (motors_.size() == 0)
+            throw new BadMotorRequestException(this, "request made to empty MotorGroupController") ;
+
+        return motors_.get(0).getTrajectorySetpoint() ;
+    }
+
+    /// \brief Stop executing a trajectory and set the motor power to zero
+    public void stopTrajectory() throws BadMotorRequestException, MotorRequestFailedException {
+        if (motors_.size() == 0)
+            throw new BadMotorRequestException(this, "request made to empty MotorGroupController") ;
+
+        motors_.get(0).stopTrajectory() ;
+    }
 } ;
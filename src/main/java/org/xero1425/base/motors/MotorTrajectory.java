@@ -0,0 +1,94 @@
+package org.xero1425.base.motors ;
+
+import java.util.Arrays ;
+
+/// \file
+
+/// \brief This class is a precomputed trajectory that is executed by a motor controller rather than by the
+/// robot code.  The trajectory is a series of points evenly spaced in time.  Each point gives the position and
+/// velocity of the motor and an arbitrary feed forward value that is added to the output of the PID loop in the
+/// motor controller.  The positions are in encoder ticks, the velocities are in encoder ticks per second, and the feed
+/// forward is a percent output between -1 and 1.  The motor controller converts these to its own native units.
+public class MotorTrajectory
+{
+    // The time between points in milliseconds
+    private int period_ ;
+
+    // The number of points in the trajectory
+    private int count_ ;
+
+    // The position, velocity, and feed forward for each point
+    private double [] position_ ;
+    private double [] velocity_ ;
+    private double [] feedforward_ ;
+
+    /// \brief create a new empty trajectory
+    /// \param period the time between points in milliseconds
+    /// \param capacity the expected number of points in the trajectory
+    public MotorTrajectory(int period, int capacity) {
+        period_ = period ;
+        count_ = 0 ;
+
+        capacity = Math.max(capacity, 1) ;
+        position_ = new double[capacity] ;
+        velocity_ = new double[capacity] ;
+        feedforward_ = new double[capacity] ;
+    }
+
+    /// \brief add a point to the end of the trajectory
+    /// \param pos the position in encoder ticks
+    /// \param vel the velocity in encoder ticks per second
+    /// \param ff the feed forward as a percent output
+    public void add(double pos, double vel, double ff) {
+        if (count_ == position_.length) {
+            int size = position_.length * 2 ;
+            position_ = Arrays.copyOf(position_, size) ;
+            velocity_ = Arrays.copyOf(velocity_, size) ;
+            feedforward_ = Arrays.copyOf(feedforward_, size) ;
+        }
+
+        position_[count_] = pos ;
+        velocity_[count_] = vel ;
+        feedforward_[count_] = ff ;
+        count_++ ;
+    }
+
+    /// \brief returns the time between points in milliseconds
+    /// \returns the time between points in milliseconds
+    public int getPeriod() {
+        return period_ ;
+    }
+
+    /// \brief returns the number of points in the trajectory
+    /// \returns the number of points in the trajectory
+    public int size() {
+        return count_ ;
+    }
+
+    /// \brief returns the time to execute the trajectory in seconds
+    /// \returns the time to execute the trajectory in seconds
+    public double getDuration() {
+        return count_ * period_ / 1000.0 ;
+    }
+
+    /// \brief returns the position of a point in encoder ticks
+    /// \param index the index of the point
+    /// \returns the position of a point in encoder ticks
+    public double getPosition(int index) {
+        return position_[index] ;
+    }
+
+    /// \brief returns the velocity of a point in encoder ticks per second
+    /// \param index the index of the point
+    /// \returns the velocity of a point in encoder ticks per second
+    public double getVelocity(int index) {
+        return velocity_[index] ;
+    }
+
+    /// \brief returns the feed forward of a point as a percent output
+    /// \param index the index of the point
+    /// \returns the feed forward of a point as a percent output
+    public double getFeedForward(int index) {
+        return feedforward_[index] ;
+    }
+}
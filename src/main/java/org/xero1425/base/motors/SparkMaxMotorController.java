@@ -8,10 +8,14 @@ import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkMaxLowLevel;
 import com.revrobotics.CANSparkMax.IdleMode;
 
+import org.xero1425.misc.OutputFilter;
+
 import edu.wpi.first.hal.SimBoolean;
 import edu.wpi.first.hal.SimDevice;
 import edu.wpi.first.hal.SimDouble;
+import edu.wpi.first.wpilibj.Notifier;
 import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
 
 /// \file
 
@@ -34,6 +38,13 @@ public class SparkMaxMotorController extends MotorController
     private SparkMaxPIDController pid_ ;
     private PidType ptype_ ;
 
+    private Notifier traj_notifier_ ;                   // Sends trajectory setpoints independent of the robot loop
+    private MotorTrajectory traj_ ;                     // The trajectory being executed
+    private double traj_start_ ;                        // The FPGA time the trajectory started
+    private volatile int traj_index_ ;                  // The index of the last point sent to the motor controller
+    private volatile boolean traj_done_ ;               // If true, the last point has been sent
+    private OutputFilter output_ ;                      // Skips writes that do not change the motor controller output
+
     private SimDevice sim_ ;
     private SimDouble sim_power_ ;
     private SimDouble sim_encoder_ ;
@@ -60,6 +71,7 @@ public class SparkMaxMotorController extends MotorController
         brushless_ = brushless ;
         pid_ = null ;
         ptype_ = PidType.None ;
+        output_ = new OutputFilter() ;
 
         if (RobotBase.isSimulation()) {
             boolean usesticks = false ;
@@ -161,9 +173,9 @@ public class SparkMaxMotorController extends MotorController
         REVLibError code = REVLibError.kOk ;
 
         if (pid_ != null) {
-            if (ptype_ == PidType.Position)
+            if (ptype_ == PidType.Position && output_.write(OutputPosition, target))
                 code = pid_.setReference(target, CANSparkMax.ControlType.kPosition) ;
-            else if (ptype_ == PidType.Velocity)
+            else if (ptype_ == PidType.Velocity && output_.write(OutputVelocity, target))
                 code = pid_.setReference(target, CANSparkMax.ControlType.kVelocity) ;
             
             if (code != REVLibError.kOk)
@@ -220,9 +232,11 @@ public class SparkMaxMotorController extends MotorController
     /// \brief Set the motor power
     /// \param percent the motor power to assign to the motor     
     public void set(double percent) {
+        stopNotifier() ;
+
         if (sim_ != null) {
             sim_power_.set(percent) ;
-        } else {
+        } else if (output_.write(OutputPercent, percent)) {
             controller_.set(percent) ;
         }
     }
@@ -332,7 +346,10 @@ public class SparkMaxMotorController extends MotorController
 
         double ret = 0.0 ;
 
-        if (sim_ != null) {
+        if (isReplaying()) {
+            ret = 0.0 ;
+        }
+        else if (sim_ != null) {
             throw new BadMotorRequestException(this, "cannot use velocity from the motor controller when simulating") ;
         }
         else {
@@ -343,7 +360,7 @@ public class SparkMaxMotorController extends MotorController
             ret = encoder_.getVelocity() * RPM2TicksPer100MS ;
         }
 
-        return ret ;
+        return inputVelocity(ret) ;
     }
 
     /// \brief Returns the position of the motor in encoder ticks
@@ -354,13 +371,15 @@ public class SparkMaxMotorController extends MotorController
         if (!brushless_)
             throw new BadMotorRequestException(this, "brushed motor does not support getPosition()") ;
 
-        if (sim_ != null) {
+        if (isReplaying()) {
+            ret = 0 ;
+        } else if (sim_ != null) {
             ret = sim_encoder_.get() ;
         } else {
             ret = encoder_.getPosition() * TicksPerRevolutionValue ;
         }
 
-        return ret ;
+        return inputPosition(ret) ;
     }
 
     /// \brief Returns the number of ticks per revolution for the motor if it has an embedded encoder
@@ -435,4 +454,92 @@ public class SparkMaxMotorController extends MotorController
     public TalonFX getTalonFX() throws BadMotorRequestException {
         return null ;
     }
+
+    /// \brief Returns true if the motor controller can execute a precomputed trajectory.  The SparkMax does not
+    /// have a trajectory buffer, so the points are sent from a notifier thread at the trajectory period and the
+    /// position PID in the SparkMax follows them at 1 kHz.  This keeps the motion smooth when the robot loop overruns.
+    /// \returns true if the motor controller can execute a precomputed trajectory
+    public boolean hasTrajectory() throws BadMotorRequestException {
+        return sim_ == null && brushless_ ;
+    }
+
+    /// \brief Start executing a precomputed trajectory
+    /// \param traj the trajectory to execute
+    public void startTrajectory(MotorTrajectory traj) throws BadMotorRequestException, MotorRequestFailedException {
+        if (!hasTrajectory())
+            throw new BadMotorRequestException(this, "motor does not support startTrajectory()") ;
+
+        if (pid_ == null || ptype_ != PidType.Position)
+            throw new BadMotorRequestException(this, "calling startTrajectory() before calling setPID() with a position PID") ;
+
+        if (traj.size() == 0)
+            throw new BadMotorRequestException(this, "calling startTrajectory() with an empty trajectory") ;
+
+        stopNotifier() ;
+        output_.invalidate() ;
+
+        if (traj_notifier_ == null)
+            traj_notifier_ = new Notifier(() -> runTrajectory()) ;
+
+        traj_ = traj ;
+        traj_index_ = 0 ;
+        traj_done_ = false ;
+        traj_start_ = Timer.getFPGATimestamp() ;
+
+        runTrajectory() ;
+        traj_notifier_.startPeriodic(traj.getPeriod() / 1000.0) ;
+    }
+
+    /// \brief Returns true when every point of the trajectory has been sent to the motor controller
+    /// \returns true when every point of the trajectory has been sent to the motor controller
+    public boolean isTrajectoryComplete() throws BadMotorRequestException {
+        if (traj_ == null)
+            throw new BadMotorRequestException(this, "calling isTrajectoryComplete() before calling startTrajectory()") ;
+
+        return traj_done_ ;
+    }
+
+    /// \brief Returns the position of the trajectory point being executed by the motor controller
+    /// \returns the position of the trajectory point being executed in encoder ticks
+    public double getTrajectorySetpoint() throws BadMotorRequestException {
+        if (traj_ == null)
+            throw new BadMotorRequestException(this, "calling getTrajectorySetpoint() before calling startTrajectory()") ;
+
+        return traj_.getPosition(traj_index_) ;
+    }
+
+    /// \brief Stop executing a trajectory and set the motor power to zero
+    public void stopTrajectory() throws BadMotorRequestException {
+        set(0.0) ;
+    }
+
+    //
+    // Called from the notifier thread to send the trajectory point for the current time to the
+    // position PID in the motor controller
+    //
+    private void runTrajectory() {
+        MotorTrajectory traj = traj_ ;
+        if (traj == null || traj_done_)
+            return ;
+
+        int index = (int)((Timer.getFPGATimestamp() - traj_start_) * 1000.0 / traj.getPeriod()) ;
+        if (index >= traj.size() - 1) {
+            index = traj.size() - 1 ;
+            traj_done_ = true ;
+        }
+
+        pid_.setReference(traj.getPosition(index) / TicksPerRevolutionValue, CANSparkMax.ControlType.kPosition, 0, 
+                          traj.getFeedForward(index), SparkMaxPIDController.ArbFFUnits.kPercentOut) ;
+        traj_index_ = index ;
+    }
+
+    //
+    // Stop sending trajectory points to the motor controller
+    //
+    private void stopNotifier() {
+        if (traj_notifier_ != null) {
+            traj_notifier_.stop() ;
+            traj_done_ = true ;
+        }
+    }
 } ;
@@ -8,6 +8,8 @@ import com.ctre.phoenix.ErrorCode;
 /// the TalonSRX, and the VictorSPX.
 ///
 
+import com.ctre.phoenix.motion.BufferedTrajectoryPointStream;
+import com.ctre.phoenix.motion.TrajectoryPoint;
 import com.ctre.phoenix.motorcontrol.ControlMode;
 import com.ctre.phoenix.motorcontrol.InvertType;
 import com.ctre.phoenix.motorcontrol.StatusFrameEnhanced;
@@ -15,6 +17,9 @@ import com.ctre.phoenix.motorcontrol.SupplyCurrentLimitConfiguration;
 import com.ctre.phoenix.motorcontrol.TalonFXControlMode;
 import com.ctre.phoenix.motorcontrol.can.TalonFX;
 
+import org.xero1425.misc.DeviceConfigTracker;
+import org.xero1425.misc.OutputFilter;
+
 import edu.wpi.first.hal.SimBoolean;
 import edu.wpi.first.hal.SimDevice;
 import edu.wpi.first.hal.SimDouble;
@@ -27,9 +32,15 @@ public class TalonFXMotorController extends MotorController
 {
     private final static double TicksPerRevolutionValue = 2048.0 ;
 
+    // The number of trajectory points that must be in the motor controller before it starts a trajectory
+    private final static int MinBufferedPoints = 10 ;
+
     private TalonFX controller_ ;                       // The base motor controller object
     private boolean inverted_ ;                         // If true, the motor is inverted
     private PidType type_ ;                             // For a PID in the controller, the type of PID (position vs velocity)
+    private BufferedTrajectoryPointStream stream_ ;     // The trajectory points streamed to the motor controller
+    private OutputFilter output_ ;                      // Skips writes that do not change the motor controller output
+    private boolean signed_ ;                           // If true, the motor controller holds the configuration signature
 
     private SimDevice sim_ ;                            // The simulated device during simulation
     private SimDouble sim_power_ ;                      // The power during a simulation, picked up by the models
@@ -43,6 +54,12 @@ public class TalonFXMotorController extends MotorController
     /// \brief the timeout for requests to the
     private final int ControllerTimeout = 250 ;
 
+    // The voltage for voltage compensation
+    private final static double VoltageCompensation = 11.0 ;
+
+    // The custom parameter on the motor controller that holds the signature of the stored configuration
+    private final static int ConfigSignatureParam = 0 ;
+
     /// \brief Create a new TalonFX Motor Controller.
     /// \param name the name of this motor
     /// \param index the CAN address of this motor controller
@@ -51,6 +68,8 @@ public class TalonFXMotorController extends MotorController
 
         inverted_ = false ;
         type_ = PidType.None ;
+        output_ = new OutputFilter() ;
+        signed_ = false ;
 
         if (RobotBase.isSimulation()) {
             String simname = SimDeviceName ;
@@ -73,10 +92,23 @@ public class TalonFXMotorController extends MotorController
             sim_power_ = null ;
             sim_encoder_ = null ;
 
+            long start = System.nanoTime() ;
             controller_ = new TalonFX(canid, bus) ;
-            controller_.configFactoryDefault() ;
-            
-            controller_.configVoltageCompSaturation(11.0, ControllerTimeout) ;
+
+            //
+            // The factory reset and the voltage compensation are stored in the motor controller.  If the
+            // motor controller holds the signature for them, they are already in place.  The signature only
+            // covers this configuration, so it is cleared by any later stored configuration write (see
+            // configChanged()).  Motors that get more configuration are reset to factory defaults on every boot.
+            //
+            int signature = DeviceConfigTracker.signature(VoltageCompensation) ;
+            boolean skip = DeviceConfigTracker.isSkipEnabled() && controller_.configGetCustomParam(ConfigSignatureParam, ControllerTimeout) == signature ;
+            if (!skip) {
+                controller_.configFactoryDefault() ;
+                controller_.configVoltageCompSaturation(VoltageCompensation, ControllerTimeout) ;
+                controller_.configSetCustomParam(signature, ConfigSignatureParam, ControllerTimeout) ;
+            }
+            signed_ = true ;
             controller_.enableVoltageCompensation(true);
 
             //
@@ -91,11 +123,14 @@ public class TalonFXMotorController extends MotorController
             }
 
             controller_.setStatusFramePeriod(StatusFrameEnhanced.Status_2_Feedback0, 20, ControllerTimeout) ;
+
+            DeviceConfigTracker.record(name, start, skip) ;
         }
     }
 
     public void setNeutralDeadband(double value) {
         if (controller_ != null) {
+            configChanged() ;
             controller_.configNeutralDeadband(value) ;
         }
     }
@@ -124,10 +159,14 @@ public class TalonFXMotorController extends MotorController
         if (type_ == PidType.None)
             throw new BadMotorRequestException(this, "calling setTarget() before calling setPID()");
 
-        if (type_ == PidType.Velocity)
-            controller_.set(TalonFXControlMode.Velocity, target) ;
-        else if (type_ == PidType.Position)
-            controller_.set(TalonFXControlMode.Position, target) ;
+        if (type_ == PidType.Velocity) {
+            if (output_.write(OutputVelocity, target))
+                controller_.set(TalonFXControlMode.Velocity, target) ;
+        }
+        else if (type_ == PidType.Position) {
+            if (output_.write(OutputPosition, target))
+                controller_.set(TalonFXControlMode.Position, target) ;
+        }
     }
 
     /// \brief Set the PID parameters for a PID loop running on the motor controller
@@ -146,6 +185,7 @@ public class TalonFXMotorController extends MotorController
         else {
             ErrorCode code ;
 
+            configChanged() ;
             code = controller_.config_kP(0, p, ControllerTimeout) ;
             if (code != ErrorCode.OK)
                 throw new MotorRequestFailedException(this, "CTRE config_kP() call failed during setPID() call. Code: " + code.toString(), code) ;
@@ -170,8 +210,19 @@ public class TalonFXMotorController extends MotorController
         }
     }
 
+    // Called before writing stored configuration that is not covered by the signature.  The signature is
+    // cleared so the next boot resets the motor controller to factory defaults rather than keeping the
+    // values written here after the code or the settings change.
+    private void configChanged() {
+        if (signed_) {
+            signed_ = false ;
+            controller_.configSetCustomParam(0, ConfigSignatureParam, 0) ;
+        }
+    }
+
     /// \brief Stop the PID loop in the motor controller
     public void stopPID() throws BadMotorRequestException {
+        output_.force(OutputPercent, 0.0) ;
         controller_.set(ControlMode.PercentOutput, 0.0) ;
     }
 
@@ -181,7 +232,7 @@ public class TalonFXMotorController extends MotorController
         if (sim_ != null) {
             sim_power_.set(percent) ;
         }
-        else {
+        else if (output_.write(OutputPercent, percent)) {
             controller_.set(ControlMode.PercentOutput, percent) ;
         }
     }
@@ -286,8 +337,13 @@ public class TalonFXMotorController extends MotorController
     /// \brief Return the velocity of the motor from the PID loop running in the controller
     /// \returns the velocity of the motor from the PID loop running in the controller
     public double getVelocity() throws BadMotorRequestException, MotorRequestFailedException {
-        double ret = controller_.getSelectedSensorVelocity() * 10 ;
-        return ret ;
+        double ret = 0.0 ;
+
+        if (!isReplaying()) {
+            ret = controller_.getSelectedSensorVelocity() * 10 ;
+        }
+
+        return inputVelocity(ret) ;
     }
 
     /// \brief Returns the position of the motor in motor units.
@@ -295,7 +351,10 @@ public class TalonFXMotorController extends MotorController
     public double getPosition() throws BadMotorRequestException {
         double ret = 0 ;
 
-        if (sim_ != null) {
+        if (isReplaying()) {
+            ret = 0 ;
+        }
+        else if (sim_ != null) {
             ret = (int)sim_encoder_.getValue().getDouble() ;
         }
         else {
@@ -303,7 +362,7 @@ public class TalonFXMotorController extends MotorController
             ret = fx.getSelectedSensorPosition() ;
         }
 
-        return ret ;
+        return inputPosition(ret) ;
     }
 
     /// \brief Returns the number of ticks per revolution for the motor if it has an embedded encoder
@@ -329,6 +388,7 @@ public class TalonFXMotorController extends MotorController
         if (sim_ == null) {
             TalonFX fx = (TalonFX)controller_ ;
             SupplyCurrentLimitConfiguration cfg = new SupplyCurrentLimitConfiguration(true, limit, limit, 1) ;
+            configChanged() ;
             fx.configSupplyCurrentLimit(cfg) ;
         }
     }
@@ -338,6 +398,7 @@ public class TalonFXMotorController extends MotorController
     public void setOpenLoopRampRate(double limit) throws BadMotorRequestException {
         if (sim_ == null) {
             TalonFX fx = (TalonFX)controller_ ;
+            configChanged() ;
             fx.configOpenloopRamp(limit, 20) ;
         }
     }
@@ -370,6 +431,91 @@ public class TalonFXMotorController extends MotorController
     }
 
     public TalonFX getTalonFX() throws BadMotorRequestException {
+        //
+        // The caller may command and configure the motor controller directly, so the next write must be sent
+        // and the stored configuration no longer matches the signature
+        //
+        output_.invalidate() ;
+        if (controller_ != null) {
+            configChanged() ;
+        }
         return controller_ ;
     }
+
+    /// \brief Returns true if the motor controller can execute a precomputed trajectory.  The TalonFX runs the
+    /// trajectory from its motion profile buffer, interpolating between points at 1 kHz.
+    /// \returns true if the motor controller can execute a precomputed trajectory
+    public boolean hasTrajectory() throws BadMotorRequestException {
+        return sim_ == null ;
+    }
+
+    /// \brief Start executing a precomputed trajectory.  The points are written to a buffered stream that the
+    /// CTRE library feeds into the motor controller in the background, so the robot loop does not need to keep
+    /// the motor controller buffer full.
+    /// \param traj the trajectory to execute
+    public void startTrajectory(MotorTrajectory traj) throws BadMotorRequestException, MotorRequestFailedException {
+        if (sim_ != null)
+            throw new BadMotorRequestException(this, "cannot use controller trajectories when simulating") ;
+
+        if (type_ != PidType.Position)
+            throw new BadMotorRequestException(this, "calling startTrajectory() before calling setPID() with a position PID") ;
+
+        if (traj.size() == 0)
+            throw new BadMotorRequestException(this, "calling startTrajectory() with an empty trajectory") ;
+
+        if (stream_ == null)
+            stream_ = new BufferedTrajectoryPointStream() ;
+
+        ErrorCode code = stream_.Clear() ;
+        if (code != ErrorCode.OK)
+            throw new MotorRequestFailedException(this, "CTRE Clear() call failed during startTrajectory() call. Code: " + code.toString(), code) ;
+
+        for(int i = 0 ; i < traj.size() ; i++) {
+            TrajectoryPoint pt = new TrajectoryPoint() ;
+            pt.position = traj.getPosition(i) ;
+            pt.velocity = traj.getVelocity(i) / 10.0 ;
+            pt.arbFeedFwd = traj.getFeedForward(i) ;
+            pt.timeDur = traj.getPeriod() ;
+            pt.profileSlotSelect0 = 0 ;
+            pt.zeroPos = false ;
+            pt.useAuxPID = false ;
+            pt.isLastPoint = (i == traj.size() - 1) ;
+
+            code = stream_.Write(pt) ;
+            if (code != ErrorCode.OK)
+                throw new MotorRequestFailedException(this, "CTRE Write() call failed during startTrajectory() call. Code: " + code.toString(), code) ;
+        }
+
+        output_.invalidate() ;
+        code = controller_.startMotionProfile(stream_, MinBufferedPoints, ControlMode.MotionProfile) ;
+        if (code != ErrorCode.OK)
+            throw new MotorRequestFailedException(this, "CTRE startMotionProfile() call failed during startTrajectory() call. Code: " + code.toString(), code) ;
+    }
+
+    /// \brief Returns true when the motor controller has executed every point of the trajectory
+    /// \returns true when the motor controller has executed every point of the trajectory
+    public boolean isTrajectoryComplete() throws BadMotorRequestException {
+        if (sim_ != null)
+            throw new BadMotorRequestException(this, "cannot use controller trajectories when simulating") ;
+
+        return controller_.isMotionProfileFinished() ;
+    }
+
+    /// \brief Returns the position of the trajectory point being executed by the motor controller
+    /// \returns the position of the trajectory point being executed in encoder ticks
+    public double getTrajectorySetpoint() throws BadMotorRequestException {
+        if (sim_ != null)
+            throw new BadMotorRequestException(this, "cannot use controller trajectories when simulating") ;
+
+        return controller_.getActiveTrajectoryPosition() ;
+    }
+
+    /// \brief Stop executing a trajectory and set the motor power to zero
+    public void stopTrajectory() throws BadMotorRequestException {
+        if (sim_ == null) {
+            output_.force(OutputPercent, 0.0) ;
+            controller_.set(ControlMode.PercentOutput, 0.0) ;
+            controller_.clearMotionProfileTrajectories() ;
+        }
+    }
 } ;
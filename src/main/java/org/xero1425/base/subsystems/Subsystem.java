@@ -4,15 +4,18 @@ import java.util.List;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 
+import org.xero1425.base.LatencyTracer;
 import org.xero1425.base.LoopType;
 import org.xero1425.base.XeroRobot;
 import org.xero1425.base.actions.Action;
 import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.BootTrace;
 import org.xero1425.misc.ISettingsSupplier;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
 import org.xero1425.misc.MissingParameterException;
 import org.xero1425.misc.SettingsValue;
+import org.xero1425.websrv.StatusSnapshot;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 /// \file
@@ -110,6 +113,11 @@ public class Subsystem {
     //
     private boolean verbose_ ;
 
+    //
+    // The boot trace span for creating this subsystem, ended when the subsystem is added to its parent
+    //
+    private int boot_span_ ;
+
     /// \brief used to give the display type for a value
     public enum DisplayType {
         Always,                 ///< Always display this value
@@ -118,6 +126,7 @@ public class Subsystem {
     } ;
 
     private Subsystem(XeroRobot robot, final Subsystem parent, final String name) {
+        boot_span_ = BootTrace.begin("subsystem " + name) ;
         name_ = name;
         parent_ = parent;
         children_ = new ArrayList<Subsystem>();
@@ -168,20 +177,24 @@ public class Subsystem {
         this(parent.getRobot(), parent, name) ;
     }
 
-    public String getStatus() {
-        return "This subsystem is not publishing status" ;
+    /// \brief store the status of this subsystem in a status snapshot.
+    /// This is called on the robot thread once per robot loop when the status server is enabled.  Derived
+    /// classes override this to store values with StatusSnapshot.put().  Values should be stored as numbers,
+    /// booleans, or existing strings.  Formatting text is left to the status server thread.
+    /// \param status the snapshot to store values in
+    public void getStatus(StatusSnapshot status) {
     }
 
-    // public void publishStatus() {
-    //     getRobot().publishSubsystemStatus(getName(), getStatus());
-    //     publishChildSubsystems();
-    // }
+    /// \brief store the status of this subsystem and all of its children in a status snapshot
+    /// \param status the snapshot to store values in
+    public void publishStatus(StatusSnapshot status) {
+        status.select(getName()) ;
+        getStatus(status) ;
 
-    // protected void publishChildSubsystems() {
-    //     for(Subsystem sys : children_) {
-    //         sys.publishStatus(); ;
-    //     }
-    // }
+        for(Subsystem sys : children_) {
+            sys.publishStatus(status) ;
+        }
+    }
 
     /// \brief Return a settings file value associated with this subsystem
     ///
@@ -293,6 +306,14 @@ public class Subsystem {
     /// \param sub the subsystem to add as a child
     public void addChild(final Subsystem sub) throws Exception {
         children_.add(sub);
+        sub.endBootSpan() ;
+    }
+
+    /// \brief end the boot trace span for creating this subsystem.  This is called when the subsystem
+    /// is added to its parent, or for the robot subsystem when it is given to the robot.
+    public void endBootSpan() {
+        BootTrace.end(boot_span_) ;
+        boot_span_ = BootTrace.NoSpan ;
     }
 
     /// \brief initialize the subsystem. 
@@ -364,9 +385,9 @@ public class Subsystem {
                     logger.startMessage(MessageType.Debug, getRobot().getLoggerID()) ;
                     logger.add("subsystem ").addQuoted(getName()) ;
                     logger.add("count", total_cnt_) ;
-                    logger.add("min", fmt_.format(min_time_ * 1000)) ;
-                    logger.add("average", fmt_.format(total_time_ / total_cnt_ * 1000)) ;
-                    logger.add("max", fmt_.format(max_time_ * 1000)) ;
+                    logger.add("min", () -> fmt_.format(min_time_ * 1000)) ;
+                    logger.add("average", () -> fmt_.format(total_time_ / total_cnt_ * 1000)) ;
+                    logger.add("max", () -> fmt_.format(max_time_ * 1000)) ;
                     logger.endMessage();
                 }
             }
@@ -492,10 +513,13 @@ public class Subsystem {
         action_ = act ;
         try {
             //
-            // Now start the new current action
+            // Now start the new current action.  If this is in response to an operator
+            // input being traced, the input has reached the actuators.
             //
-            if (action_ != null)
+            if (action_ != null) {
                 action_.start() ;
+                LatencyTracer.actuated() ;
+            }
         }
         catch(Exception ex) {
             MessageLogger logger = getRobot().getMessageLogger() ;
@@ -74,9 +74,18 @@ public class MotorEncoderGotoAction extends MotorAction {
     // The start position for the action
     private double start_position_ ;
 
+    // The time the plot was started, the profile start time moves when the target is changed
+    private double plot_start_time_ ;
+
+    // If true, the profile is being followed
+    private boolean active_ ;
+
     // The PID controller to follow the plan
     PIDACtrl ctrl_ ;
 
+    // If true, ctrl_ holds the gains for moving down
+    private boolean down_ ;
+
     // The TrapezoidalProfile that is the plan to follow
     IMotionProfile profile_ ;
 
@@ -221,8 +230,16 @@ public class MotorEncoderGotoAction extends MotorAction {
         use_actual_ = b ;
     }
 
+    /// \brief Change the target position.  If the action is moving toward the old target, the motion is
+    /// replanned from the current state of the profile so the new target blends into the existing motion.  If the
+    /// profile cannot be replanned from a moving state, the motion starts over from the current position.
+    /// \param target the new target position
     public void setTarget(double target) throws BadParameterTypeException, MissingParameterException {
         target_ = target ;
+
+        if (active_ && !isDone() && retarget())
+            return ;
+
         setTarget() ;
     }
 
@@ -232,6 +249,7 @@ public class MotorEncoderGotoAction extends MotorAction {
         super.start() ;
         setTarget() ;
         MotorEncoderSubsystem sub = (MotorEncoderSubsystem)getSubsystem();
+        plot_start_time_ = sub.getRobot().getTime() ;
         getSubsystem().startPlot(plot_id_, convertUnits(plot_columns_, sub.getUnits()));
     }
 
@@ -250,6 +268,7 @@ public class MotorEncoderGotoAction extends MotorAction {
 
         if (elapsed > profile_.getTotalTime())
         {
+            active_ = false ;
             setDone() ;
             sub.setPower(0.0) ;
             sub.endPlot(plot_id_);
@@ -263,7 +282,7 @@ public class MotorEncoderGotoAction extends MotorAction {
             sub.setPower(out) ;
 
             Double[] data = new Double[plot_columns_.length] ;
-            data[0] = elapsed ;
+            data[0] = robot.getTime() - plot_start_time_ ;
             data[1] = start_position_ + targetDist ;
             data[2] = position ;
             data[3] = targetVel ;
@@ -279,6 +298,7 @@ public class MotorEncoderGotoAction extends MotorAction {
     /// \brief Cancel the action and set the motor power to zero
     public void cancel() {
         super.cancel() ;
+        active_ = false ;
         getSubsystem().setPower(0.0) ;
         getSubsystem().endPlot(plot_id_);
     }
@@ -316,6 +336,7 @@ public class MotorEncoderGotoAction extends MotorAction {
         double dist = normalizePosition(sub, target_ - sub.getPosition()) ;
         if (Math.abs(dist) < threshold_)
         {
+            active_ = false ;
             setDone() ;
         }
         else
@@ -323,18 +344,62 @@ public class MotorEncoderGotoAction extends MotorAction {
             //
             // Initialize the follower
             //
-            String config = "subsystems:" + sub.getName() + ":follower" ;
-            ISettingsSupplier settings = sub.getRobot().getSettingsSupplier() ;
-            if (dist < 0)
-                ctrl_ = new PIDACtrl(settings, config + ":down", sub.isAngular());
-            else
-                ctrl_ = new PIDACtrl(settings, config + ":up", sub.isAngular()) ;
+            createFollower(dist) ;
 
             // Update the trapezoidal profile based on when we are starting.
             profile_.update(dist, 0, 0) ;
             start_time_ = sub.getRobot().getTime() ;
             start_position_ = sub.getPosition() ;
+            active_ = true ;
         }
     }
 
+    //
+    // Replan the motion from the current state of the profile being followed to the new target.  The
+    // profile is replanned from where the plan says we are, not the measured position, so the follower
+    // sees no step in its target.  Returns false if the profile cannot start from a moving state.
+    //
+    private boolean retarget() throws BadParameterTypeException, MissingParameterException {
+        MotorEncoderSubsystem sub = (MotorEncoderSubsystem)getSubsystem() ;
+        double now = sub.getRobot().getTime() ;
+        double elapsed = now - start_time_ ;
+
+        double pos = start_position_ + profile_.getDistance(elapsed) ;
+        double vel = profile_.getVelocity(elapsed) ;
+        double acc = profile_.getAccel(elapsed) ;
+        double dist = normalizePosition(sub, target_ - pos) ;
+
+        if (!profile_.update(dist, vel, acc, 0.0, 0.0))
+            return false ;
+
+        start_time_ = now ;
+        start_position_ = pos ;
+
+        //
+        // The up and down gains differ, so a new target in the other direction needs the other follower
+        //
+        if ((dist < 0) != down_)
+            createFollower(dist) ;
+
+        if (addhold_)
+            sub.setDefaultAction(new MotorEncoderHoldAction(sub, target_)) ;
+
+        return true ;
+    }
+
+    //
+    // Create the follower with the gains for the direction of the motion
+    //
+    private void createFollower(double dist) throws BadParameterTypeException, MissingParameterException {
+        MotorEncoderSubsystem sub = (MotorEncoderSubsystem)getSubsystem() ;
+        String config = "subsystems:" + sub.getName() + ":follower" ;
+        ISettingsSupplier settings = sub.getRobot().getSettingsSupplier() ;
+
+        down_ = (dist < 0) ;
+        if (down_)
+            ctrl_ = new PIDACtrl(settings, config + ":down", sub.isAngular());
+        else
+            ctrl_ = new PIDACtrl(settings, config + ":up", sub.isAngular()) ;
+    }
+
 }
@@ -277,14 +277,16 @@ public class MotorEncoderSubsystem extends MotorSubsystem
         speedometer_.update(getRobot().getDeltaTime(), pos) ;
 
         MessageLogger logger = getRobot().getMessageLogger()  ;
-        logger.startMessage(MessageType.Debug, getLoggerID()) ;
-        logger.add(getName()) ;
-        logger.add("power", getPower()) ;
-        logger.add("pos", pos, "%.0f") ;
-        logger.add("velocity", speedometer_.getVelocity(), "%.0f");
-        logger.add("accel", speedometer_.getAcceleration(), "%.0f") ;
-        logger.add("ticks", getEncoderRawCount()) ;
-        logger.endMessage();
+        if (logger.isEnabled(MessageType.Debug, getLoggerID())) {
+            logger.startMessage(MessageType.Debug, getLoggerID()) ;
+            logger.add(getName()) ;
+            logger.add("power", getPower()) ;
+            logger.add("pos", pos, "%.0f") ;
+            logger.add("velocity", speedometer_.getVelocity(), "%.0f");
+            logger.add("accel", speedometer_.getAcceleration(), "%.0f") ;
+            logger.add("ticks", getEncoderRawCount()) ;
+            logger.endMessage();
+        }
 
         putDashboard(getName() + "-position", DisplayType.Verbose, pos);
         putDashboard("raw", DisplayType.Verbose, encoder_.getRawCount());
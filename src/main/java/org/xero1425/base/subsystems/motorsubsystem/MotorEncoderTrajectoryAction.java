@@ -0,0 +1,314 @@
+package org.xero1425.base.subsystems.motorsubsystem;
+
+import org.xero1425.base.XeroRobot;
+import org.xero1425.base.motors.BadMotorRequestException;
+import org.xero1425.base.motors.MotorController;
+import org.xero1425.base.motors.MotorRequestFailedException;
+import org.xero1425.base.motors.MotorTrajectory;
+import org.xero1425.base.motors.MotorController.PidType;
+import org.xero1425.misc.IMotionProfile;
+import org.xero1425.misc.ISettingsSupplier;
+import org.xero1425.misc.MessageLogger;
+import org.xero1425.misc.MessageType;
+import org.xero1425.misc.PIDACtrl;
+import org.xero1425.misc.SCurveConfig;
+import org.xero1425.misc.SCurveProfile;
+import org.xero1425.misc.TrapezoidalProfile;
+import org.xero1425.misc.TrapezoidalProfileConfig;
+
+/// \file
+
+/// \brief This action moves the position of a subsystem controlled by a motor to the requested position
+/// by having the motor controller execute the motion.  The motion is planned with a TrapezoidalProfile
+/// or an SCurveProfile when the action starts, and the plan is sampled into a MotorTrajectory of points with a
+/// position, velocity, and feed forward.  The trajectory is given to the motor controller, which follows it
+/// with its own PID loop at 1 kHz.  The robot code only polls the progress of the motion, so the motion is not
+/// disturbed when the robot loop overruns.
+///
+/// If the motor controller cannot execute a trajectory (e.g. when simulating) or the subsystem does not use the
+/// encoder in the motor, the plan is followed in the robot loop with a PIDACtrl in the same way as the
+/// MotorEncoderGotoAction.  The feed forward for each point comes from the kv and ka values of the follower.
+///
+///     "subsystems" : {
+///         "NAME" : {
+///             "goto": {
+///                 "threshold": DOUBLE,
+///                 "maxa": DOUBLE,
+///                 "maxd": DOUBLE,
+///                 "maxv": DOUBLE
+///             },
+///             "follower" : {
+///                 "up" : { "kp" : DOUBLE, "kd" : DOUBLE, "kv" : DOUBLE, "ka" : DOUBLE },
+///                 "down" : { "kp" : DOUBLE, "kd" : DOUBLE, "kv" : DOUBLE, "ka" : DOUBLE }
+///             },
+///             "trajectory" : {
+///                 "period" : INTEGER,     // The time between trajectory points in milliseconds
+///                 "kp" : DOUBLE,          // The PID values for the motor controller, in motor controller units
+///                 "ki" : DOUBLE,
+///                 "kd" : DOUBLE
+///             }
+///         }
+///     }
+///
+public class MotorEncoderTrajectoryAction extends MotorAction {
+
+    // The difference between the current position and the target position below which we consider
+    // the goal being met.
+    private double threshold_ ;
+
+    // The target position
+    private double target_ ;
+
+    // The start time for the action
+    private double start_time_ ;
+
+    // The start position for the action
+    private double start_position_ ;
+
+    // If true, the motor controller is executing the trajectory
+    private boolean onboard_ ;
+
+    // The PID controller to follow the plan when the motor controller cannot
+    private PIDACtrl ctrl_ ;
+
+    // The profile that is the plan to follow
+    private IMotionProfile profile_ ;
+
+    // If true, add a hold action at the end of the action to hold the subsystem in place.
+    private boolean addhold_ ;
+
+    // The plot ID for plotting the motion
+    private int plot_id_ ;
+
+    // The columns to plot
+    private String [] plot_columns_ =
+    {
+        "time (sec)",
+        "tpos (%%units%%)", "apos (%%units%%)",
+        "tvel (%%units%%/s)", "avel (%%units%%/s)",
+        "spos (%%units%%)"
+    } ;
+
+    /// \brief Create the action using the profile limits from the "goto" settings for the subsystem
+    /// \param sub the MotorEncoderSubsystem subsystem for the action
+    /// \param target the target position
+    /// \param addhold if true, hold at the target when the action is complete, on the motor controller if it ran the motion
+    public MotorEncoderTrajectoryAction(MotorEncoderSubsystem sub, double target, boolean addhold)
+            throws Exception {
+        super(sub) ;
+
+        target_ = target ;
+        addhold_ = addhold ;
+
+        ISettingsSupplier settings = sub.getRobot().getSettingsSupplier() ;
+        profile_ = new TrapezoidalProfile(settings, "subsystems:" + sub.getName() + ":goto") ;
+        plot_id_ = sub.initPlot(sub.getName() + "-" + toString(0)) ;
+    }
+
+    /// \brief Create the action with a trapezoidal profile
+    /// \param sub the MotorEncoderSubsystem subsystem for the action
+    /// \param target the target position
+    /// \param c the limits for the profile
+    /// \param addhold if true, hold at the target when the action is complete, on the motor controller if it ran the motion
+    public MotorEncoderTrajectoryAction(MotorEncoderSubsystem sub, double target, TrapezoidalProfileConfig c, boolean addhold)
+            throws Exception {
+        super(sub) ;
+
+        target_ = target ;
+        addhold_ = addhold ;
+
+        profile_ = new TrapezoidalProfile(c) ;
+        plot_id_ = sub.initPlot(sub.getName() + "-" + toString(0)) ;
+    }
+
+    /// \brief Create the action with an s-curve profile
+    /// \param sub the MotorEncoderSubsystem subsystem for the action
+    /// \param target the target position
+    /// \param c the limits for the profile
+    /// \param addhold if true, hold at the target when the action is complete, on the motor controller if it ran the motion
+    public MotorEncoderTrajectoryAction(MotorEncoderSubsystem sub, double target, SCurveConfig c, boolean addhold)
+            throws Exception {
+        super(sub) ;
+
+        target_ = target ;
+        addhold_ = addhold ;
+
+        profile_ = new SCurveProfile(c) ;
+        plot_id_ = sub.initPlot(sub.getName() + "-" + toString(0)) ;
+    }
+
+    /// \brief Returns the distance traveled since the action started
+    /// \returns the distance traveled since the action started
+    public double getDistance() {
+        MotorEncoderSubsystem sub = (MotorEncoderSubsystem)getSubsystem() ;
+        return Math.abs(sub.getPosition() - start_position_) ;
+    }
+
+    /// \brief Returns true if the motor controller is executing the motion
+    /// \returns true if the motor controller is executing the motion
+    public boolean isOnboard() {
+        return onboard_ ;
+    }
+
+    /// \brief Start the action, planning the motion and giving it to the motor controller
+    @Override
+    public void start() throws Exception {
+        super.start() ;
+
+        MotorEncoderSubsystem sub = (MotorEncoderSubsystem)getSubsystem() ;
+        ISettingsSupplier settings = sub.getRobot().getSettingsSupplier() ;
+        String base = "subsystems:" + sub.getName() ;
+
+        threshold_ = settings.get(base + ":goto:threshold").getDouble() ;
+
+        start_position_ = sub.getPosition() ;
+        start_time_ = sub.getRobot().getTime() ;
+
+        double dist = target_ - start_position_ ;
+        if (Math.abs(dist) < threshold_) {
+            onboard_ = false ;
+            sub.setDefaultAction(addhold_ ? new MotorEncoderHoldAction(sub, target_) : null) ;
+            setDone() ;
+            return ;
+        }
+
+        String follower = base + ":follower" + (dist < 0 ? ":down" : ":up") ;
+        ctrl_ = new PIDACtrl(settings, follower, sub.isAngular()) ;
+        profile_.update(dist, 0, 0) ;
+
+        MotorController ctrl = sub.getMotorController() ;
+        onboard_ = ctrl.hasTrajectory() && sub.getEncoder().isMotorEncoder() ;
+
+        //
+        // A motor controller running the trajectory holds the last point when the motion is done, so the hold
+        // stays on the motor controller.  Only a motion followed in the robot loop needs a hold action there.
+        //
+        sub.setDefaultAction((addhold_ && !onboard_) ? new MotorEncoderHoldAction(sub, target_) : null) ;
+
+        if (onboard_) {
+            double kv = settings.get(follower + ":kv").getDouble() ;
+            double ka = settings.get(follower + ":ka").getDouble() ;
+            MotorTrajectory traj = createTrajectory(sub, settings.get(base + ":trajectory:period").getInteger(), kv, ka) ;
+
+            double kp = settings.get(base + ":trajectory:kp").getDouble() ;
+            double ki = settings.get(base + ":trajectory:ki").getDouble() ;
+            double kd = settings.get(base + ":trajectory:kd").getDouble() ;
+            ctrl.setPID(PidType.Position, kp, ki, kd, 0.0, 1.0) ;
+            ctrl.startTrajectory(traj) ;
+
+            MessageLogger logger = sub.getRobot().getMessageLogger() ;
+            logger.startMessage(MessageType.Debug, sub.getLoggerID()) ;
+            logger.add("MotorEncoderTrajectoryAction: started on motor controller") ;
+            logger.add("points", traj.size()) ;
+            logger.add("duration", traj.getDuration()) ;
+            logger.endMessage() ;
+        }
+
+        sub.startPlot(plot_id_, convertUnits(plot_columns_, sub.getUnits())) ;
+    }
+
+    /// \brief Called once per robot loop to poll the progress of the motion, or to follow the plan
+    /// when the motor controller cannot
+    @Override
+    public void run() throws Exception {
+        super.run() ;
+
+        MotorEncoderSubsystem sub = (MotorEncoderSubsystem)getSubsystem() ;
+        XeroRobot robot = sub.getRobot() ;
+
+        double elapsed = robot.getTime() - start_time_ ;
+        double position = sub.getPosition() ;
+        double setpoint ;
+
+        if (onboard_) {
+            MotorController ctrl = sub.getMotorController() ;
+            XeroEncoder encoder = sub.getEncoder() ;
+            setpoint = ctrl.getTrajectorySetpoint() * encoder.getM() + encoder.getB() ;
+
+            if (elapsed > profile_.getTotalTime() && ctrl.isTrajectoryComplete()) {
+                if (!addhold_)
+                    ctrl.stopTrajectory() ;
+
+                setDone() ;
+                sub.endPlot(plot_id_) ;
+                return ;
+            }
+        }
+        else {
+            if (elapsed > profile_.getTotalTime()) {
+                setDone() ;
+                sub.setPower(0.0) ;
+                sub.endPlot(plot_id_) ;
+                return ;
+            }
+
+            double targetDist = profile_.getDistance(elapsed) ;
+            double out = ctrl_.getOutput(profile_.getAccel(elapsed), profile_.getVelocity(elapsed), targetDist,
+                                         position - start_position_, robot.getDeltaTime()) ;
+            sub.setPower(out) ;
+            setpoint = start_position_ + targetDist ;
+        }
+
+        Double[] data = new Double[plot_columns_.length] ;
+        data[0] = elapsed ;
+        data[1] = start_position_ + profile_.getDistance(elapsed) ;
+        data[2] = position ;
+        data[3] = profile_.getVelocity(elapsed) ;
+        data[4] = sub.getVelocity() ;
+        data[5] = setpoint ;
+        sub.addPlotData(plot_id_, data) ;
+    }
+
+    /// \brief Cancel the action, stopping the motion in the motor controller
+    @Override
+    public void cancel() {
+        super.cancel() ;
+
+        MotorEncoderSubsystem sub = (MotorEncoderSubsystem)getSubsystem() ;
+        if (onboard_) {
+            try {
+                sub.getMotorController().stopTrajectory() ;
+            }
+            catch(BadMotorRequestException | MotorRequestFailedException ex) {
+                MessageLogger logger = sub.getRobot().getMessageLogger() ;
+                logger.startMessage(MessageType.Error) ;
+                logger.add("subsystem ").addQuoted(sub.getName()).add(": cannot stop trajectory -").add(ex.getMessage()).endMessage() ;
+            }
+        }
+        else {
+            sub.setPower(0.0) ;
+        }
+
+        sub.endPlot(plot_id_) ;
+    }
+
+    /// \brief Returns a human readable string describing the action
+    /// \returns a human readable string describing the action
+    @Override
+    public String toString(int indent) {
+        return prefix(indent) + "MotorEncoderTrajectoryAction," + getSubsystem().getName() + "," + Double.toString(target_) ;
+    }
+
+    //
+    // Sample the profile into trajectory points in motor units.  The feed forward for each point is computed
+    // in subsystem units from the profile velocity and acceleration.
+    //
+    private MotorTrajectory createTrajectory(MotorEncoderSubsystem sub, int period, double kv, double ka) {
+        XeroEncoder encoder = sub.getEncoder() ;
+        double m = encoder.getM() ;
+        double b = encoder.getB() ;
+        double total = profile_.getTotalTime() ;
+        int count = (int)Math.ceil(total * 1000.0 / period) + 1 ;
+
+        MotorTrajectory traj = new MotorTrajectory(period, count) ;
+        for(int i = 0 ; i < count ; i++) {
+            double t = Math.min(i * period / 1000.0, total) ;
+            double pos = start_position_ + profile_.getDistance(t) ;
+            double vel = profile_.getVelocity(t) ;
+            double acc = profile_.getAccel(t) ;
+            traj.add((pos - b) / m, vel / m, kv * vel + ka * acc) ;
+        }
+
+        return traj ;
+    }
+}
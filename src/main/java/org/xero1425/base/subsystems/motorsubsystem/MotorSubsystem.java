@@ -1,5 +1,6 @@
 package org.xero1425.base.subsystems.motorsubsystem;
 
+import org.xero1425.base.PowerMonitor;
 import org.xero1425.base.motors.BadMotorRequestException;
 import org.xero1425.base.motors.MotorRequestFailedException;
 import org.xero1425.base.subsystems.Subsystem;
@@ -26,6 +27,9 @@ public class MotorSubsystem extends Subsystem
     // The current power applied to the motor
     private double power_ ;
 
+    // The fraction of the power applied to the motor, less than 1.0 while shedding load
+    private double power_scale_ ;
+
     /// \brief Create a new motor subsystem.
     /// The settings file entry will be "subsystems:NAME:hw:motors", where NAME is the name
     /// of the subsystem.
@@ -34,6 +38,8 @@ public class MotorSubsystem extends Subsystem
     public MotorSubsystem(Subsystem parent, String name) {
         super(parent, name) ;
 
+        power_scale_ = 1.0 ;
+
         String mname = "subsystems:" + name + ":hw:motors" ;
         controller_ = getRobot().getMotorFactory().createMotor(name, mname) ;
         if (controller_ == null)
@@ -57,6 +63,10 @@ public class MotorSubsystem extends Subsystem
         super.postHWInit();
 
         setPower(0.0) ;
+
+        PowerMonitor power = getRobot().getPowerMonitor() ;
+        if (power != null)
+            power.addLoad(getName(), controller_.getPDPChannels(), this::setPowerScale) ;
     }
 
     /// \brief Reset the subsystem by setting the power to zero
@@ -82,6 +92,26 @@ public class MotorSubsystem extends Subsystem
         return power_ ;
     }
 
+    /// \brief Scale the power applied to the motor.  This is used to shed load when the battery voltage is
+    /// low.  The scale only changes the power output sent to the motor controller, never its stored
+    /// configuration, so it costs no more than a normal power write.  A power set with setPower() that is
+    /// still applied is sent again with the new scale.  Closed loop modes run on the motor controller are
+    /// not scaled.
+    /// \param scale the fraction of the power to apply, 1.0 for the full power
+    public void setPowerScale(double scale) {
+        if (scale == power_scale_)
+            return ;
+
+        power_scale_ = scale ;
+
+        //
+        // Actions that run a closed loop on the motor controller start from zero power, so only a nonzero
+        // power is known to be the output of the motor controller
+        //
+        if (power_ != 0.0)
+            setPower(power_) ;
+    }
+
     /// \brief Returns the motor controller object for this subsystem.  If the controller is a group
     /// controller, the first motor (the leader) in the group is returned.  It is guarenteed that a
     /// real motor controller is returned.
@@ -104,7 +134,7 @@ public class MotorSubsystem extends Subsystem
             // The limitPower method can be overridden in a derived class to place limits on the
             // power ever supplied to the motor
             power_ = limitPower(p) ;
-            controller_.set(power_) ;
+            controller_.set(power_ * power_scale_) ;
         }
         catch(BadMotorRequestException|MotorRequestFailedException ex) {
             MessageLogger logger = getRobot().getMessageLogger() ;
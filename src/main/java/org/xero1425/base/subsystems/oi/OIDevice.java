@@ -68,6 +68,12 @@ public abstract class OIDevice
         return index_ ;
     }
 
+    /// \brief Returns true if the device is HID based and has an index
+    /// \returns true if the device is HID based and has an index
+    public boolean hasIndex() {
+        return index_ != -1 ;
+    }
+
     /// \brief Called when the mode is initializating
     /// \param ltype the mode being initialized
     public void init(LoopType ltype) {
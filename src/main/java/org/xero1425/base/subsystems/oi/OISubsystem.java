@@ -12,6 +12,7 @@ import org.xero1425.misc.BadParameterTypeException;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
 import org.xero1425.misc.MissingParameterException;
+import org.xero1425.websrv.StatusSnapshot;
 
 /// \file
 
@@ -90,24 +91,22 @@ public class OISubsystem extends Subsystem {
         }
     }
 
-    public String getStatus() {
-        String st = "" ;
-
-        st += "Devices:<ul>" ;
+    @Override
+    public void getStatus(StatusSnapshot status) {
+        status.put("devices", devices_.size()) ;
         for(OIDevice dev : devices_) {
-            int index ;
-            
+            int index = -1 ;
+
             try {
-                index = dev.getIndex() ;
+                if (dev.hasIndex())
+                    index = dev.getIndex() ;
             }
             catch(Exception ex) {
                 index = -1 ;
             }
 
-            st += "<li>Name '" + dev.getName() + "'', index " + index + "</li>" ;
+            status.put(dev.getName(), index) ;
         }
-        st += "</ul>" ;
-        return st ;
     }
 
     public OIDevice getDevice(int index) {
@@ -1,5 +1,6 @@
 package org.xero1425.base.subsystems.oi;
 
+import org.xero1425.base.LatencyTracer;
 import org.xero1425.base.LoopType;
 import org.xero1425.base.subsystems.RobotSubsystem;
 import org.xero1425.base.subsystems.swerve.common.SwerveBaseSubsystem;
@@ -39,6 +40,10 @@ public class SwerveDriveGamepad extends Gamepad {
     private SwerveButton[] reset_buttons_ ;
     private SwerveButton[] drivebase_x_buttons_;
     private boolean holding_x_;
+    private double [] last_axes_ ;
+
+    /// \brief the type of input for latency tracing of the drive sticks
+    public static final String LatencyInputType = "drive-stick" ;
 
     public SwerveDriveGamepad(OISubsystem oi, int index, SwerveBaseSubsystem drive_) throws Exception {
         super(oi, "swerve_gamepad", index);
@@ -55,6 +60,7 @@ public class SwerveDriveGamepad extends Gamepad {
         reset_buttons_ = null ;
         drivebase_x_buttons_ = null;
         holding_x_ = false ;
+        last_axes_ = new double[3] ;
     }
 
     public void invert(boolean inv) {
@@ -166,6 +172,17 @@ public class SwerveDriveGamepad extends Gamepad {
             return ;
         }
 
+        //
+        // Trace the latency from the sticks to the swerve modules each time the sticks move
+        //
+        int tag = LatencyTracer.NoTag ;
+        if (ly != last_axes_[0] || lx != last_axes_[1] || rx != last_axes_[2]) {
+            tag = LatencyTracer.begin(LatencyInputType) ;
+            last_axes_[0] = ly ;
+            last_axes_[1] = lx ;
+            last_axes_[2] = rx ;
+        }
+
         if (invert_ && DriverStation.getAlliance() == Alliance.Red) {
             ly = -ly ;
             lx = -lx ;
@@ -192,7 +209,7 @@ public class SwerveDriveGamepad extends Gamepad {
         //
         rxscaled *= 2.0 / Math.hypot(db_.getLength(), db_.getWidth()) / 39.37;  // 39.27 to convert meters -> inches. Original equation from SDS assumes inches.
         ChassisSpeeds speeds = ChassisSpeeds.fromFieldRelativeSpeeds(-lyscaled, -lxscaled, rxscaled, db_.getHeading()) ;
-        action_.update(speeds) ;
+        action_.update(speeds, tag) ;
 
         if (db_.getAction() != action_)
             db_.setAction(action_) ;
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.xero1425.base.IVisionLocalization;
+import org.xero1425.base.LatencyTracer;
 import org.xero1425.base.motors.BadMotorRequestException;
 import org.xero1425.base.motors.MotorRequestFailedException;
 import org.xero1425.base.subsystems.DriveBaseSubsystem;
@@ -11,6 +12,8 @@ import org.xero1425.base.subsystems.Subsystem;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
 import org.xero1425.misc.MinMaxData;
+import org.xero1425.simulator.engine.SimulationEngine;
+import org.xero1425.websrv.StatusSnapshot;
 
 import edu.wpi.first.math.VecBuilder;
 import edu.wpi.first.math.Vector;
@@ -26,6 +29,7 @@ import edu.wpi.first.math.numbers.N3;
 import edu.wpi.first.math.trajectory.Trajectory;
 import edu.wpi.first.math.trajectory.TrajectoryConfig;
 import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.shuffleboard.Shuffleboard;
 import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardTab;
 
@@ -44,7 +48,9 @@ public abstract class SwerveBaseSubsystem extends DriveBaseSubsystem {
     
     private int index_ ;
 
-    private SwerveVisionProcessing vision_ ;
+    // The vision processing for each camera, and the samples from the cameras this robot loop
+    private List<SwerveVisionProcessing> vision_ ;
+    private List<SwerveVisionProcessing.Observation> observations_ ;
     private SwerveDriveKinematics kinematics_ ;
     private SwerveDrivePoseEstimator estimator_ ;
 
@@ -61,6 +67,9 @@ public abstract class SwerveBaseSubsystem extends DriveBaseSubsystem {
 
     private MinMaxData velocity_ ;
     private MinMaxData rotational_velocity_ ;
+
+    // The latency tag for the operator input that produced the current drive request
+    private int trace_tag_ ;
    
     static public final int FL = 0;                                                             // Index of the front left module
     static public final int FR = 1;                                                             // Index of the front right module
@@ -100,16 +109,34 @@ public abstract class SwerveBaseSubsystem extends DriveBaseSubsystem {
 
 
         last_pose_ = new Pose2d() ;
+
+        vision_ = new ArrayList<SwerveVisionProcessing>() ;
+        observations_ = new ArrayList<SwerveVisionProcessing.Observation>() ;
     }
 
+    /// \brief returns the pose from the camera that sees the most tags
+    /// \returns the pose from the camera that sees the most tags, or null if no camera sees a tag
     public Pose2d getVisionPose() {
-        return vision_.getCurrentPose() ;
+        Pose2d ret = null ;
+        int best = 0 ;
+
+        for(SwerveVisionProcessing v : vision_) {
+            if (v.getTagCount() > best) {
+                Pose2d vpose = v.getCurrentPose() ;
+                if (vpose != null) {
+                    ret = vpose ;
+                    best = v.getTagCount() ;
+                }
+            }
+        }
+
+        return ret ;
     }
 
     public void resetPose(boolean inverted) {
         boolean reset = false ;
-        if (vision_ != null && vision_enabled_ && vision_.hasTargets()) {
-            Pose2d vpose = vision_.getCurrentPose();
+        if (vision_enabled_) {
+            Pose2d vpose = getVisionPose() ;
             if (vpose != null) {
                 setPose(vpose) ;
                 reset = true ;
@@ -130,9 +157,19 @@ public abstract class SwerveBaseSubsystem extends DriveBaseSubsystem {
         vision_enabled_ = enable ;
     }
 
+    /// \brief use a single camera for vision, replacing any cameras added before
+    /// \param vision the camera
     public void setVision(IVisionLocalization vision) {
+        vision_.clear() ;
+        addVision(vision) ;
+    }
+
+    /// \brief add a camera to the cameras used for vision.  The samples from every camera are given to the pose
+    /// estimator, each with its own timestamp and standard deviations.
+    /// \param vision the camera
+    public void addVision(IVisionLocalization vision) {
         try {
-            vision_ = new SwerveVisionProcessing(this, vision) ;
+            vision_.add(new SwerveVisionProcessing(this, vision)) ;
             vision_enabled_ = true ;
         }
         catch(Exception ex) {
@@ -142,13 +179,18 @@ public abstract class SwerveBaseSubsystem extends DriveBaseSubsystem {
             logger.add(ex.getMessage());
             logger.endMessage();
             logger.logStackTrace(ex.getStackTrace());
-            vision_ = null;
         }
     }
 
-    public String getStatus() {
-        String st = "Current Pose " + getPose().toString() ;
-        return st ;
+    @Override
+    public void getStatus(StatusSnapshot status) {
+        Pose2d p = getPose() ;
+        status.put("x", p.getX()) ;
+        status.put("y", p.getY()) ;
+        status.put("heading", p.getRotation().getDegrees()) ;
+        status.put("velocity", getVelocity()) ;
+        status.put("vision", vision_enabled_) ;
+        status.put("cameras", vision_.size()) ;
     }
 
     protected void createOdometry() throws Exception {
@@ -188,6 +230,23 @@ public abstract class SwerveBaseSubsystem extends DriveBaseSubsystem {
     // Control the swerve drive by settings a ChassisSppeds object
     public abstract void drive(ChassisSpeeds speeds) ;
 
+    // Set the latency tag for the operator input that produced the next drive request.  A tag that has not
+    // reached the modules when it is replaced has been delayed by a robot loop and is counted as dropped.
+    public void setTraceTag(int tag) {
+        if (trace_tag_ != LatencyTracer.NoTag && trace_tag_ != tag)
+            LatencyTracer.drop(trace_tag_) ;
+
+        trace_tag_ = tag ;
+    }
+
+    // Called by the derived class when the module targets have been sent to the motors
+    protected void completeTrace() {
+        if (trace_tag_ != LatencyTracer.NoTag) {
+            LatencyTracer.complete(trace_tag_) ;
+            trace_tag_ = LatencyTracer.NoTag ;
+        }
+    }
+
     // Control the swerve drive by supplying raw targets.  If power is true then the values
     // supplied by the speeds_power array are power numbers to go directly to the drive motors.
     // If power is false, these are speed numbers to feed into the drive motor PID controller 
@@ -219,8 +278,8 @@ public abstract class SwerveBaseSubsystem extends DriveBaseSubsystem {
         poss[3] = getModulePosition(BR) ;
         estimator_.update(Rotation2d.fromDegrees(gyro().getYaw()), poss) ;
 
-        if (vision_ != null && vision_enabled_) {
-            vision_.processVision();
+        if (vision_enabled_) {
+            processVision() ;
         }
 
         Pose2d p = getPose() ;
@@ -251,6 +310,25 @@ public abstract class SwerveBaseSubsystem extends DriveBaseSubsystem {
         return kinematics_ ;
     }
 
+    //
+    // Give the new samples from every camera to the pose estimator, oldest first, each with the standard deviations
+    // chosen for its camera
+    //
+    private void processVision() {
+        observations_.clear() ;
+        for(SwerveVisionProcessing v : vision_) {
+            v.processVision(observations_) ;
+        }
+
+        if (observations_.size() > 1) {
+            observations_.sort((a, b) -> Double.compare(a.when, b.when)) ;
+        }
+
+        for(SwerveVisionProcessing.Observation obs : observations_) {
+            estimator_.addVisionMeasurement(obs.pose, obs.when, obs.stddevs) ;
+        }
+    }
+
     public SwerveDrivePoseEstimator getEstimator() {
         return estimator_;
     }
@@ -261,6 +339,14 @@ public abstract class SwerveBaseSubsystem extends DriveBaseSubsystem {
 
     public void setPose(Pose2d pose) {
         Rotation2d rot = Rotation2d.fromDegrees(gyro().getYaw()) ;
+
+        //
+        // In simulation, the first pose set in autonomous is where the robot is placed on the field.  The
+        // simulator places the true robot there with the error in placing it, and the estimate keeps the pose
+        //
+        SimulationEngine engine = SimulationEngine.getInstance() ;
+        if (engine != null && DriverStation.isAutonomous())
+            engine.getGroundTruth().place(pose) ;
         
         SwerveModulePosition [] poss = new SwerveModulePosition[4] ;
         poss[0] = getModulePosition(FL) ;
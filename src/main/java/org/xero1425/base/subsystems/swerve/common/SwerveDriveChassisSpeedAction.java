@@ -1,5 +1,7 @@
 package org.xero1425.base.subsystems.swerve.common;
 
+import org.xero1425.base.LatencyTracer;
+
 import edu.wpi.first.math.kinematics.ChassisSpeeds;
 
 public class SwerveDriveChassisSpeedAction extends SwerveDriveAction {
@@ -13,7 +15,14 @@ public class SwerveDriveChassisSpeedAction extends SwerveDriveAction {
     }
 
     public void update(ChassisSpeeds speed) {
+        update(speed, LatencyTracer.NoTag) ;
+    }
+
+    public void update(ChassisSpeeds speed, int tag) {
+        LatencyTracer.mark(tag, "action") ;
+
         speed_ = speed ;
+        getSubsystem().setTraceTag(tag) ;
         getSubsystem().drive(speed) ;
     }
 
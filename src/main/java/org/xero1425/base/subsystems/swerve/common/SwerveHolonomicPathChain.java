@@ -0,0 +1,479 @@
+package org.xero1425.base.subsystems.swerve.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.xero1425.base.misc.XeroTimer;
+import org.xero1425.base.motors.BadMotorRequestException;
+import org.xero1425.base.motors.MotorRequestFailedException;
+import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.MessageLogger;
+import org.xero1425.misc.MessageType;
+import org.xero1425.misc.MissingParameterException;
+import org.xero1425.misc.XeroMath;
+import org.xero1425.misc.XeroPath;
+import org.xero1425.misc.XeroPathSegment;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+
+/// \file
+
+/// \brief This action follows a chain of paths as one, without stopping between them.
+///
+/// Each path is generated to start and end at rest, so following the paths one after another with
+/// SwerveHolonomicPathFollower stops and settles the robot at the end of each.  This action joins the points of
+/// the paths into one path and drives it with a new velocity profile.  At each join, the slowing down at the end of
+/// one path and the speeding up at the start of the next are replaced by a speed the robot carries through the
+/// join.  That speed is the lower of the top speeds of the two paths, reduced by the cosine of the change in
+/// direction at the join, so a sharp turn is still taken slowly and a reversal still stops.  The profile is then
+/// limited to the acceleration of the drive base, forward and backward along the chain.  Where the robot rotation
+/// at the end of one path does not match the start of the next, the rotation is blended over a distance around the
+/// join.
+///
+/// The target is found from the time since the action started, rather than advancing one point per robot loop, so
+/// a slow robot loop does not put the robot behind the profile.  Distance based actions are given as a distance
+/// along the whole chain, or as a distance along one of the paths, and run as the chain passes that distance.
+public class SwerveHolonomicPathChain extends SwerveHolonomicControllerAction {
+    // The distance in meters between the end of one path and the start of the next above which a warning is logged
+    private static final double GapTolerance = 0.05 ;
+
+    // The difference in robot rotation in degrees at a join above which the rotation is blended
+    private static final double BlendTolerance = 1.0 ;
+
+    // The lowest average speed used to find the time between two points, so a point at rest does not take forever
+    private static final double MinSpeed = 1.0e-3 ;
+
+    private class DistanceBasedAction {
+        public final int Path ;
+        public final double Distance ;
+        public final SwerveHolonomicPathFollower.Executor Function ;
+        public double ChainDistance ;
+        public boolean Executed ;
+
+        public DistanceBasedAction(int path, double dist, SwerveHolonomicPathFollower.Executor fun) {
+            Path = path ;
+            Distance = dist ;
+            Function = fun ;
+        }
+    }
+
+    private final String [] pathnames_ ;
+    private final boolean setpose_ ;
+    private final double blend_ ;
+    private final List<DistanceBasedAction> actions_ ;
+
+    // The points of the chain: the distance along the chain, the position, the direction of travel and the robot
+    // rotation in degrees, the velocity of the new profile, and the time each point is reached
+    private double [] s_ ;
+    private double [] x_ ;
+    private double [] y_ ;
+    private double [] heading_ ;
+    private double [] rotation_ ;
+    private double [] velocity_ ;
+    private double [] time_ ;
+
+    // The distance along the chain at which each path starts
+    private double [] path_start_ ;
+
+    // The point before the current target, and the path the target is on
+    private int index_ ;
+    private int path_ ;
+
+    private double start_ ;
+    private double distance_ ;
+    private boolean end_phase_ ;
+    private XeroTimer end_timer_ ;
+    private boolean disable_vision_ ;
+
+    private int plot_id_ ;
+    private Double[] plot_data_ ;
+
+    private static final String [] columns_ = {
+        "time", "velocity (m/s)",
+        "tx (m)", "ty (m)", "ta (deg)",
+        "ax (m)", "ay (m)", "aa (deg)"
+    } ;
+
+    /// \brief create the action
+    /// \param sub the swerve drive subsystem
+    /// \param pathnames the names of the paths, in the order they are driven
+    /// \param setpose if true, the robot pose is set to the start of the first path when the action starts
+    /// \param endtime the time after the end of the chain to wait for the robot to reach the end
+    /// \param blend the distance in meters around a join over which a change in robot rotation is blended
+    public SwerveHolonomicPathChain(SwerveBaseSubsystem sub, String [] pathnames, boolean setpose, double endtime, double blend) throws BadParameterTypeException, MissingParameterException {
+        super(sub) ;
+
+        if (pathnames.length == 0)
+            throw new IllegalArgumentException("a path chain needs at least one path") ;
+
+        pathnames_ = pathnames.clone() ;
+        setpose_ = setpose ;
+        blend_ = blend ;
+        actions_ = new ArrayList<DistanceBasedAction>() ;
+
+        plot_data_ = new Double[columns_.length] ;
+        plot_id_ = getSubsystem().initPlot("chain-" + pathnames_[0]) ;
+
+        end_timer_ = new XeroTimer(sub.getRobot(), "holonomicchain", endtime);
+        disable_vision_ = true ;
+    }
+
+    /// \brief returns the distance along the chain of the current target
+    /// \returns the distance along the chain of the current target in meters
+    public double getDistance() {
+        return distance_ ;
+    }
+
+    /// \brief returns the index of the path the current target is on
+    /// \returns the index of the path the current target is on
+    public int getPathIndex() {
+        return path_ ;
+    }
+
+    /// \brief add an action that is run when the chain passes a distance
+    /// \param dist the distance along the whole chain in meters
+    /// \param action the action to run
+    public void addDistanceBasedAction(double dist, SwerveHolonomicPathFollower.Executor action) {
+        actions_.add(new DistanceBasedAction(-1, dist, action)) ;
+    }
+
+    /// \brief add an action that is run when the chain passes a distance along one of its paths
+    /// \param path the index of the path in the chain
+    /// \param dist the distance along the path in meters
+    /// \param action the action to run
+    public void addDistanceBasedAction(int path, double dist, SwerveHolonomicPathFollower.Executor action) {
+        if (path < 0 || path >= pathnames_.length)
+            throw new IllegalArgumentException("path index " + path + " is not in the chain") ;
+
+        actions_.add(new DistanceBasedAction(path, dist, action)) ;
+    }
+
+    public void disableVision(boolean b) {
+        disable_vision_ = b ;
+    }
+
+    @Override
+    public void start() throws Exception {
+        super.start() ;
+
+        buildChain() ;
+
+        for(DistanceBasedAction item : actions_) {
+            item.ChainDistance = (item.Path < 0) ? item.Distance : path_start_[item.Path] + item.Distance ;
+            item.Executed = false ;
+        }
+
+        if (disable_vision_) {
+            getSubsystem().enableVision(false);
+        }
+        getSubsystem().startPlot(plot_id_, columns_);
+
+        if (setpose_) {
+            getSubsystem().setPose(new Pose2d(x_[0], y_[0], Rotation2d.fromDegrees(rotation_[0])));
+
+            MessageLogger logger = getSubsystem().getRobot().getMessageLogger() ;
+            logger.startMessage(MessageType.Info) ;
+            logger.add("SwerveHolonomicPathChain: Initial Pose ", getSubsystem().getPose());
+            logger.endMessage();
+        }
+
+        index_ = 0 ;
+        path_ = 0 ;
+        distance_ = 0.0 ;
+        end_phase_ = false ;
+        start_ = getSubsystem().getRobot().getTime() ;
+    }
+
+    @Override
+    public void run() throws BadMotorRequestException, MotorRequestFailedException {
+        MessageLogger logger = getSubsystem().getRobot().getMessageLogger() ;
+        double elapsed = getSubsystem().getRobot().getTime() - start_ ;
+        int last = s_.length - 1 ;
+        Pose2d target ;
+        double rotation ;
+        double velocity ;
+
+        if (elapsed < time_[last]) {
+            while (index_ < last - 1 && time_[index_ + 1] <= elapsed)
+                index_++ ;
+
+            double span = time_[index_ + 1] - time_[index_] ;
+            double frac = (span > 0.0) ? (elapsed - time_[index_]) / span : 1.0 ;
+
+            double x = x_[index_] + (x_[index_ + 1] - x_[index_]) * frac ;
+            double y = y_[index_] + (y_[index_ + 1] - y_[index_]) * frac ;
+            double heading = heading_[index_] + XeroMath.normalizeAngleDegrees(heading_[index_ + 1] - heading_[index_]) * frac ;
+            rotation = rotation_[index_] + XeroMath.normalizeAngleDegrees(rotation_[index_ + 1] - rotation_[index_]) * frac ;
+            velocity = velocity_[index_] + (velocity_[index_ + 1] - velocity_[index_]) * frac ;
+            distance_ = s_[index_] + (s_[index_ + 1] - s_[index_]) * frac ;
+
+            target = new Pose2d(x, y, Rotation2d.fromDegrees(heading)) ;
+
+            while (path_ < path_start_.length - 1 && distance_ >= path_start_[path_ + 1]) {
+                path_++ ;
+                logger.startMessage(MessageType.Info) ;
+                logger.add("path chain entered path ").addQuoted(pathnames_[path_]) ;
+                logger.add("velocity", velocity) ;
+                logger.endMessage();
+            }
+
+            checkActions(distance_) ;
+        }
+        else {
+            target = new Pose2d(x_[last], y_[last], Rotation2d.fromDegrees(heading_[last])) ;
+            rotation = rotation_[last] ;
+            velocity = 0.0 ;
+            distance_ = s_[last] ;
+            checkActions(distance_) ;
+        }
+
+        ChassisSpeeds speed = controller().calculate(getSubsystem().getPose(), target, velocity, Rotation2d.fromDegrees(rotation)) ;
+        getSubsystem().drive(speed) ;
+
+        Pose2d actual = getSubsystem().getPose() ;
+
+        int i = 0 ;
+        plot_data_[i++] = elapsed ;
+        plot_data_[i++] = velocity ;
+        plot_data_[i++] = target.getX() ;
+        plot_data_[i++] = target.getY() ;
+        plot_data_[i++] = rotation ;
+        plot_data_[i++] = actual.getX() ;
+        plot_data_[i++] = actual.getY() ;
+        plot_data_[i++] = actual.getRotation().getDegrees() ;
+        getSubsystem().addPlotData(plot_id_, plot_data_) ;
+
+        if (elapsed >= time_[last]) {
+            if (!end_phase_) {
+                end_phase_ = true ;
+                end_timer_.start() ;
+            }
+
+            if (controller().atReference() || end_timer_.isExpired()) {
+                getSubsystem().endPlot(plot_id_);
+                getSubsystem().drive(new ChassisSpeeds()) ;
+                getSubsystem().enableVision(true);
+                setDone();
+
+                logger.startMessage(MessageType.Info) ;
+                logger.add("finished path chain") ;
+                logger.add("paths", pathnames_.length) ;
+                logger.add("time", elapsed) ;
+                logger.add("pose", actual);
+                logger.endMessage();
+            }
+        }
+    }
+
+    @Override
+    public void cancel() {
+        super.cancel() ;
+        getSubsystem().endPlot(plot_id_);
+        getSubsystem().drive(new ChassisSpeeds()) ;
+        getSubsystem().enableVision(true);
+    }
+
+    @Override
+    public String toString(int indent) {
+        return spaces(indent) + "SwerveHolonomicPathChain " + String.join(", ", pathnames_) ;
+    }
+
+    private void checkActions(double distance) {
+        for(DistanceBasedAction item : actions_) {
+            if (distance > item.ChainDistance && !item.Executed) {
+                MessageLogger logger = getSubsystem().getRobot().getMessageLogger() ;
+                logger.startMessage(MessageType.Info);
+                logger.add("PathChain executing lambda") ;
+                logger.add("target", item.ChainDistance);
+                logger.add("actual", distance) ;
+                logger.endMessage();
+
+                item.Function.doit() ;
+                item.Executed = true ;
+            }
+        }
+    }
+
+    //
+    // Join the paths into one list of points, and compute the velocity profile and the time each point is reached
+    //
+    private void buildChain() throws Exception {
+        MessageLogger logger = getSubsystem().getRobot().getMessageLogger() ;
+        XeroPath [] paths = new XeroPath[pathnames_.length] ;
+        int count = 0 ;
+
+        for(int p = 0 ; p < pathnames_.length ; p++) {
+            paths[p] = getSubsystem().getRobot().getPathManager().getPath(pathnames_[p]) ;
+            if (paths[p] == null)
+                throw new Exception("path chain - no path named '" + pathnames_[p] + "'") ;
+            count += paths[p].getTrajectoryEntryCount() ;
+        }
+
+        s_ = new double[count] ;
+        x_ = new double[count] ;
+        y_ = new double[count] ;
+        heading_ = new double[count] ;
+        rotation_ = new double[count] ;
+        velocity_ = new double[count] ;
+        time_ = new double[count] ;
+        path_start_ = new double[paths.length] ;
+
+        double [] cap = new double[count] ;
+        int [] joins = new int[paths.length] ;
+        int n = 0 ;
+
+        for(int p = 0 ; p < paths.length ; p++) {
+            XeroPath path = paths[p] ;
+            double pos0 = path.getSegment(0, 0).getPosition() ;
+            double offset = 0.0 ;
+            int first = 0 ;
+
+            if (n > 0) {
+                XeroPathSegment seg = path.getSegment(0, 0) ;
+                double gap = Math.hypot(seg.getX() - x_[n - 1], seg.getY() - y_[n - 1]) ;
+                if (gap > GapTolerance) {
+                    logger.startMessage(MessageType.Warning) ;
+                    logger.add("path chain - path ").addQuoted(pathnames_[p]) ;
+                    logger.add(" does not start where the path before it ends") ;
+                    logger.add("gap", gap) ;
+                    logger.endMessage();
+                }
+
+                //
+                // The first point of a path that starts where the last one ended is the same point, so it is dropped
+                //
+                offset = s_[n - 1] + gap ;
+                if (gap < 1.0e-3)
+                    first = 1 ;
+            }
+
+            path_start_[p] = offset ;
+            joins[p] = n ;
+
+            for(int i = first ; i < path.getTrajectoryEntryCount() ; i++) {
+                XeroPathSegment seg = path.getSegment(0, i) ;
+                s_[n] = offset + seg.getPosition() - pos0 ;
+                x_[n] = seg.getX() ;
+                y_[n] = seg.getY() ;
+                heading_[n] = seg.getHeading() ;
+                rotation_[n] = seg.getRotation() ;
+                cap[n] = seg.getVelocity() ;
+                n++ ;
+            }
+        }
+
+        //
+        // The first point of a path that joins the one before it was dropped, so there are fewer points than
+        // segments.  Trim the arrays to the points kept.
+        //
+        s_ = Arrays.copyOf(s_, n) ;
+        x_ = Arrays.copyOf(x_, n) ;
+        y_ = Arrays.copyOf(y_, n) ;
+        heading_ = Arrays.copyOf(heading_, n) ;
+        rotation_ = Arrays.copyOf(rotation_, n) ;
+        velocity_ = Arrays.copyOf(velocity_, n) ;
+        time_ = Arrays.copyOf(time_, n) ;
+        cap = Arrays.copyOf(cap, n) ;
+
+        //
+        // Replace the stop at each join with the speed carried through it
+        //
+        for(int p = 1 ; p < paths.length ; p++) {
+            int join = joins[p] ;
+            if (join == 0 || join >= n)
+                continue ;
+
+            double before = peak(cap, joins[p - 1], join) ;
+            double after = peak(cap, join, (p + 1 < paths.length) ? joins[p + 1] : n) ;
+            double turn = Math.toRadians(XeroMath.normalizeAngleDegrees(heading_[join] - heading_[join - 1])) ;
+            double carry = Math.min(before, after) * Math.max(0.0, Math.cos(turn)) ;
+
+            int k = join - 1 ;
+            while (k > joins[p - 1] && cap[k - 1] >= cap[k]) {
+                cap[k] = Math.max(cap[k], carry) ;
+                k-- ;
+            }
+            cap[k] = Math.max(cap[k], carry) ;
+
+            int end = (p + 1 < paths.length) ? joins[p + 1] : n ;
+            k = join ;
+            while (k < end - 1 && cap[k + 1] >= cap[k]) {
+                cap[k] = Math.max(cap[k], carry) ;
+                k++ ;
+            }
+            cap[k] = Math.max(cap[k], carry) ;
+
+            blendRotation(join) ;
+        }
+
+        //
+        // Limit the profile to the acceleration of the drive base, starting and ending at the path velocities
+        //
+        double accel = getSubsystem().getMaxAccel() ;
+        velocity_[0] = cap[0] ;
+        for(int i = 1 ; i < n ; i++)
+            velocity_[i] = Math.min(cap[i], Math.sqrt(velocity_[i - 1] * velocity_[i - 1] + 2.0 * accel * (s_[i] - s_[i - 1]))) ;
+
+        for(int i = n - 2 ; i >= 0 ; i--)
+            velocity_[i] = Math.min(velocity_[i], Math.sqrt(velocity_[i + 1] * velocity_[i + 1] + 2.0 * accel * (s_[i + 1] - s_[i]))) ;
+
+        time_[0] = 0.0 ;
+        for(int i = 1 ; i < n ; i++) {
+            double avg = Math.max(MinSpeed, (velocity_[i - 1] + velocity_[i]) / 2.0) ;
+            time_[i] = time_[i - 1] + (s_[i] - s_[i - 1]) / avg ;
+        }
+
+        double original = 0.0 ;
+        for(XeroPath path : paths)
+            original += path.getDuration() ;
+
+        logger.startMessage(MessageType.Info) ;
+        logger.add("path chain") ;
+        logger.add("paths", paths.length) ;
+        logger.add("length", s_[n - 1]) ;
+        logger.add("time", time_[n - 1]) ;
+        logger.add("separate-time", original) ;
+        logger.endMessage();
+    }
+
+    //
+    // Returns the highest velocity of the points in a range
+    //
+    private static double peak(double [] cap, int from, int to) {
+        double ret = 0.0 ;
+        for(int i = from ; i < to ; i++)
+            ret = Math.max(ret, cap[i]) ;
+        return ret ;
+    }
+
+    //
+    // Blend the robot rotation across a join where the rotation at the end of one path does not match the start
+    // of the next
+    //
+    private void blendRotation(int join) {
+        double diff = XeroMath.normalizeAngleDegrees(rotation_[join] - rotation_[join - 1]) ;
+        if (Math.abs(diff) < BlendTolerance || blend_ <= 0.0)
+            return ;
+
+        double from = s_[join] - blend_ / 2.0 ;
+        double to = s_[join] + blend_ / 2.0 ;
+
+        int lo = join - 1 ;
+        while (lo > 0 && s_[lo] > from)
+            lo-- ;
+
+        int hi = join ;
+        while (hi < s_.length - 1 && s_[hi] < to)
+            hi++ ;
+
+        double start = rotation_[lo] ;
+        double change = XeroMath.normalizeAngleDegrees(rotation_[hi] - start) ;
+        double length = s_[hi] - s_[lo] ;
+
+        for(int i = lo + 1 ; i < hi ; i++)
+            rotation_[i] = start + change * (s_[i] - s_[lo]) / length ;
+    }
+}
@@ -0,0 +1,223 @@
+package org.xero1425.base.subsystems.swerve.common;
+
+import org.xero1425.misc.XeroMath;
+
+/// \file
+
+/// \brief This class turns the chassis speeds requested of a swerve drive into module speeds and angles the
+/// modules can actually achieve in one robot loop.
+///
+/// Converting the requested chassis speeds straight to module states asks the modules for changes they cannot
+/// make.  A module may be asked to exceed its top speed, to change speed faster than the drive motor can
+/// accelerate, or to swing its wheel further than the steer motor can turn in a robot loop while still driving.
+/// The result is wheel scrub and a path that is not the one requested.
+///
+/// The generator keeps the chassis speeds of the last setpoint.  Each robot loop, the requested speeds are first
+/// desaturated so no module exceeds its top speed.  The generator then moves from the last setpoint toward the
+/// request by the largest fraction of the change for which every module stays within its acceleration limit and,
+/// for modules that are moving, within its steer velocity limit.  Because every module moves along the same line
+/// from the last setpoint, the chassis motion keeps its shape and is only slowed down.  Each module is then
+/// optimized against its measured angle, driving backwards when that needs less than 90 degrees of steering, and
+/// its speed is scaled by the cosine of the remaining steering error so a wheel still turning does not drive
+/// across the path.
+///
+/// All of the state is kept in arrays created with the generator so nothing is allocated in the robot loop.
+public class SwerveSetpointGenerator {
+    // The number of modules on the drive base
+    private static final int Modules = 4 ;
+
+    // The module speed in meters per second below which the module is treated as stopped
+    private static final double StoppedSpeed = 0.01 ;
+
+    // The number of bisection steps used to find the fraction of the change that meets the steer limit
+    private static final int SteerIterations = 8 ;
+
+    // The position of each module relative to the center of the robot, in meters
+    private final double [] mx_ ;
+    private final double [] my_ ;
+
+    // The top speed of a module in meters per second
+    private double max_speed_ ;
+
+    // The acceleration limit of a module in meters per second squared
+    private double max_accel_ ;
+
+    // The steer velocity limit of a module in radians per second
+    private double max_steer_ ;
+
+    // If true, there is a previous setpoint
+    private boolean valid_ ;
+
+    // The chassis speeds of the previous setpoint
+    private double vx_ ;
+    private double vy_ ;
+    private double omega_ ;
+
+    // The speed and angle in radians of each module in the previous setpoint
+    private final double [] speeds_ ;
+    private final double [] angles_ ;
+
+    // The fraction of the requested change used for the last setpoint, 1.0 when the request was met
+    private double fraction_ ;
+
+    /// \brief create the setpoint generator
+    /// \param mx the X position of each module relative to the center of the robot in meters
+    /// \param my the Y position of each module relative to the center of the robot in meters
+    /// \param maxspeed the top speed of a module in meters per second
+    /// \param maxaccel the acceleration limit of a module in meters per second squared
+    /// \param maxsteer the steer velocity limit of a module in degrees per second
+    public SwerveSetpointGenerator(double [] mx, double [] my, double maxspeed, double maxaccel, double maxsteer) {
+        mx_ = mx.clone() ;
+        my_ = my.clone() ;
+        speeds_ = new double[Modules] ;
+        angles_ = new double[Modules] ;
+
+        setLimits(maxspeed, maxaccel, maxsteer) ;
+        reset() ;
+    }
+
+    /// \brief set the limits for the modules
+    /// \param maxspeed the top speed of a module in meters per second
+    /// \param maxaccel the acceleration limit of a module in meters per second squared
+    /// \param maxsteer the steer velocity limit of a module in degrees per second
+    public void setLimits(double maxspeed, double maxaccel, double maxsteer) {
+        max_speed_ = maxspeed ;
+        max_accel_ = maxaccel ;
+        max_steer_ = Math.toRadians(maxsteer) ;
+    }
+
+    /// \brief forget the previous setpoint.  The next setpoint starts from a stopped robot with the wheels
+    /// at their measured angles.  This must be called when the modules are driven by other means.
+    public void reset() {
+        valid_ = false ;
+        fraction_ = 1.0 ;
+    }
+
+    /// \brief returns the fraction of the requested change in chassis speeds used for the last setpoint
+    /// \returns the fraction of the requested change, 1.0 when the request was met
+    public double getFraction() {
+        return fraction_ ;
+    }
+
+    /// \brief compute the module speeds and angles for the next robot loop
+    /// \param vx the requested robot relative X velocity in meters per second
+    /// \param vy the requested robot relative Y velocity in meters per second
+    /// \param omega the requested angular velocity in radians per second
+    /// \param measured the measured angle of each module in radians
+    /// \param dt the time of the robot loop in seconds
+    /// \param speeds returns the speed of each module in meters per second
+    /// \param angles returns the angle of each module in degrees
+    public void generate(double vx, double vy, double omega, double [] measured, double dt, double [] speeds, double [] angles) {
+        if (!valid_) {
+            vx_ = 0.0 ;
+            vy_ = 0.0 ;
+            omega_ = 0.0 ;
+            for(int i = 0 ; i < Modules ; i++) {
+                speeds_[i] = 0.0 ;
+                angles_[i] = measured[i] ;
+            }
+            valid_ = true ;
+        }
+
+        //
+        // Desaturate the request so the fastest module is at the top speed
+        //
+        double fastest = 0.0 ;
+        for(int i = 0 ; i < Modules ; i++) {
+            fastest = Math.max(fastest, Math.hypot(vx - omega * my_[i], vy + omega * mx_[i])) ;
+        }
+
+        if (fastest > max_speed_) {
+            double scale = max_speed_ / fastest ;
+            vx *= scale ;
+            vy *= scale ;
+            omega *= scale ;
+        }
+
+        //
+        // Find the largest fraction of the change that keeps every module within its limits.  The change in a
+        // module velocity is linear in the fraction, so the acceleration limit is solved directly.  The module
+        // heading is not, so the steer limit is found by bisection.
+        //
+        double dvx = vx - vx_ ;
+        double dvy = vy - vy_ ;
+        double domega = omega - omega_ ;
+        double s = 1.0 ;
+
+        for(int i = 0 ; i < Modules ; i++) {
+            double dv = Math.hypot(dvx - domega * my_[i], dvy + domega * mx_[i]) ;
+            if (dv * s > max_accel_ * dt) {
+                s = max_accel_ * dt / dv ;
+            }
+        }
+
+        for(int i = 0 ; i < Modules ; i++) {
+            if (Math.abs(speeds_[i]) < StoppedSpeed)
+                continue ;
+
+            if (steerError(i, s, dvx, dvy, domega) > max_steer_ * dt) {
+                double lo = 0.0 ;
+                double hi = s ;
+                for(int j = 0 ; j < SteerIterations ; j++) {
+                    double mid = (lo + hi) / 2.0 ;
+                    if (steerError(i, mid, dvx, dvy, domega) > max_steer_ * dt)
+                        hi = mid ;
+                    else
+                        lo = mid ;
+                }
+                s = lo ;
+            }
+        }
+
+        fraction_ = s ;
+        vx_ += s * dvx ;
+        vy_ += s * dvy ;
+        omega_ += s * domega ;
+
+        //
+        // Compute the module states for the new setpoint, optimized against the measured module angles
+        //
+        for(int i = 0 ; i < Modules ; i++) {
+            double mvx = vx_ - omega_ * my_[i] ;
+            double mvy = vy_ + omega_ * mx_[i] ;
+            double speed = Math.hypot(mvx, mvy) ;
+            double angle = angles_[i] ;
+
+            if (speed < StoppedSpeed) {
+                //
+                // Hold the wheel at its last angle rather than turning it to point along the X axis
+                //
+                speed = 0.0 ;
+            }
+            else {
+                angle = Math.atan2(mvy, mvx) ;
+                if (Math.abs(XeroMath.normalizeAngleRadians(angle - measured[i])) > Math.PI / 2.0) {
+                    angle = XeroMath.normalizeAngleRadians(angle + Math.PI) ;
+                    speed = -speed ;
+                }
+            }
+
+            speeds_[i] = speed ;
+            angles_[i] = angle ;
+
+            speeds[i] = speed * Math.max(0.0, Math.cos(angle - measured[i])) ;
+            angles[i] = Math.toDegrees(angle) ;
+        }
+    }
+
+    //
+    // Returns the change in heading for a module, ignoring a reversal of the wheel, when the chassis moves the
+    // given fraction of the change from the previous setpoint.  A module that would pass through a stop can
+    // point anywhere, so its error is zero.
+    //
+    private double steerError(int which, double s, double dvx, double dvy, double domega) {
+        double mvx = (vx_ + s * dvx) - (omega_ + s * domega) * my_[which] ;
+        double mvy = (vy_ + s * dvy) + (omega_ + s * domega) * mx_[which] ;
+
+        if (Math.hypot(mvx, mvy) < StoppedSpeed)
+            return 0.0 ;
+
+        double diff = Math.abs(XeroMath.normalizeAngleRadians(Math.atan2(mvy, mvx) - angles_[which])) ;
+        return Math.min(diff, Math.PI - diff) ;
+    }
+}
@@ -1,5 +1,7 @@
 package org.xero1425.base.subsystems.swerve.common;
 
+import java.util.List;
+
 import org.xero1425.base.IVisionLocalization;
 import org.xero1425.base.IVisionLocalization.LocationData;
 import org.xero1425.base.subsystems.Subsystem;
@@ -13,7 +15,23 @@ import edu.wpi.first.math.Vector;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.numbers.N3;
 
+/// \brief This class processes the samples from one vision camera for the pose estimator of the drive base.
+///
+/// There is one of these for each camera.  Each sample is given to the estimator with standard deviations chosen
+/// for this camera from the number of tags seen and the distance to them, so a camera that sees the tags well is
+/// trusted more than one that does not.  The standard deviations are read from the estimator:vision settings of
+/// the camera subsystem if it has them, and from those of the drive base if not.  Only new frames from the camera
+/// are returned, so a frame is not counted more than once when the camera is slower than the robot loop, and every
+/// frame since the last robot loop is returned, each with its own timestamp, when the camera is faster.  The standard
+/// deviations for each frame are chosen from the tags seen in that frame.
 public class SwerveVisionProcessing {
+    /// \brief a vision sample accepted for the pose estimator
+    public static class Observation {
+        public Pose2d pose ;
+        public double when ;
+        public Vector<N3> stddevs ;
+    }
+
     private enum VisionParamsType {
         SingleNear,
         SingleFar,
@@ -25,8 +43,10 @@ public class SwerveVisionProcessing {
 
     private SwerveBaseSubsystem sub_ ;
     private IVisionLocalization vision_ ;
+    private String name_ ;
 
     private VisionParamsType params_type_ ;
+    private Vector<N3> params_ ;
 
     private double single_tag_threshold_;
     private Vector<N3> single_tag_near_params_ ;
@@ -45,6 +65,7 @@ public class SwerveVisionProcessing {
     public SwerveVisionProcessing(SwerveBaseSubsystem sub, IVisionLocalization vision) throws BadParameterTypeException, MissingParameterException {
         vision_ = vision ;
         sub_ = sub ;
+        name_ = (vision instanceof Subsystem) ? ((Subsystem)vision).getName() : "vision" ;
 
         advanced_rejection_ = sub_.getSettingsValue("estimator:advanced-rejection").getBoolean();
         single_tag_threshold_ = sub_.getSettingsValue("estimator:single-threshold").getDouble();
@@ -52,14 +73,18 @@ public class SwerveVisionProcessing {
         vision_reject_threshold_ = sub_.getSettingsValue("estimator:vision-reject-threshold").getDouble();
         single_tag_distance_threshold_ = sub_.getSettingsValue("estimator:single-tag-ignore-reject-threshold").getDouble();
 
-        single_tag_near_params_ = getParams(sub, "vision:single-near");
-        single_tag_far_params_ = getParams(sub, "vision:single-far");
-        multi_tag_near_params_ = getParams(sub, "vision:multi-near");
-        multi_tag_far_params_ = getParams(sub, "vision:multi-far");
+        single_tag_near_params_ = getCameraParams("vision:single-near");
+        single_tag_far_params_ = getCameraParams("vision:single-far");
+        multi_tag_near_params_ = getCameraParams("vision:multi-near");
+        multi_tag_far_params_ = getCameraParams("vision:multi-far");
 
         logger_id_ = sub.getRobot().getMessageLogger().registerSubsystem("vision");
     }
 
+    public String getName() {
+        return name_ ;
+    }
+
     public Pose2d getCurrentPose() {
         Pose2d ret = null ;
 
@@ -71,17 +96,22 @@ public class SwerveVisionProcessing {
         return ret;
     }
 
+    public int getTagCount() {
+        return vision_.getTagCount() ;
+    }
+
     public boolean hasTargets() {
         return vision_.getTagCount() > 0 ;
     }
 
-    public void processVision() {
+    /// \brief process the frames from the camera since the last robot loop
+    /// \param out the list the samples to give to the pose estimator are added to
+    public void processVision(List<Observation> out) {
         MessageLogger logger = sub_.getRobot().getMessageLogger();
-        boolean ignore = false;
 
-        LocationData lc = vision_.getLocation(sub_.getPose()) ;
-        setVisionParams();
-        if (lc != null) {
+        for(LocationData lc : vision_.getLocations(sub_.getPose())) {
+            boolean ignore = false;
+            setVisionParams(lc.tags, lc.distance);
             vision_pose_ = lc.location.toPose2d();
 
             //
@@ -101,7 +131,7 @@ public class SwerveVisionProcessing {
             // drive pose gets way off, or if for instance, the drive team sets up the robot on the
             // wrong automode.
             //
-            if (advanced_rejection_ && vision_.getTagCount() > 1) {
+            if (advanced_rejection_ && lc.tags > 1) {
                 //
                 // If we see multi tags, we take the value from vision
                 //
@@ -109,26 +139,33 @@ public class SwerveVisionProcessing {
 
                 logger.startMessage(MessageType.Info) ;
                 logger.add("added back vision sample");
+                logger.add("camera", name_) ;
                 logger.add("distance", dist) ;
-                logger.add("tag count", vision_.getTagCount());
+                logger.add("tag count", lc.tags);
                 logger.endMessage();
 
-            } else if (advanced_rejection_ && vision_.getTagCount() == 1 && vision_.getDistance() < single_tag_distance_threshold_) {
+            } else if (advanced_rejection_ && lc.tags == 1 && lc.distance < single_tag_distance_threshold_) {
                 ignore = false ;
 
                 logger.startMessage(MessageType.Info) ;
                 logger.add("added back vision sample");
+                logger.add("camera", name_) ;
                 logger.add("distance", dist) ;
-                logger.add("tag count", vision_.getTagCount());
+                logger.add("tag count", lc.tags);
                 logger.endMessage();
             }
 
             if (!ignore) {
-                sub_.getEstimator().addVisionMeasurement(vision_pose_, lc.when) ; 
+                Observation obs = new Observation() ;
+                obs.pose = vision_pose_ ;
+                obs.when = lc.when ;
+                obs.stddevs = params_ ;
+                out.add(obs) ;
             }
             else {
                 logger.startMessage(MessageType.Debug, logger_id_);
                 logger.add("Ignoring vision sample");
+                logger.add("camera", name_) ;
                 logger.add("dbpose", sub_.getPose());
                 logger.add("vision", vision_pose_);
                 logger.add("dist", dist);
@@ -136,18 +173,21 @@ public class SwerveVisionProcessing {
             }
         }      
 
-        logger.startMessage(MessageType.Debug, logger_id_);
-        logger.add("Vision: ");
-        logger.add("params", params_type_.toString());
-        logger.add("dbx", sub_.getPose().getX());
-        logger.add("dby", sub_.getPose().getY());
-        logger.add("dbheading", sub_.getPose().getRotation().getDegrees());
-        if (vision_pose_ != null) {
-            logger.add("vsx", vision_pose_.getX());
-            logger.add("vsy", vision_pose_.getY());
-            logger.add("vsheading", vision_pose_.getRotation().getDegrees());
+        if (logger.isEnabled(MessageType.Debug, logger_id_)) {
+            logger.startMessage(MessageType.Debug, logger_id_);
+            logger.add("Vision: ");
+            logger.add("camera", name_) ;
+            logger.add("params", (params_type_ == null) ? "none" : params_type_.toString());
+            logger.add("dbx", sub_.getPose().getX());
+            logger.add("dby", sub_.getPose().getY());
+            logger.add("dbheading", sub_.getPose().getRotation().getDegrees());
+            if (vision_pose_ != null) {
+                logger.add("vsx", vision_pose_.getX());
+                logger.add("vsy", vision_pose_.getY());
+                logger.add("vsheading", vision_pose_.getRotation().getDegrees());
+            }
+            logger.endMessage();
         }
-        logger.endMessage();
     }
 
     private void setVisionParams(VisionParamsType vtype)
@@ -156,51 +196,65 @@ public class SwerveVisionProcessing {
         if (params_type_ != vtype) {
             switch(vtype) {
                 case SingleNear:
-                    logger.startMessage(MessageType.Info).add("Changed vision parameters to Single Near").endMessage();
-                    sub_.getEstimator().setVisionMeasurementStdDevs(single_tag_near_params_);
+                    logger.startMessage(MessageType.Info).add("Changed vision parameters for ").add(name_).add(" to Single Near").endMessage();
+                    params_ = single_tag_near_params_ ;
                     break ;
 
                 case SingleFar:
-                    logger.startMessage(MessageType.Info).add("Changed vision parameters to Single Far").endMessage();
-                    sub_.getEstimator().setVisionMeasurementStdDevs(single_tag_far_params_);
+                    logger.startMessage(MessageType.Info).add("Changed vision parameters for ").add(name_).add(" to Single Far").endMessage();
+                    params_ = single_tag_far_params_ ;
                     break; 
 
                 case MultiNear:
-                    logger.startMessage(MessageType.Info).add("Changed vision parameters to Multi Near").endMessage();
-                    sub_.getEstimator().setVisionMeasurementStdDevs(multi_tag_near_params_);
+                    logger.startMessage(MessageType.Info).add("Changed vision parameters for ").add(name_).add(" to Multi Near").endMessage();
+                    params_ = multi_tag_near_params_ ;
                     break ;
 
                 case MultiFar:
-                    logger.startMessage(MessageType.Info).add("Changed vision parameters to Multi Far").endMessage();                
-                    sub_.getEstimator().setVisionMeasurementStdDevs(multi_tag_far_params_);
+                    logger.startMessage(MessageType.Info).add("Changed vision parameters for ").add(name_).add(" to Multi Far").endMessage();                
+                    params_ = multi_tag_far_params_ ;
                     break; 
             }
             params_type_ = vtype;
         }
     }
 
-    private void setVisionParams() {
-        if (vision_.getTagCount() == 1) {
-            if (vision_.getDistance() < single_tag_threshold_) {
+    private void setVisionParams(int tags, double distance) {
+        if (tags == 1) {
+            if (distance < single_tag_threshold_) {
                 setVisionParams(VisionParamsType.SingleNear);
             }
             else {
                 setVisionParams(VisionParamsType.SingleFar);
             }
         }
-        else if (vision_.getTagCount() > 1) {
-            if (vision_.getDistance() < multi_tag_threshold_) {
+        else if (tags > 1) {
+            if (distance < multi_tag_threshold_) {
                 setVisionParams(VisionParamsType.MultiNear);
             }
             else {
                 setVisionParams(VisionParamsType.MultiFar);
             }                
         }
-        else if (vision_.getTagCount() == 0) {
+        else if (tags == 0) {
             setVisionParams(VisionParamsType.SingleNear);
         }
     }
 
+    //
+    // Returns the standard deviations from the camera subsystem if it has them, otherwise from the drive base
+    //
+    private Vector<N3> getCameraParams(String str) throws BadParameterTypeException, MissingParameterException {
+        if (vision_ instanceof Subsystem) {
+            Subsystem cam = (Subsystem)vision_ ;
+            if (cam.isSettingDefined("estimator:" + str + ":x")) {
+                return getParams(cam, str) ;
+            }
+        }
+
+        return getParams(sub_, str) ;
+    }
+
     public static Vector<N3> getParams(Subsystem sub, String str) throws BadParameterTypeException, MissingParameterException {
         double px = sub.getSettingsValue("estimator:" + str + ":x").getDouble();
         double py = sub.getSettingsValue("estimator:" + str + ":y").getDouble();
@@ -1,13 +1,23 @@
 package org.xero1425.base.subsystems.swerve.sdsswerve;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.xero1425.swervelib.Mk4ModuleConfiguration;
 import org.xero1425.swervelib.Mk4iSwerveModuleHelper;
 import org.xero1425.swervelib.SDSModuleGlobalConfig;
 import org.xero1425.swervelib.SwerveModule;
+import org.xero1425.base.InputLog;
 import org.xero1425.base.misc.XeroTimer;
 import org.xero1425.base.subsystems.Subsystem;
 import org.xero1425.base.subsystems.swerve.common.SwerveBaseSubsystem;
+import org.xero1425.base.subsystems.swerve.common.SwerveSetpointGenerator;
 import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.DeviceConfigTracker;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
 import org.xero1425.misc.MissingParameterException;
@@ -50,13 +60,23 @@ public class SDSSwerveDriveSubsystem extends SwerveBaseSubsystem {
 
     private boolean module_encoders_inited_ ;
     private XeroTimer module_init_timer_ ;
+
+    // The input log channels for the module velocity, angle, and distance, null if inputs are not being captured or replayed
+    private InputLog.Channel [][] module_inputs_ ;
+
+    private static final int InputVelocity = 0 ;
+    private static final int InputAngle = 1 ;
+    private static final int InputDistance = 2 ;
+
+    // The generator that limits the module states in chassis mode, null if module states are not limited
+    private SwerveSetpointGenerator setpoints_ ;
+
+    // The measured angle of each module in radians, given to the setpoint generator
+    private double [] measured_ ;
     
     public SDSSwerveDriveSubsystem(Subsystem parent, String name) throws Exception {
         super(parent, name) ;
 
-        ShuffleboardLayout lay ;
-        int drive, steer, encoder ;
-        double offset ;
         Mk4ModuleConfiguration config = new Mk4ModuleConfiguration() ;
 
         String bus = getSettingsValue("hw:bus").getString() ;
@@ -100,47 +120,90 @@ public class SDSSwerveDriveSubsystem extends SwerveBaseSubsystem {
 
         ShuffleboardTab shuffleboardTab = Shuffleboard.getTab("Drivetrain");
 
-        lay = shuffleboardTab.getLayout("FLModule", BuiltInLayouts.kList).withSize(2, 4).withPosition(0, 0) ;
-        drive = getSettingsValue("hw:fl:drive:canid").getInteger() ;
-        steer = getSettingsValue("hw:fl:steer:canid").getInteger() ;
-        encoder = getSettingsValue("hw:fl:encoder:canid").getInteger() ;
-        offset = Math.toRadians(getSettingsValue("hw:fl:encoder:offset").getDouble()) ;
-
-        if (isVerbose())
-            fl_ = Mk4iSwerveModuleHelper.createFalcon500(lay, config, ratio_, drive, steer, encoder, offset) ;
-        else
-            fl_ = Mk4iSwerveModuleHelper.createFalcon500(config, ratio_, drive, steer, encoder, offset) ;
-
-        lay = shuffleboardTab.getLayout("FRModule", BuiltInLayouts.kList).withSize(2, 4).withPosition(0, 0) ;
-        drive = getSettingsValue("hw:fr:drive:canid").getInteger() ;
-        steer = getSettingsValue("hw:fr:steer:canid").getInteger() ;
-        encoder = getSettingsValue("hw:fr:encoder:canid").getInteger() ;
-        offset = Math.toRadians(getSettingsValue("hw:fr:encoder:offset").getDouble()) ;
-
-        if (isVerbose())
-            fr_ = Mk4iSwerveModuleHelper.createFalcon500(lay, config, ratio_, drive, steer, encoder, offset) ;
-        else
-            fr_ = Mk4iSwerveModuleHelper.createFalcon500(config, ratio_, drive, steer, encoder, offset) ;
-
-        lay = shuffleboardTab.getLayout("BLModule", BuiltInLayouts.kList).withSize(2, 4).withPosition(0, 0) ;
-        drive = getSettingsValue("hw:bl:drive:canid").getInteger() ;
-        steer = getSettingsValue("hw:bl:steer:canid").getInteger() ;
-        encoder = getSettingsValue("hw:bl:encoder:canid").getInteger() ;
-        offset = Math.toRadians(getSettingsValue("hw:bl:encoder:offset").getDouble()) ;
-        if (isVerbose())
-            bl_ = Mk4iSwerveModuleHelper.createFalcon500(lay, config, ratio_, drive, steer, encoder, offset) ;
-        else
-            bl_ = Mk4iSwerveModuleHelper.createFalcon500(config, ratio_, drive, steer, encoder, offset) ;        
-
-        lay = shuffleboardTab.getLayout("BRModule", BuiltInLayouts.kList).withSize(2, 4).withPosition(0, 0) ;
-        drive = getSettingsValue("hw:br:drive:canid").getInteger() ;
-        steer = getSettingsValue("hw:br:steer:canid").getInteger() ;
-        encoder = getSettingsValue("hw:br:encoder:canid").getInteger() ;
-        offset = Math.toRadians(getSettingsValue("hw:br:encoder:offset").getDouble()) ;
-        if (isVerbose())
-            br_ = Mk4iSwerveModuleHelper.createFalcon500(lay, config, ratio_, drive, steer, encoder, offset) ;
-        else
-            br_ = Mk4iSwerveModuleHelper.createFalcon500(config, ratio_, drive, steer, encoder, offset) ;        
+        //
+        // Each module is a drive motor, a steer motor, and an encoder that are configured independently
+        // of the other modules, so the modules are created in parallel unless they are displayed on
+        // shuffleboard.  The settings and the shuffleboard layouts are read on the robot thread.
+        //
+        String [] modules = { "fl", "fr", "bl", "br" } ;
+        String [] layouts = { "FLModule", "FRModule", "BLModule", "BRModule" } ;
+        ShuffleboardLayout [] lays = new ShuffleboardLayout[4] ;
+        int [] drives = new int[4] ;
+        int [] steers = new int[4] ;
+        int [] encoders = new int[4] ;
+        double [] offsets = new double[4] ;
+        SwerveModule [] created = new SwerveModule[4] ;
+
+        for(int i = 0 ; i < modules.length ; i++) {
+            lays[i] = shuffleboardTab.getLayout(layouts[i], BuiltInLayouts.kList).withSize(2, 4).withPosition(0, 0) ;
+            drives[i] = getSettingsValue("hw:" + modules[i] + ":drive:canid").getInteger() ;
+            steers[i] = getSettingsValue("hw:" + modules[i] + ":steer:canid").getInteger() ;
+            encoders[i] = getSettingsValue("hw:" + modules[i] + ":encoder:canid").getInteger() ;
+            offsets[i] = Math.toRadians(getSettingsValue("hw:" + modules[i] + ":encoder:offset").getDouble()) ;
+        }
+
+        if (isVerbose() || !DeviceConfigTracker.isParallelEnabled()) {
+            for(int i = 0 ; i < modules.length ; i++) {
+                if (isVerbose())
+                    created[i] = Mk4iSwerveModuleHelper.createFalcon500(lays[i], config, ratio_, drives[i], steers[i], encoders[i], offsets[i]) ;
+                else
+                    created[i] = Mk4iSwerveModuleHelper.createFalcon500(config, ratio_, drives[i], steers[i], encoders[i], offsets[i]) ;
+            }
+        }
+        else {
+            ExecutorService pool = Executors.newFixedThreadPool(modules.length) ;
+            try {
+                List<Future<SwerveModule>> futures = new ArrayList<Future<SwerveModule>>() ;
+                for(int i = 0 ; i < modules.length ; i++) {
+                    final int which = i ;
+                    futures.add(pool.submit(() -> Mk4iSwerveModuleHelper.createFalcon500(config, ratio_, drives[which], steers[which], encoders[which], offsets[which]))) ;
+                }
+
+                for(int i = 0 ; i < modules.length ; i++) {
+                    created[i] = futures.get(i).get() ;
+                }
+            }
+            catch(ExecutionException ex) {
+                if (ex.getCause() instanceof Exception)
+                    throw (Exception)ex.getCause() ;
+                throw ex ;
+            }
+            finally {
+                pool.shutdown() ;
+            }
+        }
+
+        fl_ = created[FL] ;
+        fr_ = created[FR] ;
+        bl_ = created[BL] ;
+        br_ = created[BR] ;
+
+        InputLog log = InputLog.getInstance() ;
+        if (log != null) {
+            String [] modules = { "fl", "fr", "bl", "br" } ;
+            module_inputs_ = new InputLog.Channel[4][3] ;
+            for(int i = 0 ; i < modules.length ; i++) {
+                module_inputs_[i][InputVelocity] = log.getChannel(getName() + ":" + modules[i] + ":velocity") ;
+                module_inputs_[i][InputAngle] = log.getChannel(getName() + ":" + modules[i] + ":angle") ;
+                module_inputs_[i][InputDistance] = log.getChannel(getName() + ":" + modules[i] + ":distance") ;
+            }
+        }
+
+        if (isSettingDefined("setpoint:enabled") && getSettingsValue("setpoint:enabled").getBoolean()) {
+            double [] mx = { getWidth() / 2.0, getWidth() / 2.0, -getWidth() / 2.0, -getWidth() / 2.0 } ;
+            double [] my = { getLength() / 2.0, -getLength() / 2.0, getLength() / 2.0, -getLength() / 2.0 } ;
+            setpoints_ = new SwerveSetpointGenerator(mx, my,
+                                getSettingsValue("setpoint:max-speed").getDouble(),
+                                getSettingsValue("setpoint:max-accel").getDouble(),
+                                getSettingsValue("setpoint:max-steer-velocity").getDouble()) ;
+            measured_ = new double[4] ;
+
+            getRobot().getSettingsSupplier().subscribe("subsystems:" + getName() + ":setpoint", (settings, keys) -> {
+                setpoints_.setLimits(getSettingsValue("setpoint:max-speed").getDouble(),
+                                     getSettingsValue("setpoint:max-accel").getDouble(),
+                                     getSettingsValue("setpoint:max-steer-velocity").getDouble()) ;
+            }) ;
+        }
 
         createOdometry(); 
 
@@ -159,19 +222,19 @@ public class SDSSwerveDriveSubsystem extends SwerveBaseSubsystem {
 
         switch(which) {
             case FL:
-                st = new SwerveModuleState(fl_.getDriveVelocity(), new Rotation2d(fl_.getSteerAngle())) ;
+                st = new SwerveModuleState(moduleInput(FL, InputVelocity, fl_.getDriveVelocity()), new Rotation2d(moduleInput(FL, InputAngle, fl_.getSteerAngle()))) ;
                 break ;
 
             case FR:
-                st = new SwerveModuleState(fr_.getDriveVelocity(), new Rotation2d(fr_.getSteerAngle())) ;
+                st = new SwerveModuleState(moduleInput(FR, InputVelocity, fr_.getDriveVelocity()), new Rotation2d(moduleInput(FR, InputAngle, fr_.getSteerAngle()))) ;
                 break ;
                 
             case BL:
-                st = new SwerveModuleState(bl_.getDriveVelocity(), new Rotation2d(bl_.getSteerAngle())) ;
+                st = new SwerveModuleState(moduleInput(BL, InputVelocity, bl_.getDriveVelocity()), new Rotation2d(moduleInput(BL, InputAngle, bl_.getSteerAngle()))) ;
                 break ;
                 
             case BR:
-                st = new SwerveModuleState(br_.getDriveVelocity(), new Rotation2d(br_.getSteerAngle())) ;
+                st = new SwerveModuleState(moduleInput(BR, InputVelocity, br_.getDriveVelocity()), new Rotation2d(moduleInput(BR, InputAngle, br_.getSteerAngle()))) ;
                 break ;
         }
 
@@ -183,25 +246,35 @@ public class SDSSwerveDriveSubsystem extends SwerveBaseSubsystem {
 
         switch(which) {
             case FL:
-                st = new SwerveModulePosition(fl_.getDistance(), new Rotation2d(fl_.getSteerAngle())) ;
+                st = new SwerveModulePosition(moduleInput(FL, InputDistance, fl_.getDistance()), new Rotation2d(moduleInput(FL, InputAngle, fl_.getSteerAngle()))) ;
                 break ;
 
             case FR:
-                st = new SwerveModulePosition(fr_.getDistance(), new Rotation2d(fr_.getSteerAngle())) ;
+                st = new SwerveModulePosition(moduleInput(FR, InputDistance, fr_.getDistance()), new Rotation2d(moduleInput(FR, InputAngle, fr_.getSteerAngle()))) ;
                 break ;
                 
             case BL:
-                st = new SwerveModulePosition(bl_.getDistance(), new Rotation2d(bl_.getSteerAngle())) ;
+                st = new SwerveModulePosition(moduleInput(BL, InputDistance, bl_.getDistance()), new Rotation2d(moduleInput(BL, InputAngle, bl_.getSteerAngle()))) ;
                 break ;
                 
             case BR:
-                st = new SwerveModulePosition(br_.getDistance(), new Rotation2d(br_.getSteerAngle())) ;
+                st = new SwerveModulePosition(moduleInput(BR, InputDistance, br_.getDistance()), new Rotation2d(moduleInput(BR, InputAngle, br_.getSteerAngle()))) ;
                 break ;
         }
 
         return st ;
     }
 
+    //
+    // Pass a value read from a swerve module through the input log
+    //
+    private double moduleInput(int which, int kind, double value) {
+        if (module_inputs_ == null)
+            return value ;
+
+        return module_inputs_[which][kind].input(value) ;
+    }
+
     public SwerveModuleState getModuleTarget(int which) {
         SwerveModuleState st = null ;
 
@@ -252,6 +325,9 @@ public class SDSSwerveDriveSubsystem extends SwerveBaseSubsystem {
         }
 
         if (getRobot().isDisabled()) {
+            if (setpoints_ != null)
+                setpoints_.reset() ;
+
             fl_.set(0.0, 0.0);
             fr_.set(0.0, 0.0);
             bl_.set(0.0, 0.0);
@@ -276,7 +352,19 @@ public class SDSSwerveDriveSubsystem extends SwerveBaseSubsystem {
         if (powers_ == null || powers_.length != 4)
             powers_ = new double[4] ;   
 
-        if (mode_ == Mode.Chassis) {
+        if (mode_ == Mode.Chassis && setpoints_ != null) {
+
+            // Convert chassis speeds to module speeds and angles the modules can reach this robot loop.  The
+            // angles are read through the input log, without building module states, so nothing is allocated.
+            measured_[FL] = moduleInput(FL, InputAngle, fl_.getSteerAngle()) ;
+            measured_[FR] = moduleInput(FR, InputAngle, fr_.getSteerAngle()) ;
+            measured_[BL] = moduleInput(BL, InputAngle, bl_.getSteerAngle()) ;
+            measured_[BR] = moduleInput(BR, InputAngle, br_.getSteerAngle()) ;
+
+            setpoints_.generate(chassis_speed_.vxMetersPerSecond, chassis_speed_.vyMetersPerSecond, chassis_speed_.omegaRadiansPerSecond,
+                                measured_, getRobot().getDeltaTime(), speeds_, angles_) ;
+        }
+        else if (mode_ == Mode.Chassis) {
 
             // Convert chassis speeds to module speeds and angles
             SwerveModuleState[] states = getKinematics().toSwerveModuleStates(chassis_speed_);
@@ -290,6 +378,10 @@ public class SDSSwerveDriveSubsystem extends SwerveBaseSubsystem {
             angles_[BR] = states[BR].angle.getDegrees() ;
             speeds_[BR] = states[BR].speedMetersPerSecond ;                                    
         }
+        else if (setpoints_ != null) {
+            // The modules are driven directly, so the next chassis setpoint starts over
+            setpoints_.reset() ;
+        }
 
         if (mode_ == Mode.Chassis || mode_ == Mode.RawSpeed)
         {
@@ -304,6 +396,7 @@ public class SDSSwerveDriveSubsystem extends SwerveBaseSubsystem {
             fr_.set(powers_[FR] * nominal_voltage_, Math.toRadians(angles_[FR])) ;
             bl_.set(powers_[BL] * nominal_voltage_, Math.toRadians(angles_[BL])) ;
             br_.set(powers_[BR] * nominal_voltage_, Math.toRadians(angles_[BR])) ;
+            completeTrace() ;
 
             // MessageLogger logger = getRobot().getMessageLogger();
             // logger.startMessage(MessageType.Info);
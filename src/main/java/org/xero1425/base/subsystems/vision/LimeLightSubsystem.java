@@ -1,5 +1,8 @@
 package org.xero1425.base.subsystems.vision;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
@@ -7,20 +10,45 @@ import org.xero1425.misc.MessageLogger ;
 import org.xero1425.misc.MessageType ;
 import org.xero1425.base.IVisionAlignmentData;
 import org.xero1425.base.IVisionLocalization;
+import org.xero1425.base.InputLog;
 import org.xero1425.base.XeroRobot;
 import org.xero1425.base.subsystems.Subsystem;
+import org.xero1425.simulator.engine.SimulationEngine;
+import org.xero1425.websrv.StatusSnapshot;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Pose3d;
 import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.geometry.Translation3d;
 import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.DoubleSubscriber;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.StringSubscriber;
+import edu.wpi.first.networktables.TimestampedString;
 import edu.wpi.first.wpilibj.Timer;
 
+/// \brief This class is a single LimeLight camera.
+///
+/// The network tables table of the camera is the name of the subsystem, so a robot with more than one camera
+/// creates one subsystem per camera, each named for its table, and gives each to the drive base as a vision
+/// source.  Each camera may have its own settings under the subsystem name.
+///
+/// - mount:x, mount:y, mount:z, mount:roll, mount:pitch, mount:yaw, the pose of the camera on the robot in meters and
+///   degrees.  This is only given when the LimeLight is set up with its camera at the center of the robot, so the
+///   pose it reports is the pose of the camera.  The pose of the robot is then found from the mount pose.  When the
+///   mount is set up on the LimeLight itself, these are left out.
+/// - latency, extra latency in seconds added to the latency the LimeLight reports, for example for a camera on a
+///   slower network path
+/// - estimator:vision, the standard deviations for this camera, see SwerveVisionProcessing
+///
+/// The json results are read through a queue, so every frame the camera publishes between two robot loops is
+/// processed, each with the time it arrived, rather than only the latest.  A frame whose LimeLight timestamp is not
+/// newer than the last frame is stale and is skipped.  The LimeLight heartbeat counts the frames the camera
+/// produced, and frames it produced that never arrived are counted as dropped.
 public class LimeLightSubsystem extends Subsystem implements IVisionLocalization, IVisionAlignmentData {
-    public final static String LimeLightTableName = "limelight";
     public final static String CamModeKeyName = "camMode" ;
     public final static String LedModeKeyName = "ledMode" ;
     public final static String PipelineKeyName = "pipeline" ;
@@ -103,13 +131,85 @@ public class LimeLightSubsystem extends Subsystem implements IVisionLocalization
     private CamMode cam_mode_ ;
     private LedMode led_mode_;
 
+    private List<String[]> fiducial_status_keys_ ;
+
+    // The number of frames held between robot loops
+    private static final int FrameQueueSize = 20 ;
+
+    // A LimeLight timestamp this many milliseconds older than the last frame means the camera restarted
+    private static final double RestartTime = 1000.0 ;
+
+    // The subscribers for the json results and the heartbeat of the camera
+    private StringSubscriber json_sub_ ;
+    private DoubleSubscriber hb_sub_ ;
+
+    // The input log channels for the frame count, the json data and arrival time of each frame, and the heartbeat,
+    // null if inputs are not being captured or replayed
+    private InputLog.Channel count_input_ ;
+    private List<InputLog.Channel> json_inputs_ ;
+    private List<InputLog.Channel> time_inputs_ ;
+    private InputLog.Channel hb_input_ ;
+
+    // The json data and LimeLight timestamp of the last new frame, and true if a new frame arrived this robot loop
+    private String last_json_ ;
+    private double last_ts_ ;
+    private boolean fresh_ ;
+
+    // The time the last new frame arrived
+    private double frame_time_ ;
+
+    // The locations from the new frames this robot loop
+    private List<LocationData> locations_ ;
+
+    // The frames received, stale and dropped, the last heartbeat, and the heartbeats not yet matched by a frame
+    private int frames_ ;
+    private int stale_ ;
+    private int dropped_ ;
+    private double last_hb_ ;
+    private int unmatched_ ;
+
+    // The dashboard keys for the frame counts
+    private String frames_key_ ;
+    private String stale_key_ ;
+    private String dropped_key_ ;
+
+    // The inverse of the pose of the camera on the robot, or null if the LimeLight reports the robot pose
+    private Transform3d mount_inverse_ ;
+
+    // Extra latency in seconds added to the latency reported by the LimeLight
+    private double latency_ ;
+
     public LimeLightSubsystem(Subsystem parent, String name) {
         super(parent, name) ;
 
         cam_mode_ = CamMode.Invalid ;
         pipeline_ = -1 ;
+        fiducial_status_keys_ = new ArrayList<String[]>() ;
+
+        InputLog log = InputLog.getInstance() ;
+        if (log != null) {
+            count_input_ = log.getChannel(getName() + ":frames") ;
+            hb_input_ = log.getChannel(getName() + ":hb") ;
+            json_inputs_ = new ArrayList<InputLog.Channel>() ;
+            time_inputs_ = new ArrayList<InputLog.Channel>() ;
+        }
+
+        nt_ = NetworkTableInstance.getDefault().getTable(getName()) ;
+        json_sub_ = nt_.getStringTopic("json").subscribe("", PubSubOption.keepDuplicates(true), PubSubOption.pollStorage(FrameQueueSize)) ;
+        hb_sub_ = nt_.getDoubleTopic("hb").subscribe(-1.0) ;
+
+        last_json_ = "" ;
+        last_ts_ = 0.0 ;
+        fresh_ = false ;
+        frame_time_ = 0.0 ;
+        locations_ = new ArrayList<LocationData>() ;
+        last_hb_ = -1.0 ;
+
+        frames_key_ = getName() + "-frames" ;
+        stale_key_ = getName() + "-stale" ;
+        dropped_key_ = getName() + "-dropped" ;
 
-        nt_ = NetworkTableInstance.getDefault().getTable(LimeLightTableName) ;
+        readCameraSettings() ;
 
         setPipeline(0);
         setCamMode(CamMode.VisionProcessing);
@@ -200,7 +300,7 @@ public class LimeLightSubsystem extends Subsystem implements IVisionLocalization
     public LocationData getLocation(Pose2d db) {
         LocationData ret = null ;
 
-        if (XeroRobot.isSimulation()) {
+        if (isFakedInSimulation() && !InputLog.isReplaying()) {
             //
             // When debugging, the Double.MAX_VALUE can be replaced with something smaller to make
             // the tag disappear after a fixed amount of time. 
@@ -217,6 +317,7 @@ public class LimeLightSubsystem extends Subsystem implements IVisionLocalization
                 wpiblue_ = new Pose3d(3.5, 7.0, 0.333, r);
                 tl_ = 0.020;
                 cl_ = 0.011;
+                frame_time_ = getRobot().getTime() ;
             }
             else {
                 fuds_ = null;
@@ -224,16 +325,36 @@ public class LimeLightSubsystem extends Subsystem implements IVisionLocalization
         }
 
         if (found_ && valid_targets_ && areTagsValid(db)) {
-            ret = new LocationData() ;
-            ret.location = wpiblue_ ;
-            ret.when = getRobot().getTime() - (tl_ + cl_) / 1000.0;
+            ret = createLocation() ;
+            ret.fresh = fresh_ || isFakedInSimulation() ;
         }
 
         return ret ;
     }
 
+    @Override
+    public List<LocationData> getLocations(Pose2d db) {
+        if (isFakedInSimulation() && !InputLog.isReplaying()) {
+            return IVisionLocalization.super.getLocations(db) ;
+        }
+
+        return locations_ ;
+    }
+
+    public int getFrameCount() {
+        return frames_ ;
+    }
+
+    public int getStaleFrameCount() {
+        return stale_ ;
+    }
+
+    public int getDroppedFrameCount() {
+        return dropped_ ;
+    }
+
     public double getDistance() {
-        if (XeroRobot.isSimulation()) {
+        if (isFakedInSimulation()) {
             return 1.5;
         }
 
@@ -241,7 +362,7 @@ public class LimeLightSubsystem extends Subsystem implements IVisionLocalization
     }
 
     public double getMultiTagDistance() {
-        if (XeroRobot.isSimulation()) {
+        if (isFakedInSimulation()) {
             return 1.5;
         }
 
@@ -327,25 +448,37 @@ public class LimeLightSubsystem extends Subsystem implements IVisionLocalization
     }
 
     @Override
-    public String getStatus() {
-        String st = "" ;
-
-        if (!found_) {
-            st = "<B>Limelight device not found</B>" ;
-        }
-        else {
-            if (!valid_targets_) {
-                st = "<B>No targets detected</B>" ;
-            }
-            else {
-                st += getRetroStatus() ;
-                st += getFiducialStatus() ;
-                st += getClassifierStatus() ;
-                st += getDetectorStatus() ;
+    public void getStatus(StatusSnapshot status) {
+        status.put("found", found_) ;
+        status.put("valid", valid_targets_) ;
+        status.put("pipeline", pipeline_) ;
+        status.put("tl", tl_) ;
+        status.put("frames", frames_) ;
+        status.put("stale", stale_) ;
+        status.put("dropped", dropped_) ;
+        status.put("cl", cl_) ;
+        status.put("tv", tv_) ;
+        status.put("tx", tx_) ;
+        status.put("ty", ty_) ;
+        status.put("retro", retro_ == null ? 0 : retro_.length) ;
+        status.put("classifier", classifiers_ == null ? 0 : classifiers_.length) ;
+        status.put("detector", detectors_ == null ? 0 : detectors_.length) ;
+
+        int count = (fuds_ == null) ? 0 : fuds_.length ;
+        status.put("fiducial", count) ;
+        for(int i = 0 ; i < count ; i++) {
+            if (fuds_[i] == null)
+                continue ;
+
+            String[] keys = getFiducialStatusKeys(i) ;
+            status.put(keys[0], fuds_[i].id) ;
+            status.put(keys[1], fuds_[i].ta) ;
+            status.put(keys[2], fuds_[i].tx) ;
+            status.put(keys[3], fuds_[i].ty) ;
+            if (fuds_[i].robotToTarget != null) {
+                status.put(keys[4], fuds_[i].robotToTarget.getTranslation().getNorm()) ;
             }
         }
-
-        return st ;
     }
 
     public void retroComputeMyState() {
@@ -384,27 +517,36 @@ public class LimeLightSubsystem extends Subsystem implements IVisionLocalization
     @Override
     public void computeState() {
         MessageLogger logger = getRobot().getMessageLogger() ;
-        String json = NetworkTableInstance.getDefault().getTable(getName()).getEntry("json").getString("") ;
-        logger.startMessage(MessageType.Debug, getLoggerID()) ;
-        if (json.length() == 0) {
-            logger.add("<NULL>") ;
-        }
-        else {
-            logger.add(json) ;
-        }
-        logger.endMessage() ;
 
-        if (json.length() == 0) {
-            found_ = false ;
+        TimestampedString [] frames = json_sub_.readQueue() ;
+        int count = frames.length ;
+        if (count_input_ != null) {
+            count = (int)count_input_.input(count) ;
         }
-        else {
-            found_ = true ;
-            Object obj = JSONValue.parse(json);
-            if (obj instanceof JSONObject) {
-                parseLimelightJsonObject((JSONObject)obj) ;
+
+        locations_.clear() ;
+        int received = 0 ;
+        for(int i = 0 ; i < count ; i++) {
+            String json = (i < frames.length) ? frames[i].value : "" ;
+            double when = (i < frames.length) ? frames[i].timestamp / 1.0e6 : getRobot().getTime() ;
+            if (count_input_ != null) {
+                json = getFrameChannel(json_inputs_, "json", i).input(json) ;
+                when = getFrameChannel(time_inputs_, "time", i).input(when) ;
+            }
+
+            if (processFrame(json, when)) {
+                received++ ;
             }
         }
 
+        fresh_ = (received > 0) ;
+        frames_ += received ;
+        countDroppedFrames(received) ;
+
+        putDashboard(frames_key_, DisplayType.Always, frames_) ;
+        putDashboard(stale_key_, DisplayType.Always, stale_) ;
+        putDashboard(dropped_key_, DisplayType.Always, dropped_) ;
+
         String str = "" ;
         if (fuds_ != null && fuds_.length > 0) {
             for(int i = 0 ; i < fuds_.length ; i++) {
@@ -457,89 +599,172 @@ public class LimeLightSubsystem extends Subsystem implements IVisionLocalization
         return ret ;
     }
 
-    private String getRetroStatus() {
-        int count = 0 ;
-        if (retro_ != null) {
-            count = retro_.length ;
+    //
+    // Parse one frame from the camera, and keep its location if it is a new frame that sees tags.  Returns true if
+    // the frame is new.  Only the timestamp is read before the frame is known to be new, so a stale frame leaves the
+    // results of the last frame in place.
+    //
+    private boolean processFrame(String json, double when) {
+        MessageLogger logger = getRobot().getMessageLogger() ;
+
+        if (logger.isEnabled(MessageType.Debug, getLoggerID())) {
+            logger.startMessage(MessageType.Debug, getLoggerID()) ;
+            if (json.length() == 0) {
+                logger.add("<NULL>") ;
+            }
+            else {
+                logger.add(json) ;
+            }
+            logger.endMessage() ;
+        }
+
+        if (json.length() == 0) {
+            found_ = false ;
+            return false ;
         }
-        String st = "<br>Retro Targets, " + count + " detected<hr>" ;
-        return st ;
-    }
 
-    private String pose3dToString(Pose3d p) {
-        String st = p.getTranslation().toString() ;
-        st += ", rx " + p.getRotation().getX() ;
-        st += ", ry " + p.getRotation().getY() ;
-        st += ", rz " + p.getRotation().getZ() ;
-        return st ;
-    }
+        Object obj = JSONValue.parse(json);
+        double ts = 0.0 ;
+        if (obj instanceof JSONObject) {
+            Object results = ((JSONObject)obj).get("Results") ;
+            if (results instanceof JSONObject)
+                ts = getDoubleFromObject((JSONObject)results, "ts", 0.0) ;
+        }
+
+        //
+        // The LimeLight timestamp identifies the frame.  Without one, a frame is new if its data changed.
+        //
+        boolean stale = (ts > 0.0) ? (ts <= last_ts_ && ts > last_ts_ - RestartTime) : json.equals(last_json_) ;
+        if (stale) {
+            stale_++ ;
+            return false ;
+        }
 
-    private String getOneFiducialStatus(Fiducial f) {
-        String st = "" ;
+        found_ = true ;
+        if (obj instanceof JSONObject) {
+            parseLimelightJsonObject((JSONObject)obj) ;
+        }
 
-        st += "<table border=\"1\">" ;
-        st += "<tr><th>Item</th><th>Value</th></tr>" ;
-        st += "<tr><td>ID</td><td>" + f.id + "</td></tr>" ;
-        st += "<tr><td>Family</td><td>" + f.family + "</td></tr>" ;
-        st += "<tr><td>ta</td><td>" + f.ta + "</td></tr>" ;
-        st += "<tr><td>tx</td><td>" + f.tx + "</td></tr>" ;
-        st += "<tr><td>txp</td><td>" + f.txp + "</td></tr>" ;
-        st += "<tr><td>ty</td><td>" + f.ty + "</td></tr>" ;
-        st += "<tr><td>typ</td><td>" + f.typ + "</td></tr>" ;
-        st += "<tr><td>Cam-To-Target</td><td>" + pose3dToString(f.camToTarget) + "</td></tr>" ;
-        st += "<tr><td>Robot-To-Field</td><td>" + pose3dToString(f.robotToField) + "</td></tr>" ;
-        st += "<tr><td>Robot-To-Target</td><td>" + pose3dToString(f.robotToTarget) + "</td></tr>" ;
-        st += "<tr><td>Target-To-Camera</td><td>" + pose3dToString(f.targetToCamera) + "</td></tr>" ;
-        st += "<tr><td>Target-To-Robot</td><td>" + pose3dToString(f.targetToRobot) + "</td></tr>" ;
+        last_ts_ = ts ;
+        last_json_ = json ;
+        frame_time_ = when ;
 
-        st += "</table>";
-        return st ;
-    }
+        if (found_ && valid_targets_ && fuds_ != null && fuds_.length > 0) {
+            LocationData lc = createLocation() ;
+            lc.tags = fuds_.length ;
+            lc.distance = (fuds_[0] != null && fuds_[0].robotToTarget != null) ? fuds_[0].robotToTarget.getTranslation().getNorm() : Double.MAX_VALUE ;
+            locations_.add(lc) ;
+        }
 
-    private String getFiducialStatus() {
-        int count ;
+        return true ;
+    }
 
-        if (fuds_ == null) {
-            count = 0 ;
+    //
+    // The heartbeat counts the frames the camera produced.  Heartbeats with no frame are dropped frames, allowing for
+    // one frame still on its way.  A heartbeat that goes backwards means the camera restarted.
+    //
+    private void countDroppedFrames(int received) {
+        double hb = hb_sub_.get() ;
+        if (hb_input_ != null) {
+            hb = hb_input_.input(hb) ;
         }
-        else {
-            count = fuds_.length ;
+
+        if (hb < 0.0) {
+            return ;
         }
-        String st = "<br>Fiducial Targets, " + count + " detected<hr>" ;
 
-        if (count > 0) {
-            for(int i = 0 ; i < fuds_.length ; i++) {
-                st += getOneFiducialStatus(fuds_[i]) ;
+        if (last_hb_ >= 0.0 && hb >= last_hb_) {
+            unmatched_ += (int)(hb - last_hb_) - received ;
+            if (unmatched_ > 1) {
+                dropped_ += unmatched_ - 1 ;
+                unmatched_ = 1 ;
+            }
+            else if (unmatched_ < 0) {
+                unmatched_ = 0 ;
             }
         }
-        return st ;
+        else {
+            unmatched_ = 0 ;
+        }
+
+        last_hb_ = hb ;
     }
 
-    private String getClassifierStatus() {
-        int count ;
+    private LocationData createLocation() {
+        LocationData ret = new LocationData() ;
+        ret.location = (mount_inverse_ != null) ? wpiblue_.transformBy(mount_inverse_) : wpiblue_ ;
+        ret.when = frame_time_ - (tl_ + cl_) / 1000.0 - latency_ ;
+        return ret ;
+    }
 
-        if (classifiers_ == null) {
-            count = 0 ;
+    //
+    // Returns the input log channel for one of the frames read in a robot loop, creating it the first time
+    //
+    private InputLog.Channel getFrameChannel(List<InputLog.Channel> channels, String kind, int which) {
+        while (channels.size() <= which) {
+            channels.add(InputLog.getInstance().getChannel(getName() + ":" + kind + ":" + channels.size())) ;
         }
-        else {
-            count = classifiers_.length ;
+
+        return channels.get(which) ;
+    }
+
+    //
+    // The status keys for each fiducial are created once and reused so that publishing
+    // the status does not build strings every robot loop
+    //
+    private String[] getFiducialStatusKeys(int which) {
+        if (which >= fiducial_status_keys_.size()) {
+            for(int i = fiducial_status_keys_.size() ; i <= which ; i++) {
+                String prefix = "fiducial" + i + "-" ;
+                fiducial_status_keys_.add(new String[] { prefix + "id", prefix + "ta", prefix + "tx", prefix + "ty", prefix + "dist" }) ;
+            }
         }
-        String st = "<br>Classifier Targets, " + count + " detected<hr>" ;
-        return st ;
 
+        return fiducial_status_keys_.get(which) ;
     }
 
-    private String getDetectorStatus() {
-        int count ;
+    //
+    // Read the mount pose and latency of this camera, if they are given
+    //
+    private void readCameraSettings() {
+        latency_ = 0.0 ;
+        mount_inverse_ = null ;
+
+        try {
+            if (isSettingDefined("latency")) {
+                latency_ = getSettingsValue("latency").getDouble() ;
+            }
 
-        if (detectors_ == null) {
-            count = 0 ;
+            if (isSettingDefined("mount:x")) {
+                Translation3d trans = new Translation3d(getSettingsValue("mount:x").getDouble(),
+                                                        getSettingsValue("mount:y").getDouble(),
+                                                        getSettingsValue("mount:z").getDouble()) ;
+                Rotation3d rot = new Rotation3d(Math.toRadians(getSettingsValue("mount:roll").getDouble()),
+                                                Math.toRadians(getSettingsValue("mount:pitch").getDouble()),
+                                                Math.toRadians(getSettingsValue("mount:yaw").getDouble())) ;
+                mount_inverse_ = new Transform3d(trans, rot).inverse() ;
+            }
         }
-        else {
-            count = detectors_.length ;
+        catch(Exception ex) {
+            MessageLogger logger = getRobot().getMessageLogger() ;
+            logger.startMessage(MessageType.Error) ;
+            logger.add("camera ").addQuoted(getName()) ;
+            logger.add(" has invalid mount or latency settings - ") ;
+            logger.add(ex.getMessage()) ;
+            logger.endMessage() ;
         }
-        String st = "<br>Detector Targets, " + count + " detected<hr>" ;
-        return st ;
+    }
+
+    //
+    // Returns true if the targets are made up in simulation.  They are not when the simulator has a camera model
+    // that finds the targets from the pose of the robot.
+    //
+    private boolean isFakedInSimulation() {
+        if (!XeroRobot.isSimulation())
+            return false ;
+
+        SimulationEngine engine = SimulationEngine.getInstance() ;
+        return engine == null || engine.findModel("limelight-camera", getName()) == null ;
     }
 
     private String getStringFromObject(JSONObject obj, String name, String def) {
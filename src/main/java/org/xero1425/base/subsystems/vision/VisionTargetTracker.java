@@ -0,0 +1,320 @@
+package org.xero1425.base.subsystems.vision;
+
+import org.xero1425.base.subsystems.DriveBaseSubsystem;
+import org.xero1425.base.subsystems.Subsystem;
+import org.xero1425.misc.BadParameterTypeException;
+import org.xero1425.misc.MissingParameterException;
+import org.xero1425.misc.XeroMath;
+import org.xero1425.websrv.StatusSnapshot;
+
+import edu.wpi.first.math.geometry.Pose2d;
+
+/// \file
+
+/// \brief This class tracks the target seen by the LimeLight and compensates for the latency of the camera.
+///
+/// The LimeLight reports the angle to the target as it was when the image was captured, which is the pipeline
+/// latency plus the capture latency before the value is read.  While the robot moves, this angle is stale.  This
+/// subsystem keeps a short history of the robot pose from the drive base.  Each vision observation is projected back
+/// to the pose of the robot at the capture time and converted to a field fixed estimate of the target.  When the
+/// LimeLight reports the distance to the target (an AprilTag pipeline), the estimate is the field position of the
+/// target.  Otherwise the estimate is the field bearing to the target.  Every robot loop, the estimate is converted
+/// back into an angle relative to the current pose of the robot, giving the align actions an error signal without
+/// the camera latency.
+///
+/// This subsystem must be added after the drive base and the LimeLight so their state is computed first.
+///
+///     "subsystems" : {
+///         "NAME" : {
+///             "max-age" : DOUBLE,         // The time in seconds an estimate is used after the target is lost
+///             "filter" : DOUBLE           // The weight of a new observation in the estimate, 1.0 for no filtering
+///         }
+///     }
+///
+public class VisionTargetTracker extends Subsystem {
+
+    // The number of robot poses kept in the history, long enough to cover the camera latency
+    private static final int HistorySize = 32 ;
+
+    // The LimeLight that sees the target
+    private LimeLightSubsystem ll_ ;
+
+    // The drive base that supplies the robot pose
+    private DriveBaseSubsystem db_ ;
+
+    // The history of robot poses, a ring buffer where hist_next_ is the next entry written
+    private double [] hist_time_ ;
+    private double [] hist_x_ ;
+    private double [] hist_y_ ;
+    private double [] hist_heading_ ;
+    private int hist_count_ ;
+    private int hist_next_ ;
+
+    // If true, there is an estimate of the target
+    private boolean has_estimate_ ;
+
+    // If true, the estimate is the field position of the target, otherwise it is a field bearing
+    private boolean has_position_ ;
+
+    // The field position of the target
+    private double target_x_ ;
+    private double target_y_ ;
+
+    // The field bearing to the target in radians, when the distance is not known
+    private double target_bearing_ ;
+
+    // The robot time of the last observation of the target
+    private double last_seen_ ;
+
+    // The LimeLight timestamp of the last observation, used to skip frames already seen
+    private double last_ts_ ;
+
+    // The camera latency of the last observation in seconds
+    private double latency_ ;
+
+    // The number of observations merged into the estimate
+    private int observations_ ;
+
+    // The pose of the robot at the capture time of an observation, x, y, and heading
+    private double [] capture_pose_ ;
+
+    // The angle to the target from the current pose of the robot, in degrees with the LimeLight sign
+    private double tx_ ;
+
+    // The time an estimate is used after the target is lost
+    private double max_age_ ;
+
+    // The weight of a new observation in the estimate
+    private double filter_ ;
+
+    /// \brief create the target tracker
+    /// \param parent the parent subsystem
+    /// \param name the name of the subsystem
+    /// \param ll the LimeLight that sees the target
+    /// \param db the drive base that supplies the robot pose
+    public VisionTargetTracker(Subsystem parent, String name, LimeLightSubsystem ll, DriveBaseSubsystem db) throws BadParameterTypeException, MissingParameterException {
+        super(parent, name) ;
+
+        ll_ = ll ;
+        db_ = db ;
+
+        max_age_ = getSettingsValue("max-age").getDouble() ;
+        filter_ = getSettingsValue("filter").getDouble() ;
+
+        hist_time_ = new double[HistorySize] ;
+        hist_x_ = new double[HistorySize] ;
+        hist_y_ = new double[HistorySize] ;
+        hist_heading_ = new double[HistorySize] ;
+        capture_pose_ = new double[3] ;
+
+        reset() ;
+    }
+
+    /// \brief Returns the LimeLight that sees the target
+    /// \returns the LimeLight that sees the target
+    public LimeLightSubsystem getLimeLight() {
+        return ll_ ;
+    }
+
+    /// \brief Forget the history and the target estimate.  This should be called when the robot pose is reset.
+    @Override
+    public void reset() {
+        super.reset() ;
+
+        hist_count_ = 0 ;
+        hist_next_ = 0 ;
+        has_estimate_ = false ;
+        has_position_ = false ;
+        last_ts_ = Double.NaN ;
+        observations_ = 0 ;
+        tx_ = Double.MAX_VALUE ;
+    }
+
+    /// \brief Returns true if there is a current estimate of the target
+    /// \returns true if there is a current estimate of the target
+    public boolean hasTarget() {
+        return has_estimate_ ;
+    }
+
+    /// \brief Returns the angle to the target from the current pose of the robot.  This uses the same sign as
+    /// the LimeLight tx value, positive when the target is to the right.
+    /// \returns the angle to the target in degrees, or Double.MAX_VALUE if there is no target
+    public double getTX() {
+        return tx_ ;
+    }
+
+    /// \brief Returns the time since the target was last seen by the LimeLight
+    /// \returns the time since the target was last seen in seconds
+    public double getAge() {
+        return has_estimate_ ? getRobot().getTime() - last_seen_ : Double.MAX_VALUE ;
+    }
+
+    /// \brief Returns true if the estimate is a field position rather than a bearing
+    /// \returns true if the estimate is a field position rather than a bearing
+    public boolean hasPosition() {
+        return has_estimate_ && has_position_ ;
+    }
+
+    @Override
+    protected void computeMyState() throws Exception {
+        double now = getRobot().getTime() ;
+        Pose2d pose = db_.getPose() ;
+        record(now, pose) ;
+
+        if (ll_.isTargetDetected()) {
+            //
+            // The json data carries the LimeLight timestamp for the frame.  When it does not change, the
+            // frame has already been merged.  Without json data every loop is treated as a new frame.
+            //
+            double ts = ll_.getTS() ;
+            if (!ll_.isLimelightFound() || ts != last_ts_) {
+                last_ts_ = ts ;
+                latency_ = (ll_.getTL() + ll_.getCL()) / 1000.0 ;
+
+                //
+                // When the LimeLight reports fiducials, the angle and the distance are both taken from the
+                // fiducial that is the primary target, so they describe the same tag
+                //
+                double tx = ll_.getTX() ;
+                double dist = 0.0 ;
+                LimeLightSubsystem.Fiducial fud = findPrimaryFiducial(tx) ;
+                if (fud != null) {
+                    tx = fud.tx ;
+                    dist = Math.hypot(fud.robotToTarget.getZ(), fud.robotToTarget.getX()) ;
+                }
+                observe(now, now - latency_, tx, dist) ;
+            }
+        }
+
+        if (has_estimate_ && now - last_seen_ > max_age_) {
+            has_estimate_ = false ;
+        }
+
+        if (has_estimate_) {
+            double heading = Math.atan2(pose.getRotation().getSin(), pose.getRotation().getCos()) ;
+            double bearing = target_bearing_ ;
+            if (has_position_) {
+                bearing = Math.atan2(target_y_ - pose.getY(), target_x_ - pose.getX()) ;
+            }
+
+            tx_ = -Math.toDegrees(XeroMath.normalizeAngleRadians(bearing - heading)) ;
+        }
+        else {
+            tx_ = Double.MAX_VALUE ;
+        }
+
+        putDashboard("tt-valid", DisplayType.Verbose, has_estimate_) ;
+        putDashboard("tt-tx", DisplayType.Verbose, tx_) ;
+    }
+
+    @Override
+    public void getStatus(StatusSnapshot status) {
+        status.put("valid", has_estimate_) ;
+        status.put("position", has_position_) ;
+        status.put("tx", tx_) ;
+        status.put("latency", latency_) ;
+        status.put("observations", observations_) ;
+    }
+
+    //
+    // Add the pose of the robot at the given time to the history
+    //
+    private void record(double time, Pose2d pose) {
+        hist_time_[hist_next_] = time ;
+        hist_x_[hist_next_] = pose.getX() ;
+        hist_y_[hist_next_] = pose.getY() ;
+        hist_heading_[hist_next_] = Math.atan2(pose.getRotation().getSin(), pose.getRotation().getCos()) ;
+
+        hist_next_ = (hist_next_ + 1) % HistorySize ;
+        if (hist_count_ < HistorySize)
+            hist_count_++ ;
+    }
+
+    //
+    // Merge an observation of the target captured at the given time into the estimate.  The pose of the
+    // robot at the capture time is interpolated from the history.  The distance is zero if it is not known.
+    //
+    private void observe(double now, double capture, double tx, double dist) {
+        double [] pose = capture_pose_ ;
+        interpolate(capture, pose) ;
+
+        double bearing = pose[2] - Math.toRadians(tx) ;
+
+        if (dist > 0.0) {
+            double x = pose[0] + dist * Math.cos(bearing) ;
+            double y = pose[1] + dist * Math.sin(bearing) ;
+
+            if (has_estimate_ && has_position_) {
+                target_x_ += filter_ * (x - target_x_) ;
+                target_y_ += filter_ * (y - target_y_) ;
+            }
+            else {
+                target_x_ = x ;
+                target_y_ = y ;
+            }
+            has_position_ = true ;
+        }
+        else {
+            if (has_estimate_ && !has_position_) {
+                target_bearing_ = XeroMath.normalizeAngleRadians(target_bearing_ + filter_ * XeroMath.normalizeAngleRadians(bearing - target_bearing_)) ;
+            }
+            else {
+                target_bearing_ = XeroMath.normalizeAngleRadians(bearing) ;
+            }
+            has_position_ = false ;
+        }
+
+        has_estimate_ = true ;
+        last_seen_ = now ;
+        observations_++ ;
+    }
+
+    //
+    // Find the pose of the robot at the time given, interpolating between the two poses in the history
+    // around the time.  Times outside the history use the closest pose.
+    //
+    private void interpolate(double time, double [] pose) {
+        int newest = (hist_next_ + HistorySize - 1) % HistorySize ;
+        int index = newest ;
+
+        for(int i = 0 ; i < hist_count_ - 1 ; i++) {
+            int prev = (index + HistorySize - 1) % HistorySize ;
+            if (hist_time_[prev] <= time) {
+                double span = hist_time_[index] - hist_time_[prev] ;
+                double f = (span > 0.0) ? (time - hist_time_[prev]) / span : 1.0 ;
+
+                pose[0] = hist_x_[prev] + f * (hist_x_[index] - hist_x_[prev]) ;
+                pose[1] = hist_y_[prev] + f * (hist_y_[index] - hist_y_[prev]) ;
+                pose[2] = hist_heading_[prev] + f * XeroMath.normalizeAngleRadians(hist_heading_[index] - hist_heading_[prev]) ;
+                return ;
+            }
+            index = prev ;
+        }
+
+        pose[0] = hist_x_[index] ;
+        pose[1] = hist_y_[index] ;
+        pose[2] = hist_heading_[index] ;
+    }
+
+    //
+    // Returns the fiducial that is the primary target, the one whose angle is closest to the angle the LimeLight
+    // reports for its primary target, or null if no fiducial reports the pose of its target.  The LimeLight robot
+    // space has Z forward and X to the right, so the distance along the ground is found from Z and X.
+    //
+    private LimeLightSubsystem.Fiducial findPrimaryFiducial(double tx) {
+        LimeLightSubsystem.Fiducial[] fuds = ll_.getFiducialData() ;
+        if (fuds == null)
+            return null ;
+
+        LimeLightSubsystem.Fiducial best = null ;
+        for(LimeLightSubsystem.Fiducial fud : fuds) {
+            if (fud == null || fud.robotToTarget == null)
+                continue ;
+
+            if (best == null || Math.abs(fud.tx - tx) < Math.abs(best.tx - tx))
+                best = fud ;
+        }
+
+        return best ;
+    }
+}
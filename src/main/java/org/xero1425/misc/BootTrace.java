@@ -0,0 +1,225 @@
+package org.xero1425.misc;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/// \file
+
+/// \brief This class records the time spent in each phase of starting the robot code, and writes it out in the
+/// Chrome trace event format.
+///
+/// Code that does work at startup calls begin() with the name of the work, which returns a span.  When the work is
+/// done, end() is called with the span.  Spans begun while another span is open on the same thread are nested in
+/// it, so the robot phases hold the subsystems, and the subsystems hold their motors.  Work timed some other way
+/// can be added as a completed span with add().
+///
+/// The spans are kept in arrays created when the class is loaded, so recording a span only stores a name and a
+/// time.  Spans begun after the arrays are full are counted as dropped.  When the robot is done starting, the
+/// spans can be written to a file that is loaded into chrome://tracing or Perfetto, and checked against a budget
+/// for each phase.  Recording then stops and every method is a quick no-op.
+///
+/// Spans may be recorded from more than one thread.
+public final class BootTrace {
+    /// \brief the span returned when a span is not recorded
+    public static final int NoSpan = -1 ;
+
+    // The number of spans that can be recorded
+    private static final int Capacity = 2048 ;
+
+    // The time all spans are relative to, in nanoseconds
+    private static final long origin_ = System.nanoTime() ;
+
+    // For each span, the name, the start and end times in nanoseconds, and the thread it was begun on.  The
+    // end time is zero while the span is open.
+    private static final String [] names_ = new String[Capacity] ;
+    private static final long [] start_ = new long[Capacity] ;
+    private static final long [] end_ = new long[Capacity] ;
+    private static final long [] thread_ = new long[Capacity] ;
+    private static final String [] thread_names_ = new String[Capacity] ;
+
+    // The number of spans recorded and the number dropped because the arrays were full
+    private static int count_ = 0 ;
+    private static int dropped_ = 0 ;
+
+    // If true, spans are recorded
+    private static boolean recording_ = true ;
+
+    private BootTrace() {
+    }
+
+    /// \brief returns true if spans are being recorded
+    /// \returns true if spans are being recorded
+    public static synchronized boolean isRecording() {
+        return recording_ ;
+    }
+
+    /// \brief stop recording spans.  Spans still open are closed at the current time.
+    public static synchronized void stop() {
+        long now = System.nanoTime() ;
+        for(int i = 0 ; i < count_ ; i++) {
+            if (end_[i] == 0)
+                end_[i] = now ;
+        }
+        recording_ = false ;
+    }
+
+    /// \brief returns the number of spans recorded
+    /// \returns the number of spans recorded
+    public static synchronized int getCount() {
+        return count_ ;
+    }
+
+    /// \brief returns the number of spans dropped because the buffer was full
+    /// \returns the number of spans dropped
+    public static synchronized int getDropped() {
+        return dropped_ ;
+    }
+
+    /// \brief begin a span
+    /// \param name the name of the work in the span
+    /// \returns the span, or NoSpan if the span is not recorded
+    public static synchronized int begin(String name) {
+        return store(name, System.nanoTime(), 0) ;
+    }
+
+    /// \brief end a span
+    /// \param span the span returned by begin()
+    public static synchronized void end(int span) {
+        if (span >= 0 && span < count_ && end_[span] == 0)
+            end_[span] = System.nanoTime() ;
+    }
+
+    /// \brief add a span for work that is already complete
+    /// \param name the name of the work in the span
+    /// \param start the time the work started, from System.nanoTime()
+    /// \param end the time the work ended, from System.nanoTime()
+    public static synchronized void add(String name, long start, long end) {
+        store(name, start, Math.max(end, start + 1)) ;
+    }
+
+    /// \brief check the spans against the budget for each phase.  The budgets are read from the children of the
+    /// given settings key, where the key is the name of a span and the value is the budget in milliseconds.  A
+    /// warning is logged for each span that took longer than its budget.
+    /// \param settings the settings supplier
+    /// \param path the settings key that holds the budgets
+    /// \param logger the message logger
+    /// \returns the number of spans that took longer than their budget
+    public static synchronized int checkBudgets(ISettingsSupplier settings, String path, MessageLogger logger) {
+        int over = 0 ;
+
+        List<String> keys = settings.getAllKeys(path) ;
+        if (keys == null)
+            return 0 ;
+
+        for(String key : keys) {
+            double budget ;
+            try {
+                budget = settings.get(path + ":" + key).getDouble() ;
+            }
+            catch(Exception ex) {
+                logger.startMessage(MessageType.Warning).add("boot trace budget ").addQuoted(key).add(" is not a number").endMessage();
+                continue ;
+            }
+
+            for(int i = 0 ; i < count_ ; i++) {
+                if (!names_[i].equals(key) || end_[i] == 0)
+                    continue ;
+
+                double ms = (end_[i] - start_[i]) / 1.0e6 ;
+                if (ms > budget) {
+                    logger.startMessage(MessageType.Warning) ;
+                    logger.add("boot phase ").addQuoted(key) ;
+                    logger.add("ms", ms) ;
+                    logger.add("budget", budget) ;
+                    logger.endMessage() ;
+                    over++ ;
+                }
+            }
+        }
+
+        return over ;
+    }
+
+    /// \brief write the closed spans to a file in the Chrome trace event format
+    /// \param filename the name of the file
+    /// \throws IOException if the file cannot be written
+    public static synchronized void export(String filename) throws IOException {
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(filename)))) {
+            boolean first = true ;
+
+            out.println("{\"traceEvents\":[") ;
+            for(int i = 0 ; i < count_ ; i++) {
+                if (end_[i] == 0)
+                    continue ;
+
+                if (!first)
+                    out.println(",") ;
+                first = false ;
+
+                out.print("{\"name\":\"" + escape(names_[i]) + "\",\"cat\":\"boot\",\"ph\":\"X\"") ;
+                out.print(String.format(",\"ts\":%.3f,\"dur\":%.3f", (start_[i] - origin_) / 1.0e3, (end_[i] - start_[i]) / 1.0e3)) ;
+                out.print(",\"pid\":1,\"tid\":" + thread_[i] + "}") ;
+            }
+
+            //
+            // Name each thread once, after the first span recorded on it
+            //
+            for(int i = 0 ; i < count_ ; i++) {
+                if (firstOnThread(i)) {
+                    if (!first)
+                        out.println(",") ;
+                    first = false ;
+
+                    out.print("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread_[i]) ;
+                    out.print(",\"args\":{\"name\":\"" + escape(thread_names_[i]) + "\"}}") ;
+                }
+            }
+
+            out.println() ;
+            out.println("],\"displayTimeUnit\":\"ms\"}") ;
+        }
+    }
+
+    //
+    // Store a span, returning the span or NoSpan if it is not recorded
+    //
+    private static int store(String name, long start, long end) {
+        if (!recording_)
+            return NoSpan ;
+
+        if (count_ == Capacity) {
+            dropped_++ ;
+            return NoSpan ;
+        }
+
+        Thread th = Thread.currentThread() ;
+        names_[count_] = name ;
+        start_[count_] = start ;
+        end_[count_] = end ;
+        thread_[count_] = th.getId() ;
+        thread_names_[count_] = th.getName() ;
+
+        return count_++ ;
+    }
+
+    //
+    // Returns true if no earlier span was recorded on the thread of the given span
+    //
+    private static boolean firstOnThread(int span) {
+        for(int i = 0 ; i < span ; i++) {
+            if (thread_[i] == thread_[span])
+                return false ;
+        }
+        return true ;
+    }
+
+    //
+    // Escape a string for use in a JSON string
+    //
+    private static String escape(String str) {
+        return str.replace("\\", "\\\\").replace("\"", "\\\"") ;
+    }
+}
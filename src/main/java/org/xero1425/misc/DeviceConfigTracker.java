@@ -0,0 +1,119 @@
+package org.xero1425.misc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/// \file
+
+/// \brief This class lets CAN devices skip configuration they already hold, and records the time spent
+/// configuring each device.
+///
+/// Most of the configuration sent to a CAN device at startup is stored in the device and survives a reboot
+/// of the robot controller.  Sending it again costs a blocking CAN request per setting.  Each device that
+/// uses this class computes a signature from the stored configuration it wants, and keeps the signature in
+/// a stored custom parameter on the device.  At startup the device reads the custom parameter.  If it holds
+/// the same signature, the stored configuration is skipped.  Configuration that is lost when the device
+/// loses power, such as status frame periods and sensor positions, is always sent.
+///
+/// The signature includes a version number, which must be changed when the code stops setting a stored
+/// setting it used to set, so devices holding the old value are reset.  Skipping can be turned off from the
+/// settings file.
+///
+/// The time spent configuring each device is recorded so it can be logged after the hardware is created, and
+/// is added to the boot trace.
+/// Devices may be configured from more than one thread.
+public final class DeviceConfigTracker {
+    /// \brief the version of the stored configuration, part of every signature
+    public static final int ConfigVersion = 1 ;
+
+    // If true, devices holding their configuration skip sending it
+    private static boolean skip_ = true ;
+
+    // If true, independent devices may be configured in parallel
+    private static boolean parallel_ = true ;
+
+    // The devices configured, in the order they completed
+    private static final List<String> names_ = new ArrayList<String>() ;
+    private static final List<Double> times_ = new ArrayList<Double>() ;
+    private static final List<Boolean> skipped_ = new ArrayList<Boolean>() ;
+
+    private DeviceConfigTracker() {
+    }
+
+    /// \brief set how devices are configured
+    /// \param skip if true, devices holding their configuration skip sending it
+    /// \param parallel if true, independent devices may be configured in parallel
+    public static void configure(boolean skip, boolean parallel) {
+        skip_ = skip ;
+        parallel_ = parallel ;
+    }
+
+    /// \brief returns true if devices holding their configuration skip sending it
+    /// \returns true if devices holding their configuration skip sending it
+    public static boolean isSkipEnabled() {
+        return skip_ ;
+    }
+
+    /// \brief returns true if independent devices may be configured in parallel
+    /// \returns true if independent devices may be configured in parallel
+    public static boolean isParallelEnabled() {
+        return parallel_ ;
+    }
+
+    /// \brief compute the signature for a stored configuration.  The signature is never zero, the
+    /// value of the custom parameter on a device with its factory settings.
+    /// \param values the values in the stored configuration
+    /// \returns the signature for the configuration
+    public static int signature(double... values) {
+        long h = ConfigVersion ;
+        for(double v : values) {
+            h = h * 31 + Double.hashCode(v) ;
+        }
+
+        int ret = (int)(h ^ (h >>> 32)) ;
+        return (ret == 0) ? 1 : ret ;
+    }
+
+    /// \brief record the time spent configuring a device
+    /// \param name the name of the device
+    /// \param start the time the configuration started, from System.nanoTime()
+    /// \param skipped if true, the stored configuration was skipped
+    public static synchronized void record(String name, long start, boolean skipped) {
+        long now = System.nanoTime() ;
+        BootTrace.add("config " + name, start, now) ;
+        names_.add(name) ;
+        times_.add((now - start) / 1.0e6) ;
+        skipped_.add(skipped) ;
+    }
+
+    /// \brief log the time spent configuring each device, and forget the recorded times
+    /// \param logger the message logger
+    public static synchronized void logSummary(MessageLogger logger) {
+        double total = 0.0 ;
+        int skipped = 0 ;
+
+        for(int i = 0 ; i < names_.size() ; i++) {
+            logger.startMessage(MessageType.Info) ;
+            logger.add("device config ").addQuoted(names_.get(i)) ;
+            logger.add("ms", times_.get(i)) ;
+            logger.add("skipped", skipped_.get(i)) ;
+            logger.endMessage() ;
+
+            total += times_.get(i) ;
+            if (skipped_.get(i))
+                skipped++ ;
+        }
+
+        logger.startMessage(MessageType.Info) ;
+        logger.add("device config") ;
+        logger.add("devices", names_.size()) ;
+        logger.add("skipped", skipped) ;
+        logger.add("total-ms", total) ;
+        logger.add("parallel", parallel_) ;
+        logger.endMessage() ;
+
+        names_.clear() ;
+        times_.clear() ;
+        skipped_.clear() ;
+    }
+}
@@ -1,7 +1,32 @@
 package org.xero1425.misc;
 
+/// \file
+
+/// \brief The contract for a motion profile.  A profile is planned with update() and then the distance,
+/// velocity, and acceleration are evaluated at times measured from the start of the profile.
 public interface IMotionProfile {
     boolean update(double dist, double start_velocity, double end_velocity) ;
+
+    /// \brief plan a profile that starts and ends with the given velocity and acceleration.  This is used to
+    /// replan a profile from the current state of a motion in progress.  Profiles that cannot honor a non-zero
+    /// acceleration, or a velocity away from the target, return false and the caller must start the motion
+    /// over from rest.
+    /// \param dist the distance to cover
+    /// \param start_velocity the start velocity
+    /// \param start_accel the start acceleration
+    /// \param end_velocity the end velocity
+    /// \param end_accel the end acceleration
+    /// \returns true if the profile was planned
+    default boolean update(double dist, double start_velocity, double start_accel, double end_velocity, double end_accel) {
+        if (Math.abs(start_accel) > 1e-6 || Math.abs(end_accel) > 1e-6)
+            return false ;
+
+        if (start_velocity * dist < 0.0 || end_velocity * dist < 0.0)
+            return false ;
+
+        return update(dist, start_velocity, end_velocity) ;
+    }
+
     double getAccel(double t) ;
     double getVelocity(double t) ;
     double getDistance(double t) ;
@@ -0,0 +1,14 @@
+package org.xero1425.misc;
+
+import java.util.List;
+
+/// \file
+
+/// \brief This interface is implemented by objects that want to know when the settings under a key change.
+@FunctionalInterface
+public interface ISettingsListener {
+    /// \brief called when settings under the key the listener subscribed to have changed
+    /// \param settings the settings supplier, holding the new values
+    /// \param keys the full names of the settings that changed, were added, or were removed
+    void settingsChanged(ISettingsSupplier settings, List<String> keys) throws Exception ;
+}
@@ -40,4 +40,17 @@ public interface ISettingsSupplier {
     /// \param path the name of the key to query for children
     /// \returns a list of keys that are chidren of the key given    
     List<String> getAllKeys(String path) ;
+
+    /// \brief Returns a number that changes each time the settings change after they are first read.
+    /// Objects that copy settings can compare this with the value when they copied them to know when to
+    /// read them again.
+    /// \returns the version of the settings
+    int getVersion() ;
+
+    /// \brief Subscribe to changes to the settings under a key.  The listener is called for each change
+    /// that includes a setting named by the key or by a child of the key.  The listener is held for the
+    /// life of the settings, so this is meant for long lived objects such as subsystems.
+    /// \param prefix the key for the settings of interest
+    /// \param listener the listener called when settings under the key change
+    void subscribe(String prefix, ISettingsListener listener) ;
 }
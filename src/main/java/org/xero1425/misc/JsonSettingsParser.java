@@ -1,7 +1,9 @@
 package org.xero1425.misc;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.json.simple.JSONObject;
 
@@ -23,16 +25,29 @@ import org.json.simple.JSONObject;
 /// Then the settings name <em>subsystems:tankdrive:width</em> would reference the value 3.0.  Values can be conditional
 /// based on defines. See the method addDefine() for more information about this capability.
 ///
+/// The settings can be changed while the robot is running, by reading the file again with reload() or by changing
+/// a single value with set().  The old and new settings are compared, and each listener subscribed to a key that
+/// includes a changed setting is called with the names of the changed settings.  The listeners are called from
+/// the thread making the change, so changes should be made from the robot thread at a point in the robot loop
+/// where the listeners can safely apply them.
+///
 public class JsonSettingsParser implements ISettingsSupplier {
     private MessageLogger logger_ ;
     private List<String> defines_ ;
     private JSONObject contents_ ;
+    private String filename_ ;
+    private int version_ ;
+    private List<String> prefixes_ ;
+    private List<ISettingsListener> listeners_ ;
 
     /// \brief Creates a new JsonSettings parser
     /// \param logger message logger for logging messages while reading the JSON settings file
     public JsonSettingsParser(MessageLogger logger) {
         logger_ = logger ;
         defines_ = new ArrayList<String>() ;
+        version_ = 0 ;
+        prefixes_ = new ArrayList<String>() ;
+        listeners_ = new ArrayList<ISettingsListener>() ;
     }
 
     public boolean readFile(String filename) {
@@ -40,10 +55,137 @@ public class JsonSettingsParser implements ISettingsSupplier {
         logger_.add("reading JSON robots setting file ").addQuoted(filename) ;
         logger_.endMessage();    
 
+        filename_ = filename ;
         contents_ = JsonReader.readFile(filename, logger_) ;
         return contents_ != null ;
     }
 
+    /// \brief returns the name of the settings file read
+    /// \returns the name of the settings file read, or null if no file has been read
+    public String getFilename() {
+        return filename_ ;
+    }
+
+    @Override
+    public int getVersion() {
+        return version_ ;
+    }
+
+    @Override
+    public void subscribe(String prefix, ISettingsListener listener) {
+        prefixes_.add(prefix) ;
+        listeners_.add(listener) ;
+    }
+
+    /// \brief read the settings file again, and notify the listeners of the settings that changed.  If the
+    /// file cannot be read, the current settings are kept.
+    /// \param filename the name of the settings file
+    /// \returns true if the file was read
+    public boolean reload(String filename) {
+        JSONObject contents = JsonReader.readFile(filename, logger_) ;
+        if (contents == null)
+            return false ;
+
+        Map<String, Object> before = new LinkedHashMap<String, Object>() ;
+        Map<String, Object> after = new LinkedHashMap<String, Object>() ;
+        flatten("", contents_, before) ;
+        flatten("", contents, after) ;
+
+        List<String> changed = new ArrayList<String>() ;
+        for(Map.Entry<String, Object> entry : after.entrySet()) {
+            if (!sameValue(before.get(entry.getKey()), entry.getValue()))
+                changed.add(entry.getKey()) ;
+        }
+
+        for(String key : before.keySet()) {
+            if (!after.containsKey(key))
+                changed.add(key) ;
+        }
+
+        filename_ = filename ;
+        contents_ = contents ;
+
+        logger_.startMessage(MessageType.Info) ;
+        logger_.add("reloaded JSON robots setting file ").addQuoted(filename) ;
+        logger_.add("changed", changed.size()) ;
+        logger_.endMessage() ;
+
+        if (changed.size() > 0)
+            notifyListeners(changed) ;
+
+        return true ;
+    }
+
+    /// \brief change the value of a single setting, and notify the listeners if the value changed.  The setting
+    /// must already exist with a value of the same type.  If the setting depends on a define, the value for the
+    /// define in use is changed.
+    /// \param name the name of the setting
+    /// \param value the new value, a Double, Long, Boolean, or String
+    /// \returns true if the setting exists and the value is the right type
+    @SuppressWarnings("unchecked")
+    public boolean set(String name, Object value) {
+        String [] parts = name.split(":") ;
+        JSONObject parent = findParent(parts) ;
+        if (parent == null)
+            return false ;
+
+        String key = parts[parts.length - 1] ;
+        Object current = parent.get(key) ;
+        String changed = name ;
+
+        if (current instanceof JSONObject) {
+            //
+            // This might be a conditional definition based on a define
+            //
+            JSONObject condobj = (JSONObject)current ;
+            current = null ;
+            for(String define : defines_) {
+                if (condobj.containsKey(define)) {
+                    parent = condobj ;
+                    key = define ;
+                    current = condobj.get(define) ;
+                    changed = name + ":" + define ;
+                    break ;
+                }
+            }
+        }
+
+        if (current == null || current instanceof JSONObject)
+            return false ;
+
+        if ((current instanceof Number) != (value instanceof Number) ||
+                (current instanceof Boolean) != (value instanceof Boolean) ||
+                (current instanceof String) != (value instanceof String))
+            return false ;
+
+        if (current instanceof Long) {
+            //
+            // Values from outside the file may give an integer setting as a double
+            //
+            double d = ((Number)value).doubleValue() ;
+            if (d != Math.rint(d))
+                return false ;
+            value = Long.valueOf((long)d) ;
+        }
+
+        if (sameValue(current, value))
+            return true ;
+
+        parent.put(key, value) ;
+
+        logger_.startMessage(MessageType.Info) ;
+        logger_.add("changed setting ").addQuoted(changed) ;
+        logger_.add(" from ").add(current.toString()) ;
+        logger_.add(" to ").add(value.toString()) ;
+        logger_.endMessage() ;
+
+        List<String> keys = new ArrayList<String>() ;
+        keys.add(changed) ;
+        notifyListeners(keys) ;
+
+        return true ;
+    }
+
     /// \brief add a define to the reading process
     ///
     /// A define is a value that is stored and used in the settings lookup process
@@ -183,6 +325,67 @@ public class JsonSettingsParser implements ISettingsSupplier {
         return ret ;
     }
 
+    //
+    // Bump the version and call each listener subscribed to a key that includes a changed setting.  An
+    // exception from a listener is logged and does not stop the other listeners.
+    //
+    private void notifyListeners(List<String> changed) {
+        version_++ ;
+
+        for(int i = 0 ; i < listeners_.size() ; i++) {
+            String prefix = prefixes_.get(i) ;
+            List<String> keys = new ArrayList<String>() ;
+            for(String key : changed) {
+                if (key.startsWith(prefix) && (key.length() == prefix.length() || key.charAt(prefix.length()) == ':'))
+                    keys.add(key) ;
+            }
+
+            if (keys.size() == 0)
+                continue ;
+
+            try {
+                listeners_.get(i).settingsChanged(this, keys) ;
+            }
+            catch(Exception ex) {
+                logger_.startMessage(MessageType.Error) ;
+                logger_.add("cannot apply changed settings under ").addQuoted(prefix) ;
+                logger_.add(" - ").add(ex.getMessage()) ;
+                logger_.endMessage() ;
+            }
+        }
+    }
+
+    //
+    // Store every value in the tree under its full settings name
+    //
+    private static void flatten(String path, JSONObject obj, Map<String, Object> values) {
+        if (obj == null)
+            return ;
+
+        for(Object key : obj.keySet()) {
+            String name = path.length() == 0 ? key.toString() : path + ":" + key.toString() ;
+            Object value = obj.get(key) ;
+            if (value instanceof JSONObject)
+                flatten(name, (JSONObject)value, values) ;
+            else
+                values.put(name, value) ;
+        }
+    }
+
+    //
+    // Returns true if two setting values are the same.  Numbers are compared by value, so 1 and 1.0 are
+    // the same.
+    //
+    private static boolean sameValue(Object a, Object b) {
+        if (a == null || b == null)
+            return a == b ;
+
+        if (a instanceof Number && b instanceof Number)
+            return ((Number)a).doubleValue() == ((Number)b).doubleValue() ;
+
+        return a.equals(b) ;
+    }
+
     private JSONObject findParent(String [] parts) {
         JSONObject current = contents_ ;
         int index = 0 ;
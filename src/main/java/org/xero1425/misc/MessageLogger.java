@@ -1,8 +1,10 @@
 
 package org.xero1425.misc;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
@@ -29,16 +31,22 @@ import java.util.ArrayList ;
 /// console, and to a file located on a USB thumb drive on the robo rio.  Any optional time source can be registered
 /// with the message logger.  If a time source is registered, each message is tagged with the current time stamp.  
 /// The MessageLogger is thread safe and can be used with multiple threads concurrently.
+///
+/// The message being built is kept in a ThreadLocal, and the enabled message types and subsystems are kept as
+/// bit masks that are replaced rather than changed in place, so checking whether a message is enabled takes no
+/// lock and allocates nothing.  A message that is filtered out costs a mask test per call.  Code that computes
+/// expensive values for a message should check isEnabled() first, or pass the value as a Supplier so it is only
+/// computed for an enabled message.
 public final class MessageLogger
 {
     // The per thread data for the logger
-    private Map<Long, ThreadData> per_thread_data_ ;
+    private final ThreadLocal<ThreadData> per_thread_data_ ;
 
     // The set of destinations for messages
     private List<MessageDestination> destinations_ ;
 
-    // The set of message types enabled
-    private List<MessageType> enabled_types_ ;
+    // The set of message types enabled, one bit per MessageType ordinal
+    private volatile int enabled_types_ ;
 
     // The time source for messages
     private MessageTimeSource time_src_ ;
@@ -46,13 +54,14 @@ public final class MessageLogger
     // This is a mapping from subsystem number to subsystem name
     private Map<Integer, String> subsystems_ ;
 
-    // The list of enabled subsytems
-    private List<Integer> enabled_subsystems_ ;
+    // The enabled subsystems, one bit per logger ID.  The array is replaced, never changed in place, so
+    // it can be read without a lock.
+    private volatile long [] enabled_subsystems_ ;
 
     // This is the number for the next subsystem registered
     private int subsystem_index_ ;
 
-    // The lock for the serial number
+    // The lock for changes to the enabled types and subsystems
     private Object lock_ ;
 
     // the list of subsystem to be enabled if ethey are created
@@ -77,16 +86,13 @@ public final class MessageLogger
         subsystem_index_ = 1 ;
         time_src_ = null ;
         destinations_ = new ArrayList<MessageDestination>() ;
-        per_thread_data_ = new HashMap<Long, ThreadData>() ;
+        per_thread_data_ = ThreadLocal.withInitial(ThreadData::new) ;
 
-        enabled_types_ = new ArrayList<MessageType>() ;
-        enabled_types_.add(MessageType.Debug) ;
-        enabled_types_.add(MessageType.Info) ;
-        enabled_types_.add(MessageType.Warning) ;
-        enabled_types_.add(MessageType.Error) ;
-        enabled_types_.add(MessageType.Fatal) ;
+        enabled_types_ = 0 ;
+        for(MessageType mt : MessageType.values())
+            enabled_types_ |= typeBit(mt) ;
 
-        enabled_subsystems_ = new ArrayList<Integer>() ;
+        enabled_subsystems_ = new long[1] ;
         to_be_enabled_ = new ArrayList<String>() ;
 
         lock_ = new Object() ;
@@ -145,42 +151,77 @@ public final class MessageLogger
     /// \brief enable a given message type
     /// \param mt the message type to enable
     public void enableMessageType(final MessageType mt) {
-        if (!enabled_types_.contains(mt))
-            enabled_types_.add(mt);
+        synchronized(lock_) {
+            enabled_types_ |= typeBit(mt) ;
+        }
     }
 
     /// \brief disable a given message type
     /// \param mt the message type to disable
     public void disableMessageType(final MessageType mt) {
-        if (enabled_types_.contains(mt))
-            enabled_types_.remove(mt);
+        synchronized(lock_) {
+            enabled_types_ &= ~typeBit(mt) ;
+        }
     }
 
     /// \brief returns true if a given message type is enabled
     /// \returns true if a given message type is enabled
     public boolean isTypeEnabled(final MessageType mt) {
-        return enabled_types_.contains(mt);
+        return (enabled_types_ & typeBit(mt)) != 0 ;
+    }
+
+    /// \brief returns true if a message of the given type from the given subsystem would be displayed.  This
+    /// takes no lock and allocates nothing, so it can guard the code that computes the values for a message.
+    /// \param mt the message type
+    /// \param subsystem the module or subsystem that would display the message
+    /// \returns true if the message would be displayed
+    public boolean isEnabled(final MessageType mt, final int subsystem) {
+        return isTypeEnabled(mt) && subsystemEnabled(subsystem) ;
+    }
+
+    /// \brief returns true if a message of the given type with no subsystem would be displayed
+    /// \param mt the message type
+    /// \returns true if the message would be displayed
+    public boolean isEnabled(final MessageType mt) {
+        return isTypeEnabled(mt) ;
     }
 
     /// \brief enable the messages associated with a given subsystem message hangle
     /// \param handle the handle for a given subsystem
     private void enableLoggerID(final int handle) {
-        if (!enabled_subsystems_.contains(handle))
-            enabled_subsystems_.add(handle);
+        synchronized(lock_) {
+            long [] mask = enabled_subsystems_ ;
+            int word = handle >>> 6 ;
+            if (word >= mask.length)
+                mask = Arrays.copyOf(mask, word + 1) ;
+            else
+                mask = mask.clone() ;
+
+            mask[word] |= 1L << handle ;
+            enabled_subsystems_ = mask ;
+        }
     }
 
     /// \brief disable messages given a logger id
     /// \param handle the handle for a given subsystem
     public void disableLoggerID(final int handle) {
-        if (enabled_subsystems_.contains(handle))
-            enabled_subsystems_.remove(handle);
+        synchronized(lock_) {
+            int word = handle >>> 6 ;
+            if (word < enabled_subsystems_.length) {
+                long [] mask = enabled_subsystems_.clone() ;
+                mask[word] &= ~(1L << handle) ;
+                enabled_subsystems_ = mask ;
+            }
+        }
     }
 
     /// \brief returns true if the given logger ID is enabled
     /// \param handle the handle to check to see if its enabled
     /// \returns true if the given logger ID is enabled
     public boolean isLoggerIDEnabled(final int handle) {
-        return enabled_subsystems_.contains(handle);
+        final long [] mask = enabled_subsystems_ ;
+        final int word = handle >>> 6 ;
+        return word < mask.length && (mask[word] & (1L << handle)) != 0 ;
     }
 
     /// \brief enable messages for a given subsystem
@@ -248,24 +289,29 @@ public final class MessageLogger
     /// \param subsystem the module or subsystem that is displaying the message
     /// \returns a reference to the message logger object
     public MessageLogger startMessage(final MessageType mtype, final int subsystem) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
 
         if (per.in_message_) {
             //
             // We have a nested message, someone forgot to close off the current
             // message.
             //
-            per.message_.append(" DID NOT CALL ENDMESSAGE, serial = ") ;
-            per.message_.append(per.serial_) ;
+            if (per.enabled_) {
+                per.message_.append(" DID NOT CALL ENDMESSAGE, serial = ") ;
+                per.message_.append(per.serial_) ;
+            }
             endMessage();
         }
 
-        per.serial_ = getSerial() ;
         per.in_message_ = true;
-        per.message_ = new StringBuilder(80) ;
         per.type_ = mtype;
         per.subsystem_ = subsystem;
-        per.enabled_ = enabled_types_.contains(per.type_) && subsystemEnabled(per.subsystem_) ;
+        per.enabled_ = isEnabled(mtype, subsystem) ;
+
+        if (per.enabled_) {
+            per.serial_ = getSerial() ;
+            per.message_.setLength(0) ;
+        }
 
         return this;
     }
@@ -335,17 +381,15 @@ public final class MessageLogger
     /// allow the message to be displayed.  The message is displayed by passing to each of
     /// the MessageDestination objects registered.
     public void endMessage() {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
 
         if (!per.in_message_)
             return;
 
-        if (per.message_.length() > 0) {
-            if (enabled_types_.contains(per.type_) && subsystemEnabled(per.subsystem_)) {
-                if (per.type_ == MessageType.Error)
-                    error_count_++ ;
-                outputMessage(per) ;
-            }
+        if (per.enabled_ && per.message_.length() > 0) {
+            if (per.type_ == MessageType.Error)
+                error_count_++ ;
+            outputMessage(per) ;
         }
 
         if (per.type_ == MessageType.Fatal) {
@@ -355,28 +399,55 @@ public final class MessageLogger
             System.exit(-2);
         }
 
-        per.message_ = null ;
         per.subsystem_ = 0;
         per.in_message_ = false;
+        per.enabled_ = false ;
     }
 
     /// \brief add a string to the current message
     /// \param str the string to add
     /// \returns the MessageLogger object
     public MessageLogger add(final String str) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_ && per.in_message_)
             per.message_.append(str) ;
         return this;
     }
 
+    /// \brief add a string computed only if the current message is enabled
+    /// \param supplier returns the string to add
+    /// \returns the MessageLogger object
+    public MessageLogger add(final Supplier<String> supplier) {
+        final ThreadData per = per_thread_data_.get() ;
+        if (per.enabled_ && per.in_message_)
+            per.message_.append(supplier.get()) ;
+        return this;
+    }
+
+    /// \brief add a name value pair to the message, with the value computed only if the current message is enabled
+    /// \param name the name to add
+    /// \param supplier returns the value to add
+    /// \returns the MessageLogger object
+    public MessageLogger add(final String name, final Supplier<String> supplier) {
+        final ThreadData per = per_thread_data_.get() ;
+        if (per.enabled_ && per.in_message_) {
+            per.message_.append(" ") ;
+            per.message_.append(name) ;
+            per.message_.append(" = ") ;
+            per.message_.append(supplier.get()) ;
+        }
+        return this;
+    }
+
     public MessageLogger add (final Pose2d pose) {
-        final ThreadData per = getPerThreadData();
-        per.message_.append(String.format(java.util.Locale.US, "%.3f", pose.getX()));
-        per.message_.append(" ") ;
-        per.message_.append(String.format(java.util.Locale.US, "%.3f", pose.getY()));
-        per.message_.append(" ") ;
-        per.message_.append(String.format(java.util.Locale.US, "%.1f", pose.getRotation().getDegrees()));
+        final ThreadData per = per_thread_data_.get() ;
+        if (per.enabled_ && per.in_message_) {
+            per.message_.append(String.format(java.util.Locale.US, "%.3f", pose.getX()));
+            per.message_.append(" ") ;
+            per.message_.append(String.format(java.util.Locale.US, "%.3f", pose.getY()));
+            per.message_.append(" ") ;
+            per.message_.append(String.format(java.util.Locale.US, "%.1f", pose.getRotation().getDegrees()));
+        }
 
         return this ;
     }
@@ -386,7 +457,7 @@ public final class MessageLogger
     /// \param value the value to add
     /// \returns the MessageLogger object
     public MessageLogger add(final String name, final double value) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_) {
             per.message_.append(" ") ;
             per.message_.append(name) ;
@@ -398,7 +469,7 @@ public final class MessageLogger
     }
 
     public MessageLogger add(final String name, final double value, String fmt) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_) {
             per.message_.append(" ") ;
             per.message_.append(name) ;
@@ -410,7 +481,7 @@ public final class MessageLogger
     }
 
     public MessageLogger add(final String name, final Rotation2d value) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_) {
             per.message_.append(" ") ;
             per.message_.append(name) ;
@@ -426,7 +497,7 @@ public final class MessageLogger
     /// \param value the value to add
     /// \returns the MessageLogger object
     public MessageLogger add(final String name, final float value) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_) {
             per.message_.append(" ") ;
             per.message_.append(name) ;
@@ -442,7 +513,7 @@ public final class MessageLogger
     /// \param value the value to add
     /// \returns the MessageLogger object
     public MessageLogger add(final String name, final int value) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_) {
             per.message_.append(" ") ;
             per.message_.append(name) ;
@@ -458,7 +529,7 @@ public final class MessageLogger
     /// \param value the value to add
     /// \returns the MessageLogger object    
     public MessageLogger add(final String name, final boolean value) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_) {
             per.message_.append(" ") ;
             per.message_.append(name) ;
@@ -474,7 +545,7 @@ public final class MessageLogger
     /// \param value the value to add
     /// \returns the MessageLogger object    
     public MessageLogger add(final String name, final String value) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_) {
             per.message_.append(" ") ;
             per.message_.append(name) ;
@@ -486,7 +557,7 @@ public final class MessageLogger
     }       
 
     public MessageLogger add(final String name, final Pose2d pose) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_) {
             per.message_.append(" ") ;
             per.message_.append(name) ;
@@ -501,7 +572,7 @@ public final class MessageLogger
     }
 
     public MessageLogger add(final String name, final Translation2d t) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_) {
             per.message_.append(" ") ;
             per.message_.append(name) ;
@@ -514,7 +585,7 @@ public final class MessageLogger
     }
 
     public MessageLogger add(final String name, final Translation3d t) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_) {
             per.message_.append(" ") ;
             per.message_.append(name) ;
@@ -532,7 +603,7 @@ public final class MessageLogger
     /// \param str the string to add
     /// \returns the MessageLogger object  
     public MessageLogger addQuoted(final String str) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_)
         {
             per.message_.append("'") ;
@@ -547,7 +618,7 @@ public final class MessageLogger
     /// \param ch the character to add
     /// \returns the MessageLogger object  
     public MessageLogger add(final char ch) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_)
             per.message_.append(ch) ;
 
@@ -558,7 +629,7 @@ public final class MessageLogger
     /// \param value the integer to add
     /// \returns the MessageLogger object     
     public MessageLogger add(final int value) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_)
             per.message_.append(value) ;
 
@@ -569,7 +640,7 @@ public final class MessageLogger
     /// \param value the value to add
     /// \returns the MessageLogger object     
     public MessageLogger add(final long value) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_)
             per.message_.append(value) ;
 
@@ -580,7 +651,7 @@ public final class MessageLogger
     /// \param value the value to add
     /// \returns the MessageLogger object     
     public MessageLogger add(final boolean value) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_)
             per.message_.append(value) ;
 
@@ -591,7 +662,7 @@ public final class MessageLogger
     /// \param value the value to add
     /// \returns the MessageLogger object     
     public MessageLogger add(final double value) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_)
             per.message_.append(String.format(java.util.Locale.US, "%.4f", value)) ;
 
@@ -602,7 +673,7 @@ public final class MessageLogger
     /// \param value the value to add
     /// \returns the MessageLogger object     
     public MessageLogger add(final float value) {
-        final ThreadData per = getPerThreadData();
+        final ThreadData per = per_thread_data_.get() ;
         if (per.enabled_&& per.in_message_)
             per.message_.append(String.format(java.util.Locale.US, "%.4f", value)) ;
 
@@ -614,31 +685,14 @@ public final class MessageLogger
     }
 
     private boolean subsystemEnabled(final int sub) {
-        return sub == NOSUBSYSTEM || enabled_subsystems_.contains(sub);
+        return sub == NOSUBSYSTEM || isLoggerIDEnabled(sub) ;
     }
 
-    private ThreadData getPerThreadData() {
-        ThreadData per = null;
-
-        synchronized(lock_) {
-            final long id = Thread.currentThread().getId();
-            if (per_thread_data_.containsKey(id))
-            {
-                per = per_thread_data_.get(id) ;
-            }
-            else
-            {
-                per = new ThreadData() ;
-                per.id_ = id ;
-                per.in_message_ = false ;
-                per_thread_data_.put(id, per) ;
-            }
-        }
-
-        return per ;
+    private static int typeBit(final MessageType mt) {
+        return 1 << mt.ordinal() ;
     }
 
-    private class ThreadData
+    private static class ThreadData
     {
         public long id_ ;
         public boolean in_message_ ;
@@ -647,6 +701,13 @@ public final class MessageLogger
         public int subsystem_ ;
         public StringBuilder message_ ;
         public int serial_ ;
+
+        public ThreadData() {
+            id_ = Thread.currentThread().getId() ;
+            in_message_ = false ;
+            enabled_ = false ;
+            message_ = new StringBuilder(256) ;
+        }
     } ;
 
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+package org.xero1425.misc;
+
+/// \file
+
+/// \brief This class suppresses motor controller writes that would not change the output of the motor controller.
+///
+/// Every write to a CAN motor controller costs a CAN frame.  Much of the robot code commands the same output every
+/// robot loop, such as a stopped swerve module or a subsystem holding a power.  A motor controller keeps one of these
+/// objects and asks it before each write.  The filter remembers the control mode and value last sent.  A write is
+/// skipped if the mode is the same and the value is within the deadband of the value last sent.  Comparing with the
+/// value last sent, rather than the last value requested, means a slow drift is sent once it exceeds the deadband.  A
+/// change to exactly zero is always sent, and the last value is sent again after the refresh period so the motor
+/// controller does not time out.
+///
+/// The deadband for percent output writes, the refresh period, and whether filtering is enabled are shared by all
+/// filters.  Filters for closed loop targets are given a deadband in the units of the target when they are created.
+/// The count of writes sent and skipped is kept for all filters so the CAN bus savings can be reported.
+///
+/// This class is only used from the robot thread.
+public class OutputFilter {
+    // If true, writes are filtered
+    private static boolean enabled_ = true ;
+
+    // The deadband for percent output writes
+    private static double percent_deadband_ = 0.001 ;
+
+    // The time after which the last value is sent again, in nanoseconds
+    private static long refresh_ = 100000000L ;
+
+    // The number of writes sent and skipped by all filters
+    private static long sent_ = 0 ;
+    private static long saved_ = 0 ;
+
+    // The deadband for this filter, or NaN to use the percent output deadband
+    private final double deadband_ ;
+
+    // If true, a value has been sent since the filter was created or invalidated
+    private boolean valid_ ;
+
+    // The mode and value last sent
+    private int mode_ ;
+    private double value_ ;
+
+    // The time the last value was sent in nanoseconds
+    private long time_ ;
+
+    /// \brief create a filter for percent output writes, using the shared percent output deadband
+    public OutputFilter() {
+        this(Double.NaN) ;
+    }
+
+    /// \brief create a filter with its own deadband
+    /// \param deadband the deadband in the units of the values written
+    public OutputFilter(double deadband) {
+        deadband_ = deadband ;
+        valid_ = false ;
+    }
+
+    /// \brief set the shared settings for all filters
+    /// \param enabled if true, writes are filtered, otherwise every write is sent
+    /// \param deadband the deadband for percent output writes
+    /// \param refresh the time in seconds after which the last value is sent again
+    public static void configure(boolean enabled, double deadband, double refresh) {
+        enabled_ = enabled ;
+        percent_deadband_ = deadband ;
+        refresh_ = (long)(refresh * 1.0e9) ;
+    }
+
+    /// \brief returns true if writes are filtered
+    /// \returns true if writes are filtered
+    public static boolean isEnabled() {
+        return enabled_ ;
+    }
+
+    /// \brief returns the number of writes sent by all filters
+    /// \returns the number of writes sent by all filters
+    public static long getSent() {
+        return sent_ ;
+    }
+
+    /// \brief returns the number of writes skipped by all filters
+    /// \returns the number of writes skipped by all filters
+    public static long getSaved() {
+        return saved_ ;
+    }
+
+    /// \brief returns true if a write should be sent to the motor controller.  If true is returned, the mode
+    /// and value are remembered as the last values sent.
+    /// \param mode the control mode for the write, defined by the motor controller
+    /// \param value the value for the write
+    /// \returns true if the write should be sent to the motor controller
+    public boolean write(int mode, double value) {
+        long now = System.nanoTime() ;
+
+        if (enabled_ && valid_ && mode == mode_ && now - time_ < refresh_) {
+            double db = Double.isNaN(deadband_) ? percent_deadband_ : deadband_ ;
+            if (Math.abs(value - value_) <= db && (value != 0.0 || value_ == 0.0)) {
+                saved_++ ;
+                return false ;
+            }
+        }
+
+        valid_ = true ;
+        mode_ = mode ;
+        value_ = value ;
+        time_ = now ;
+        sent_++ ;
+
+        return true ;
+    }
+
+    /// \brief remember a value that is always sent to the motor controller, such as a request to stop
+    /// \param mode the control mode for the write, defined by the motor controller
+    /// \param value the value for the write
+    public void force(int mode, double value) {
+        valid_ = true ;
+        mode_ = mode ;
+        value_ = value ;
+        time_ = System.nanoTime() ;
+        sent_++ ;
+    }
+
+    /// \brief forget the last value sent.  This must be called when the motor controller output is changed
+    /// without going through the filter.
+    public void invalidate() {
+        valid_ = false ;
+    }
+}
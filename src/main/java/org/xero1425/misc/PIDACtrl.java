@@ -59,19 +59,28 @@ public class PIDACtrl
     //
     private double dpart_ ;
 
+    //
+    // The settings and name the constants were read from, and the settings version when they were read.
+    // The settings are null if the constants were not read from the settings.
+    //
+    private ISettingsSupplier settings_ ;
+    private String name_ ;
+    private int version_ ;
+
     /// \brief create a new object by reading parameters from the settings parser.
     /// The kv parameter is found by looking up the basename + ":kv".  The ka parameters is
     /// found by looking up the basename + ":ka".  The kp parameter is found by looking up
     /// the basename + ":kp".  The kd parameter is found by looking up the basename + ":kd".
+    /// If the settings change while the robot is running, the constants are read again the next time the
+    /// output is computed.
     /// \param settings the settings parser
     /// \param name the basename to use to extract params from the settings parser
     /// \param angle if true it is managing an angle between =180 and +180
     public PIDACtrl(ISettingsSupplier settings, String name, boolean angle) 
                     throws BadParameterTypeException, MissingParameterException {
-        kv_ = settings.get(name + ":kv").getDouble() ;
-        ka_ = settings.get(name + ":ka").getDouble() ;
-        kp_ = settings.get(name + ":kp").getDouble() ;
-        kd_ = settings.get(name + ":kd").getDouble() ;
+        settings_ = settings ;
+        name_ = name ;
+        read() ;
         angle_ = angle ;
     }
 
@@ -98,6 +107,18 @@ public class PIDACtrl
     /// \returns the output value for the controller
     public double getOutput(double a, double v, double dtarget, double dactual, double dt) {
         double current_error ;
+
+        if (settings_ != null && settings_.getVersion() != version_) {
+            try {
+                read() ;
+            }
+            catch(Exception ex) {
+                //
+                // Keep the current constants if they can no longer be read
+                //
+                version_ = settings_.getVersion() ;
+            }
+        }
             
         if (angle_)
             current_error = XeroMath.normalizeAngleDegrees(dtarget - dactual) ;
@@ -144,4 +165,15 @@ public class PIDACtrl
         return last_error_ ;
     }    
 
+    //
+    // Read the constants from the settings
+    //
+    private void read() throws BadParameterTypeException, MissingParameterException {
+        version_ = settings_.getVersion() ;
+        kv_ = settings_.get(name_ + ":kv").getDouble() ;
+        ka_ = settings_.get(name_ + ":ka").getDouble() ;
+        kp_ = settings_.get(name_ + ":kp").getDouble() ;
+        kd_ = settings_.get(name_ + ":kd").getDouble() ;
+    }
+
 } ;
@@ -39,6 +39,12 @@ public class PIDCtrl
     private double pout_ ;
     private double fout_ ;
 
+    // The settings and name the constants were read from, and the settings version when they were read.
+    // The settings are null if the constants were not read from the settings.
+    private ISettingsSupplier settings_ ;
+    private String name_ ;
+    private int version_ ;
+
     /// \brief create a new PIDCtrl object with all parameters set to zero
     /// \param isangle if true this PIDCtrl object manages an angular quantity
     public PIDCtrl(boolean isangle) {
@@ -95,9 +101,15 @@ public class PIDCtrl
     /// The kv parameter is found by looking up the basename + ":kv".  The ka parameters is
     /// found by looking up the basename + ":ka".  The kp parameter is found by looking up
     /// the basename + ":kp".  The kd parameter is found by looking up the basename + ":kd".
+    /// If the settings change while the robot is running, the constants are read again the next time the
+    /// output is computed.
     /// \param settings the settings parser
     /// \param name the basename to use to extract params from the settings parser
     public void init(ISettingsSupplier settings, String name)  throws MissingParameterException, BadParameterTypeException {
+        settings_ = settings ;
+        name_ = name ;
+        version_ = settings.getVersion() ;
+
         kp_ = settings.get(name + ":kp").getDouble() ;
         ki_ = settings.get(name + ":ki").getDouble() ;
         kd_ = settings.get(name + ":kd").getDouble() ;
@@ -137,6 +149,9 @@ public class PIDCtrl
     /// \param dt the difference in time (delta time) since the last robot loop (should be 20 milliseconds)
     /// \returns the output applied to motors/etc. after performing calculations
     public double getOutput(double target, double current, double dt) {
+        if (settings_ != null && settings_.getVersion() != version_)
+            reread() ;
+
         double error = calcError(target, current) ;
         double derivative = 0;
 
@@ -189,6 +204,19 @@ public class PIDCtrl
         integral_ = 0.0 ;
     }
     
+    //
+    // Read the constants again after the settings change.  If they can no longer be read, the
+    // current constants are kept.
+    //
+    private void reread() {
+        try {
+            init(settings_, name_) ;
+        }
+        catch(Exception ex) {
+            version_ = settings_.getVersion() ;
+        }
+    }
+
     /// \brief gets the error between current and target position
     /// \param target the target position
     /// \param current the current position
@@ -0,0 +1,192 @@
+package org.xero1425.misc;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+/// \file
+
+/// \brief This class converts a file written by the PlotRecorder into CSV files for the xerotune tool.
+///
+/// This is a desktop program.  It is run with the name of a recording file and an output directory.
+///
+///     java -cp robot.jar org.xero1425.misc.PlotRecordExporter plots_1.xrec outdir [--chunks]
+///
+/// Each series in the recording is written to a file named PLOT-SERIES.csv.  If --chunks is given, each chunk
+/// in the recording is written to its own file named PLOT-SERIES-CHUNK.csv, which keeps long recordings in files
+/// that are small enough to load quickly.
+public class PlotRecordExporter {
+
+    // The state for a series being exported
+    private static class Series {
+        public final String name ;
+        public final String[] columns ;
+        public CSVPrinter printer ;
+        public int chunks ;
+        public int rows ;
+
+        public Series(String n, String[] cols) {
+            name = n ;
+            columns = cols ;
+            printer = null ;
+            chunks = 0 ;
+            rows = 0 ;
+        }
+    }
+
+    private final File outdir_ ;
+    private final boolean chunks_ ;
+    private final Map<Integer, Series> series_ ;
+
+    /// \brief create a new exporter
+    /// \param outdir the directory for the CSV files
+    /// \param chunks if true, write each chunk of data to its own CSV file
+    public PlotRecordExporter(File outdir, boolean chunks) {
+        outdir_ = outdir ;
+        chunks_ = chunks ;
+        series_ = new HashMap<Integer, Series>() ;
+    }
+
+    /// \brief export the recording file given
+    /// \param filename the recording file
+    /// \returns the number of series exported
+    public int export(String filename) throws IOException {
+        int count = 0 ;
+
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r") ; FileChannel channel = file.getChannel()) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) ;
+            buf.order(ByteOrder.LITTLE_ENDIAN) ;
+
+            if (buf.remaining() < 8 || buf.getInt() != PlotRecorder.FileMagic) {
+                throw new IOException("file '" + filename + "' is not a plot recording") ;
+            }
+
+            int version = buf.getInt() ;
+            if (version != PlotRecorder.FileVersion) {
+                throw new IOException("file '" + filename + "' has unsupported version " + version) ;
+            }
+
+            while (buf.remaining() >= 4) {
+                int type = buf.getInt() ;
+                if (type == PlotRecorder.RecordEnd)
+                    break ;
+
+                if (type == PlotRecorder.RecordStart) {
+                    int id = buf.getInt() ;
+                    String name = getString(buf) ;
+                    int cols = buf.getInt() ;
+                    String[] names = new String[cols] ;
+                    for(int i = 0 ; i < cols ; i++) {
+                        names[i] = getString(buf) ;
+                    }
+                    series_.put(id, new Series(name, names)) ;
+                    count++ ;
+                }
+                else if (type == PlotRecorder.RecordChunk) {
+                    int id = buf.getInt() ;
+                    int rows = buf.getInt() ;
+                    int cols = buf.getInt() ;
+                    double[][] data = new double[cols][rows] ;
+                    for(int c = 0 ; c < cols ; c++) {
+                        for(int r = 0 ; r < rows ; r++) {
+                            data[c][r] = buf.getDouble() ;
+                        }
+                    }
+
+                    Series s = series_.get(id) ;
+                    if (s != null) {
+                        writeChunk(id, s, data, rows) ;
+                    }
+                }
+                else if (type == PlotRecorder.RecordStop) {
+                    int id = buf.getInt() ;
+                    Series s = series_.remove(id) ;
+                    if (s != null && s.printer != null) {
+                        s.printer.close() ;
+                    }
+                }
+                else {
+                    throw new IOException("file '" + filename + "' has an invalid record type " + type) ;
+                }
+            }
+        }
+        finally {
+            for(Series s : series_.values()) {
+                if (s.printer != null)
+                    s.printer.close() ;
+            }
+            series_.clear() ;
+        }
+
+        return count ;
+    }
+
+    private void writeChunk(int id, Series s, double[][] data, int rows) throws IOException {
+        if (s.printer == null || chunks_) {
+            if (s.printer != null)
+                s.printer.close() ;
+
+            String fname = s.name + "-" + id ;
+            if (chunks_)
+                fname += "-" + s.chunks ;
+            fname += ".csv" ;
+
+            FileWriter writer = new FileWriter(new File(outdir_, fname.replace('/', '_'))) ;
+            s.printer = new CSVPrinter(writer, CSVFormat.DEFAULT.withHeader(s.columns)) ;
+        }
+
+        for(int r = 0 ; r < rows ; r++) {
+            Object[] row = new Object[data.length] ;
+            for(int c = 0 ; c < data.length ; c++) {
+                row[c] = data[c][r] ;
+            }
+            s.printer.printRecord(row) ;
+        }
+
+        s.chunks++ ;
+        s.rows += rows ;
+    }
+
+    private static String getString(MappedByteBuffer buf) {
+        int len = buf.getInt() ;
+        byte[] bytes = new byte[len] ;
+        buf.get(bytes) ;
+        return new String(bytes, StandardCharsets.UTF_8) ;
+    }
+
+    /// \brief the entry point for the exporter
+    /// \param args the recording file, the output directory, and optionally --chunks
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: PlotRecordExporter RECORDING OUTDIR [--chunks]") ;
+            System.exit(1) ;
+        }
+
+        boolean chunks = args.length > 2 && args[2].equals("--chunks") ;
+        File outdir = new File(args[1]) ;
+        if (!outdir.exists() && !outdir.mkdirs()) {
+            System.err.println("cannot create output directory '" + args[1] + "'") ;
+            System.exit(1) ;
+        }
+
+        try {
+            PlotRecordExporter exporter = new PlotRecordExporter(outdir, chunks) ;
+            int count = exporter.export(args[0]) ;
+            System.out.println("exported " + count + " series from '" + args[0] + "'") ;
+        }
+        catch(IOException ex) {
+            System.err.println("export failed - " + ex.getMessage()) ;
+            System.exit(1) ;
+        }
+    }
+}
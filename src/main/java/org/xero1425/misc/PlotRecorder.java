@@ -0,0 +1,442 @@
+package org.xero1425.misc;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/// \file
+
+/// \brief This class records plot data to a memory mapped file on the robot.
+///
+/// The robot thread hands plot data to the recorder through a fixed size single producer, single consumer
+/// ring of preallocated slots, so recording a row of plot data is a copy of the values and nothing else.
+/// A background thread drains the ring and stores the data in a columnar file.  Each plot run (everything between
+/// start() and end()) is a series.  The rows for a series are collected into chunks and each chunk is stored
+/// column by column, which keeps the file compact and quick to export.  If the ring is full the data is dropped
+/// and counted rather than blocking the robot thread.
+///
+/// The file format is little endian and is a header followed by a sequence of records
+/// \li \c header - int magic (FileMagic), int version (FileVersion)
+/// \li \c start - int RecordStart, int series, string plot name, int column count, strings column names
+/// \li \c chunk - int RecordChunk, int series, int rows, int columns, columns * rows doubles stored column by column
+/// \li \c stop - int RecordStop, int series
+/// \li \c end - int RecordEnd, or the end of the file
+///
+/// Strings are stored as an int byte count followed by UTF-8 bytes.  The file can be converted to CSV files with
+/// the PlotRecordExporter class.
+public class PlotRecorder {
+    /// \brief the magic number at the start of a recording file
+    public static final int FileMagic = 0x43455258 ;
+
+    /// \brief the version of the recording file format
+    public static final int FileVersion = 1 ;
+
+    /// \brief the record type that marks the end of the data
+    public static final int RecordEnd = 0 ;
+
+    /// \brief the record type that starts a new series
+    public static final int RecordStart = 1 ;
+
+    /// \brief the record type that holds a chunk of data for a series
+    public static final int RecordChunk = 2 ;
+
+    /// \brief the record type that ends a series
+    public static final int RecordStop = 3 ;
+
+    /// \brief the maximum number of columns in a plot that can be recorded
+    public static final int MaxColumns = 64 ;
+
+    // The number of rows stored in a single chunk
+    private static final int ChunkRows = 250 ;
+
+    // The number of slots in the ring between the robot thread and the writer thread, must be a power of two
+    private static final int RingSize = 1024 ;
+
+    // The amount of the file mapped at one time
+    private static final long MapSize = 4 * 1024 * 1024 ;
+
+    // The time between writing partial chunks to the file, in nanoseconds
+    private static final long FlushInterval = 1000000000L ;
+
+    // The time between forcing the mapped data to the storage device, in nanoseconds
+    private static final long ForceInterval = 5000000000L ;
+
+    // The time the writer thread sleeps when there is nothing to do, in nanoseconds
+    private static final long IdleSleep = 2000000L ;
+
+    private static final int SlotStart = 1 ;
+    private static final int SlotData = 2 ;
+    private static final int SlotEnd = 3 ;
+
+    // A single message from the robot thread to the writer thread
+    private static class Slot {
+        public int kind ;
+        public int plot ;
+        public int count ;
+        public String name ;
+        public String[] columns ;
+        public final double[] values = new double[MaxColumns] ;
+    }
+
+    // The state for the series currently being recorded for a plot
+    private static class Series {
+        public final int id ;
+        public final double[][] data ;
+        public int rows ;
+
+        public Series(int i, int cols) {
+            id = i ;
+            data = new double[cols][ChunkRows] ;
+            rows = 0 ;
+        }
+    }
+
+    // The ring between the robot thread and the writer thread
+    private final Slot[] ring_ ;
+
+    // The next slot the robot thread writes to, only updated by the robot thread
+    private final AtomicLong head_ ;
+
+    // The next slot the writer thread reads from, only updated by the writer thread
+    private final AtomicLong tail_ ;
+
+    // The number of plot rows or events dropped because the ring was full or the file was full
+    private final AtomicLong dropped_ ;
+
+    // The plot names, indexed by plot id, only used by the robot thread
+    private final List<String> plots_ ;
+
+    // The series currently being recorded, indexed by plot id, only used by the writer thread
+    private final Map<Integer, Series> series_ ;
+
+    // The next series number, only used by the writer thread
+    private int next_series_ ;
+
+    // The file being written
+    private final RandomAccessFile file_ ;
+
+    // The channel for the file being written
+    private final FileChannel channel_ ;
+
+    // The mapped window of the file being written
+    private MappedByteBuffer map_ ;
+
+    // The file offset of the start of the mapped window
+    private long map_start_ ;
+
+    // The maximum size of the file
+    private final long max_size_ ;
+
+    // The writer thread
+    private final Thread writer_ ;
+
+    // If true, the writer thread should flush everything and stop
+    private volatile boolean closing_ ;
+
+    /// \brief create a new plot recorder
+    /// \param filename the name of the file to record into
+    /// \param maxsize the maximum size of the file in bytes
+    public PlotRecorder(String filename, long maxsize) throws IOException {
+        ring_ = new Slot[RingSize] ;
+        for(int i = 0 ; i < RingSize ; i++)
+            ring_[i] = new Slot() ;
+
+        head_ = new AtomicLong(0) ;
+        tail_ = new AtomicLong(0) ;
+        dropped_ = new AtomicLong(0) ;
+        plots_ = new ArrayList<String>() ;
+        series_ = new HashMap<Integer, Series>() ;
+        next_series_ = 0 ;
+        max_size_ = maxsize ;
+
+        file_ = new RandomAccessFile(filename, "rw") ;
+        file_.setLength(0) ;
+        channel_ = file_.getChannel() ;
+
+        map_start_ = 0 ;
+        map(0, 8) ;
+        map_.putInt(FileMagic) ;
+        map_.putInt(FileVersion) ;
+
+        closing_ = false ;
+        writer_ = new Thread(() -> writerLoop(), "plot-recorder") ;
+        writer_.setDaemon(true) ;
+        writer_.start() ;
+    }
+
+    /// \brief returns the number of rows or events dropped
+    /// \returns the number of rows or events dropped
+    public long getDropped() {
+        return dropped_.get() ;
+    }
+
+    /// \brief define a new plot.  Only called from the robot thread.
+    /// \param name the name of the plot
+    /// \returns the id of the plot
+    public int definePlot(String name) {
+        int index = plots_.indexOf(name) ;
+        if (index == -1) {
+            index = plots_.size() ;
+            plots_.add(name) ;
+        }
+
+        return index ;
+    }
+
+    /// \brief start a new series for a plot.  Only called from the robot thread.
+    /// \param plot the id of the plot returned by definePlot()
+    /// \param cols the names of the columns in the plot
+    public void start(int plot, String[] cols) {
+        Slot s = claim() ;
+        if (s == null)
+            return ;
+
+        s.kind = SlotStart ;
+        s.plot = plot ;
+        s.name = plots_.get(plot) ;
+        s.columns = cols ;
+        s.count = Math.min(cols.length, MaxColumns) ;
+        publish() ;
+    }
+
+    /// \brief add a row of data to the current series for a plot.  Only called from the robot thread.
+    /// \param plot the id of the plot returned by definePlot()
+    /// \param data the data for the row
+    public void add(int plot, Double[] data) {
+        Slot s = claim() ;
+        if (s == null)
+            return ;
+
+        s.kind = SlotData ;
+        s.plot = plot ;
+        s.count = Math.min(data.length, MaxColumns) ;
+        for(int i = 0 ; i < s.count ; i++) {
+            s.values[i] = (data[i] == null) ? Double.NaN : data[i] ;
+        }
+        publish() ;
+    }
+
+    /// \brief end the current series for a plot.  Only called from the robot thread.
+    /// \param plot the id of the plot returned by definePlot()
+    public void end(int plot) {
+        Slot s = claim() ;
+        if (s == null)
+            return ;
+
+        s.kind = SlotEnd ;
+        s.plot = plot ;
+        publish() ;
+    }
+
+    /// \brief write all outstanding data to the file and close the file
+    public void close() {
+        closing_ = true ;
+        LockSupport.unpark(writer_) ;
+        try {
+            writer_.join(2000) ;
+        }
+        catch(InterruptedException ex) {
+        }
+    }
+
+    private Slot claim() {
+        long head = head_.get() ;
+        if (head - tail_.get() >= RingSize || closing_) {
+            dropped_.incrementAndGet() ;
+            return null ;
+        }
+
+        return ring_[(int)(head & (RingSize - 1))] ;
+    }
+
+    private void publish() {
+        head_.lazySet(head_.get() + 1) ;
+    }
+
+    private void writerLoop() {
+        long lastflush = System.nanoTime() ;
+        long lastforce = lastflush ;
+
+        try {
+            while (true) {
+                long tail = tail_.get() ;
+                long head = head_.get() ;
+
+                if (tail == head) {
+                    if (closing_)
+                        break ;
+
+                    long now = System.nanoTime() ;
+                    if (now - lastflush > FlushInterval) {
+                        flushAll() ;
+                        lastflush = now ;
+                    }
+
+                    if (now - lastforce > ForceInterval) {
+                        map_.force() ;
+                        lastforce = now ;
+                    }
+
+                    LockSupport.parkNanos(IdleSleep) ;
+                    continue ;
+                }
+
+                while (tail != head) {
+                    process(ring_[(int)(tail & (RingSize - 1))]) ;
+                    tail++ ;
+                    tail_.lazySet(tail) ;
+                }
+            }
+
+            for(Series s : series_.values()) {
+                writeChunk(s) ;
+                writeStop(s) ;
+            }
+            series_.clear() ;
+
+            if (ensure(4))
+                map_.putInt(RecordEnd) ;
+
+            long size = map_start_ + map_.position() ;
+            map_.force() ;
+            map_ = null ;
+            channel_.truncate(size) ;
+            channel_.close() ;
+            file_.close() ;
+        }
+        catch(IOException ex) {
+            System.err.println("plot recorder stopped - " + ex.getMessage()) ;
+        }
+    }
+
+    private void process(Slot s) throws IOException {
+        Series series = series_.get(s.plot) ;
+
+        switch(s.kind) {
+            case SlotStart:
+                if (series != null) {
+                    writeChunk(series) ;
+                    writeStop(series) ;
+                }
+
+                series = new Series(next_series_++, s.count) ;
+                series_.put(s.plot, series) ;
+                writeStart(series, s.name, s.columns, s.count) ;
+                break ;
+
+            case SlotData:
+                if (series == null || s.count != series.data.length) {
+                    dropped_.incrementAndGet() ;
+                    break ;
+                }
+
+                for(int i = 0 ; i < s.count ; i++)
+                    series.data[i][series.rows] = s.values[i] ;
+                series.rows++ ;
+
+                if (series.rows == ChunkRows)
+                    writeChunk(series) ;
+                break ;
+
+            case SlotEnd:
+                if (series != null) {
+                    writeChunk(series) ;
+                    writeStop(series) ;
+                    series_.remove(s.plot) ;
+                }
+                break ;
+        }
+    }
+
+    private void flushAll() throws IOException {
+        for(Series s : series_.values()) {
+            writeChunk(s) ;
+        }
+    }
+
+    private void writeStart(Series s, String name, String[] cols, int count) throws IOException {
+        byte[] namebytes = name.getBytes(StandardCharsets.UTF_8) ;
+        byte[][] colbytes = new byte[count][] ;
+        int size = 16 + namebytes.length ;
+        for(int i = 0 ; i < count ; i++) {
+            colbytes[i] = cols[i].getBytes(StandardCharsets.UTF_8) ;
+            size += 4 + colbytes[i].length ;
+        }
+
+        if (!ensure(size))
+            return ;
+
+        map_.putInt(RecordStart) ;
+        map_.putInt(s.id) ;
+        map_.putInt(namebytes.length) ;
+        map_.put(namebytes) ;
+        map_.putInt(count) ;
+        for(int i = 0 ; i < count ; i++) {
+            map_.putInt(colbytes[i].length) ;
+            map_.put(colbytes[i]) ;
+        }
+    }
+
+    private void writeChunk(Series s) throws IOException {
+        if (s.rows == 0)
+            return ;
+
+        int cols = s.data.length ;
+        if (ensure(16 + cols * s.rows * 8)) {
+            map_.putInt(RecordChunk) ;
+            map_.putInt(s.id) ;
+            map_.putInt(s.rows) ;
+            map_.putInt(cols) ;
+            for(int c = 0 ; c < cols ; c++) {
+                for(int r = 0 ; r < s.rows ; r++) {
+                    map_.putDouble(s.data[c][r]) ;
+                }
+            }
+        }
+        else {
+            dropped_.addAndGet(s.rows) ;
+        }
+
+        s.rows = 0 ;
+    }
+
+    private void writeStop(Series s) throws IOException {
+        if (ensure(8)) {
+            map_.putInt(RecordStop) ;
+            map_.putInt(s.id) ;
+        }
+    }
+
+    //
+    // Make sure there is room in the mapped window for the number of bytes given, moving the
+    // window along the file if needed.  Returns false if the file has reached its maximum size.
+    //
+    private boolean ensure(int bytes) throws IOException {
+        if (map_.remaining() >= bytes)
+            return true ;
+
+        long pos = map_start_ + map_.position() ;
+        if (pos + bytes > max_size_)
+            return false ;
+
+        map_.force() ;
+        map(pos, bytes) ;
+        return true ;
+    }
+
+    private void map(long pos, int bytes) throws IOException {
+        long size = Math.min(Math.max(MapSize, bytes), max_size_ - pos) ;
+        map_ = channel_.map(FileChannel.MapMode.READ_WRITE, pos, size) ;
+        map_.order(ByteOrder.LITTLE_ENDIAN) ;
+        map_start_ = pos ;
+    }
+}
@@ -1,177 +1,360 @@
 package org.xero1425.misc;
 
+/// \file
+
+/// \brief This class is a jerk limited (s-curve) motion profile between any two states, where a state is a
+/// velocity and an acceleration.
+///
+/// The profile is made of three phases.  The first phase takes the start state to a peak velocity with zero
+/// acceleration.  The second phase cruises at the peak velocity.  The third phase takes the peak velocity to the
+/// end state.  The first and third phases are each three segments of constant jerk (ramp the acceleration, hold the
+/// acceleration, ramp the acceleration), so the profile has at most seven segments.  The peak velocity is chosen to
+/// cover the requested distance in the least time.  If the start velocity is moving away from the target, or is
+/// too fast to stop in the distance given, the profile will overshoot and come back.
+///
+/// All of the segments are computed once in update(), along with the distance, velocity, and acceleration at the start
+/// of each segment.  Evaluating the profile finds the segment containing the time given, starting from the segment
+/// found by the previous call, and evaluates a single polynomial.  Since the profile is evaluated at increasing times
+/// this is constant time.
+///
+/// Since the profile can start in any state, it can be replanned in the middle of a motion from the current
+/// state of the existing profile without stopping.  If the jerk is infinite, the profile is trapezoidal.
 public class SCurveProfile implements IMotionProfile {
 
+    // The maximum number of constant jerk segments in a profile
+    private static final int MaxSegments = 7 ;
+
+    // The number of peak velocities sampled when searching for the best profile
+    private static final int GridSize = 64 ;
+
+    // The number of bisection steps when solving for a peak velocity or a peak acceleration
+    private static final int Iterations = 60 ;
+
+    // The limits for the profile
     private SCurveConfig config_ ;
-    private TrapezoidalProfile first_ ;
-    private TrapezoidalProfile second_ ;
-    private double [] t_ ;
-    private double dist_ ;
+
+    // The number of segments in the profile
+    private int count_ ;
+
+    // For each segment, the start time, jerk, and the distance, velocity and acceleration at the start
+    // of the segment.  The entry after the last segment holds the end state.
+    private double [] start_ ;
+    private double [] jerk_ ;
+    private double [] dist_ ;
+    private double [] vel_ ;
+    private double [] accel_ ;
+
+    // The segment found by the last evaluation of the profile
+    private int last_ ;
+
+    // The time, jerk, and start acceleration for the three segments in each of the two phases, used while planning
+    private double [] phase_time_ ;
+    private double [] phase_jerk_ ;
+    private double [] phase_accel_ ;
+
+    // The distance and time for the last candidate evaluated while planning
+    private double eval_dist_ ;
+    private double eval_time_ ;
 
     public SCurveProfile(SCurveConfig config) {
         config_= config ;
-        t_ = new double[7] ;
-    }
 
-    private double getDist(double t, double j, double a, double v) {
-        return 1.0 / 6.0 * j * t * t * t + 0.5 * a * t * t + v * t ;
+        start_ = new double[MaxSegments + 1] ;
+        jerk_ = new double[MaxSegments + 1] ;
+        dist_ = new double[MaxSegments + 1] ;
+        vel_ = new double[MaxSegments + 1] ;
+        accel_ = new double[MaxSegments + 1] ;
+
+        phase_time_ = new double[6] ;
+        phase_jerk_ = new double[6] ;
+        phase_accel_ = new double[6] ;
+
+        count_ = 0 ;
+        last_ = 0 ;
     }
 
-    private double getVelocity(double t, double j, double a, double v) {
-        return 0.5 * j * t * t + a * t + v ;
+    /// \brief plan a profile that starts and ends with zero acceleration
+    /// \param dist the distance to cover
+    /// \param vi the start velocity
+    /// \param vf the end velocity
+    /// \returns true if a profile was planned
+    public boolean update(double dist, double vi, double vf) {
+        return update(dist, vi, 0.0, vf, 0.0) ;
     }
 
-    private double getDist(int seg) {
-        double dist = 0.0 ;
-
-        switch(seg) {
-            case 1:
-            case 3:
-            case 5:
-            case 7:
-                dist = getDist(t_[0], config_.jerk, 0.0, 0.0) ;
-                break ;
-            case 2:
-            case 6:
-                dist = getDist(t_[1], 0.0, first_.getVelocity(t_[0]), first_.getDistance(t_[0])) ;
-                break ;
-            case 4:
-                dist = dist_ - getDist(1) - getDist(2) - getDist(3) - getDist(5) - getDist(6) - getDist(7) ;
-                break ;
+    /// \brief plan a profile between two states
+    /// \param dist the distance to cover
+    /// \param vi the start velocity
+    /// \param ai the start acceleration
+    /// \param vf the end velocity
+    /// \param af the end acceleration
+    /// \returns true if a profile was planned
+    public boolean update(double dist, double vi, double ai, double vf, double af) {
+        double vmax = config_.maxv ;
+
+        if (vmax <= 0.0 || config_.maxa <= 0.0 || config_.jerk <= 0.0)
+            return false ;
+
+        double best_time = Double.POSITIVE_INFINITY ;
+        double best_vp = 0.0 ;
+        double best_cruise = 0.0 ;
+
+        //
+        // Candidates that cruise at the maximum velocity in either direction
+        //
+        for(int dir = -1 ; dir <= 1 ; dir += 2) {
+            double vp = dir * vmax ;
+            evaluate(vi, ai, vp, vf, af) ;
+            double cruise = (dist - eval_dist_) / vp ;
+            if (cruise >= 0.0 && eval_time_ + cruise < best_time) {
+                best_time = eval_time_ + cruise ;
+                best_vp = vp ;
+                best_cruise = cruise ;
+            }
         }
 
-        return dist ;
-    }
+        //
+        // Candidates that never cruise.  The distance covered is not monotonic in the peak velocity when
+        // the start or end velocity is not zero, so search for every peak velocity that covers the distance.
+        //
+        double prev_vp = -vmax ;
+        evaluate(vi, ai, prev_vp, vf, af) ;
+        double prev_err = eval_dist_ - dist ;
 
-    public boolean update(double dist, double vi, double vf) {
-        if (Math.abs(vi) > 1e-6) {
-            return false ;
+        for(int i = 1 ; i <= GridSize ; i++) {
+            double vp = -vmax + 2.0 * vmax * i / GridSize ;
+            evaluate(vi, ai, vp, vf, af) ;
+            double err = eval_dist_ - dist ;
+
+            if (prev_err == 0.0 || (prev_err < 0.0) != (err < 0.0)) {
+                double lo = prev_vp ;
+                double hi = vp ;
+                boolean lo_neg = prev_err < 0.0 ;
+
+                for(int k = 0 ; k < Iterations ; k++) {
+                    double mid = (lo + hi) / 2.0 ;
+                    evaluate(vi, ai, mid, vf, af) ;
+                    if ((eval_dist_ - dist < 0.0) == lo_neg)
+                        lo = mid ;
+                    else
+                        hi = mid ;
+                }
+
+                double sol = (lo + hi) / 2.0 ;
+                evaluate(vi, ai, sol, vf, af) ;
+                if (eval_time_ < best_time) {
+                    best_time = eval_time_ ;
+                    best_vp = sol ;
+                    best_cruise = 0.0 ;
+                }
+            }
+
+            prev_vp = vp ;
+            prev_err = err ;
         }
 
-        if (Math.abs(vf) > 1e-6) {
+        if (Double.isInfinite(best_time))
             return false ;
-        }
 
-        dist_ = dist ;
-        TrapezoidalProfileConfig cfg = new TrapezoidalProfileConfig(config_.jerk, -config_.jerk, config_.maxa);
-        first_ = new TrapezoidalProfile(cfg);
-        second_ = new TrapezoidalProfile(cfg);
+        build(vi, ai, best_vp, best_cruise, vf, af) ;
+        return true ;
+    }
 
-        first_.update(config_.maxv, 0.0, 0.0) ;
-        t_[0] = first_.getTimeAccel();
-        t_[1] = first_.getTimeCruise();
-        t_[2] = first_.getTimeDecel();
+    public double getAccel(double t) {
+        if (t >= start_[count_])
+            return accel_[count_] ;
 
-        second_.update(config_.maxv, 0.0, 0.0);
-        t_[4] = second_.getTimeAccel();
-        t_[5] = second_.getTimeCruise();
-        t_[6] = second_.getTimeDecel();
+        int i = findSegment(t) ;
+        double dt = t - start_[i] ;
+        return accel_[i] + jerk_[i] * dt ;
+    }
 
-        double dtotal = getDist(1) + getDist(2) + getDist(3) + getDist(5) + getDist(6) + getDist(7) ;
+    public double getVelocity(double t)  {
+        if (t >= start_[count_])
+            return vel_[count_] ;
 
-        dtotal *= 2.0 ;
-        t_[3] = (dist - dtotal) / config_.maxv;
+        int i = findSegment(t) ;
+        double dt = t - start_[i] ;
+        return vel_[i] + accel_[i] * dt + 0.5 * jerk_[i] * dt * dt ;
+    }
+
+    public double getDistance(double t)  {
+        if (t >= start_[count_])
+            return dist_[count_] ;
 
-        return true;
+        int i = findSegment(t) ;
+        double dt = t - start_[i] ;
+        return dist_[i] + vel_[i] * dt + 0.5 * accel_[i] * dt * dt + jerk_[i] * dt * dt * dt / 6.0 ;
     }
 
-    public double getAccel(double t) {
-        double ret = 0.0 ;
+    public double getTotalTime()  {
+        return start_[count_] ;
+    }
 
-        if (t < t_[0]) {
-            ret = config_.jerk * t ;
-        }
-        else if (t < t_[1] + t_[0]) {
-            ret = config_.maxa ;
-        }
-        else if (t < t_[2] + t_[1] + t_[0]) {
-            ret = config_.maxa - config_.jerk * (t - t_[1] - t_[0]) ;
-        }
-        else if (t < t_[3] + t_[2] + t_[1] + t_[0]) {
-            ret = 0.0 ;
-        }
-        else if (t < t_[4] + t_[3] + t_[2] + t_[1] + t_[0]) {
-            ret = -config_.jerk * (t - t_[3] - t_[2] - t_[1] - t_[0]) ;
-        }
-        else if (t < t_[5] + t_[4] + t_[3] + t_[2] + t_[1] + t_[0]) {
-            ret = -config_.maxa ;
-        }
-        else if (t < t_[6] + t_[5] + t_[4] + t_[3] + t_[2] + t_[1] + t_[0]) {
-            ret = -config_.maxa + config_.jerk *  (t - t_[5] - t_[4] - t_[3] - t_[2] - t_[1] - t_[0]) ;
-        }
+    //
+    // Find the segment containing the time given.  Starts with the segment from the last call since
+    // the profile is generally evaluated at increasing times.
+    //
+    private int findSegment(double t) {
+        if (t <= 0.0 || last_ >= count_ || t < start_[last_])
+            last_ = 0 ;
+
+        while (last_ < count_ - 1 && t >= start_[last_ + 1])
+            last_++ ;
 
-        return ret ;
+        return last_ ;
     }
 
-    public double getVelocity(double t)  {
-        double ret = 0.0 ;
+    //
+    // The time to ramp the acceleration between two values at the maximum jerk
+    //
+    private double rampTime(double from, double to) {
+        if (Double.isInfinite(config_.jerk))
+            return 0.0 ;
 
-        if (t <= t_[0]) {
-            ret = getVelocity(t, config_.jerk, 0.0, 0.0);
-        }
-        else if (t <= t_[1] + t_[0]) {
-            double tt = t_[0] ;
-            ret = getVelocity(t - tt, 0.0, getAccel(tt), getVelocity(tt));
-        }
-        else if (t <= t_[2] + t_[1] + t_[0]) {
-            double tt = t_[0] + t_[1] ;
-            ret = getVelocity(t - tt, -config_.jerk, getAccel(tt), getVelocity(tt));
-        }
-        else if (t <= t_[3] + t_[2] + t_[1] + t_[0]) {
-            ret = config_.maxv ;
-        }
-        else if (t <= t_[4] + t_[3] + t_[2] + t_[1] + t_[0]) {
-            double tt = t_[0] + t_[1] + t_[2] + t_[3];
-            ret = getVelocity(t - tt, -config_.jerk, 0.0, config_.maxv) ;
-        }
-        else if (t <= t_[5] + t_[4] + t_[3] + t_[2] + t_[1] + t_[0]) {
-            double tt = t_[0] + t_[1] + t_[2] + t_[3] + t_[4];
-            ret = getVelocity(t - tt, 0.0, getAccel(tt), getVelocity(tt));
-        }
-        else if (t <= t_[6] + t_[5] + t_[4] + t_[3] + t_[2] + t_[1] + t_[0]) {
-            double tt = t_[0] + t_[1] + t_[2] + t_[3] + t_[4] + t_[5];
-            ret = getVelocity(t - tt, config_.jerk, -config_.maxa, getVelocity(tt)) ;
-        }
+        return Math.abs(to - from) / config_.jerk ;
+    }
 
-        return ret ;
+    //
+    // The velocity gained while ramping the acceleration between two values at the maximum jerk
+    //
+    private double rampVelocity(double from, double to) {
+        return (from + to) / 2.0 * rampTime(from, to) ;
     }
 
-    public double getDistance(double t)  {
-        double ret = 0.0 ;
+    //
+    // Compute the fastest three segments that take the state (vs, as) to the state (ve, ae).  The segments
+    // are stored in the phase arrays starting at the index given.  Returns the time for the phase.
+    //
+    private double phase(double vs, double as, double ve, double ae, int index) {
+        double amax = Math.max(config_.maxa, Math.max(Math.abs(as), Math.abs(ae))) ;
+        double dv = ve - vs ;
+        double hi = rampVelocity(as, amax) + rampVelocity(amax, ae) ;
+        double lo = rampVelocity(as, -amax) + rampVelocity(-amax, ae) ;
+        double ap ;
+        double hold = 0.0 ;
 
-        if (t <= t_[0]) {
-            ret = getDist(t, config_.jerk, 0.0, 0.0);
+        if (dv >= hi) {
+            ap = amax ;
+            hold = (dv - hi) / amax ;
         }
-        else if (t <= t_[1] + t_[0]) {
-            double tt = t_[0] ;
-            ret = getDist(t - tt, 0.0, getAccel(tt), getVelocity(tt)) + getDistance(tt);
+        else if (dv <= lo) {
+            ap = -amax ;
+            hold = (lo - dv) / amax ;
         }
-        else if (t <= t_[2] + t_[1] + t_[0]) {
-            double tt = t_[0] + t_[1];
-            ret = getDist(t - tt, -config_.jerk, getAccel(tt), getVelocity(tt)) + getDistance(tt);
+        else {
+            //
+            // The velocity change is too small to reach the maximum acceleration, find the peak acceleration.  The
+            // velocity gained is non-decreasing in the peak acceleration.
+            //
+            double l = -amax ;
+            double h = amax ;
+            for(int i = 0 ; i < Iterations ; i++) {
+                double m = (l + h) / 2.0 ;
+                if (rampVelocity(as, m) + rampVelocity(m, ae) < dv)
+                    l = m ;
+                else
+                    h = m ;
+            }
+            ap = (l + h) / 2.0 ;
         }
-        else if (t <= t_[3] + t_[2] + t_[1] + t_[0]) {
-            double tt = t_[0] + t_[1] + t_[2] ;
-            ret = getDist(t - tt, 0.0, getAccel(tt), getVelocity(tt)) + getDistance(tt);
-        }
-        else if (t <= t_[4] + t_[3] + t_[2] + t_[1] + t_[0]) {
-            double tt = t_[0] + t_[1] + t_[2] + t_[3];
-            ret = getDist(t - tt, -config_.jerk, getAccel(tt), getVelocity(tt)) + getDistance(tt);
-        }
-        else if (t <= t_[5] + t_[4] + t_[3] + t_[2] + t_[1] + t_[0]) {
-            double tt = t_[0] + t_[1] + t_[2] + t_[3] + t_[4];
-            ret = getDist(t - tt, 0.0, getAccel(tt), getVelocity(tt)) + getDistance(tt);
-        }
-        else if (t <= t_[6] + t_[5] + t_[4] + t_[3] + t_[2] + t_[1] + t_[0]) {
-            double tt = t_[0] + t_[1] + t_[2] + t_[3] + t_[4] + t_[5] ;
-            ret = getDist(t - tt, config_.jerk, getAccel(tt), getVelocity(tt)) + getDistance(tt);
+
+        phase_time_[index] = rampTime(as, ap) ;
+        phase_jerk_[index] = Math.signum(ap - as) * config_.jerk ;
+        phase_accel_[index] = as ;
+
+        phase_time_[index + 1] = hold ;
+        phase_jerk_[index + 1] = 0.0 ;
+        phase_accel_[index + 1] = ap ;
+
+        phase_time_[index + 2] = rampTime(ap, ae) ;
+        phase_jerk_[index + 2] = Math.signum(ae - ap) * config_.jerk ;
+        phase_accel_[index + 2] = ap ;
+
+        return phase_time_[index] + phase_time_[index + 1] + phase_time_[index + 2] ;
+    }
+
+    //
+    // Returns the distance covered by the three segments of a phase starting at the velocity given
+    //
+    private double phaseDistance(double vs, int index) {
+        double d = 0.0 ;
+        double v = vs ;
+
+        for(int i = index ; i < index + 3 ; i++) {
+            double t = phase_time_[i] ;
+            if (t > 0.0) {
+                d += v * t + 0.5 * phase_accel_[i] * t * t + phase_jerk_[i] * t * t * t / 6.0 ;
+                v += phase_accel_[i] * t + 0.5 * phase_jerk_[i] * t * t ;
+            }
         }
 
-        return ret ;
+        return d ;
     }
 
-    public double getTotalTime()  {
-        return t_[6] + t_[5] + t_[4] + t_[3] + t_[2] + t_[1] + t_[0] ;
+    //
+    // Compute the distance and time for a profile with the given peak velocity and no cruise
+    //
+    private void evaluate(double vi, double ai, double vp, double vf, double af) {
+        double ta = phase(vi, ai, vp, 0.0, 0) ;
+        double tb = phase(vp, 0.0, vf, af, 3) ;
+
+        eval_dist_ = phaseDistance(vi, 0) + phaseDistance(vp, 3) ;
+        eval_time_ = ta + tb ;
     }
 
+    //
+    // Store the segments for the profile with the given peak velocity and cruise time
+    //
+    private void build(double vi, double ai, double vp, double cruise, double vf, double af) {
+        phase(vi, ai, vp, 0.0, 0) ;
+        phase(vp, 0.0, vf, af, 3) ;
+
+        count_ = 0 ;
+        last_ = 0 ;
+
+        double t = 0.0 ;
+        double d = 0.0 ;
+        double v = vi ;
+
+        for(int i = 0 ; i < 7 ; i++) {
+            double dt, j, a ;
+
+            if (i < 3) {
+                dt = phase_time_[i] ;
+                j = phase_jerk_[i] ;
+                a = phase_accel_[i] ;
+            }
+            else if (i == 3) {
+                dt = cruise ;
+                j = 0.0 ;
+                a = 0.0 ;
+            }
+            else {
+                dt = phase_time_[i - 1] ;
+                j = phase_jerk_[i - 1] ;
+                a = phase_accel_[i - 1] ;
+            }
+
+            if (dt <= 0.0)
+                continue ;
+
+            start_[count_] = t ;
+            jerk_[count_] = j ;
+            dist_[count_] = d ;
+            vel_[count_] = v ;
+            accel_[count_] = a ;
+            count_++ ;
+
+            t += dt ;
+            d += v * dt + 0.5 * a * dt * dt + j * dt * dt * dt / 6.0 ;
+            v += a * dt + 0.5 * j * dt * dt ;
+        }
+
+        start_[count_] = t ;
+        jerk_[count_] = 0.0 ;
+        dist_[count_] = d ;
+        vel_[count_] = vf ;
+        accel_[count_] = af ;
+    }
 }
@@ -10,6 +10,22 @@ public class SimArgs {
     /// \brief the name of the input stimulus file
     public static String InputFileName = null ;
 
+    /// \brief the name of the input capture file to replay
+    public static String ReplayFileName = null ;
+
+    /// \brief the seed for the random variation of the simulation
+    public static long Seed = 0 ;
+
+    /// \brief the random variation applied to the simulation, as a list of name=value pairs separated by commas
+    public static String Variation = null ;
+
+    /// \brief the name of the file the simulation result is written to
+    public static String ResultFileName = null ;
+
+    /// \brief if true, the simulation does not serve NetworkTables or the status server, so many simulations can
+    /// run on one machine at once
+    public static boolean Isolated = false ;
+
     public static void processArgs(String... args) {
         int i = 0 ;
         while (i < args.length) {
@@ -21,6 +37,14 @@ public class SimArgs {
                 }
                 SimArgs.InputFileName = args[i];
             }
+            else if (args[i].equals("--replay")) {
+                i++ ;
+                if (i == args.length) {
+                    System.err.println("command line argument --replay requires an additional argument") ;
+                    System.exit(2) ;
+                }
+                SimArgs.ReplayFileName = args[i] ;
+            }
             else if (args[i].equals("--logfile")) {
                 i++ ;
                 if (i == args.length) {
@@ -29,6 +53,39 @@ public class SimArgs {
                 }
                 SimArgs.LogFileName = args[i] ;
             }
+            else if (args[i].equals("--seed")) {
+                i++ ;
+                if (i == args.length) {
+                    System.err.println("command line argument --seed requires an additional argument") ;
+                    System.exit(2) ;
+                }
+                try {
+                    SimArgs.Seed = Long.parseLong(args[i]) ;
+                }
+                catch(NumberFormatException ex) {
+                    System.err.println("command line argument --seed requires an integer argument") ;
+                    System.exit(2) ;
+                }
+            }
+            else if (args[i].equals("--variation")) {
+                i++ ;
+                if (i == args.length) {
+                    System.err.println("command line argument --variation requires an additional argument") ;
+                    System.exit(2) ;
+                }
+                SimArgs.Variation = args[i] ;
+            }
+            else if (args[i].equals("--result")) {
+                i++ ;
+                if (i == args.length) {
+                    System.err.println("command line argument --result requires an additional argument") ;
+                    System.exit(2) ;
+                }
+                SimArgs.ResultFileName = args[i] ;
+            }
+            else if (args[i].equals("--isolated")) {
+                SimArgs.Isolated = true ;
+            }
             else {
                 System.err.println("unknown command line argument '" + args[i] + "'") ;
                 System.exit(2) ;
@@ -7,6 +7,14 @@ public class TrapezoidalProfile implements IMotionProfile {
 
     private TrapezoidalProfileConfig config_ ;
 
+    //
+    // The settings and name the configuration was read from, and the settings version when it was read.
+    // The settings are null if the configuration was not read from the settings.
+    //
+    private ISettingsSupplier settings_ ;
+    private String name_ ;
+    private int version_ ;
+
     //
     // The time spend accelerating
     //
@@ -63,15 +71,14 @@ public class TrapezoidalProfile implements IMotionProfile {
     /// \brief create the object reading the performance characteristics from the settings file
     /// The max acceleration is found by appending ":maxa" to the basename.  The maximum deceleration
     /// is found by appending ":maxd" to the basename.  The maximum velocity is found by appending
-    /// ":maxv" to the basename.
+    /// ":maxv" to the basename.  If the settings change while the robot is running, they are read again
+    /// the next time a profile is computed.
     /// \param settings the settings file parser
     /// \param name the basename used to look up parameters.
     public TrapezoidalProfile(ISettingsSupplier settings, String name) throws BadParameterTypeException, MissingParameterException {
-        double maxa = settings.get(name + ":maxa").getDouble() ;
-        double maxd = settings.get(name + ":maxd").getDouble() ;
-        double maxv = settings.get(name + ":maxv").getDouble() ;
-
-        config_ = new TrapezoidalProfileConfig(maxa, maxd, maxv);
+        settings_ = settings ;
+        name_ = name ;
+        read() ;
     }
 
     /// \brief create a speed profile that covers the distance given, with the start and end velocities as conditions
@@ -80,6 +87,18 @@ public class TrapezoidalProfile implements IMotionProfile {
     /// \param start_velocity the start velocity of the object
     /// \param end_velocity the end velocity of the object
     public boolean update(double dist, double start_velocity, double end_velocity) {
+        if (settings_ != null && settings_.getVersion() != version_) {
+            try {
+                read() ;
+            }
+            catch(Exception ex) {
+                //
+                // Keep the current configuration if it can no longer be read
+                //
+                version_ = settings_.getVersion() ;
+            }
+        }
+
         start_velocity_ = Math.abs(start_velocity) ;
         end_velocity_ = Math.abs(end_velocity) ;
 
@@ -311,5 +330,15 @@ public class TrapezoidalProfile implements IMotionProfile {
         return end_velocity_ ;
     }
 
+    //
+    // Read the configuration from the settings
+    //
+    private void read() throws BadParameterTypeException, MissingParameterException {
+        version_ = settings_.getVersion() ;
+        double maxa = settings_.get(name_ + ":maxa").getDouble() ;
+        double maxd = settings_.get(name_ + ":maxd").getDouble() ;
+        double maxv = settings_.get(name_ + ":maxv").getDouble() ;
 
+        config_ = new TrapezoidalProfileConfig(maxa, maxd, maxv);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package org.xero1425.simulator.engine;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Twist2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.DriverStation;
+
+import org.xero1425.base.subsystems.DriveBaseSubsystem;
+import org.xero1425.base.subsystems.RobotSubsystem;
+import org.xero1425.base.subsystems.swerve.common.SwerveBaseSubsystem;
+
+/// \file
+
+/// \brief This class keeps the true pose of the robot on the field during a simulation, apart from the pose the
+/// robot code estimates.
+///
+/// Models that sense the field, such as a camera, must see the robot where it really is, or they can only confirm
+/// the estimate of the robot code and never correct an error in it.  The true pose starts where the robot is placed
+/// on the field.  The first pose the robot code sets in autonomous is taken as the placement, with the start error
+/// of the simulation variation applied, while the robot code keeps the pose it set.  After that, the true pose moves
+/// with the module targets the swerve drive commands while the robot is enabled, and poses the robot code sets later
+/// only change its estimate.
+///
+/// Until the robot is placed, or if the drive base is not a swerve drive, the true pose follows the estimate.
+public class GroundTruth {
+    private final SimulationEngine engine_ ;
+
+    // The true pose of the robot
+    private Pose2d pose_ ;
+
+    // If true, the robot has been placed on the field and the true pose moves with the commanded module targets
+    private boolean placed_ ;
+
+    // The module targets read each step
+    private final SwerveModuleState [] states_ ;
+
+    /// \brief create the ground truth for a simulation
+    /// \param engine the simulation engine
+    public GroundTruth(SimulationEngine engine) {
+        engine_ = engine ;
+        pose_ = new Pose2d() ;
+        placed_ = false ;
+        states_ = new SwerveModuleState[4] ;
+    }
+
+    /// \brief returns the true pose of the robot
+    /// \returns the true pose of the robot
+    public Pose2d getPose() {
+        return pose_ ;
+    }
+
+    /// \brief called when the robot code sets the pose of the robot.  The first pose is where the robot is placed
+    /// on the field, later poses are ignored.
+    /// \param pose the pose set by the robot code
+    public void place(Pose2d pose) {
+        if (placed_)
+            return ;
+
+        pose_ = engine_.getVariation().applyStartOffset(pose) ;
+        placed_ = true ;
+    }
+
+    /// \brief move the true pose forward by one simulation step
+    /// \param dt the length of the step in seconds
+    public void update(double dt) {
+        RobotSubsystem robot = engine_.getRobot().getRobotSubsystem() ;
+        DriveBaseSubsystem db = (robot != null) ? robot.getDB() : null ;
+        if (db == null)
+            return ;
+
+        if (!placed_ || !(db instanceof SwerveBaseSubsystem)) {
+            pose_ = db.getPose() ;
+            return ;
+        }
+
+        if (DriverStation.isDisabled())
+            return ;
+
+        SwerveBaseSubsystem swerve = (SwerveBaseSubsystem)db ;
+        for(int i = 0 ; i < states_.length ; i++)
+            states_[i] = swerve.getModuleTarget(i) ;
+
+        ChassisSpeeds speeds = swerve.getKinematics().toChassisSpeeds(states_) ;
+        pose_ = pose_.exp(new Twist2d(speeds.vxMetersPerSecond * dt, speeds.vyMetersPerSecond * dt, speeds.omegaRadiansPerSecond * dt)) ;
+    }
+}
@@ -1,5 +1,9 @@
 package org.xero1425.simulator.engine;
 
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -9,8 +13,10 @@ import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.simulation.DriverStationSim;
 
 import org.xero1425.base.XeroRobot;
+import org.xero1425.base.controllers.AutoController;
 import org.xero1425.misc.MessageLogger;
 import org.xero1425.misc.MessageType;
+import org.xero1425.misc.SimArgs;
 
 public class SimulationEngine {
     public static final String LoggerName = "simulator" ;
@@ -32,6 +38,16 @@ public class SimulationEngine {
     private int failed_count_ ;
     private int passed_count_ ;    
 
+    // The random variation applied to this run of the simulation
+    private SimulationVariation variation_ ;
+
+    // The true pose of the robot, apart from the pose the robot code estimates
+    private GroundTruth truth_ ;
+
+    // The time autonomous mode started and the time the automode completed, NaN until they happen
+    private double auto_start_ ;
+    private double auto_done_ ;
+
     private SimulationEngine(XeroRobot robot, MessageLogger logger) {
         logger_ = logger ;
         robot_ = robot ;
@@ -45,6 +61,23 @@ public class SimulationEngine {
         failed_count_ = 0 ;
         passed_count_ = 0 ;
         delta_t_ = robot.getPeriod() / 10 ;
+
+        auto_start_ = Double.NaN ;
+        auto_done_ = Double.NaN ;
+
+        truth_ = new GroundTruth(this) ;
+
+        try {
+            variation_ = new SimulationVariation(SimArgs.Seed, SimArgs.Variation) ;
+        }
+        catch(IllegalArgumentException ex) {
+            logger_.startMessage(MessageType.Error).add(ex.getMessage()).endMessage();
+            variation_ = new SimulationVariation(SimArgs.Seed, null) ;
+        }
+
+        if (variation_.isEnabled()) {
+            logger_.startMessage(MessageType.Info).add("simulation variation: ").add(variation_.toString()).endMessage();
+        }
     }
 
     static public SimulationEngine getInstance() {
@@ -57,6 +90,14 @@ public class SimulationEngine {
         logger.startMessage(MessageType.Info).add("Simulated Event: ").add(evname).endMessage();
     }
 
+    public SimulationVariation getVariation() {
+        return variation_ ;
+    }
+
+    public GroundTruth getGroundTruth() {
+        return truth_ ;
+    }
+
     public void addAssertError() {
         failed_count_++ ;
     }
@@ -101,6 +142,9 @@ public class SimulationEngine {
         if (logger_.getErrorMessageCount() > 0)
             code = 1 ;
 
+        if (SimArgs.ResultFileName != null)
+            writeResult(SimArgs.ResultFileName, code) ;
+
         java.lang.System.exit(code) ;
     }
 
@@ -158,6 +202,7 @@ public class SimulationEngine {
             if (dt > delta_t_)
                 dt = delta_t_ ;
             processEvents() ;           
+            truth_.update(dt) ;
             runModels(dt) ;
             DriverStationSim.notifyNewData() ;
             sofar += dt ;
@@ -165,6 +210,8 @@ public class SimulationEngine {
         for(SimulationModel model : active_models_)
             model.endCycle();        
 
+        trackAutoMode() ;
+
         SimulatorJNI.resumeTiming();
     }
 
@@ -189,6 +236,45 @@ public class SimulationEngine {
         return null ;
     }
 
+    //
+    // Record the time autonomous mode starts and the time the automode completes
+    //
+    private void trackAutoMode() {
+        if (!DriverStation.isAutonomousEnabled())
+            return ;
+
+        if (Double.isNaN(auto_start_))
+            auto_start_ = robot_.getTime() ;
+
+        AutoController ctrl = robot_.getAutoController() ;
+        if (Double.isNaN(auto_done_) && ctrl != null && ctrl.getAutoMode() != null && ctrl.getAutoMode().isDone())
+            auto_done_ = robot_.getTime() ;
+    }
+
+    //
+    // Write the result of the simulation to a file, so a program running many simulations can collect them.  A run
+    // only passes if the automode completed, as well as having no failed asserts or errors.
+    //
+    private void writeResult(String filename, int code) {
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(filename)))) {
+            out.println("{") ;
+            out.println("    \"seed\" : " + variation_.getSeed() + ",") ;
+            out.println("    \"passed\" : " + (code == 0 && !Double.isNaN(auto_done_)) + ",") ;
+            out.println("    \"asserts-passed\" : " + passed_count_ + ",") ;
+            out.println("    \"asserts-failed\" : " + failed_count_ + ",") ;
+            out.println("    \"errors\" : " + logger_.getErrorMessageCount() + ",") ;
+            out.println("    \"events-left\" : " + events_.size() + ",") ;
+            out.println("    \"auto-time\" : " + (Double.isNaN(auto_done_) ? "null" : Double.toString(auto_done_ - auto_start_)) + ",") ;
+            out.println("    \"start-x\" : " + variation_.getStartOffset().getX() + ",") ;
+            out.println("    \"start-y\" : " + variation_.getStartOffset().getY() + ",") ;
+            out.println("    \"start-heading\" : " + variation_.getStartOffset().getRotation().getDegrees()) ;
+            out.println("}") ;
+        }
+        catch(IOException ex) {
+            logger_.startMessage(MessageType.Error).add("cannot write simulation result file ").addQuoted(filename).endMessage();
+        }
+    }
+
     private void processEvents() {
         while (events_.size() > 0) {
             SimulationEvent ev = events_.getFirstEvent() ;
@@ -0,0 +1,135 @@
+package org.xero1425.simulator.engine;
+
+import java.util.Random;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Translation2d;
+
+/// \file
+
+/// \brief This class holds the random variation applied to one run of the simulation, so an automode can be
+/// checked against the errors a real robot sees.
+///
+/// The variation is given as a list of name=value pairs separated by commas, and every random value is drawn from
+/// a generator created from a seed, so a run can be repeated exactly by giving the same seed.  The values are
+///
+/// - start-xy, the standard deviation in meters of the error in the X and Y position the robot starts at
+/// - start-heading, the standard deviation in degrees of the error in the heading the robot starts at
+/// - gyro-noise, the standard deviation in degrees of the noise added to each gyro reading
+/// - vision-latency, the largest extra latency in seconds added to each vision result
+/// - vision-dropout, the chance that a vision result reports no target
+///
+/// The start error is drawn once, when the variation is created.  Models draw the noise each time they produce a
+/// value.
+public class SimulationVariation {
+    private final long seed_ ;
+    private final Random random_ ;
+
+    private double start_xy_ ;
+    private double start_heading_ ;
+    private double gyro_noise_ ;
+    private double vision_latency_ ;
+    private double vision_dropout_ ;
+
+    // The error in the start pose, and true once it has been applied
+    private final Transform2d start_offset_ ;
+    private boolean start_applied_ ;
+
+    /// \brief create the variation for a simulation run
+    /// \param seed the seed for the random values
+    /// \param spec the variation as name=value pairs separated by commas, or null for no variation
+    /// \throws IllegalArgumentException if the variation is not valid
+    public SimulationVariation(long seed, String spec) {
+        seed_ = seed ;
+        random_ = new Random(seed) ;
+
+        if (spec != null && spec.length() > 0)
+            parse(spec) ;
+
+        start_offset_ = new Transform2d(new Translation2d(gaussian(start_xy_), gaussian(start_xy_)), Rotation2d.fromDegrees(gaussian(start_heading_))) ;
+        start_applied_ = false ;
+    }
+
+    public long getSeed() {
+        return seed_ ;
+    }
+
+    /// \brief returns true if any variation is applied to the simulation
+    public boolean isEnabled() {
+        return start_xy_ > 0.0 || start_heading_ > 0.0 || gyro_noise_ > 0.0 || vision_latency_ > 0.0 || vision_dropout_ > 0.0 ;
+    }
+
+    public Transform2d getStartOffset() {
+        return start_offset_ ;
+    }
+
+    /// \brief apply the start error to the first pose the robot is placed at.  Later poses are returned unchanged.
+    /// \param pose the pose the robot code places the robot at
+    /// \returns the pose with the start error applied
+    public Pose2d applyStartOffset(Pose2d pose) {
+        if (start_applied_)
+            return pose ;
+
+        start_applied_ = true ;
+        return pose.transformBy(start_offset_) ;
+    }
+
+    /// \brief returns the noise to add to a gyro reading in degrees
+    public double gyroNoise() {
+        return gaussian(gyro_noise_) ;
+    }
+
+    /// \brief returns the extra latency to add to a vision result in seconds
+    public double visionLatency() {
+        return (vision_latency_ > 0.0) ? random_.nextDouble() * vision_latency_ : 0.0 ;
+    }
+
+    /// \brief returns true if a vision result should report no target
+    public boolean visionDropout() {
+        return vision_dropout_ > 0.0 && random_.nextDouble() < vision_dropout_ ;
+    }
+
+    public String toString() {
+        return "seed=" + seed_ + ",start-xy=" + start_xy_ + ",start-heading=" + start_heading_ + ",gyro-noise=" + gyro_noise_ +
+               ",vision-latency=" + vision_latency_ + ",vision-dropout=" + vision_dropout_ ;
+    }
+
+    private double gaussian(double sigma) {
+        return (sigma > 0.0) ? random_.nextGaussian() * sigma : 0.0 ;
+    }
+
+    private void parse(String spec) {
+        for(String pair : spec.split(",")) {
+            String [] parts = pair.split("=") ;
+            if (parts.length != 2)
+                throw new IllegalArgumentException("simulation variation '" + pair + "' is not of the form name=value") ;
+
+            String name = parts[0].trim() ;
+            double value ;
+            try {
+                value = Double.parseDouble(parts[1].trim()) ;
+            }
+            catch(NumberFormatException ex) {
+                throw new IllegalArgumentException("simulation variation '" + name + "' does not have a numeric value") ;
+            }
+
+            if (value < 0.0)
+                throw new IllegalArgumentException("simulation variation '" + name + "' cannot be negative") ;
+
+            if (name.equals("start-xy"))
+                start_xy_ = value ;
+            else if (name.equals("start-heading"))
+                start_heading_ = value ;
+            else if (name.equals("gyro-noise"))
+                gyro_noise_ = value ;
+            else if (name.equals("vision-latency"))
+                vision_latency_ = value ;
+            else if (name.equals("vision-dropout"))
+                vision_dropout_ = value ;
+            else
+                throw new IllegalArgumentException("simulation variation '" + name + "' is not known") ;
+        }
+    }
+}
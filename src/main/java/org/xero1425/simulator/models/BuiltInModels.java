@@ -10,6 +10,7 @@ public class BuiltInModels {
         factory.registerModel("navx", "org.xero1425.simulator.models.NavXModel");
         factory.registerModel("fms", "org.xero1425.simulator.models.FMSModel");
         factory.registerModel("limelight", "org.xero1425.simulator.models.LimeLightModel");
+        factory.registerModel("limelight-camera", "org.xero1425.simulator.models.LimeLightCameraModel");
         factory.registerModel("drivergamepad", "org.xero1425.simulator.models.DriverGamepadModel");
         factory.registerModel("tankdrive", "org.xero1425.simulator.models.TankDriveModel");
         factory.registerModel("swervedrive", "org.xero1425.simulator.models.SwerveDriveModel");
@@ -0,0 +1,288 @@
+package org.xero1425.simulator.models;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+import org.xero1425.misc.MessageLogger;
+import org.xero1425.misc.MessageType;
+import org.xero1425.misc.SettingsValue;
+import org.xero1425.simulator.engine.SimulationEngine;
+import org.xero1425.simulator.engine.SimulationModel;
+import org.xero1425.simulator.engine.SimulationVariation;
+
+/// \file
+
+/// \brief This model simulates a LimeLight finding the AprilTags on the field from the true pose of the robot.
+///
+/// The instance name of the model is the name of the NetworkTables table the camera publishes to, which is the
+/// name of the LimeLight subsystem.  Each camera frame, the model places the camera on the robot at the true pose
+/// kept by the simulator (see GroundTruth), not the pose the robot code estimates, and finds the tags from the field layout that are in front of the camera, within its field of view
+/// and range, and facing it.  It then builds the LimeLight JSON results for those tags, with the robot pose on the
+/// field, the pose of each tag in the LimeLight coordinate spaces, and the angles to each tag.  The robot pose has
+/// noise added that grows with the square of the distance to the nearest tag, and shrinks with the number of tags
+/// seen.
+///
+/// A frame is captured at the camera frame rate and published after the capture and pipeline latency, so the
+/// result describes where the robot was when the frame was captured, as on a real camera.  Nothing is published
+/// between frames.  The random variation of the simulation adds latency and drops frames.
+///
+/// The properties of the model are the camera position on the robot in meters (camera:x, camera:y, camera:z),
+/// its yaw and pitch in degrees with up positive (camera:yaw, camera:pitch), its field of view in degrees
+/// (fov:horizontal, fov:vertical), its range in meters (range), the largest angle from straight on a tag is seen
+/// at in degrees (max-angle), the frame rate (fps), the pipeline and capture latency in milliseconds (latency,
+/// capture-latency), and the noise in the robot pose at one meter in meters and degrees (noise:xy, noise:heading).
+public class LimeLightCameraModel extends SimulationModel {
+    // The side of an AprilTag in meters
+    private static final double TagSize = 0.1524 ;
+
+    // The fiducial family reported for each tag
+    private static final String TagFamily = "16H5C" ;
+
+    private static class Frame {
+        public final double time_ ;
+        public final String json_ ;
+
+        public Frame(double time, String json) {
+            time_ = time ;
+            json_ = json ;
+        }
+    }
+
+    private NetworkTableEntry entry_ ;
+    private NetworkTableEntry hb_entry_ ;
+    private AprilTagFieldLayout layout_ ;
+    private Random random_ ;
+
+    private Transform3d robot_to_camera_ ;
+    private double hfov_ ;
+    private double vfov_ ;
+    private double range_ ;
+    private double max_angle_ ;
+    private double period_ ;
+    private double latency_ ;
+    private double capture_latency_ ;
+    private double noise_xy_ ;
+    private double noise_heading_ ;
+
+    // The time the next frame is captured
+    private double next_frame_ ;
+
+    // The frames captured and not yet published, in the order they were captured
+    private final ArrayDeque<Frame> pending_ ;
+
+    // The number of frames published, and the number in which a tag was seen
+    private int frames_ ;
+    private int frames_seen_ ;
+
+    public LimeLightCameraModel(SimulationEngine engine, String model, String inst) {
+        super(engine, model, inst);
+
+        pending_ = new ArrayDeque<Frame>() ;
+    }
+
+    public boolean create() {
+        MessageLogger logger = getEngine().getMessageLogger() ;
+
+        layout_ = getEngine().getRobot().getAprilTags() ;
+        if (layout_ == null) {
+            logger.startMessage(MessageType.Error) ;
+            logger.add("event: model ").addQuoted(getModelName()) ;
+            logger.add(" instance ").addQuoted(getInstanceName()) ;
+            logger.add(" - the april tag layout could not be loaded") ;
+            logger.endMessage();
+            return false ;
+        }
+
+        try {
+            double x = getDoubleProperty("camera:x", 0.0) ;
+            double y = getDoubleProperty("camera:y", 0.0) ;
+            double z = getDoubleProperty("camera:z", 0.5) ;
+            double yaw = getDoubleProperty("camera:yaw", 0.0) ;
+            double pitch = getDoubleProperty("camera:pitch", 0.0) ;
+
+            //
+            // A positive pitch turns the X axis down in the WPILib axes, so the sign is changed to make up positive
+            //
+            robot_to_camera_ = new Transform3d(new Translation3d(x, y, z), new Rotation3d(0.0, Math.toRadians(-pitch), Math.toRadians(yaw))) ;
+
+            hfov_ = getDoubleProperty("fov:horizontal", 63.3) ;
+            vfov_ = getDoubleProperty("fov:vertical", 49.7) ;
+            range_ = getDoubleProperty("range", 5.0) ;
+            max_angle_ = getDoubleProperty("max-angle", 70.0) ;
+            period_ = 1.0 / getDoubleProperty("fps", 20.0) ;
+            latency_ = getDoubleProperty("latency", 25.0) ;
+            capture_latency_ = getDoubleProperty("capture-latency", 11.0) ;
+            noise_xy_ = getDoubleProperty("noise:xy", 0.01) ;
+            noise_heading_ = getDoubleProperty("noise:heading", 0.5) ;
+        }
+        catch(Exception ex) {
+            return false ;
+        }
+
+        random_ = new Random(getEngine().getVariation().getSeed()) ;
+        entry_ = NetworkTableInstance.getDefault().getTable(getInstanceName()).getEntry("json") ;
+        hb_entry_ = NetworkTableInstance.getDefault().getTable(getInstanceName()).getEntry("hb") ;
+        next_frame_ = getRobotTime() ;
+        frames_ = 0 ;
+        frames_seen_ = 0 ;
+
+        setCreated();
+        return true ;
+    }
+
+    public boolean processEvent(String name, SettingsValue value) {
+        return false ;
+    }
+
+    @Override
+    public String statusString() {
+        return "frames " + frames_ + ", with tags " + frames_seen_ ;
+    }
+
+    @Override
+    public void run(double dt) {
+        double now = getRobotTime() ;
+
+        if (now >= next_frame_) {
+            captureFrame(now) ;
+            next_frame_ += period_ ;
+            if (next_frame_ <= now)
+                next_frame_ = now + period_ ;
+        }
+
+        while (!pending_.isEmpty() && pending_.peekFirst().time_ <= now) {
+            entry_.setString(pending_.removeFirst().json_) ;
+            frames_++ ;
+            hb_entry_.setDouble(frames_) ;
+        }
+    }
+
+    //
+    // Find the tags seen from the true pose of the robot, and queue the results to be published after the latency
+    //
+    private void captureFrame(double now) {
+        SimulationVariation variation = getEngine().getVariation() ;
+        double tl = latency_ + variation.visionLatency() * 1000.0 ;
+
+        Pose2d robot2d = getEngine().getGroundTruth().getPose() ;
+        Pose3d robot = new Pose3d(new Translation3d(robot2d.getX(), robot2d.getY(), 0.0), new Rotation3d(0.0, 0.0, robot2d.getRotation().getRadians())) ;
+        Pose3d camera = robot.transformBy(robot_to_camera_) ;
+
+        StringBuilder tags = new StringBuilder() ;
+        int count = 0 ;
+        double nearest = Double.MAX_VALUE ;
+
+        if (!variation.visionDropout()) {
+            for(AprilTag tag : layout_.getTags()) {
+                Pose3d incam = tag.pose.relativeTo(camera) ;
+                double dist = incam.getTranslation().getNorm() ;
+                if (incam.getX() <= 0.0 || dist > range_)
+                    continue ;
+
+                double tx = -Math.toDegrees(Math.atan2(incam.getY(), incam.getX())) ;
+                double ty = Math.toDegrees(Math.atan2(incam.getZ(), Math.hypot(incam.getX(), incam.getY()))) ;
+                if (Math.abs(tx) > hfov_ / 2.0 || Math.abs(ty) > vfov_ / 2.0)
+                    continue ;
+
+                //
+                // The tag faces out along its X axis, so the camera must be in front of it and not too far to the side
+                //
+                Pose3d camintag = camera.relativeTo(tag.pose) ;
+                double angle = Math.toDegrees(Math.atan2(Math.hypot(camintag.getY(), camintag.getZ()), camintag.getX())) ;
+                if (camintag.getX() <= 0.0 || angle > max_angle_)
+                    continue ;
+
+                double view = 4.0 * dist * dist * Math.tan(Math.toRadians(hfov_ / 2.0)) * Math.tan(Math.toRadians(vfov_ / 2.0)) ;
+                double ta = 100.0 * TagSize * TagSize * Math.cos(Math.toRadians(angle)) / view ;
+
+                if (count > 0)
+                    tags.append(',') ;
+
+                tags.append("{\"fID\":").append(tag.ID) ;
+                tags.append(",\"fam\":\"").append(TagFamily).append('"') ;
+                tags.append(",\"t6c_ts\":") ;
+                appendSpacePose(tags, incam) ;
+                tags.append(",\"t6r_ts\":") ;
+                appendSpacePose(tags, tag.pose.relativeTo(robot)) ;
+                tags.append(",\"t6t_cs\":") ;
+                appendSpacePose(tags, camintag) ;
+                tags.append(",\"t6t_rs\":") ;
+                appendSpacePose(tags, robot.relativeTo(tag.pose)) ;
+                tags.append(",\"t6r_fs\":") ;
+                appendPose(tags, robot.getX(), robot.getY(), 0.0, robot2d.getRotation().getDegrees()) ;
+                tags.append(",\"ta\":").append(ta) ;
+                tags.append(",\"tx\":").append(tx) ;
+                tags.append(",\"txp\":").append(0.0) ;
+                tags.append(",\"ty\":").append(ty) ;
+                tags.append(",\"typ\":").append(0.0) ;
+                tags.append('}') ;
+
+                count++ ;
+                nearest = Math.min(nearest, dist) ;
+            }
+        }
+
+        StringBuilder str = new StringBuilder() ;
+        str.append("{ \"Results\": {") ;
+        if (count > 0) {
+            double scale = nearest * nearest / Math.sqrt(count) ;
+            double x = robot2d.getX() + random_.nextGaussian() * noise_xy_ * scale ;
+            double y = robot2d.getY() + random_.nextGaussian() * noise_xy_ * scale ;
+            double heading = robot2d.getRotation().getDegrees() + random_.nextGaussian() * noise_heading_ * scale ;
+            double length = layout_.getFieldLength() ;
+            double width = layout_.getFieldWidth() ;
+
+            str.append("\"botpose\":") ;
+            appendPose(str, x - length / 2.0, y - width / 2.0, 0.0, heading) ;
+            str.append(",\"botpose_wpiblue\":") ;
+            appendPose(str, x, y, 0.0, heading) ;
+            str.append(",\"botpose_wpired\":") ;
+            appendPose(str, length - x, width - y, 0.0, heading + 180.0) ;
+            str.append(',') ;
+            frames_seen_++ ;
+        }
+        str.append("\"Fiducial\":[").append(tags).append("],") ;
+        str.append("\"Classifier\":[],\"Detector\":[],\"Retro\":[],") ;
+        str.append("\"pID\":0,") ;
+        str.append("\"tl\":").append(tl).append(',') ;
+        str.append("\"cl\":").append(capture_latency_).append(',') ;
+        str.append("\"ts\":").append(now * 1000.0).append(',') ;
+        str.append("\"v\":").append(count > 0 ? 1 : 0) ;
+        str.append("}}") ;
+
+        pending_.addLast(new Frame(now + (tl + capture_latency_) / 1000.0, str.toString())) ;
+    }
+
+    //
+    // Append a pose given in the WPILib axes, X forward, Y left and Z up, in the LimeLight axes for the camera,
+    // robot and target spaces, X right, Y down and Z forward
+    //
+    private static void appendSpacePose(StringBuilder str, Pose3d pose) {
+        Rotation3d rot = pose.getRotation() ;
+        str.append('[').append(-pose.getY()).append(',').append(-pose.getZ()).append(',').append(pose.getX()) ;
+        str.append(',').append(Math.toDegrees(-rot.getY())).append(',').append(Math.toDegrees(-rot.getZ())).append(',').append(Math.toDegrees(rot.getX())) ;
+        str.append(']') ;
+    }
+
+    //
+    // Append a field pose, with the heading in degrees
+    //
+    private static void appendPose(StringBuilder str, double x, double y, double z, double heading) {
+        str.append('[').append(x).append(',').append(y).append(',').append(z) ;
+        str.append(",0.0,0.0,").append(heading).append(']') ;
+    }
+
+    private double getDoubleProperty(String name, double def) throws Exception {
+        return hasProperty(name) ? getDoubleProperty(name) : def ;
+    }
+}
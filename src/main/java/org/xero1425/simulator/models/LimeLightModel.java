@@ -5,6 +5,7 @@ import edu.wpi.first.networktables.NetworkTableEntry;
 import edu.wpi.first.networktables.NetworkTableInstance;
 import org.xero1425.simulator.engine.SimulationModel;
 import org.xero1425.simulator.engine.SimulationEngine;
+import org.xero1425.simulator.engine.SimulationVariation;
 import org.xero1425.misc.BadParameterTypeException;
 import org.xero1425.misc.SettingsValue;
 
@@ -16,9 +17,15 @@ public class LimeLightModel extends SimulationModel {
     private String retro_ ;
     private int pid_ ;
     private double tl_ ;
-    private double ts_ ;
     private int v_ ;
 
+    // If true, an event has given the results and the model publishes them each frame
+    private boolean active_ ;
+
+    // The time between frames, and the time the next frame is published
+    private double period_ ;
+    private double next_frame_ ;
+
     public LimeLightModel(SimulationEngine engine, String model, String inst) {
         super(engine, model, inst);
 
@@ -30,6 +37,15 @@ public class LimeLightModel extends SimulationModel {
     }
 
     public boolean create() {
+        try {
+            period_ = 1.0 / getDoubleProperty("fps", 20.0) ;
+        }
+        catch(Exception ex) {
+            return false ;
+        }
+
+        active_ = false ;
+        next_frame_ = getRobotTime() ;
         setCreated();
         return true;
     }
@@ -37,6 +53,11 @@ public class LimeLightModel extends SimulationModel {
     public boolean processEvent(String name, SettingsValue value) {
         boolean ret = false;
 
+        if (!active_) {
+            active_ = true ;
+            next_frame_ = getRobotTime() ;
+        }
+
         if (name.equals("tag")) {
             try {
                 fiducials_ = value.getString() ;
@@ -56,22 +77,42 @@ public class LimeLightModel extends SimulationModel {
 
     @Override
     public void run(double dt) {
-        NetworkTableEntry entry = table_.getEntry("json") ;
-        entry.setString(jsonText());
+        //
+        // Nothing is published until an event gives the results, which leaves the table to a limelight-camera
+        // model.  After that the results are published each frame, with the dropout and the latency drawn for
+        // each frame as a real camera would see them.
+        //
+        double now = getRobotTime() ;
+        if (active_ && now >= next_frame_) {
+            NetworkTableEntry entry = table_.getEntry("json") ;
+            entry.setString(jsonText(now));
+
+            next_frame_ += period_ ;
+            if (next_frame_ <= now)
+                next_frame_ = now + period_ ;
+        }
     }
 
-    private String jsonText() {
+    private String jsonText(double now) {
+        SimulationVariation variation = getEngine().getVariation() ;
+        boolean dropped = variation.visionDropout() ;
+        double tl = tl_ + variation.visionLatency() * 1000.0 ;
+
         String str = "{ \"Results\": {" ;
-        str += "\"Fiducial\": " + fiducials_ + "," ;
+        str += "\"Fiducial\": " + (dropped ? "[]" : fiducials_) + "," ;
         str += "\"Classifier\": " + classifier_ + "," ;
         str += "\"Detector\" :" + detector_ + "," ;
         str += "\"Retro\":" + retro_+ "," ;
         str += "\"pID\" : " + pid_ + "," ;
-        str += "\"tl\" : " + tl_ + "," ;
-        str += "\"ts\" : " + ts_ + "," ;
-        str += "\"v\" : " + v_ ;
+        str += "\"tl\" : " + tl + "," ;
+        str += "\"ts\" : " + (now * 1000.0) + "," ;
+        str += "\"v\" : " + (dropped ? 0 : v_) ;
         str +="}}" ; 
 
         return str ;
     }
+
+    private double getDoubleProperty(String name, double def) throws Exception {
+        return hasProperty(name) ? getDoubleProperty(name) : def ;
+    }
 }
\ No newline at end of file
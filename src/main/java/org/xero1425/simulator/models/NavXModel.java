@@ -12,6 +12,7 @@ public class NavXModel extends SimulationModel {
     
     private int sim_dev_handle_ ;
     private int sim_dev_yaw_handle_ ;
+    private double yaw_ ;
 
     public NavXModel(SimulationEngine engine, String model, String inst) {
         super(engine, model, inst) ;
@@ -30,6 +31,9 @@ public class NavXModel extends SimulationModel {
     }
 
     public void run(double dt) {
+        double noise = getEngine().getVariation().gyroNoise() ;
+        if (noise != 0.0)
+            SimDeviceJNI.setSimValueDouble(sim_dev_yaw_handle_, yaw_ + noise);
     }
 
     public boolean processEvent(String name, SettingsValue value) {
@@ -40,11 +44,12 @@ public class NavXModel extends SimulationModel {
     }
 
     public void setYaw(double v) {
+        yaw_ = v ;
         SimDeviceJNI.setSimValueDouble(sim_dev_yaw_handle_, v);
     }
 
     public double getYaw() {
-        return SimDeviceJNI.getSimValueDouble(sim_dev_yaw_handle_) ;
+        return yaw_ ;
     }
 
 }
\ No newline at end of file
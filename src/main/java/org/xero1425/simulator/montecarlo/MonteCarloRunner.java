@@ -0,0 +1,336 @@
+package org.xero1425.simulator.montecarlo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+
+/// \file
+
+/// \brief This class runs a simulation many times with random variation, to check that an automode succeeds
+/// despite the errors a real robot sees.
+///
+/// The robot code, the HAL simulation, NetworkTables and the driver station are all shared by everything in a
+/// process, so each run of the simulation is a separate Java process.  The runs are spread across a pool of
+/// threads, each of which starts a run and waits for it to finish.  Each run is given its own seed, the
+/// variation to apply, and a file for its result, and is isolated so it does not serve NetworkTables.  The seed
+/// of a run is the base seed plus the number of the run, so any run can be repeated alone with the same seed.
+///
+/// When every run is done, the success rate, the distribution of the time the automode took, and the worst runs
+/// are printed and written to summary.json in the output directory.
+///
+/// The runner must be started with the class path and the native library path the simulator uses, and the
+/// settings file must select the automode to test.  The arguments are
+///
+/// - --input NAME, the simulation stimulus file, required
+/// - --runs N, the number of runs, 100 by default
+/// - --threads N, the number of runs at once, half of the processors by default
+/// - --seed N, the seed of the first run, 1 by default
+/// - --variation SPEC, the variation to apply, see SimulationVariation
+/// - --output DIR, the directory for the logs and results, montecarlo by default
+/// - --timeout SECONDS, the time after which a run is stopped and counted as failed, 120 by default
+/// - --worst N, the number of worst runs reported, 5 by default
+/// - --main CLASS, the main class of the robot program, frc.robot.Main by default
+public class MonteCarloRunner {
+
+    private static class RunResult {
+        public final long seed_ ;
+        public boolean passed_ ;
+        public boolean timeout_ ;
+        public long asserts_failed_ ;
+        public long errors_ ;
+        public double auto_time_ ;
+        public String reason_ ;
+
+        public RunResult(long seed) {
+            seed_ = seed ;
+            passed_ = false ;
+            timeout_ = false ;
+            auto_time_ = Double.NaN ;
+            reason_ = "" ;
+        }
+    }
+
+    private String input_ = null ;
+    private int runs_ = 100 ;
+    private int threads_ = Math.max(1, Runtime.getRuntime().availableProcessors() / 2) ;
+    private long seed_ = 1 ;
+    private String variation_ = null ;
+    private File output_ = new File("montecarlo") ;
+    private long timeout_ = 120 ;
+    private int worst_ = 5 ;
+    private String main_ = "frc.robot.Main" ;
+
+    public static void main(String [] args) {
+        MonteCarloRunner runner = new MonteCarloRunner() ;
+
+        try {
+            runner.processArgs(args) ;
+        }
+        catch(IllegalArgumentException ex) {
+            System.err.println(ex.getMessage()) ;
+            System.exit(2) ;
+        }
+
+        System.exit(runner.run() ? 0 : 1) ;
+    }
+
+    /// \brief run the simulations and report the results
+    /// \returns true if every run passed
+    public boolean run() {
+        if (!output_.isDirectory() && !output_.mkdirs()) {
+            System.err.println("cannot create output directory '" + output_.getPath() + "'") ;
+            return false ;
+        }
+
+        System.out.println("running " + runs_ + " simulations of '" + input_ + "' on " + threads_ + " threads") ;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads_) ;
+        List<Future<RunResult>> futures = new ArrayList<Future<RunResult>>() ;
+        for(int i = 0 ; i < runs_ ; i++) {
+            final long seed = seed_ + i ;
+            futures.add(pool.submit(() -> runOne(seed))) ;
+        }
+        pool.shutdown() ;
+
+        List<RunResult> results = new ArrayList<RunResult>() ;
+        for(Future<RunResult> f : futures) {
+            try {
+                RunResult r = f.get() ;
+                results.add(r) ;
+                System.out.println("seed " + r.seed_ + ": " + (r.passed_ ? "passed" : "FAILED " + r.reason_)) ;
+            }
+            catch(Exception ex) {
+                System.err.println("simulation run failed - " + ex.getMessage()) ;
+            }
+        }
+
+        return report(results) ;
+    }
+
+    //
+    // Run one simulation in its own process and read its result
+    //
+    private RunResult runOne(long seed) {
+        RunResult result = new RunResult(seed) ;
+        File resfile = new File(output_, "run_" + seed + ".json") ;
+        File logfile = new File(output_, "run_" + seed + ".log") ;
+        File outfile = new File(output_, "run_" + seed + ".out") ;
+
+        resfile.delete() ;
+
+        List<String> cmd = new ArrayList<String>() ;
+        cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java") ;
+        cmd.add("-Djava.library.path=" + System.getProperty("java.library.path")) ;
+        cmd.add("-cp") ;
+        cmd.add(System.getProperty("java.class.path")) ;
+        cmd.add(main_) ;
+        cmd.add("--input") ;
+        cmd.add(input_) ;
+        cmd.add("--logfile") ;
+        cmd.add(logfile.getPath()) ;
+        cmd.add("--result") ;
+        cmd.add(resfile.getPath()) ;
+        cmd.add("--seed") ;
+        cmd.add(Long.toString(seed)) ;
+        cmd.add("--isolated") ;
+        if (variation_ != null) {
+            cmd.add("--variation") ;
+            cmd.add(variation_) ;
+        }
+
+        try {
+            ProcessBuilder pb = new ProcessBuilder(cmd) ;
+            pb.redirectErrorStream(true) ;
+            pb.redirectOutput(outfile) ;
+
+            Process proc = pb.start() ;
+            if (!proc.waitFor(timeout_, TimeUnit.SECONDS)) {
+                proc.destroyForcibly() ;
+                result.timeout_ = true ;
+                result.reason_ = "timed out after " + timeout_ + " seconds" ;
+                return result ;
+            }
+        }
+        catch(IOException ex) {
+            result.reason_ = "cannot start simulation - " + ex.getMessage() ;
+            return result ;
+        }
+        catch(InterruptedException ex) {
+            result.reason_ = "interrupted" ;
+            return result ;
+        }
+
+        readResult(resfile, result) ;
+        return result ;
+    }
+
+    //
+    // Read the result file written by the simulation
+    //
+    private void readResult(File file, RunResult result) {
+        Object obj ;
+
+        try {
+            obj = JSONValue.parse(new String(Files.readAllBytes(file.toPath()))) ;
+        }
+        catch(IOException ex) {
+            result.reason_ = "no result written, see the log file" ;
+            return ;
+        }
+
+        if (!(obj instanceof JSONObject)) {
+            result.reason_ = "result file is not valid" ;
+            return ;
+        }
+
+        JSONObject jobj = (JSONObject)obj ;
+        result.passed_ = Boolean.TRUE.equals(jobj.get("passed")) ;
+        result.asserts_failed_ = getLong(jobj, "asserts-failed") ;
+        result.errors_ = getLong(jobj, "errors") ;
+
+        Object t = jobj.get("auto-time") ;
+        if (t instanceof Number)
+            result.auto_time_ = ((Number)t).doubleValue() ;
+
+        if (!result.passed_) {
+            result.reason_ = result.asserts_failed_ + " asserts failed, " + result.errors_ + " errors" ;
+            if (Double.isNaN(result.auto_time_))
+                result.reason_ += ", automode did not complete" ;
+        }
+    }
+
+    //
+    // Print the summary of the runs and write it to the output directory
+    //
+    private boolean report(List<RunResult> results) {
+        int passed = 0 ;
+        List<Double> times = new ArrayList<Double>() ;
+        List<RunResult> failed = new ArrayList<RunResult>() ;
+        List<RunResult> completed = new ArrayList<RunResult>() ;
+
+        for(RunResult r : results) {
+            if (r.passed_)
+                passed++ ;
+            else
+                failed.add(r) ;
+
+            if (!Double.isNaN(r.auto_time_)) {
+                times.add(r.auto_time_) ;
+                completed.add(r) ;
+            }
+        }
+
+        Collections.sort(times) ;
+        completed.sort((a, b) -> Double.compare(b.auto_time_, a.auto_time_)) ;
+
+        double rate = results.size() > 0 ? 100.0 * passed / results.size() : 0.0 ;
+
+        System.out.println() ;
+        System.out.println(String.format("%d of %d runs passed (%.1f%%)", passed, results.size(), rate)) ;
+        if (times.size() > 0) {
+            System.out.println(String.format("automode time: min %.3f, median %.3f, p90 %.3f, p99 %.3f, max %.3f",
+                    times.get(0), percentile(times, 0.5), percentile(times, 0.9), percentile(times, 0.99), times.get(times.size() - 1))) ;
+        }
+        else {
+            System.out.println("no automode completed") ;
+        }
+
+        if (failed.size() > 0) {
+            System.out.println("failed runs:") ;
+            for(int i = 0 ; i < Math.min(worst_, failed.size()) ; i++)
+                System.out.println("    seed " + failed.get(i).seed_ + " - " + failed.get(i).reason_) ;
+        }
+
+        if (completed.size() > 0) {
+            System.out.println("slowest runs:") ;
+            for(int i = 0 ; i < Math.min(worst_, completed.size()) ; i++)
+                System.out.println(String.format("    seed %d - %.3f seconds", completed.get(i).seed_, completed.get(i).auto_time_)) ;
+        }
+
+        File summary = new File(output_, "summary.json") ;
+        try (PrintWriter out = new PrintWriter(summary)) {
+            out.println("{") ;
+            out.println("    \"input\" : \"" + input_ + "\",") ;
+            out.println("    \"variation\" : \"" + (variation_ == null ? "" : variation_) + "\",") ;
+            out.println("    \"runs\" : " + results.size() + ",") ;
+            out.println("    \"passed\" : " + passed + ",") ;
+            out.println("    \"success-rate\" : " + rate + ",") ;
+            out.println("    \"auto-times\" : " + times.toString() + ",") ;
+            out.println("    \"failed-seeds\" : " + seeds(failed, failed.size()) + ",") ;
+            out.println("    \"slowest-seeds\" : " + seeds(completed, Math.min(worst_, completed.size()))) ;
+            out.println("}") ;
+        }
+        catch(IOException ex) {
+            System.err.println("cannot write summary file '" + summary.getPath() + "'") ;
+        }
+
+        return failed.size() == 0 ;
+    }
+
+    private static double percentile(List<Double> sorted, double p) {
+        int index = (int)Math.ceil(p * sorted.size()) - 1 ;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index))) ;
+    }
+
+    private static String seeds(List<RunResult> results, int count) {
+        List<Long> seeds = new ArrayList<Long>() ;
+        for(int i = 0 ; i < count ; i++)
+            seeds.add(results.get(i).seed_) ;
+        return seeds.toString() ;
+    }
+
+    private static long getLong(JSONObject jobj, String key) {
+        Object obj = jobj.get(key) ;
+        return (obj instanceof Number) ? ((Number)obj).longValue() : 0 ;
+    }
+
+    private void processArgs(String [] args) {
+        int i = 0 ;
+        while (i < args.length) {
+            String arg = args[i++] ;
+            if (i == args.length)
+                throw new IllegalArgumentException("command line argument " + arg + " requires an additional argument") ;
+
+            String value = args[i++] ;
+            try {
+                if (arg.equals("--input"))
+                    input_ = value ;
+                else if (arg.equals("--runs"))
+                    runs_ = Integer.parseInt(value) ;
+                else if (arg.equals("--threads"))
+                    threads_ = Math.max(1, Integer.parseInt(value)) ;
+                else if (arg.equals("--seed"))
+                    seed_ = Long.parseLong(value) ;
+                else if (arg.equals("--variation"))
+                    variation_ = value ;
+                else if (arg.equals("--output"))
+                    output_ = new File(value) ;
+                else if (arg.equals("--timeout"))
+                    timeout_ = Long.parseLong(value) ;
+                else if (arg.equals("--worst"))
+                    worst_ = Integer.parseInt(value) ;
+                else if (arg.equals("--main"))
+                    main_ = value ;
+                else
+                    throw new IllegalArgumentException("unknown command line argument '" + arg + "'") ;
+            }
+            catch(NumberFormatException ex) {
+                throw new IllegalArgumentException("command line argument " + arg + " requires an integer argument") ;
+            }
+        }
+
+        if (input_ == null)
+            throw new IllegalArgumentException("the command line argument --input is required") ;
+    }
+}
@@ -1,5 +1,6 @@
 package org.xero1425.swervelib.ctre;
 
+import org.xero1425.misc.DeviceConfigTracker;
 import org.xero1425.swervelib.AbsoluteEncoder;
 import org.xero1425.swervelib.AbsoluteEncoderFactory;
 import org.xero1425.swervelib.SDSModuleGlobalConfig;
@@ -30,11 +31,21 @@ public class CanCoderFactoryBuilder {
             config.magnetOffsetDegrees = Math.toDegrees(configuration.getOffset());
             config.sensorDirection = direction == Direction.CLOCKWISE;
 
+            // The signature of the stored settings lets an encoder that already holds them skip configAllSettings()
+            config.customParam0 = DeviceConfigTracker.signature(config.magnetOffsetDegrees, config.sensorDirection ? 1.0 : 0.0,
+                    config.absoluteSensorRange.value);
+
+            long start = System.nanoTime();
             CANCoder encoder = new CANCoder(configuration.getId(), SDSModuleGlobalConfig.getCanBus()) ;
-            CtreUtils.checkCtreError(encoder.configAllSettings(config, 250), "Failed to configure CANCoder");
+            boolean skip = DeviceConfigTracker.isSkipEnabled() && encoder.configGetCustomParam(0, 250) == config.customParam0;
+            if (!skip) {
+                CtreUtils.checkCtreError(encoder.configAllSettings(config, 250), "Failed to configure CANCoder");
+            }
 
             CtreUtils.checkCtreError(encoder.setStatusFramePeriod(CANCoderStatusFrame.SensorData, periodMilliseconds, 250), "Failed to configure CANCoder update rate");
 
+            DeviceConfigTracker.record("swerve encoder " + configuration.getId(), start, skip);
+
             return (AbsoluteEncoder) new EncoderImplementation(encoder);
         };
     }
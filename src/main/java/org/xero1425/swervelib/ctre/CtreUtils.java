@@ -1,6 +1,8 @@
 package org.xero1425.swervelib.ctre;
 
 import com.ctre.phoenix.ErrorCode;
+import com.ctre.phoenix.motorcontrol.can.BaseMotorController;
+import org.xero1425.misc.DeviceConfigTracker;
 import edu.wpi.first.wpilibj.DriverStation;
 
 public final class CtreUtils {
@@ -12,4 +14,15 @@ public final class CtreUtils {
             DriverStation.reportError(String.format("%s: %s", message, errorCode.toString()), false);
         }
     }
+
+    /**
+     * Returns true if the motor controller already holds the stored settings with the given signature.
+     *
+     * @param motor     The motor controller.
+     * @param signature The signature of the stored settings, kept in custom parameter 0.
+     * @return True if the stored settings can be skipped.
+     */
+    public static boolean holdsConfiguration(BaseMotorController motor, int signature) {
+        return DeviceConfigTracker.isSkipEnabled() && motor.configGetCustomParam(0, 250) == signature;
+    }
 }
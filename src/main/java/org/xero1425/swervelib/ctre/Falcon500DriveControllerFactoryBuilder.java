@@ -6,6 +6,8 @@ import com.ctre.phoenix.motorcontrol.TalonFXControlMode;
 import com.ctre.phoenix.motorcontrol.TalonFXInvertType;
 import com.ctre.phoenix.motorcontrol.can.TalonFX;
 import com.ctre.phoenix.motorcontrol.can.TalonFXConfiguration;
+import org.xero1425.misc.DeviceConfigTracker;
+import org.xero1425.misc.OutputFilter;
 import org.xero1425.swervelib.DriveController;
 import org.xero1425.swervelib.DriveControllerFactory;
 import org.xero1425.swervelib.ModuleConfiguration;
@@ -59,8 +61,16 @@ public final class Falcon500DriveControllerFactoryBuilder {
                 motorConfiguration.supplyCurrLimit.enable = true;
             }
 
+            // The signature of the stored settings lets a motor that already holds them skip configAllSettings()
+            motorConfiguration.customParam0 = DeviceConfigTracker.signature(motorConfiguration.voltageCompSaturation,
+                    motorConfiguration.supplyCurrLimit.currentLimit, motorConfiguration.supplyCurrLimit.enable ? 1.0 : 0.0);
+
+            long start = System.nanoTime();
             TalonFX motor = new TalonFX(driveConfiguration, SDSModuleGlobalConfig.getCanBus()) ;
-            CtreUtils.checkCtreError(motor.configAllSettings(motorConfiguration), "Failed to configure Falcon 500");
+            boolean skip = CtreUtils.holdsConfiguration(motor, motorConfiguration.customParam0);
+            if (!skip) {
+                CtreUtils.checkCtreError(motor.configAllSettings(motorConfiguration), "Failed to configure Falcon 500");
+            }
 
             if (hasVoltageCompensation()) {
                 // Enable voltage compensation
@@ -82,6 +92,8 @@ public final class Falcon500DriveControllerFactoryBuilder {
                     "Failed to configure Falcon status frame period"
             );
 
+            DeviceConfigTracker.record("swerve drive " + driveConfiguration, start, skip);
+
             return new ControllerImplementation(motor, sensorVelocityCoefficient, sensorPositionCoefficient);
         }
     }
@@ -91,6 +103,7 @@ public final class Falcon500DriveControllerFactoryBuilder {
         private final double sensorVelocityCoefficient;
         private final double sensorPositionCoefficient ;
         private final double nominalVoltage = hasVoltageCompensation() ? Falcon500DriveControllerFactoryBuilder.this.nominalVoltage : 12.0;
+        private final OutputFilter output = new OutputFilter();
 
         private ControllerImplementation(TalonFX motor, double sensorVelocityCoefficient, double sensorPositionCoefficient) {
             this.motor = motor;
@@ -100,7 +113,10 @@ public final class Falcon500DriveControllerFactoryBuilder {
 
         @Override
         public void setReferenceVoltage(double voltage) {
-            motor.set(TalonFXControlMode.PercentOutput, voltage / nominalVoltage);
+            double percent = voltage / nominalVoltage;
+            if (output.write(0, percent)) {
+                motor.set(TalonFXControlMode.PercentOutput, percent);
+            }
         }
 
         @Override
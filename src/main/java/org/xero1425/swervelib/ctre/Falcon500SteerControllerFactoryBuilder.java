@@ -8,7 +8,9 @@ import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardContainer;
 
 import static org.xero1425.swervelib.ctre.CtreUtils.checkCtreError;
 
+import org.xero1425.misc.DeviceConfigTracker;
 import org.xero1425.misc.MessageLogger;
+import org.xero1425.misc.OutputFilter;
 import org.xero1425.misc.MessageType;
 
 public final class Falcon500SteerControllerFactoryBuilder {
@@ -117,13 +119,26 @@ public final class Falcon500SteerControllerFactoryBuilder {
                 motorConfiguration.supplyCurrLimit.enable = true;
             }
 
+            // The signature of the stored settings lets a motor that already holds them skip configAllSettings()
+            motorConfiguration.customParam0 = DeviceConfigTracker.signature(motorConfiguration.slot0.kP,
+                    motorConfiguration.slot0.kI, motorConfiguration.slot0.kD, motorConfiguration.slot0.kF,
+                    motorConfiguration.motionCruiseVelocity, motorConfiguration.motionAcceleration,
+                    motorConfiguration.voltageCompSaturation, motorConfiguration.supplyCurrLimit.currentLimit,
+                    motorConfiguration.supplyCurrLimit.enable ? 1.0 : 0.0);
+
+            long start = System.nanoTime();
             TalonFX motor = new TalonFX(steerConfiguration.getMotorPort(), SDSModuleGlobalConfig.getCanBus()) ;
-            checkCtreError(motor.configAllSettings(motorConfiguration, CAN_TIMEOUT_MS), "Failed to configure Falcon 500 settings");
+            boolean skip = CtreUtils.holdsConfiguration(motor, motorConfiguration.customParam0);
+            if (!skip) {
+                checkCtreError(motor.configAllSettings(motorConfiguration, CAN_TIMEOUT_MS), "Failed to configure Falcon 500 settings");
+            }
 
             if (hasVoltageCompensation()) {
                 motor.enableVoltageCompensation(true);
             }
-            checkCtreError(motor.configSelectedFeedbackSensor(TalonFXFeedbackDevice.IntegratedSensor, 0, CAN_TIMEOUT_MS), "Failed to set Falcon 500 feedback sensor");
+            if (!skip) {
+                checkCtreError(motor.configSelectedFeedbackSensor(TalonFXFeedbackDevice.IntegratedSensor, 0, CAN_TIMEOUT_MS), "Failed to set Falcon 500 feedback sensor");
+            }
             motor.setSensorPhase(true);
             motor.setInverted(moduleConfiguration.isSteerInverted() ? TalonFXInvertType.CounterClockwise : TalonFXInvertType.Clockwise);
             motor.setNeutralMode(NeutralMode.Brake);
@@ -140,6 +155,8 @@ public final class Falcon500SteerControllerFactoryBuilder {
                     "Failed to configure Falcon status frame period"
             );
 
+            DeviceConfigTracker.record("swerve steer " + steerConfiguration.getMotorPort(), start, skip);
+
             return new ControllerImplementation(motor,
                     sensorPositionCoefficient,
                     sensorVelocityCoefficient,
@@ -152,6 +169,9 @@ public final class Falcon500SteerControllerFactoryBuilder {
         private static final int ENCODER_RESET_ITERATIONS = 500;
         private static final double ENCODER_RESET_MAX_ANGULAR_VELOCITY = Math.toRadians(0.5);
 
+        // Changes in the steer target smaller than this are not sent to the motor controller
+        private static final double OUTPUT_DEADBAND_RADIANS = Math.toRadians(0.05);
+
         private final TalonFX motor;
         private final double motorEncoderPositionCoefficient;
         private final double motorEncoderVelocityCoefficient;
@@ -162,6 +182,8 @@ public final class Falcon500SteerControllerFactoryBuilder {
 
         private double resetIteration = 0;
 
+        private final OutputFilter output;
+
         private ControllerImplementation(TalonFX motor,
                                          double motorEncoderPositionCoefficient,
                                          double motorEncoderVelocityCoefficient,
@@ -172,6 +194,7 @@ public final class Falcon500SteerControllerFactoryBuilder {
             this.motorEncoderVelocityCoefficient = motorEncoderVelocityCoefficient;
             this.motorControlMode = motorControlMode;
             this.absoluteEncoder = absoluteEncoder;
+            this.output = new OutputFilter(OUTPUT_DEADBAND_RADIANS / motorEncoderPositionCoefficient);
         }
 
         @Override
@@ -188,6 +211,7 @@ public final class Falcon500SteerControllerFactoryBuilder {
         public double synchronizeEncoders(MessageLogger logger, String which) {
             double absoluteAngle = absoluteEncoder.getAbsoluteAngle();
             motor.setSelectedSensorPosition(absoluteAngle / motorEncoderPositionCoefficient);
+            output.invalidate();
             // logger.startMessage(MessageType.Info);
             // logger.add("synchronizeEncoders:");
             // logger.add(which);
@@ -230,7 +254,10 @@ public final class Falcon500SteerControllerFactoryBuilder {
                 adjustedReferenceAngleRadians += 2.0 * Math.PI;
             }
 
-            motor.set(motorControlMode, adjustedReferenceAngleRadians / motorEncoderPositionCoefficient);
+            double target = adjustedReferenceAngleRadians / motorEncoderPositionCoefficient;
+            if (output.write(motorControlMode.value, target)) {
+                motor.set(motorControlMode, target);
+            }
 
 
             this.referenceAngleRadians = referenceAngleRadians;
@@ -3,6 +3,7 @@ package org.xero1425.swervelib.rev;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.CANSparkMaxLowLevel;
 import com.revrobotics.RelativeEncoder;
+import org.xero1425.misc.OutputFilter;
 import org.xero1425.swervelib.DriveController;
 import org.xero1425.swervelib.DriveControllerFactory;
 import org.xero1425.swervelib.ModuleConfiguration;
@@ -67,17 +68,24 @@ public final class NeoDriveControllerFactoryBuilder {
     }
 
     private static class ControllerImplementation implements DriveController {
+        // Changes in the drive voltage smaller than this are not sent to the motor controller
+        private static final double VOLTAGE_DEADBAND = 0.01;
+
         private final CANSparkMax motor;
         private final RelativeEncoder encoder;
+        private final OutputFilter output;
 
         private ControllerImplementation(CANSparkMax motor, RelativeEncoder encoder) {
             this.motor = motor;
             this.encoder = encoder;
+            this.output = new OutputFilter(VOLTAGE_DEADBAND);
         }
 
         @Override
         public void setReferenceVoltage(double voltage) {
-            motor.setVoltage(voltage);
+            if (output.write(0, voltage)) {
+                motor.setVoltage(voltage);
+            }
         }
 
         @Override
@@ -9,6 +9,7 @@ import edu.wpi.first.wpilibj.shuffleboard.ShuffleboardContainer;
 import static org.xero1425.swervelib.rev.RevUtils.checkNeoError;
 
 import org.xero1425.misc.MessageLogger;
+import org.xero1425.misc.OutputFilter;
 
 public final class NeoSteerControllerFactoryBuilder {
     // PID configuration
@@ -103,6 +104,9 @@ public final class NeoSteerControllerFactoryBuilder {
         private static final int ENCODER_RESET_ITERATIONS = 500;
         private static final double ENCODER_RESET_MAX_ANGULAR_VELOCITY = Math.toRadians(0.5);
 
+        // Changes in the steer target smaller than this are not sent to the motor controller
+        private static final double OUTPUT_DEADBAND_RADIANS = Math.toRadians(0.05);
+
         @SuppressWarnings({"FieldCanBeLocal", "unused"})
         private final CANSparkMax motor;
         private final SparkMaxPIDController controller;
@@ -113,11 +117,14 @@ public final class NeoSteerControllerFactoryBuilder {
 
         private double resetIteration = 0;
 
+        private final OutputFilter output;
+
         public ControllerImplementation(CANSparkMax motor, AbsoluteEncoder absoluteEncoder) {
             this.motor = motor;
             this.controller = motor.getPIDController();
             this.motorEncoder = motor.getEncoder();
             this.absoluteEncoder = absoluteEncoder;
+            this.output = new OutputFilter(OUTPUT_DEADBAND_RADIANS);
         }
 
         @Override
@@ -128,6 +135,7 @@ public final class NeoSteerControllerFactoryBuilder {
         public double synchronizeEncoders(MessageLogger logger, String which) {
             double absoluteAngle = absoluteEncoder.getAbsoluteAngle();
             motorEncoder.setPosition(absoluteAngle);
+            output.invalidate();
             return absoluteAngle;
         }
 
@@ -167,7 +175,9 @@ public final class NeoSteerControllerFactoryBuilder {
 
             this.referenceAngleRadians = referenceAngleRadians;
 
-            controller.setReference(adjustedReferenceAngleRadians, CANSparkMax.ControlType.kPosition);
+            if (output.write(0, adjustedReferenceAngleRadians)) {
+                controller.setReference(adjustedReferenceAngleRadians, CANSparkMax.ControlType.kPosition);
+            }
         }
 
         @Override
@@ -1,76 +1,386 @@
 package org.xero1425.websrv;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/// \file
+
+/// \brief A small HTTP server that publishes the status of the robot.
+/// The server runs on its own thread and uses a single NIO selector for all clients, so a slow
+/// or stalled client never blocks the robot.  The robot thread fills a StatusSnapshot each robot loop and
+/// hands it to the server with publish().  Three snapshots are used as a lock free triple buffer: the robot
+/// thread always owns one, the server thread always owns one, and the third holds the most recently published
+/// snapshot.  Handing off a snapshot is a single atomic exchange in either direction.
+///
+/// The server supports the following requests
+/// \li \c / - a simple diagnostic page that displays the status stream
+/// \li \c /status.json - the complete most recent snapshot as JSON
+/// \li \c /events?signals=GROUP:KEY,... - a server sent events stream with one event per published snapshot
+///
 public class StatusServer extends Thread {
+    // The bit in the exchange state that indicates the shared snapshot has not been read
+    private static final int FreshBit = 4 ;
+
+    // The mask for the index of the shared snapshot in the exchange state
+    private static final int IndexMask = 3 ;
+
+    // The maximum size of an HTTP request we will accept
+    private static final int MaxRequestSize = 4096 ;
+
+    // The time the selector waits before checking for a new snapshot, in milliseconds
+    private static final long SelectTimeout = 10 ;
+
+    // The port to listen on
     private int port_ ;
-    private ServerSocket socket_ ;
-    private String robot_status_ ;
-    private Map<String, String> subsystem_status_ ;
 
+    // The three snapshots that are exchanged between the robot and the server
+    private final StatusSnapshot[] snapshots_ ;
+
+    // The index of the shared snapshot, plus the fresh bit
+    private final AtomicInteger shared_ ;
+
+    // The index of the snapshot owned by the robot thread
+    private int back_ ;
+
+    // The index of the snapshot owned by the server thread
+    private int front_ ;
+
+    // The sequence number for the next snapshot published
+    private long seq_ ;
+
+    // The server socket channel
+    private ServerSocketChannel socket_ ;
+
+    // The selector for all of the channels
+    private Selector selector_ ;
+
+    // The clients connected to the event stream
+    private final List<Client> streams_ ;
+
+    // Used to format JSON on the server thread
+    private final StringBuilder bld_ ;
+
+    // The state for a single connected client
+    private static class Client {
+        public final SocketChannel channel ;
+        public final ByteBuffer input ;
+        public ByteBuffer output ;
+        public boolean stream ;
+        public boolean close ;
+        public List<String[]> signals ;
+
+        public Client(SocketChannel ch) {
+            channel = ch ;
+            input = ByteBuffer.allocate(MaxRequestSize) ;
+            output = null ;
+            stream = false ;
+            close = false ;
+            signals = null ;
+        }
+    }
+
+    private static final String IndexPage =
+        "<html><head><title>Robot Status</title></head><body>" +
+        "<h2>Robot Status</h2><pre id=\"status\">loading ...</pre>" +
+        "<script>" +
+        "function refresh() {" +
+        "  fetch('/status.json').then(r => r.json()).then(j => {" +
+        "    document.getElementById('status').textContent = JSON.stringify(j, null, 2) ;" +
+        "  }).catch(e => {}) ;" +
+        "}" +
+        "setInterval(refresh, 500) ; refresh() ;" +
+        "</script></body></html>" ;
+
+    /// \brief create a new status server
+    /// \param port the TCP port to listen on
     public StatusServer(int port) throws IOException {
+        super("status-server") ;
+        setDaemon(true) ;
+
         port_ = port ;
-        subsystem_status_ = new HashMap<String, String>() ;
+
+        snapshots_ = new StatusSnapshot[3] ;
+        for(int i = 0 ; i < snapshots_.length ; i++)
+            snapshots_[i] = new StatusSnapshot() ;
+
+        back_ = 0 ;
+        shared_ = new AtomicInteger(1) ;
+        front_ = 2 ;
+        seq_ = 1 ;
+
+        streams_ = new ArrayList<Client>() ;
+        bld_ = new StringBuilder(8192) ;
+
+        socket_ = ServerSocketChannel.open() ;
+        socket_.configureBlocking(false) ;
+        socket_.bind(new InetSocketAddress(port_)) ;
+
+        selector_ = Selector.open() ;
+        socket_.register(selector_, SelectionKey.OP_ACCEPT) ;
     }
 
-    public synchronized void setRobotStatus(String st) {
-        robot_status_ = st ;
+    /// \brief start filling the snapshot for this robot loop.  Only called from the robot thread.
+    /// \param time the current robot time
+    /// \returns the snapshot to fill
+    public StatusSnapshot beginSnapshot(double time) {
+        StatusSnapshot snap = snapshots_[back_] ;
+        snap.begin(seq_++, time) ;
+        return snap ;
     }
 
-    public synchronized void setSubsystemStatus(String subsys, String st) {
-        subsystem_status_.put(subsys, st) ;
+    /// \brief publish the snapshot returned by beginSnapshot().  Only called from the robot thread.
+    public void publish() {
+        back_ = shared_.getAndSet(back_ | FreshBit) & IndexMask ;
+        selector_.wakeup() ;
     }
 
+    /// \brief the body of the server thread
+    @Override
     public void run() {
+        while (!isInterrupted()) {
+            try {
+                selector_.select(SelectTimeout) ;
+            }
+            catch(IOException ex) {
+                break ;
+            }
+
+            Iterator<SelectionKey> it = selector_.selectedKeys().iterator() ;
+            while (it.hasNext()) {
+                SelectionKey key = it.next() ;
+                it.remove() ;
+
+                try {
+                    if (!key.isValid())
+                        continue ;
+
+                    if (key.isAcceptable()) {
+                        accept() ;
+                    }
+                    else {
+                        Client client = (Client)key.attachment() ;
+                        if (key.isReadable()) {
+                            read(key, client) ;
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(key, client) ;
+                        }
+                    }
+                }
+                catch(IOException ex) {
+                    close(key) ;
+                }
+            }
+
+            if (acquire()) {
+                sendEvents() ;
+            }
+        }
+
         try {
-            socket_ = new ServerSocket(port_) ;
+            selector_.close() ;
+            socket_.close() ;
         }
         catch(IOException ex) {
-            return ;
         }
+    }
 
-        while (true) {
-            Socket client ;
+    //
+    // Take the most recently published snapshot, if there is one we have not seen
+    //
+    private boolean acquire() {
+        if ((shared_.get() & FreshBit) == 0)
+            return false ;
 
-            try {
-                client = socket_.accept() ;
+        front_ = shared_.getAndSet(front_) & IndexMask ;
+        return true ;
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch = socket_.accept() ;
+        if (ch != null) {
+            ch.configureBlocking(false) ;
+            ch.register(selector_, SelectionKey.OP_READ, new Client(ch)) ;
+        }
+    }
+
+    private void read(SelectionKey key, Client client) throws IOException {
+        if (client.stream) {
+            //
+            // Event stream clients do not send anything after the request, we only read
+            // to find out when the client goes away
+            //
+            client.input.clear() ;
+            if (client.channel.read(client.input) < 0) {
+                close(key) ;
             }
-            catch(IOException ex) {
-                client = null ;                
+            return ;
+        }
+
+        if (client.channel.read(client.input) < 0) {
+            close(key) ;
+            return ;
+        }
+
+        String request = new String(client.input.array(), 0, client.input.position(), StandardCharsets.US_ASCII) ;
+        if (!request.contains("\r\n\r\n")) {
+            if (!client.input.hasRemaining()) {
+                respond(key, client, "413 Payload Too Large", "text/plain", "request too large") ;
             }
+            return ;
+        }
 
-            if (client == null) {
-                try {
-                    socket_.close() ;
+        String[] words = request.substring(0, request.indexOf("\r\n")).split(" ") ;
+        if (words.length < 2 || !words[0].equals("GET")) {
+            respond(key, client, "405 Method Not Allowed", "text/plain", "only GET is supported") ;
+            return ;
+        }
+
+        String path = words[1] ;
+        String query = "" ;
+        int index = path.indexOf('?') ;
+        if (index != -1) {
+            query = path.substring(index + 1) ;
+            path = path.substring(0, index) ;
+        }
+
+        if (path.equals("/") || path.equals("/index.html")) {
+            respond(key, client, "200 OK", "text/html; charset=utf-8", IndexPage) ;
+        }
+        else if (path.equals("/status.json")) {
+            bld_.setLength(0) ;
+            snapshots_[front_].toJson(bld_) ;
+            respond(key, client, "200 OK", "application/json", bld_.toString()) ;
+        }
+        else if (path.equals("/events")) {
+            startStream(key, client, query) ;
+        }
+        else {
+            respond(key, client, "404 Not Found", "text/plain", "not found") ;
+        }
+    }
+
+    private void respond(SelectionKey key, Client client, String status, String type, String body) {
+        byte[] data = body.getBytes(StandardCharsets.UTF_8) ;
+        String header = "HTTP/1.1 " + status + "\r\n" +
+                        "Content-Length: " + data.length + "\r\n" +
+                        "Content-Type: " + type + "\r\n" +
+                        "Cache-Control: no-cache\r\n" +
+                        "Connection: close\r\n\r\n" ;
+
+        client.close = true ;
+        queue(key, client, header.getBytes(StandardCharsets.US_ASCII), data) ;
+    }
+
+    private void startStream(SelectionKey key, Client client, String query) {
+        client.signals = new ArrayList<String[]>() ;
+        for(String param : query.split("&")) {
+            if (!param.startsWith("signals="))
+                continue ;
+
+            for(String signal : param.substring(8).split(",")) {
+                int index = signal.indexOf(':') ;
+                if (index == -1) {
+                    index = signal.indexOf("%3A") ;
+                    if (index == -1)
+                        continue ;
+                    client.signals.add(new String[] { signal.substring(0, index), signal.substring(index + 3) }) ;
                 }
-                catch(IOException ex) {
+                else {
+                    client.signals.add(new String[] { signal.substring(0, index), signal.substring(index + 1) }) ;
                 }
-                break ;
             }
+        }
 
-            try {
-                DataOutputStream strm = new DataOutputStream(client.getOutputStream()) ;
-                String st = "<html><body>" + robot_status_ ;
-                for(String subsys : subsystem_status_.keySet()) {
-                    String status = subsystem_status_.get(subsys) ;
-                    st += "<hr><h2>Subsystem: " + subsys + "</h2>" ;
-                    st += status ;
-                }
+        String header = "HTTP/1.1 200 OK\r\n" +
+                        "Content-Type: text/event-stream\r\n" +
+                        "Cache-Control: no-cache\r\n" +
+                        "Connection: keep-alive\r\n\r\n" ;
+
+        client.stream = true ;
+        streams_.add(client) ;
+        queue(key, client, header.getBytes(StandardCharsets.US_ASCII), null) ;
+    }
 
-                strm.writeBytes("HTTP/1.1 200 OK\r\n") ;
-                strm.writeBytes("Content-Length: " + Integer.toString(st.length()) + "\r\n") ;
-                strm.writeBytes("Content-Type: text/html; charset=utf-8\r\n\r\n") ;
-                strm.writeBytes(st) ;
-                client.close() ;
+    private void sendEvents() {
+        StatusSnapshot snap = snapshots_[front_] ;
+
+        Iterator<Client> it = streams_.iterator() ;
+        while (it.hasNext()) {
+            Client client = it.next() ;
+            SelectionKey key = client.channel.keyFor(selector_) ;
+            if (key == null || !key.isValid()) {
+                it.remove() ;
+                continue ;
             }
-            catch(IOException ex) {
 
+            if (client.output != null && client.output.hasRemaining()) {
+                //
+                // The client has not kept up with the last event, skip this one rather
+                // than buffer an unbounded amount of data
+                //
+                continue ;
+            }
+
+            bld_.setLength(0) ;
+            bld_.append("data: ") ;
+            snap.toJson(bld_, client.signals) ;
+            bld_.append("\n\n") ;
+            queue(key, client, bld_.toString().getBytes(StandardCharsets.UTF_8), null) ;
+        }
+    }
+
+    private void queue(SelectionKey key, Client client, byte[] first, byte[] second) {
+        int len = first.length + (second != null ? second.length : 0) ;
+        ByteBuffer buf = ByteBuffer.allocate(len) ;
+        buf.put(first) ;
+        if (second != null)
+            buf.put(second) ;
+        buf.flip() ;
+
+        client.output = buf ;
+        key.interestOps(SelectionKey.OP_WRITE | (client.stream ? SelectionKey.OP_READ : 0)) ;
+    }
+
+    private void write(SelectionKey key, Client client) throws IOException {
+        if (client.output == null) {
+            key.interestOps(client.stream ? SelectionKey.OP_READ : 0) ;
+            return ;
+        }
+
+        client.channel.write(client.output) ;
+        if (!client.output.hasRemaining()) {
+            client.output = null ;
+            if (client.close) {
+                close(key) ;
             }
+            else {
+                key.interestOps(SelectionKey.OP_READ) ;
+            }
+        }
+    }
+
+    private void close(SelectionKey key) {
+        Object obj = key.attachment() ;
+        if (obj instanceof Client) {
+            streams_.remove((Client)obj) ;
+        }
+
+        key.cancel() ;
+        try {
+            key.channel().close() ;
+        }
+        catch(IOException ex) {
         }
     }
 }
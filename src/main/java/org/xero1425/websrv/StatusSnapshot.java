@@ -0,0 +1,282 @@
+package org.xero1425.websrv;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// \file
+
+/// \brief One complete picture of the robot status, filled by the robot thread once per robot loop.
+/// Values are grouped by subsystem.  The robot thread selects a group with select() and then stores
+/// values with put().  Storage for a value is only allocated the first time a given group and key are seen, so
+/// after the first few robot loops filling a snapshot does no allocation.  A snapshot is only ever read by
+/// the status server thread after it has been handed off by the StatusServer, so there is no locking here.
+/// Converting the values to JSON is done by the server thread and never by the robot thread.
+public class StatusSnapshot {
+    private static final int NumberValue = 0 ;
+    private static final int BooleanValue = 1 ;
+    private static final int StringValue = 2 ;
+
+    // A single named value in a group
+    private static class Value {
+        public final String key ;
+        public int kind ;
+        public double number ;
+        public boolean flag ;
+        public String text ;
+        public long stamp ;
+
+        public Value(String k) {
+            key = k ;
+            stamp = -1 ;
+        }
+    }
+
+    // A set of values, generally for a single subsystem
+    private static class Group {
+        public final String name ;
+        public final List<Value> values ;
+        public final Map<String, Value> index ;
+        public long stamp ;
+
+        public Group(String n) {
+            name = n ;
+            values = new ArrayList<Value>() ;
+            index = new HashMap<String, Value>() ;
+            stamp = -1 ;
+        }
+    }
+
+    // The groups in the order they were first seen
+    private final List<Group> groups_ ;
+
+    // The groups indexed by name
+    private final Map<String, Group> group_index_ ;
+
+    // The group currently being filled
+    private Group current_ ;
+
+    // The sequence number for this snapshot, any value not written with this sequence number is stale
+    private long seq_ ;
+
+    // The robot time when this snapshot was filled
+    private double time_ ;
+
+    /// \brief create a new empty snapshot
+    public StatusSnapshot() {
+        groups_ = new ArrayList<Group>() ;
+        group_index_ = new HashMap<String, Group>() ;
+        seq_ = 0 ;
+        time_ = 0.0 ;
+    }
+
+    /// \brief returns the sequence number for this snapshot
+    /// \returns the sequence number for this snapshot
+    public long getSequence() {
+        return seq_ ;
+    }
+
+    /// \brief returns the robot time this snapshot was filled
+    /// \returns the robot time this snapshot was filled
+    public double getTime() {
+        return time_ ;
+    }
+
+    /// \brief start filling the snapshot for a new robot loop
+    /// \param seq the sequence number for the new contents
+    /// \param time the robot time for the new contents
+    void begin(long seq, double time) {
+        seq_ = seq ;
+        time_ = time ;
+        current_ = null ;
+    }
+
+    /// \brief select the group that subsequent calls to put() store values in
+    /// \param name the name of the group, generally the subsystem name
+    public void select(String name) {
+        Group g = group_index_.get(name) ;
+        if (g == null) {
+            g = new Group(name) ;
+            groups_.add(g) ;
+            group_index_.put(name, g) ;
+        }
+
+        g.stamp = seq_ ;
+        current_ = g ;
+    }
+
+    /// \brief store a numeric value in the current group
+    /// \param key the name of the value
+    /// \param value the value to store
+    public void put(String key, double value) {
+        Value v = findValue(key) ;
+        if (v != null) {
+            v.kind = NumberValue ;
+            v.number = value ;
+        }
+    }
+
+    /// \brief store a boolean value in the current group
+    /// \param key the name of the value
+    /// \param value the value to store
+    public void put(String key, boolean value) {
+        Value v = findValue(key) ;
+        if (v != null) {
+            v.kind = BooleanValue ;
+            v.flag = value ;
+        }
+    }
+
+    /// \brief store a string value in the current group
+    /// \param key the name of the value
+    /// \param value the value to store
+    public void put(String key, String value) {
+        Value v = findValue(key) ;
+        if (v != null) {
+            v.kind = StringValue ;
+            v.text = value ;
+        }
+    }
+
+    /// \brief write the complete snapshot as a JSON object
+    /// \param bld the string builder to write the JSON text to
+    void toJson(StringBuilder bld) {
+        bld.append("{\"seq\":").append(seq_) ;
+        bld.append(",\"time\":") ;
+        appendNumber(bld, time_) ;
+        bld.append(",\"subsystems\":{") ;
+
+        boolean firstgroup = true ;
+        for(Group g : groups_) {
+            if (g.stamp != seq_)
+                continue ;
+
+            if (!firstgroup)
+                bld.append(',') ;
+            firstgroup = false ;
+
+            appendString(bld, g.name) ;
+            bld.append(":{") ;
+
+            boolean first = true ;
+            for(Value v : g.values) {
+                if (v.stamp != seq_)
+                    continue ;
+
+                if (!first)
+                    bld.append(',') ;
+                first = false ;
+
+                appendString(bld, v.key) ;
+                bld.append(':') ;
+                appendValue(bld, v) ;
+            }
+            bld.append('}') ;
+        }
+
+        bld.append("}}") ;
+    }
+
+    /// \brief write a subset of the values in the snapshot as a flat JSON object
+    /// \param bld the string builder to write the JSON text to
+    /// \param signals the signals to write, each is a group name and a key name
+    void toJson(StringBuilder bld, List<String[]> signals) {
+        bld.append("{\"seq\":").append(seq_) ;
+        bld.append(",\"time\":") ;
+        appendNumber(bld, time_) ;
+
+        for(String[] signal : signals) {
+            bld.append(',') ;
+            appendString(bld, signal[0] + ":" + signal[1]) ;
+            bld.append(':') ;
+
+            Value v = null ;
+            Group g = group_index_.get(signal[0]) ;
+            if (g != null && g.stamp == seq_) {
+                v = g.index.get(signal[1]) ;
+            }
+
+            if (v == null || v.stamp != seq_)
+                bld.append("null") ;
+            else
+                appendValue(bld, v) ;
+        }
+
+        bld.append('}') ;
+    }
+
+    private Value findValue(String key) {
+        if (current_ == null)
+            return null ;
+
+        Value v = current_.index.get(key) ;
+        if (v == null) {
+            v = new Value(key) ;
+            current_.values.add(v) ;
+            current_.index.put(key, v) ;
+        }
+
+        v.stamp = seq_ ;
+        return v ;
+    }
+
+    private static void appendValue(StringBuilder bld, Value v) {
+        switch(v.kind) {
+            case NumberValue:
+                appendNumber(bld, v.number) ;
+                break ;
+            case BooleanValue:
+                bld.append(v.flag) ;
+                break ;
+            default:
+                appendString(bld, v.text) ;
+                break ;
+        }
+    }
+
+    private static void appendNumber(StringBuilder bld, double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d))
+            bld.append("null") ;
+        else
+            bld.append(d) ;
+    }
+
+    private static void appendString(StringBuilder bld, String str) {
+        if (str == null) {
+            bld.append("null") ;
+            return ;
+        }
+
+        bld.append('"') ;
+        for(int i = 0 ; i < str.length() ; i++) {
+            char ch = str.charAt(i) ;
+            switch(ch) {
+                case '"':
+                    bld.append("\\\"") ;
+                    break ;
+                case '\\':
+                    bld.append("\\\\") ;
+                    break ;
+                case '\n':
+                    bld.append("\\n") ;
+                    break ;
+                case '\r':
+                    bld.append("\\r") ;
+                    break ;
+                case '\t':
+                    bld.append("\\t") ;
+                    break ;
+                default:
+                    if (ch < 0x20) {
+                        bld.append(String.format("\\u%04x", (int)ch)) ;
+                    }
+                    else {
+                        bld.append(ch) ;
+                    }
+                    break ;
+            }
+        }
+        bld.append('"') ;
+    }
+}